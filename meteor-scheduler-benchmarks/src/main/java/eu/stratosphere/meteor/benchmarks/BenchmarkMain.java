@@ -0,0 +1,39 @@
+package eu.stratosphere.meteor.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line options and records the results as json,
+ * so two runs can be compared by a script. Without options all benchmarks run and the results
+ * are written to jmh-result.json.
+ *
+ * Usage: java -jar target/benchmarks.jar [JMH options] [benchmark regex]
+ * 		e.g. java -jar target/benchmarks.jar RoundRobin -p jobs=100000 -rff roundrobin.json
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class BenchmarkMain {
+
+	/**
+	 * Default file of the results
+	 */
+	public static final String RESULT_FILE = "jmh-result.json";
+
+	public static void main( String[] args ) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLine = new CommandLineOptions( args );
+		ChainedOptionsBuilder options = new OptionsBuilder().parent( commandLine );
+
+		// machine-readable results unless the command line chose others
+		if ( !commandLine.getResultFormat().hasValue() ) options.resultFormat( ResultFormatType.JSON );
+		if ( !commandLine.getResult().hasValue() ) options.result( RESULT_FILE );
+
+		new Runner( options.build() ).run();
+	}
+}
@@ -0,0 +1,133 @@
+package eu.stratosphere.meteor.benchmarks;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.stratosphere.meteor.common.JobState;
+import eu.stratosphere.meteor.common.MessageBuilder;
+
+/**
+ * Measures building and reading the json messages of the protocol: single status messages,
+ * status batches of the notifier and job batches of bulk submissions. Building includes the
+ * string the message is sent as, reading starts from that string.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MessageBuilderBenchmark {
+
+	private static final String CLIENT = "client-0815";
+
+	/**
+	 * A single status message
+	 */
+	@State(Scope.Benchmark)
+	public static class StatusState {
+		String jobID = "0b7c2f4e-5d7a-4c1b-9a63-1f2e3d4c5b6a-17";
+		String message = MessageBuilder.buildJobStatus( CLIENT, jobID, JobState.RUNNING ).toString();
+	}
+
+	/**
+	 * A batch of status messages as the notifier sends it
+	 */
+	@State(Scope.Benchmark)
+	public static class StatusBatchState {
+		@Param({ "10", "1000", "100000" })
+		public int jobs;
+
+		List<JSONObject> statuses;
+		String message;
+
+		@Setup(Level.Trial)
+		public void setUp(){
+			statuses = new ArrayList<JSONObject>( jobs );
+			for ( int i = 0; i < jobs; i++ )
+				statuses.add( MessageBuilder.buildJobStatus( CLIENT, "job" + i, JobState.FINISHED ) );
+			message = MessageBuilder.buildStatusBatch( CLIENT, statuses ).toString();
+		}
+	}
+
+	/**
+	 * A batch of jobs as a bulk submission sends it
+	 */
+	@State(Scope.Benchmark)
+	public static class JobBatchState {
+		@Param({ "1024", "65536", "1048576" })
+		public int scriptSize;
+
+		@Param({ "10", "100" })
+		public int jobs;
+
+		Map<String, String> scripts;
+		String message;
+
+		@Setup(Level.Trial)
+		public void setUp(){
+			String script = Scripts.create( scriptSize );
+			scripts = new LinkedHashMap<String, String>();
+			for ( int i = 0; i < jobs; i++ ) scripts.put( "job" + i, script );
+			message = MessageBuilder.buildJobBatch( CLIENT, scripts ).toString();
+		}
+	}
+
+	@Benchmark
+	public String buildStatus( StatusState state ){
+		return MessageBuilder.buildJobStatus( CLIENT, state.jobID, JobState.RUNNING ).toString();
+	}
+
+	@Benchmark
+	public String buildErrorStatus( StatusState state ){
+		return MessageBuilder.buildErrorStatus( CLIENT, state.jobID, "Cannot execute your job." ).toString();
+	}
+
+	@Benchmark
+	public JobState readStatus( StatusState state ) throws JSONException {
+		JSONObject status = new JSONObject( state.message );
+		MessageBuilder.getClientID( status );
+		MessageBuilder.getJobID( status );
+		return MessageBuilder.getJobStatus( status );
+	}
+
+	@Benchmark
+	public String buildStatusBatch( StatusBatchState state ){
+		return MessageBuilder.buildStatusBatch( CLIENT, state.statuses ).toString();
+	}
+
+	@Benchmark
+	public List<JSONObject> readStatusBatch( StatusBatchState state ) throws JSONException {
+		return MessageBuilder.getStatusBatch( new JSONObject( state.message ) );
+	}
+
+	@Benchmark
+	public String buildJobBatch( JobBatchState state ){
+		return MessageBuilder.buildJobBatch( CLIENT, state.scripts ).toString();
+	}
+
+	@Benchmark
+	public Map<String, String> readJobBatch( JobBatchState state ) throws JSONException {
+		return MessageBuilder.getJobBatch( new JSONObject( state.message ) );
+	}
+}
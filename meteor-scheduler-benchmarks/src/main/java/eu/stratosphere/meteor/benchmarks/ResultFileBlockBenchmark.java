@@ -0,0 +1,106 @@
+package eu.stratosphere.meteor.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.stratosphere.meteor.common.ResultFileBlock;
+
+/**
+ * Measures handling a received block of a result file on the client side: wrapping the body,
+ * decoding it to a string and writing it to a file without a copy.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ResultFileBlockBenchmark {
+
+	private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+	/**
+	 * Size of a block in bytes
+	 */
+	@Param({ "65536", "1048576", "104857600" })
+	public int blockSize;
+
+	private byte[] body;
+	private File file;
+	private RandomAccessFile output;
+	private FileChannel channel;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		// json records, the last one is cut as at the end of a real block
+		byte[] record = "{\"name\":\"meteor\",\"age\":42},".getBytes( UTF8 );
+		body = new byte[ blockSize ];
+		for ( int i = 0; i < blockSize; i += record.length )
+			System.arraycopy( record, 0, body, i, Math.min( record.length, blockSize - i ) );
+
+		file = File.createTempFile( "result-block", ".json" );
+		output = new RandomAccessFile( file, "rw" );
+		channel = output.getChannel();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		channel.close();
+		output.close();
+		file.delete();
+	}
+
+	/**
+	 * Creates the block of a received body as the client does for each message.
+	 */
+	@Benchmark
+	public ByteBuffer wrap(){
+		return new ResultFileBlock( body, UTF8, 0, blockSize, 1 ).getByteBuffer();
+	}
+
+	/**
+	 * Decodes a new block.
+	 */
+	@Benchmark
+	public String decode(){
+		return new ResultFileBlock( body, UTF8, 0, blockSize, 1 ).getStringRepresentation();
+	}
+
+	/**
+	 * Writes a new block to the start of a file.
+	 */
+	@Benchmark
+	public int write() throws IOException {
+		ByteBuffer buffer = new ResultFileBlock( body, UTF8, 0, blockSize, 1 ).getByteBuffer();
+		int written = 0;
+		long position = 0;
+		while ( buffer.hasRemaining() ){
+			int bytes = channel.write( buffer, position );
+			position += bytes;
+			written += bytes;
+		}
+		return written;
+	}
+}
@@ -0,0 +1,106 @@
+package eu.stratosphere.meteor.benchmarks;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.stratosphere.meteor.server.executor.RRJob;
+import eu.stratosphere.meteor.server.executor.RoundRobin;
+
+/**
+ * Measures the queue of the scheduler with many waiting jobs: taking the next job, looking up
+ * a job by its identifications and removing a job, as the main loop does for each execution,
+ * status request and abort.
+ *
+ * Each operation puts the job back, so the queue keeps its size during a run.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RoundRobinBenchmark {
+
+	private static final String SCRIPT = "$li = read from 'input.json'; write $li to 'output.json';";
+
+	/**
+	 * Number of waiting jobs
+	 */
+	@Param({ "10", "1000", "100000" })
+	public int jobs;
+
+	/**
+	 * Number of clients, at most one per ten jobs so no client runs out of jobs
+	 */
+	@Param({ "1", "100" })
+	public int clients;
+
+	private RoundRobin queue;
+	private RRJob[] queued;
+	private int cursor;
+
+	@Setup(Level.Trial)
+	public void setUp(){
+		int clientCount = Math.max( 1, Math.min( clients, jobs / 10 ) );
+		Date now = new Date();
+
+		queue = new RoundRobin();
+		queued = new RRJob[ jobs ];
+		for ( int i = 0; i < jobs; i++ ){
+			String clientID = "client" + (i % clientCount);
+			queued[i] = new RRJob( clientID, "job" + i, SCRIPT, now );
+			queue.add( clientID, queued[i] );
+		}
+	}
+
+	/**
+	 * Returns the next job of the round robin order and puts it back to the end of its client.
+	 */
+	@Benchmark
+	public RRJob nextAndRequeue(){
+		RRJob job = queue.next();
+		queue.add( job.getClientID(), job );
+		return job;
+	}
+
+	/**
+	 * Looks up a job by its identifications.
+	 */
+	@Benchmark
+	public RRJob lookup(){
+		RRJob job = queued[ next() ];
+		return queue.get( job.getClientID(), job.getJobID() );
+	}
+
+	/**
+	 * Removes a job by its identifications and queues it again.
+	 */
+	@Benchmark
+	public boolean removeAndAdd(){
+		RRJob job = queued[ next() ];
+		boolean removed = queue.remove( job.getClientID(), job.getJobID() );
+		queue.add( job.getClientID(), job );
+		return removed;
+	}
+
+	private int next(){
+		cursor = (cursor + 7919) % queued.length;
+		return cursor;
+	}
+}
@@ -0,0 +1,89 @@
+package eu.stratosphere.meteor.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.stratosphere.meteor.common.SchedulerConfigConstants;
+import eu.stratosphere.meteor.server.DOPAScheduler;
+import eu.stratosphere.meteor.server.ServerConnectionFactory;
+
+/**
+ * Measures dispatching a delivery by its routing key. The benchmarks call the parsing of the
+ * main loop of the scheduler and of the connection factory. The baseline dispatches the same
+ * keys without regular expressions.
+ *
+ * The benchmarks return the number of the handler a key is dispatched to (0 for none).
+ *
+ * @author André Greiner-Petter
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RoutingKeyBenchmark {
+
+	/**
+	 * Routing key of the delivery
+	 */
+	@Param({
+		"setJob.client-0815.0b7c2f4e-5d7a-4c1b-9a63-1f2e3d4c5b6a",
+		"setJobs.client-0815",
+		"request",
+		"register.login"
+	})
+	public String routingKey;
+
+	/**
+	 * Dispatch of the main loop of the scheduler
+	 */
+	@Benchmark
+	public int scheduler(){
+		if ( routingKey.matches( SchedulerConfigConstants.REQUEST_KEY_MASK ) ) return 1;
+
+		String[] separateKey = DOPAScheduler.parseSubmissionKey( routingKey );
+		if ( separateKey == null ) return 0;
+		return separateKey[0].equals("setJob") ? 2 : 3;
+	}
+
+	/**
+	 * Dispatch of the connection factory before a delivery reaches the scheduler
+	 */
+	@Benchmark
+	public int connectionFactory(){
+		String registration = ServerConnectionFactory.parseRegistrationKey( routingKey );
+		if ( "login".equals( registration ) ) return 4;
+		if ( "logoff".equals( registration ) ) return 5;
+		return 0;
+	}
+
+	/**
+	 * The dispatch of the main loop by plain string comparisons
+	 */
+	@Benchmark
+	public int baseline(){
+		if ( routingKey.equals( SchedulerConfigConstants.REQUEST_KEY_MASK ) ) return 1;
+
+		int first = routingKey.indexOf( '.' );
+		if ( first < 0 ) return 0;
+		int second = routingKey.indexOf( '.', first + 1 );
+
+		if ( first == 6 && second > 0 && routingKey.startsWith( "setJob" ) )
+			return routingKey.length() - first - 2 > 0 ? 2 : 0;
+		if ( first == 7 && routingKey.startsWith( "setJobs" ) )
+			return routingKey.length() - first - 1 > 0 ? 3 : 0;
+		return 0;
+	}
+}
@@ -0,0 +1,63 @@
+package eu.stratosphere.meteor.benchmarks;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.stratosphere.meteor.server.executor.RRJob;
+
+/**
+ * Measures creating a job on the scheduler. The job maps all read and write paths of its
+ * script to the file system of the scheduler, which dominates for bigger scripts. The
+ * baseline creates a job of the same size without any path.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ScriptMappingBenchmark {
+
+	/**
+	 * Size of the script in characters
+	 */
+	@Param({ "1024", "65536", "1048576" })
+	public int scriptSize;
+
+	private String script;
+	private String pathlessScript;
+	private Date now;
+
+	@Setup(Level.Trial)
+	public void setUp(){
+		script = Scripts.create( scriptSize );
+		pathlessScript = script.replace( "read from '", "read from \"" ).replace( "to '", "to \"" );
+		now = new Date();
+	}
+
+	@Benchmark
+	public RRJob mapScript(){
+		return new RRJob( "client", "job", script, now );
+	}
+
+	@Benchmark
+	public RRJob baseline(){
+		return new RRJob( "client", "job", pathlessScript, now );
+	}
+}
@@ -0,0 +1,36 @@
+package eu.stratosphere.meteor.benchmarks;
+
+/**
+ * Creates meteor scripts of a given size for the benchmarks. A script reads and writes
+ * files as real jobs do, every fourth statement is a read or a write.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+final class Scripts {
+
+	private Scripts(){}
+
+	/**
+	 * Creates a script with at least given size.
+	 * @param size in characters
+	 * @return meteor script
+	 */
+	static String create( int size ){
+		StringBuilder script = new StringBuilder( size + 128 );
+		for ( int i = 0; script.length() < size; i++ ){
+			switch ( i % 4 ){
+				case 0:
+					script.append( "$input" ).append( i ).append( " = read from 'data/input" ).append( i ).append( ".json';\n" );
+					break;
+				case 3:
+					script.append( "write $result" ).append( i - 1 ).append( " to 'results/output" ).append( i ).append( ".json';\n" );
+					break;
+				default:
+					script.append( "$result" ).append( i ).append( " = filter $input" ).append( i - (i % 4) )
+						.append( " where $input" ).append( i - (i % 4) ).append( ".age > " ).append( i ).append( ";\n" );
+			}
+		}
+		return script.toString();
+	}
+}
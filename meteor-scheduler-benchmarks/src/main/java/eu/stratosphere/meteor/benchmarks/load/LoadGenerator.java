@@ -0,0 +1,607 @@
+package eu.stratosphere.meteor.benchmarks.load;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import eu.stratosphere.meteor.client.DOPAClient;
+import eu.stratosphere.meteor.common.DSCLJob;
+import eu.stratosphere.meteor.common.JobState;
+import eu.stratosphere.meteor.common.ResultFileBlock;
+import eu.stratosphere.meteor.common.ResultFileHandler;
+import eu.stratosphere.meteor.common.SchedulerConfigConstants;
+import eu.stratosphere.meteor.common.SchedulerFuture;
+import eu.stratosphere.meteor.common.transport.InMemoryBroker;
+import eu.stratosphere.meteor.server.DOPAScheduler;
+import eu.stratosphere.meteor.server.metrics.LatencyHistogram;
+
+/**
+ * Drives a scheduler with many clients and reports a latency histogram per request type. By
+ * default it starts the scheduler in this JVM, connected by an in-memory broker and executing
+ * jobs by a {@link StubExecutor}, so only the scheduler and the protocol are measured. With
+ * --broker the clients connect to a running scheduler instead, which executes jobs its own way.
+ *
+ * Submissions are sent at a fixed rate, spread round robin over the clients. Each job then runs
+ * through these requests, each one timed on its own:
+ * 		SUBMIT / BATCH_SUBMIT	until the first status of the job arrived
+ * 		STATUS					the given number of status requests (a reconnect of the job)
+ * 		COMPLETION				from the submission until the job reached its final state
+ * 		LINK					the path of a result, for a share of the finished jobs
+ * 		RESULT					fetching a result, for a share of the finished jobs
+ *
+ * Latencies are measured from the time a submission was due, not from the time it was sent, so
+ * an overloaded generator doesn't hide the delays. The phases the scheduler reports with the final
+ * status of each job (receive, wait, dispatch, execution) are summarized as well.
+ *
+ * Usage: java -cp benchmarks.jar eu.stratosphere.meteor.benchmarks.load.LoadGenerator [options]
+ * 		--clients <number>			simulated clients (10)
+ * 		--duration <seconds>		time submissions are sent (30)
+ * 		--rate <number>				submissions per second over all clients (20)
+ * 		--batchShare <0..1>			share of submissions sent as one batch of jobs (0)
+ * 		--batchSize <number>		jobs per batch (10)
+ * 		--statusRequests <number>	status requests per job (1)
+ * 		--linkShare <0..1>			share of finished jobs requesting a link (0.5)
+ * 		--fetchShare <0..1>			share of finished jobs fetching a result (0.5)
+ * 		--results <number>			results per job (1)
+ * 		--resultSizes <bytes,...>	sizes the results are chosen from (1024,65536,1048576)
+ * 		--blockSize <bytes>			desired block size of fetched results (1048576)
+ * 		--executionTime <min>-<max>	execution time of the stub executor in milliseconds (10-50)
+ * 		--broker <host>:<port>		connect to a running scheduler instead
+ * 		--timeout <seconds>			time to wait for unfinished jobs after the duration (60)
+ * 		--output <file>				json report (load-result.json)
+ * 		--trace <file>				exports the spans of clients and scheduler as json lines (none)
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class LoadGenerator {
+
+	private static final Log LOG = LogFactory.getLog( LoadGenerator.class );
+
+	/**
+	 * Request types with a histogram of their own
+	 */
+	public enum Request {
+		SUBMIT, BATCH_SUBMIT, STATUS, COMPLETION, LINK, RESULT
+	}
+
+	/**
+	 * Options, see the class description
+	 */
+	private int clients = 10;
+	private long duration = 30;
+	private double rate = 20;
+	private double batchShare = 0;
+	private int batchSize = 10;
+	private int statusRequests = 1;
+	private double linkShare = 0.5;
+	private double fetchShare = 0.5;
+	private int results = 1;
+	private long[] resultSizes = { 1024, 65536, 1048576 };
+	private int blockSize = 1048576;
+	private long minExecutionTime = 10;
+	private long maxExecutionTime = 50;
+	private String brokerHost;
+	private int brokerPort = -1;
+	private long timeout = 60;
+	private File output = new File( "load-result.json" );
+	private File traceFile;
+
+	/**
+	 * Latencies and failed requests per type
+	 */
+	private final EnumMap<Request, LatencyHistogram> latencies = new EnumMap<Request, LatencyHistogram>( Request.class );
+	private final EnumMap<Request, AtomicLong> errors = new EnumMap<Request, AtomicLong>( Request.class );
+
+	/**
+	 * Phase times reported by the scheduler
+	 */
+	private final ConcurrentHashMap<String, LatencyHistogram> phases = new ConcurrentHashMap<String, LatencyHistogram>();
+
+	/**
+	 * Counters of jobs and fetched bytes
+	 */
+	private final AtomicLong submittedJobs = new AtomicLong();
+	private final AtomicLong finishedJobs = new AtomicLong();
+	private final AtomicLong failedJobs = new AtomicLong();
+	private final AtomicInteger outstandingJobs = new AtomicInteger();
+	private final AtomicLong fetchedBytes = new AtomicLong();
+	private final AtomicLong scriptNumber = new AtomicLong();
+
+	/**
+	 * Sends the requests, the callbacks of the client only hand over to it
+	 */
+	private ExecutorService workers;
+
+	/**
+	 * Creates a generator with the default options.
+	 */
+	public LoadGenerator(){
+		for ( Request request : Request.values() ){
+			latencies.put( request, new LatencyHistogram() );
+			errors.put( request, new AtomicLong() );
+		}
+	}
+
+	/**
+	 * Parses the options of the command line.
+	 * @param args options, see the class description
+	 * @return configured generator
+	 * @throws IllegalArgumentException if an option is unknown or has no valid value
+	 */
+	public static LoadGenerator parse( String[] args ){
+		LoadGenerator generator = new LoadGenerator();
+		for ( int i = 0; i < args.length; i += 2 ){
+			if ( i + 1 >= args.length ) throw new IllegalArgumentException( "No value for " + args[i] );
+			String value = args[i+1];
+			try {
+				switch ( args[i] ){
+					case "--clients": generator.clients = Integer.parseInt( value ); break;
+					case "--duration": generator.duration = Long.parseLong( value ); break;
+					case "--rate": generator.rate = Double.parseDouble( value ); break;
+					case "--batchShare": generator.batchShare = Double.parseDouble( value ); break;
+					case "--batchSize": generator.batchSize = Integer.parseInt( value ); break;
+					case "--statusRequests": generator.statusRequests = Integer.parseInt( value ); break;
+					case "--linkShare": generator.linkShare = Double.parseDouble( value ); break;
+					case "--fetchShare": generator.fetchShare = Double.parseDouble( value ); break;
+					case "--results": generator.results = Integer.parseInt( value ); break;
+					case "--blockSize": generator.blockSize = Integer.parseInt( value ); break;
+					case "--timeout": generator.timeout = Long.parseLong( value ); break;
+					case "--output": generator.output = new File( value ); break;
+					case "--trace": generator.traceFile = new File( value ); break;
+					case "--resultSizes":
+						String[] sizes = value.split(",");
+						generator.resultSizes = new long[ sizes.length ];
+						for ( int s = 0; s < sizes.length; s++ ) generator.resultSizes[s] = Long.parseLong( sizes[s].trim() );
+						break;
+					case "--executionTime":
+						String[] times = value.split("-");
+						generator.minExecutionTime = Long.parseLong( times[0].trim() );
+						generator.maxExecutionTime = times.length > 1 ? Long.parseLong( times[1].trim() ) : generator.minExecutionTime;
+						break;
+					case "--broker":
+						int colon = value.lastIndexOf( ':' );
+						generator.brokerHost = colon < 0 ? value : value.substring( 0, colon );
+						generator.brokerPort = colon < 0 ? SchedulerConfigConstants.SCHEDULER_PORT : Integer.parseInt( value.substring( colon + 1 ) );
+						break;
+					default: throw new IllegalArgumentException( "Unknown option " + args[i] );
+				}
+			} catch ( NumberFormatException nfe ){
+				throw new IllegalArgumentException( "Invalid value of " + args[i] + ": " + value, nfe );
+			}
+		}
+
+		if ( generator.clients < 1 || generator.rate <= 0 || generator.duration < 1 || generator.results < 0 ||
+				generator.batchSize < 1 || generator.resultSizes.length == 0 )
+			throw new IllegalArgumentException( "Clients, rate, duration, batch size and result sizes have to be positive." );
+		return generator;
+	}
+
+	/**
+	 * Runs the load, prints the report and writes it to the output file.
+	 * @return json report
+	 * @throws IOException if the scheduler or the clients cannot be started
+	 * @throws InterruptedException if interrupted while running
+	 */
+	public JSONObject run() throws IOException, InterruptedException {
+		InMemoryBroker broker = null;
+		DOPAScheduler scheduler = null;
+		File resultDirectory = null;
+
+		// clients and scheduler of this jvm export their spans to one file
+		if ( traceFile != null ) SchedulerConfigConstants.TRACE_FILE = traceFile.getPath();
+
+		// the scheduler in this jvm
+		if ( brokerHost == null ){
+			resultDirectory = Files.createTempDirectory( "load-results" ).toFile();
+			SchedulerConfigConstants.SCHEDULER_FILESYSTEM_ROOT_PATH = "file://" + resultDirectory.getAbsolutePath() + File.separator;
+			DOPAScheduler.SCRIPT_EXECUTOR = new StubExecutor( minExecutionTime, maxExecutionTime );
+
+			broker = new InMemoryBroker();
+			scheduler = DOPAScheduler.createNewSchedulerSystem( broker );
+			final DOPAScheduler started = scheduler;
+			Thread thread = new Thread( new Runnable() {
+				@Override
+				public void run(){ started.start(); }
+			}, "scheduler" );
+			thread.setDaemon( true );
+			thread.start();
+		}
+
+		List<DOPAClient> connected = new ArrayList<DOPAClient>( clients );
+		workers = Executors.newFixedThreadPool( Math.max( 4, clients ), daemonThreads( "load-worker" ) );
+		ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor( daemonThreads( "load-ticker" ) );
+
+		try {
+			for ( int i = 0; i < clients; i++ ){
+				DOPAClient client = DOPAClient.createNewClient( "load-client-" + i );
+				if ( broker != null ) client.setTransportFactory( broker );
+				else { client.setHost( brokerHost ); client.setPort( brokerPort ); }
+				if ( !client.connect() ) throw new IOException( "Cannot connect the client " + client.getClientID() );
+				connected.add( client );
+			}
+
+			// submissions at a fixed rate, each one due at its own time
+			final List<DOPAClient> targets = connected;
+			final long period = Math.max( 1, (long) (1e9 / rate) );
+			final long start = System.nanoTime();
+			ticker.scheduleAtFixedRate( new Runnable() {
+				private long tick = 0;
+
+				@Override
+				public void run(){
+					final long due = start + tick * period;
+					final DOPAClient client = targets.get( (int) (tick++ % targets.size()) );
+					workers.execute( new Runnable() {
+						@Override
+						public void run(){ submit( client, due ); }
+					});
+				}
+			}, 0, period, TimeUnit.NANOSECONDS );
+
+			Thread.sleep( TimeUnit.SECONDS.toMillis( duration ) );
+			ticker.shutdown();
+			ticker.awaitTermination( 1, TimeUnit.SECONDS );
+
+			// wait for the jobs still in process
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos( timeout );
+			while ( outstandingJobs.get() > 0 && System.nanoTime() < deadline ) Thread.sleep( 100 );
+			double elapsed = (System.nanoTime() - start) / 1e9;
+
+			JSONObject report = report( elapsed );
+			print( report );
+			write( report );
+			return report;
+		} finally {
+			ticker.shutdownNow();
+			workers.shutdownNow();
+			for ( DOPAClient client : connected ) client.disconnect();
+			if ( scheduler != null ){
+				scheduler.pause();
+				scheduler.shutdown();
+			}
+			if ( broker != null ) broker.shutdown();
+			if ( resultDirectory != null ) delete( resultDirectory );
+		}
+	}
+
+	/**
+	 * Submits one job or one batch of jobs, by the batch share.
+	 */
+	private void submit( DOPAClient client, long due ){
+		boolean batch = ThreadLocalRandom.current().nextDouble() < batchShare;
+		int jobs = batch ? batchSize : 1;
+
+		// counted before, the first callbacks may come before the submission returns
+		outstandingJobs.addAndGet( jobs );
+		try {
+			if ( batch ){
+				List<String> scripts = new ArrayList<String>( batchSize );
+				for ( int i = 0; i < batchSize; i++ ) scripts.add( createScript() );
+				List<DSCLJob> submitted = client.createNewJobs( scripts );
+				submittedJobs.addAndGet( jobs );
+				for ( DSCLJob job : submitted ) track( client, job, due, Request.BATCH_SUBMIT );
+			} else {
+				DSCLJob job = client.createNewJob( createScript() );
+				submittedJobs.incrementAndGet();
+				track( client, job, due, Request.SUBMIT );
+			}
+		} catch ( RuntimeException re ){
+			outstandingJobs.addAndGet( -jobs );
+			errors.get( batch ? Request.BATCH_SUBMIT : Request.SUBMIT ).incrementAndGet();
+			LOG.warn( "Cannot submit a job of client " + client.getClientID() + ".", re );
+		}
+	}
+
+	/**
+	 * Follows a submitted job through its requests.
+	 */
+	private void track( final DOPAClient client, final DSCLJob job, final long due, Request submission ){
+		when( job.getSubmission(), due, submission, new Step<DSCLJob>() {
+			@Override
+			void next( DSCLJob submitted ){ requestStatus( client, job, due, statusRequests ); }
+		});
+	}
+
+	/**
+	 * Requests the status of the job the given number of times one after another. A status
+	 * request reconnects the job, the client follows the reconnected job object afterwards.
+	 */
+	private void requestStatus( final DOPAClient client, DSCLJob job, final long due, final int remaining ){
+		if ( remaining <= 0 ){
+			awaitCompletion( job, due );
+			return;
+		}
+
+		long start = System.nanoTime();
+		final DSCLJob reconnected = client.reconnectJob( job.getID() );
+		if ( reconnected == null ){
+			failed( Request.STATUS );
+			return;
+		}
+		when( reconnected.getSubmission(), start, Request.STATUS, new Step<DSCLJob>() {
+			@Override
+			void next( DSCLJob answered ){ requestStatus( client, reconnected, due, remaining - 1 ); }
+		});
+	}
+
+	/**
+	 * Waits for the final state of the job and requests link and result of finished jobs.
+	 */
+	private void awaitCompletion( final DSCLJob job, long due ){
+		when( job.getCompletion(), due, Request.COMPLETION, new Step<JobState>() {
+			@Override
+			void next( JobState state ){
+				recordPhases( job );
+				if ( state != JobState.FINISHED ){
+					failedJobs.incrementAndGet();
+					done();
+					return;
+				}
+				finishedJobs.incrementAndGet();
+				requestLink( job );
+			}
+		});
+	}
+
+	/**
+	 * Records the phase times the scheduler reported for the job.
+	 */
+	private void recordPhases( DSCLJob job ){
+		for ( Map.Entry<String, Double> timing : job.getTimings().entrySet() ){
+			LatencyHistogram histogram = phases.get( timing.getKey() );
+			if ( histogram == null ){
+				LatencyHistogram added = phases.putIfAbsent( timing.getKey(), histogram = new LatencyHistogram() );
+				if ( added != null ) histogram = added;
+			}
+			histogram.record( (long) (timing.getValue() * 1000) );
+		}
+	}
+
+	/**
+	 * Requests the link of a random result for the link share of jobs.
+	 */
+	private void requestLink( final DSCLJob job ){
+		if ( results == 0 || ThreadLocalRandom.current().nextDouble() >= linkShare ){
+			fetchResult( job );
+			return;
+		}
+		when( job.fetchLink( ThreadLocalRandom.current().nextInt( results ) ), System.nanoTime(), Request.LINK, new Step<String>() {
+			@Override
+			void next( String link ){ fetchResult( job ); }
+		});
+	}
+
+	/**
+	 * Fetches a random result for the fetch share of jobs, the blocks are counted and dropped.
+	 */
+	private void fetchResult( DSCLJob job ){
+		if ( results == 0 || ThreadLocalRandom.current().nextDouble() >= fetchShare ){
+			done();
+			return;
+		}
+		ResultFileHandler counter = new ResultFileHandler() {
+			@Override
+			public void handleFileBlock( DSCLJob job, ResultFileBlock block ){
+				fetchedBytes.addAndGet( block.informationLength() );
+			}
+		};
+		int index = ThreadLocalRandom.current().nextInt( results );
+		when( job.fetchResult( index, blockSize, 0, counter ), System.nanoTime(), Request.RESULT, new Step<DSCLJob>() {
+			@Override
+			void next( DSCLJob fetched ){ done(); }
+		});
+	}
+
+	/**
+	 * A step of a job after a request completed. The step runs on the workers, not on the
+	 * thread which completed the request.
+	 */
+	private abstract class Step<V> {
+		abstract void next( V value );
+	}
+
+	/**
+	 * Records the latency of a request from given start and continues with the next step.
+	 * A failed request ends the job.
+	 */
+	private <V> void when( SchedulerFuture<V> future, final long start, final Request request, final Step<V> step ){
+		future.addCallback( new SchedulerFuture.Callback<V>() {
+			@Override
+			public void completed( final V value ){
+				latencies.get( request ).record( (System.nanoTime() - start) / 1000 );
+				workers.execute( new Runnable() {
+					@Override
+					public void run(){ step.next( value ); }
+				});
+			}
+
+			@Override
+			public void failed( Throwable cause ){
+				LOG.debug( "Request " + request + " failed.", cause );
+				LoadGenerator.this.failed( request );
+			}
+		});
+	}
+
+	private void failed( Request request ){
+		errors.get( request ).incrementAndGet();
+		done();
+	}
+
+	private void done(){
+		outstandingJobs.decrementAndGet();
+	}
+
+	/**
+	 * Creates a script reading one input and writing the results with their sizes in their names.
+	 */
+	private String createScript(){
+		long number = scriptNumber.incrementAndGet();
+		StringBuilder script = new StringBuilder( "$input = read from 'load/input.json';\n" );
+		for ( int i = 0; i < results; i++ ){
+			long size = resultSizes[ ThreadLocalRandom.current().nextInt( resultSizes.length ) ];
+			script.append( "write $input to 'load/" ).append( number ).append( "/result" ).append( i )
+				.append( '-' ).append( size ).append( ".json';\n" );
+		}
+		return script.toString();
+	}
+
+	/**
+	 * Builds the report of the run.
+	 */
+	private JSONObject report( double elapsed ) throws IOException {
+		try {
+			JSONObject options = new JSONObject();
+			options.put( "clients", clients );
+			options.put( "duration", duration );
+			options.put( "rate", rate );
+			options.put( "batchShare", batchShare );
+			options.put( "batchSize", batchSize );
+			options.put( "statusRequests", statusRequests );
+			options.put( "linkShare", linkShare );
+			options.put( "fetchShare", fetchShare );
+			options.put( "results", results );
+			JSONArray sizes = new JSONArray();
+			for ( long size : resultSizes ) sizes.put( size );
+			options.put( "resultSizes", sizes );
+			options.put( "blockSize", blockSize );
+			options.put( "executionTime", minExecutionTime + "-" + maxExecutionTime );
+			options.put( "broker", brokerHost == null ? "in-memory" : brokerHost + ":" + brokerPort );
+
+			JSONObject jobs = new JSONObject();
+			jobs.put( "submitted", submittedJobs.get() );
+			jobs.put( "finished", finishedJobs.get() );
+			jobs.put( "failed", failedJobs.get() );
+			jobs.put( "unfinished", Math.max( 0, outstandingJobs.get() ) );
+			jobs.put( "finishedPerSecond", finishedJobs.get() / elapsed );
+
+			JSONObject requests = new JSONObject();
+			for ( Request request : Request.values() ){
+				JSONObject summary = latencies.get( request ).toJSON();
+				summary.put( "errors", errors.get( request ).get() );
+				requests.put( request.name(), summary );
+			}
+
+			JSONObject phaseTimes = new JSONObject();
+			for ( Map.Entry<String, LatencyHistogram> phase : phases.entrySet() )
+				phaseTimes.put( phase.getKey(), phase.getValue().toJSON() );
+
+			JSONObject report = new JSONObject();
+			report.put( "options", options );
+			report.put( "elapsedSeconds", elapsed );
+			report.put( "jobs", jobs );
+			report.put( "fetchedBytes", fetchedBytes.get() );
+			report.put( "latencies", requests );
+			report.put( "phases", phaseTimes );
+			return report;
+		} catch ( JSONException je ){
+			throw new IOException( "Cannot build the report.", je );
+		}
+	}
+
+	/**
+	 * Prints the jobs and a table of the latencies in milliseconds.
+	 */
+	private void print( JSONObject report ){
+		try {
+			JSONObject jobs = report.getJSONObject( "jobs" );
+			System.out.println( String.format( Locale.ROOT,
+					"%d jobs submitted in %.1fs, %d finished (%.1f/s), %d failed, %d unfinished, %d result bytes fetched",
+					jobs.getLong( "submitted" ), report.getDouble( "elapsedSeconds" ), jobs.getLong( "finished" ),
+					jobs.getDouble( "finishedPerSecond" ), jobs.getLong( "failed" ), jobs.getLong( "unfinished" ),
+					report.getLong( "fetchedBytes" ) ) );
+			System.out.println( String.format( Locale.ROOT, "%-13s %8s %7s %9s %9s %9s %9s %9s %9s",
+					"request [ms]", "count", "errors", "mean", "p50", "p90", "p99", "p99.9", "max" ) );
+
+			JSONObject requests = report.getJSONObject( "latencies" );
+			for ( Request request : Request.values() ){
+				JSONObject summary = requests.getJSONObject( request.name() );
+				System.out.println( String.format( Locale.ROOT, "%-13s %8d %7d %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f",
+						request.name(), summary.getLong( "count" ), summary.getLong( "errors" ), summary.getDouble( "mean" ),
+						summary.getDouble( "p50" ), summary.getDouble( "p90" ), summary.getDouble( "p99" ),
+						summary.getDouble( "p999" ), summary.getDouble( "max" ) ) );
+			}
+
+			JSONObject phaseTimes = report.getJSONObject( "phases" );
+			for ( String phase : new String[]{ "receive", "wait", "dispatch", "execution", "total" } ){
+				if ( !phaseTimes.has( phase ) ) continue;
+				JSONObject summary = phaseTimes.getJSONObject( phase );
+				System.out.println( String.format( Locale.ROOT, "%-13s %8d %7s %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f",
+						"  " + phase, summary.getLong( "count" ), "", summary.getDouble( "mean" ),
+						summary.getDouble( "p50" ), summary.getDouble( "p90" ), summary.getDouble( "p99" ),
+						summary.getDouble( "p999" ), summary.getDouble( "max" ) ) );
+			}
+		} catch ( JSONException je ){
+			LOG.error( "Cannot print the report.", je );
+		}
+	}
+
+	private void write( JSONObject report ) throws IOException {
+		try ( Writer writer = new OutputStreamWriter( new FileOutputStream( output ), Charset.forName( "UTF-8" ) ) ){
+			writer.write( report.toString( 2 ) );
+		} catch ( JSONException je ){
+			throw new IOException( "Cannot write the report.", je );
+		}
+		System.out.println( "Report written to " + output.getAbsolutePath() );
+	}
+
+	private static ThreadFactory daemonThreads( final String name ){
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread( Runnable r ){
+				Thread thread = new Thread( r, name + "-" + count.incrementAndGet() );
+				thread.setDaemon( true );
+				return thread;
+			}
+		};
+	}
+
+	private static void delete( File file ){
+		File[] children = file.listFiles();
+		if ( children != null ) for ( File child : children ) delete( child );
+		if ( !file.delete() ) LOG.debug( "Cannot delete " + file );
+	}
+
+	public static void main( String[] args ) throws IOException, InterruptedException {
+		LoadGenerator generator;
+		try { generator = parse( args ); }
+		catch ( IllegalArgumentException iae ){
+			System.err.println( iae.getMessage() );
+			System.err.println( "Usage: LoadGenerator [--clients n] [--duration s] [--rate n] [--batchShare p] [--batchSize n] " +
+					"[--statusRequests n] [--linkShare p] [--fetchShare p] [--results n] [--resultSizes bytes,...] " +
+					"[--blockSize bytes] [--executionTime min-max] [--broker host:port] [--timeout s] [--output file] " +
+					"[--trace file]" );
+			System.exit( 1 );
+			return;
+		}
+		generator.run();
+		System.exit( 0 );
+	}
+}
@@ -0,0 +1,109 @@
+package eu.stratosphere.meteor.benchmarks.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import eu.stratosphere.meteor.server.executor.RRJob;
+import eu.stratosphere.meteor.server.executor.ScriptExecutor;
+
+/**
+ * Executes jobs without Nephele. A job takes a random time between a minimum and a maximum and
+ * writes a json file of records to each of its result paths. The size of a result is the number
+ * at the end of its name, e.g. 'load/result-65536.json' has 65536 bytes. Results without a
+ * number are empty arrays.
+ *
+ * Only results on the local file system can be written.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class StubExecutor implements ScriptExecutor {
+
+	private static final Pattern RESULT_SIZE = Pattern.compile( "(\\d+)\\.json$" );
+	private static final String LOCAL_PREFIX = "file://";
+
+	/**
+	 * Records the results are filled with
+	 */
+	private static final byte[] RECORDS;
+	static {
+		StringBuilder records = new StringBuilder( 64 * 1024 + 64 );
+		for ( int i = 0; records.length() < 64 * 1024; i++ )
+			records.append( "{\"id\":" ).append( i ).append( ",\"name\":\"meteor\"}," );
+		RECORDS = records.substring( 0, 64 * 1024 ).getBytes( Charset.forName( "UTF-8" ) );
+	}
+
+	private final long minTime;
+	private final long maxTime;
+
+	/**
+	 * Creates an executor which executes each job between given times.
+	 * @param minTime minimum execution time in milliseconds
+	 * @param maxTime maximum execution time in milliseconds
+	 */
+	public StubExecutor( long minTime, long maxTime ){
+		this.minTime = Math.max( 0, minTime );
+		this.maxTime = Math.max( this.minTime, maxTime );
+	}
+
+	@Override
+	public void execute( RRJob job, String meteorScript ) throws Exception {
+		long time = minTime == maxTime ? minTime : ThreadLocalRandom.current().nextLong( minTime, maxTime + 1 );
+		if ( time > 0 ) Thread.sleep( time );
+
+		for ( int i = 0; i < job.getNumberOfResults(); i++ )
+			writeResult( job.getMappedResult(i), resultSize( job.getOriginalResult(i) ) );
+	}
+
+	/**
+	 * Returns the size of a result by its name.
+	 * @param result path as written in the script
+	 * @return size in bytes, 2 for an empty array
+	 */
+	static long resultSize( String result ){
+		Matcher matcher = RESULT_SIZE.matcher( result );
+		return matcher.find() ? Long.parseLong( matcher.group(1) ) : 2;
+	}
+
+	/**
+	 * Writes a json array of given size.
+	 * @param result mapped path of the result
+	 * @param size in bytes
+	 * @throws IOException if the result isn't local or cannot be written
+	 */
+	private static void writeResult( String result, long size ) throws IOException {
+		if ( !result.startsWith( LOCAL_PREFIX ) )
+			throw new IOException( "The stub executor writes local results only: " + result );
+
+		File file = new File( result.substring( LOCAL_PREFIX.length() ) );
+		File parent = file.getParentFile();
+		if ( parent != null && !parent.isDirectory() && !parent.mkdirs() )
+			throw new IOException( "Cannot create the directory of " + file );
+
+		try ( RandomAccessFile out = new RandomAccessFile( file, "rw" ) ){
+			FileChannel channel = out.getChannel();
+			channel.truncate( 0 );
+
+			// '[' records ']', the records are cut to the size
+			write( channel, ByteBuffer.wrap( new byte[]{ '[' }, 0, (int) Math.min( 1, size ) ) );
+			long remaining = Math.max( 0, size - 2 );
+			while ( remaining > 0 ){
+				int length = (int) Math.min( remaining, RECORDS.length );
+				write( channel, ByteBuffer.wrap( RECORDS, 0, length ) );
+				remaining -= length;
+			}
+			if ( size > 1 ) write( channel, ByteBuffer.wrap( new byte[]{ ']' } ) );
+		}
+	}
+
+	private static void write( FileChannel channel, ByteBuffer buffer ) throws IOException {
+		while ( buffer.hasRemaining() ) channel.write( buffer );
+	}
+}
@@ -0,0 +1,135 @@
+package eu.stratosphere.meteor.benchmarks.load;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.QueueingConsumer.Delivery;
+
+import eu.stratosphere.meteor.common.MessageBuilder;
+import eu.stratosphere.meteor.common.SchedulerConfigConstants;
+import eu.stratosphere.meteor.common.transport.InMemoryBroker;
+import eu.stratosphere.meteor.common.transport.QueueingTransportConsumer;
+import eu.stratosphere.meteor.common.transport.Transport;
+import eu.stratosphere.meteor.common.transport.TransportChannel;
+import eu.stratosphere.meteor.common.transport.TransportFactory;
+import eu.stratosphere.meteor.server.DOPAScheduler;
+
+/**
+ * Compares the throughput of single submissions with bulk submissions. A scheduler runs in this
+ * process on an in-memory message broker. The benchmark publishes the jobs like a client does,
+ * waiting for publisher confirms per message or per batch, and measures the time until the
+ * first status of each job arrived.
+ *
+ * Usage: java -cp benchmarks.jar eu.stratosphere.meteor.benchmarks.load.SubmissionBenchmark [number of jobs] [batch size]
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class SubmissionBenchmark {
+
+	private static final String SCRIPT = "$li = read from 'file:///input.json'; write $li to 'file:///output.json';";
+	private static final String CHARSET = "UTF-8";
+
+	public static void main( String[] args ) throws Exception {
+		int jobs = args.length > 0 ? Integer.parseInt( args[0] ) : 2000;
+		int batchSize = args.length > 1 ? Integer.parseInt( args[1] ) : SchedulerConfigConstants.SUBMIT_BATCH_SIZE;
+
+		InMemoryBroker broker = new InMemoryBroker();
+		final DOPAScheduler scheduler = DOPAScheduler.createNewSchedulerSystem( broker );
+		Thread schedulerThread = new Thread( new Runnable() {
+			@Override
+			public void run(){ scheduler.start(); }
+		}, "scheduler" );
+		schedulerThread.setDaemon( true );
+		schedulerThread.start();
+
+		long single = run( broker, "single", jobs, 1 );
+		long bulk = run( broker, "bulk", jobs, batchSize );
+
+		System.out.println( String.format( "single submission: %d jobs in %d ms (%.0f jobs/s)", jobs, single, jobs * 1000.0 / single ) );
+		System.out.println( String.format( "bulk submission:   %d jobs in %d ms (%.0f jobs/s), batch size %d", jobs, bulk, jobs * 1000.0 / bulk, batchSize ) );
+
+		scheduler.pause();
+		broker.shutdown();
+	}
+
+	/**
+	 * Submits all jobs of a new client and waits for their first status.
+	 * @param factory of the message broker
+	 * @param clientID of the new client
+	 * @param jobs number of jobs
+	 * @param batchSize 1 submits each job in its own message
+	 * @return elapsed milliseconds
+	 */
+	private static long run( TransportFactory factory, String clientID, int jobs, int batchSize )
+			throws IOException, InterruptedException, JSONException {
+		Transport transport = factory.newTransport();
+		TransportChannel channel = transport.createChannel();
+		channel.confirmSelect();
+		String requestExchange = SchedulerConfigConstants.getRequestExchange( clientID );
+
+		// register and bind the status queue
+		String replyQueue = channel.queueDeclare();
+		QueueingTransportConsumer handShake = new QueueingTransportConsumer( channel );
+		channel.basicConsume( replyQueue, true, handShake );
+		channel.basicPublish( requestExchange, "register.login",
+				new BasicProperties.Builder().replyTo( replyQueue ).contentEncoding( CHARSET ).build(),
+				clientID.getBytes( CHARSET ) );
+		String statusExchange = new String( handShake.nextDelivery().getBody(), CHARSET );
+
+		String statusQueue = channel.queueDeclare();
+		channel.queueBind( statusQueue, statusExchange, SchedulerConfigConstants.getRoutingKey( clientID ) );
+		QueueingTransportConsumer statuses = new QueueingTransportConsumer( channel );
+		channel.basicConsume( statusQueue, true, statuses );
+
+		BasicProperties props = new BasicProperties.Builder()
+				.contentEncoding( CHARSET )
+				.contentType( SchedulerConfigConstants.JSON )
+				.timestamp( new Date() )
+				.build();
+
+		long start = System.currentTimeMillis();
+
+		// publish like the client does
+		Map<String, String> batch = new LinkedHashMap<String, String>();
+		for ( int i = 0; i < jobs; i++ ){
+			String jobID = clientID + "-" + i;
+			if ( batchSize <= 1 ){
+				channel.basicPublish( requestExchange, "setJob." + clientID + "." + jobID, props, SCRIPT.getBytes( CHARSET ) );
+				channel.waitForConfirms( 0 );
+				continue;
+			}
+
+			batch.put( jobID, SCRIPT );
+			if ( batch.size() >= batchSize || i == jobs - 1 ){
+				byte[] body = MessageBuilder.buildJobBatch( clientID, batch ).toString().getBytes( CHARSET );
+				channel.basicPublish( requestExchange, "setJobs." + clientID, props, body );
+				channel.waitForConfirms( 0 );
+				batch.clear();
+			}
+		}
+
+		// wait for the first status of each job
+		Set<String> answered = new HashSet<String>();
+		while ( answered.size() < jobs ){
+			Delivery delivery = statuses.nextDelivery();
+			JSONObject status = new JSONObject( new String( delivery.getBody(), CHARSET ) );
+			for ( JSONObject jobStatus : MessageBuilder.getStatusBatch( status ) )
+				answered.add( MessageBuilder.getJobID( jobStatus ) );
+			answered.add( MessageBuilder.getJobID( status ) );
+			answered.remove( null );
+		}
+
+		long elapsed = System.currentTimeMillis() - start;
+		transport.close();
+		return elapsed;
+	}
+}
@@ -0,0 +1,20 @@
+package eu.stratosphere.meteor.benchmarks.load;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests the result sizes of the stub executor.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class StubExecutorTest {
+
+	@Test
+	public void testResultSizes(){
+		assertEquals( 65536, StubExecutor.resultSize( "load/7/result0-65536.json" ) );
+		assertEquals( 2, StubExecutor.resultSize( "load/output.json" ) );
+	}
+}
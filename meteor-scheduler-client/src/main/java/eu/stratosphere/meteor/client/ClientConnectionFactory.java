@@ -1,26 +1,42 @@
 package eu.stratosphere.meteor.client;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.rabbitmq.client.AMQP.BasicProperties;
-import com.rabbitmq.client.Channel;
-import com.rabbitmq.client.Connection;
-import com.rabbitmq.client.ConnectionFactory;
 import com.rabbitmq.client.ConsumerCancelledException;
 import com.rabbitmq.client.QueueingConsumer;
 import com.rabbitmq.client.ShutdownSignalException;
 
+import eu.stratosphere.meteor.common.DSCLJob;
+import eu.stratosphere.meteor.common.MessageBuilder;
 import eu.stratosphere.meteor.common.SchedulerConfigConstants;
+import eu.stratosphere.meteor.common.SchedulerFuture;
 import eu.stratosphere.meteor.common.RequestConsumable;
+import eu.stratosphere.meteor.common.trace.Span;
+import eu.stratosphere.meteor.common.trace.Tracer;
+import eu.stratosphere.meteor.common.transport.QueueingTransportConsumer;
+import eu.stratosphere.meteor.common.transport.RabbitMQTransportFactory;
+import eu.stratosphere.meteor.common.transport.Transport;
+import eu.stratosphere.meteor.common.transport.TransportChannel;
+import eu.stratosphere.meteor.common.transport.TransportConsumer;
+import eu.stratosphere.meteor.common.transport.TransportFactory;
+import eu.stratosphere.meteor.common.transport.TransportRecoveryListener;
 
 /**
  * This class sends requests and jobs to the server. It handle all connections
- * to rabbitMQ and the scheduler services.
+ * to the message broker (rabbitMQ by default) and the scheduler services.
  *
  * @author André Greiner-Petter
  */
@@ -29,17 +45,37 @@ public class ClientConnectionFactory {
 	private final DOPAClient client;
 	private final String charset = "UTF-8";
 	private String statusQueue;
-	private String replyQueue;
+	
+	/** request exchange of the shard serving this client **/
+	private final String requestExchange;
 	
 	/** connection informations **/
-	private ConnectionFactory connectFactory;
-	private Connection connection;
-	private Channel requestChannel, statusChannel;
-	private QueueingConsumer staticStatusConsumer;
-	private QueueingConsumer tmpRequestConsumer;
+	private Transport connection;
+	private TransportChannel requestChannel, statusChannel;
+	
+	/** channel with publisher confirms for bulk submissions, created on first use **/
+	private TransportChannel confirmChannel;
+	private StatusConsumer staticStatusConsumer;
+	private volatile QueueingTransportConsumer tmpRequestConsumer;
+	
+	/** 
+	 * Submissions and requests without an answer yet <Key -> Request>. Requests are keyed by
+	 * their correlation ID, submissions by 'setJob.<JobID>' and batches by 'setJobs.<BatchID>'.
+	 * They are published again after the connection to the message broker recovered.
+	 */
+	private final ConcurrentHashMap<String, PendingRequest> pendingRequests;
 	
 	/**
-	 * Create new channel to connect this client with rabbitMQ and the DOPAScheduler.
+	 * Keys of the pending requests which are answered by status updates <JobID -> Keys>. These are
+	 * the batches including the job and its status, exists and abort requests. A status completes
+	 * them without scanning all pending requests.
+	 */
+	private final HashMap<String, List<String>> jobRequests;
+	private final AtomicBoolean resubscribing;
+	private volatile boolean closed = false;
+	
+	/**
+	 * Create new channel to connect this client with the message broker and the DOPAScheduler.
 	 * It creates a channel to send request and another channel to get status.
 	 * 
 	 * This constructor catch all exception in the initialization process and throw
@@ -47,33 +83,41 @@ public class ClientConnectionFactory {
 	 * 
 	 * @param client the parent of this factory
 	 * @param reconnect true if the clients wants to reconnect to the scheduler, false otherwise
-	 * @param timeout to build the connection with the server
-     * @param host the hostname to connect to
-     * @param port the the port of the host to connect to
-	 * @throws Exception if the factory cannot initialize connections to rabbitMQ
+	 * @param transportFactory to connect to the message broker
+	 * @throws Exception if the factory cannot initialize connections to the message broker
 	 */
-	protected ClientConnectionFactory( final DOPAClient client, boolean reconnect, int timeout, String host, int port ) throws Exception {
+	protected ClientConnectionFactory( final DOPAClient client, boolean reconnect, TransportFactory transportFactory ) throws Exception {
 		this.client = client;
+		this.requestExchange = SchedulerConfigConstants.getRequestExchange( client.getClientID() );
+		this.pendingRequests = new ConcurrentHashMap<String, PendingRequest>();
+		this.jobRequests = new HashMap<String, List<String>>();
+		this.resubscribing = new AtomicBoolean( false );
 		
-		DOPAClient.LOG.info("Initialize connections to RabbitMQ.");
+		// tracing is optional, the client works without it
+		if ( SchedulerConfigConstants.TRACE_FILE != null ){
+			try { Tracer.exportTo( new File( SchedulerConfigConstants.TRACE_FILE ) ); }
+			catch ( IOException ioe ){ DOPAClient.LOG.warn("Cannot export spans to " + SchedulerConfigConstants.TRACE_FILE + ".", ioe); }
+		}
 		
-		// build a connection
-		connectFactory = new ConnectionFactory();
-		connectFactory.setConnectionTimeout( timeout );
-		connectFactory.setHost( host );
-		connectFactory.setPort( port );
+		DOPAClient.LOG.info("Initialize connections to the message broker.");
 		
 		try {
 			// create channels
-			this.connection = connectFactory.newConnection();
+			this.connection = transportFactory.newTransport();
+			this.connection.addRecoveryListener( new TransportRecoveryListener() {
+				@Override
+				public void transportRecovered( Transport transport ){
+					recover();
+				}
+			});
 			this.requestChannel = connection.createChannel();
 			this.statusChannel = connection.createChannel();
 			
 			// create a non-durable, exclusive, autodelete queue with generated name
-			this.statusQueue = this.statusChannel.queueDeclare().getQueue();
+			this.statusQueue = this.statusChannel.queueDeclare();
 			
 			// subscribe status queue
-			this.subscribe(reconnect);
+			this.subscribe(reconnect, 0);
 			
 			// consume the status queue
 			this.staticStatusConsumer = new StatusConsumer( this, client, statusChannel );
@@ -91,6 +135,24 @@ public class ClientConnectionFactory {
 		}
 	}
 
+	/**
+	 * Create new channel to connect this client with rabbitMQ and the DOPAScheduler.
+	 * It creates a channel to send request and another channel to get status.
+	 * 
+	 * This constructor catch all exception in the initialization process and throw
+	 * a general exception with detailed informations.
+	 * 
+	 * @param client the parent of this factory
+	 * @param reconnect true if the clients wants to reconnect to the scheduler, false otherwise
+	 * @param timeout to build the connection with the server
+     * @param host the hostname to connect to
+     * @param port the the port of the host to connect to
+	 * @throws Exception if the factory cannot initialize connections to rabbitMQ
+	 */
+	protected ClientConnectionFactory( final DOPAClient client, boolean reconnect, int timeout, String host, int port ) throws Exception {
+		this( client, reconnect, new RabbitMQTransportFactory( host, port, timeout ) );
+	}
+
     /**
      * Create new channel to connect this client with rabbitMQ and the DOPAScheduler.
      * It creates a channel to send request and another channel to get status.
@@ -127,16 +189,18 @@ public class ClientConnectionFactory {
 	 * name of exchange for job status. If we get this exchange name we bind our status queue with this 
 	 * exchange with an generatedKey for routingKey.
 	 * 
-	 * @throws IOException if an error encountered
+	 * @param force true to register even if the scheduler still knows this client
+	 * @param timeOut to wait for the answer of the scheduler in milliseconds, 0 waits forever
+	 * @throws IOException if an error encountered or the scheduler didn't answer in time
 	 * @throws InterruptedException if the connection interrupted through the handshake
 	 * @throws ConsumerCancelledException if the staticStatusConsumer cancelled while waiting for an answer
 	 * @throws ShutdownSignalException if rabbitMQ shutdown through handshake
 	 */
-	private void subscribe( boolean force ) 
+	private void subscribe( boolean force, long timeOut ) 
 			throws IOException, ShutdownSignalException, ConsumerCancelledException, InterruptedException{
 		// initialize handshake components
-		String handShakeQueue = this.requestChannel.queueDeclare().getQueue();
-		QueueingConsumer handShakeConsumer = new QueueingConsumer( this.requestChannel );
+		String handShakeQueue = this.requestChannel.queueDeclare();
+		QueueingTransportConsumer handShakeConsumer = new QueueingTransportConsumer( this.requestChannel );
 		this.requestChannel.basicConsume(handShakeQueue, true, "handShakeConsumer", handShakeConsumer);
 		
 		// creates the property builder
@@ -153,13 +217,21 @@ public class ClientConnectionFactory {
 		
 		// register on server to get the correct exchange
 		this.requestChannel.basicPublish(
-				SchedulerConfigConstants.REQUEST_EXCHANGE, 
+				this.requestExchange, 
 				"register.login", 
 				props, 
 				client.getClientID().getBytes(charset) );
 		
 		// wait for the name of status exchange to bind our status queue to this exchange
-		QueueingConsumer.Delivery delivery = handShakeConsumer.nextDelivery();
+		QueueingConsumer.Delivery delivery = timeOut > 0 ? 
+				handShakeConsumer.nextDelivery( timeOut ) : 
+				handShakeConsumer.nextDelivery();
+		
+		// close and delete all handshake components
+		this.requestChannel.basicCancel( "handShakeConsumer" );
+		this.requestChannel.queueDelete( handShakeQueue );
+		
+		if ( delivery == null ) throw new IOException("The scheduler didn't answer the registration in time.");
 		String status_exchange = new String( delivery.getBody(), charset );
 		
 		if ( !status_exchange.matches("Still registered!") ){
@@ -172,9 +244,6 @@ public class ClientConnectionFactory {
 			DOPAClient.LOG.warn("A client with your ID is still registered. You can use reconnect if you are sure to connect!");
             throw new InterruptedException("Duplicate client already registered at the server");
 		}
-		
-		// close and delete all handshake components
-		this.requestChannel.basicCancel( "handShakeConsumer" );
 	}
 	
 	/**
@@ -190,7 +259,7 @@ public class ClientConnectionFactory {
 		
 		// inform the scheduler
 		this.requestChannel.basicPublish (
-				SchedulerConfigConstants.REQUEST_EXCHANGE, 
+				this.requestExchange, 
 				"register.logoff", 
 				props, 
 				client.getClientID().getBytes( charset ) );
@@ -205,60 +274,62 @@ public class ClientConnectionFactory {
 	 * @return result consumer
 	 */
 	protected ResultConsumer getResultConsumer( String corrID ){
-		return new ResultConsumer( this.client, this.requestChannel, corrID );
+		return new ResultConsumer( this.client, this, this.requestChannel, corrID );
 	}
 	
 	/**
-	 * Returns a LinkConsumer object connected to the requestChannel.
+	 * Returns a ResultConsumer object for a result stream connected to its own channel.
 	 * @param corrID correlation ID of the request
-	 * @return link consumer
+	 * @param channel own channel of the request, see createResultChannel()
+	 * @param stream of the result
+	 * @return result consumer
 	 */
-	protected LinkConsumer getLinkConsumer( String corrID ){
-		return new LinkConsumer( this.client, this.requestChannel, corrID );
+	protected ResultConsumer getResultConsumer( String corrID, TransportChannel channel, ResultStream stream ){
+		return new ResultConsumer( this.client, this, channel, corrID, stream, null );
 	}
 	
 	/**
-	 * Returns the status object for a job. If there are no status currently available it
-	 * returns null and send a request to the scheduler to get informations about the status.
-	 * 
-	 * If it returns null try to get the status later.
-	 * 
-	 * This method normally used asynchronously by {@code StatusConsumer.class}. If a new
-	 * message received the consumer called this method instantly.
-	 * 
-	 * @param timeOut to wait for message
-	 * @return json object of status message or null
-	 * @throws ShutdownSignalException if connection is shutdown while waiting
-	 * @throws ConsumerCancelledException if the staticStatusConsumer is cancelled while waiting
-	 * @throws InterruptedException if an interrupt is received while waiting
-	 * @throws UnsupportedEncodingException if there are no correct encoding informations
-	 * @throws JSONException if we cannot rebuild a json object from message
-	 * @throws IOException if we cannot send the request
+	 * Returns a ResultConsumer object connected to the requestChannel which completes
+	 * the given future after the last block.
+	 * @param corrID correlation ID of the request
+	 * @param future completed with the job
+	 * @return result consumer
 	 */
-	protected JSONObject getStatus( long timeOut ) 
-			throws ShutdownSignalException, ConsumerCancelledException, InterruptedException, 
-			UnsupportedEncodingException, JSONException, IOException 
-			{
-		// get message in timeOut milliseconds
-		QueueingConsumer.Delivery delivery = staticStatusConsumer.nextDelivery( timeOut );
-		
-		// if there is a new status return status
-		if ( delivery != null ){
-			// if status message is not a json string
-			if ( !delivery.getProperties().getContentType().contains("json") )
-				throw new JSONException( "Expected json status but was another object type: " + delivery.getProperties().getContentType() );		
-			
-			// decode message return the JSONObject
-			String charSet = delivery.getProperties().getContentEncoding();
-			String jsonString = new String( delivery.getBody(), charSet );
-			
-			return new JSONObject( jsonString );
-		}
-		
-		sendRequest( null, new JSONObject().put("Request", "status"), "1" );
-		return null;
+	protected ResultConsumer getResultConsumer( String corrID, SchedulerFuture<DSCLJob> future ){
+		return new ResultConsumer( this.client, this, this.requestChannel, corrID, null, future );
 	}
-
+	
+	/**
+	 * Creates a new channel to receive one result stream. The channel delivers at most
+	 * RESULT_STREAM_BUFFER_BLOCKS unacknowledged blocks, so a slow reader holds back the 
+	 * message broker and not the other consumers of this client.
+	 * @return new channel
+	 * @throws IOException if the channel cannot be created
+	 */
+	protected TransportChannel createResultChannel() throws IOException {
+		TransportChannel channel = this.connection.createChannel();
+		channel.basicQos( SchedulerConfigConstants.RESULT_STREAM_BUFFER_BLOCKS );
+		return channel;
+	}
+	
+	/**
+	 * Returns the cache for result files of the client.
+	 * @return cache or null
+	 */
+	protected ResultCache getResultCache(){
+		return client.getResultCache();
+	}
+	
+	/**
+	 * Returns a LinkConsumer object connected to the requestChannel.
+	 * @param corrID correlation ID of the request
+	 * @param future completed with the link, may be null
+	 * @return link consumer
+	 */
+	protected LinkConsumer getLinkConsumer( String corrID, SchedulerFuture<String> future ){
+		return new LinkConsumer( this.client, this, this.requestChannel, corrID, future );
+	}
+	
 	/**
 	 * Send a job to the scheduler with encoding informations and a time stamp. If the scheduler try to
 	 * submit this job 'too late' the scheduler can ask the client before submits his job.
@@ -269,23 +340,92 @@ public class ClientConnectionFactory {
 	 * @throws IOException
 	 */
 	protected void submitJob( String meteorScript, String clientID, String jobID ) throws IOException {
-		BasicProperties jobProps = new BasicProperties
+		// results of an older job with the same ID are outdated
+		if ( client.getResultCache() != null ) client.getResultCache().invalidate( clientID, jobID );
+		
+		// the submission starts the trace of the job
+		Span span = Tracer.start( "client.submit", null ).tag( "jobID", jobID );
+		BasicProperties jobProps = span.getContext().inject( new BasicProperties
 				.Builder()
 				.contentEncoding(charset)
 				.contentType( SchedulerConfigConstants.JSON )
 				.timestamp( new Date() )
-				.build();
+				.deliveryMode( SchedulerConfigConstants.PERSISTENT )
+				.build() );
 		
-		requestChannel.basicPublish(
-	    		SchedulerConfigConstants.REQUEST_EXCHANGE, 
-	    		"setJob." + clientID + "." + jobID, 
-	    		jobProps,
-	    		meteorScript.getBytes( charset )
-	    		);
+		String routingKey = "setJob." + clientID + "." + jobID;
+		byte[] body = meteorScript.getBytes( charset );
+		
+		// remember the submission until the first status of this job arrives
+		pendingRequests.put( "setJob." + jobID, new PendingRequest( jobID, routingKey, jobProps, body, null ) );
+		
+		try {
+			requestChannel.basicPublish(
+		    		this.requestExchange, 
+		    		routingKey, 
+		    		jobProps,
+		    		body
+		    		);
+		} finally { span.finish(); }
 		
 		DOPAClient.LOG.info("Job submitted! JobID: " + jobID);
 	}
 	
+	/**
+	 * Sends many jobs in one message to the scheduler and waits until the message broker
+	 * confirmed it. The scheduler adds all jobs of a batch in one step.
+	 * 
+	 * @param scripts meteor scripts by job ID
+	 * @param clientID of this client
+	 * @param batchID to specify this batch
+	 * @throws IOException if the batch cannot be sent or the message broker didn't confirm it
+	 */
+	protected synchronized void submitJobs( Map<String, String> scripts, String clientID, String batchID ) throws IOException {
+		// results of older jobs with the same IDs are outdated
+		if ( client.getResultCache() != null )
+			for ( String jobID : scripts.keySet() ) client.getResultCache().invalidate( clientID, jobID );
+		
+		if ( this.confirmChannel == null ){
+			this.confirmChannel = this.connection.createChannel();
+			this.confirmChannel.confirmSelect();
+		}
+		
+		// the batch starts one trace for all of its jobs
+		Span span = Tracer.start( "client.submitBatch", null ).tag( "batchID", batchID ).tag( "jobs", scripts.size() );
+		BasicProperties batchProps = span.getContext().inject( new BasicProperties
+				.Builder()
+				.contentEncoding(charset)
+				.contentType( SchedulerConfigConstants.JSON )
+				.timestamp( new Date() )
+				.deliveryMode( SchedulerConfigConstants.PERSISTENT )
+				.build() );
+		
+		String routingKey = "setJobs." + clientID;
+		byte[] body = MessageBuilder.buildJobBatch( clientID, scripts ).toString().getBytes( charset );
+		
+		// remember the jobs of this batch until their first status arrives
+		Map<String, String> remaining = Collections.synchronizedMap( new LinkedHashMap<String, String>( scripts ) );
+		pendingRequests.put( "setJobs." + batchID, new PendingRequest( batchID, routingKey, batchProps, body, null, remaining ) );
+		for ( String jobID : scripts.keySet() ) addJobRequest( jobID, "setJobs." + batchID );
+		
+		try {
+			confirmChannel.basicPublish(
+					this.requestExchange, 
+					routingKey, 
+					batchProps,
+					body
+					);
+			
+			if ( !confirmChannel.waitForConfirms( SchedulerConfigConstants.SUBMIT_CONFIRM_TIMEOUT ) )
+				throw new IOException("The message broker rejected a batch of jobs.");
+		} catch ( InterruptedException ie ){
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the confirmation of a batch of jobs.", ie);
+		} finally { span.finish(); }
+		
+		DOPAClient.LOG.info("Batch of " + scripts.size() + " jobs submitted! BatchID: " + batchID);
+	}
+	
 	/**
 	 * Send a request to the scheduler.
 	 * 
@@ -295,7 +435,7 @@ public class ClientConnectionFactory {
 	 * @throws ConsumerCancelledException 
 	 * @throws ShutdownSignalException 
 	 */
-	protected void sendRequest( QueueingConsumer consumer, JSONObject request, String correlationID ) throws IOException, 
+	protected void sendRequest( TransportConsumer consumer, JSONObject request, String correlationID ) throws IOException, 
 			ShutdownSignalException, ConsumerCancelledException, InterruptedException
 			{
 		// if there is an old staticStatusConsumer waiting for replies
@@ -304,34 +444,50 @@ public class ClientConnectionFactory {
 			System.out.println( "Deleted old reply staticStatusConsumer" );
 		}
 		
-		// random queue for reply
-		this.replyQueue = this.requestChannel.queueDeclare().getQueue();
+		// random queue for reply, one per request so concurrent requests don't share it
+		String replyQueue = this.requestChannel.queueDeclare();
 		
-		// build properties
-		BasicProperties replyProps = new BasicProperties
+		// build properties, each request starts a trace
+		Span span = Tracer.start( "client.request", null )
+				.tag( "request", MessageBuilder.RequestType.getRequestType( request ) )
+				.tag( "jobID", MessageBuilder.getJobID( request ) );
+		BasicProperties replyProps = span.getContext().inject( new BasicProperties
 				.Builder()
 				.correlationId( correlationID )
 				.replyTo( replyQueue )
 				.contentType( SchedulerConfigConstants.JSON )
 				.contentEncoding( charset )
-				.build();
+				.deliveryMode( SchedulerConfigConstants.PERSISTENT )
+				.build() );
 		
 		// if given consumer is not null and request consumable it handle replies of this request!
 		if ( consumer != null && consumer instanceof RequestConsumable ){
-			this.requestChannel.basicConsume(replyQueue, false, consumer);
+			consumer.getChannel().basicConsume(replyQueue, false, consumer);
 		} else { // else we handle request on old school technique
 			// consume reply queue
-			this.tmpRequestConsumer = new QueueingConsumer( requestChannel );
+			this.tmpRequestConsumer = new QueueingTransportConsumer( requestChannel );
 			this.requestChannel.basicConsume(replyQueue, false, "replyConsumer", tmpRequestConsumer);
 		}
 		
+		// remember requests for a job until they are answered
+		byte[] body = request.toString().getBytes();
+		String jobID = request.optString( "JobID", null );
+		if ( jobID != null ){
+			TransportConsumer replyConsumer = consumer instanceof RequestConsumable ? consumer : null;
+			pendingRequests.put( correlationID, new PendingRequest( 
+					jobID, SchedulerConfigConstants.REQUEST_KEY_MASK, replyProps, body, replyConsumer != null ? replyQueue : null ) );
+			if ( replyConsumer == null ) addJobRequest( jobID, correlationID );
+		}
+		
 		// send request
-		requestChannel.basicPublish(
-				SchedulerConfigConstants.REQUEST_EXCHANGE, 
-				SchedulerConfigConstants.REQUEST_KEY_MASK,
-				replyProps,
-				request.toString().getBytes()
-				);
+		try {
+			requestChannel.basicPublish(
+					this.requestExchange, 
+					SchedulerConfigConstants.REQUEST_KEY_MASK,
+					replyProps,
+					body
+					);
+		} finally { span.finish(); }
 		
 		DOPAClient.LOG.info("Send request: " + request);
 	}
@@ -373,13 +529,161 @@ public class ClientConnectionFactory {
         return null;
 	}
 	
+	/**
+	 * Marks a request with its own reply consumer as answered. The reply queue of this request
+	 * will be deleted.
+	 * @param correlationID of the request
+	 */
+	protected void completeRequest( String correlationID ){
+		PendingRequest request = pendingRequests.remove( correlationID );
+		if ( request == null || request.replyQueue == null ) return;
+		
+		try { this.requestChannel.queueDelete( request.replyQueue ); }
+		catch ( IOException ioe ){ DOPAClient.LOG.warn("Cannot delete the reply queue of an answered request.", ioe); }
+	}
+	
+	/**
+	 * Marks the submission and all requests of a job as answered, which are answered by a 
+	 * status update (status, exists and abort requests). Called for each incoming status.
+	 * @param jobID specified job
+	 */
+	protected void completeJobRequests( String jobID ){
+		pendingRequests.remove( "setJob." + jobID );
+		
+		List<String> keys;
+		synchronized ( jobRequests ){ keys = jobRequests.remove( jobID ); }
+		if ( keys == null ) return;
+		
+		for ( String key : keys ){
+			PendingRequest request = pendingRequests.get( key );
+			if ( request == null ) continue;
+			
+			if ( request.batch != null ){
+				// a batch is answered when each of its jobs got a status
+				synchronized ( request.batch ){
+					if ( request.batch.remove( jobID ) != null && request.batch.isEmpty() ) pendingRequests.remove( key, request );
+				}
+			} else pendingRequests.remove( key, request );
+		}
+	}
+	
+	/**
+	 * Remembers a pending request which is answered by the next status of given job.
+	 * @param jobID specified job
+	 * @param key of the request in the pending requests
+	 */
+	private void addJobRequest( String jobID, String key ){
+		synchronized ( jobRequests ){
+			List<String> keys = jobRequests.get( jobID );
+			if ( keys == null ){
+				keys = new ArrayList<String>( 1 );
+				jobRequests.put( jobID, keys );
+			}
+			keys.add( key );
+		}
+	}
+	
+	/**
+	 * Registers this client again after the connection to the message broker recovered and 
+	 * publishes all pending submissions and requests again. The scheduler may be restarted
+	 * as well, so it tries again with exponential backoff until it gets an answer.
+	 */
+	private void recover(){
+		// already in progress by an earlier recovery
+		if ( !resubscribing.compareAndSet( false, true ) ) return;
+		
+		try {
+			long interval = SchedulerConfigConstants.RECOVERY_INITIAL_INTERVAL;
+			while ( !closed ){
+				try {
+					this.subscribe( true, SchedulerConfigConstants.RECOVERY_MAX_INTERVAL );
+					break;
+				} catch ( IOException | ShutdownSignalException | ConsumerCancelledException e ){
+					DOPAClient.LOG.warn("Cannot register at the scheduler again. Try again in " + interval + "ms.", e);
+					Thread.sleep( interval );
+					interval = Math.min( interval * 2, SchedulerConfigConstants.RECOVERY_MAX_INTERVAL );
+				}
+			}
+			
+			if ( closed ) return;
+			
+			// requests are idempotent, the scheduler answers each duplicate in the same way
+			int replayed = 0;
+			for ( Map.Entry<String, PendingRequest> entry : pendingRequests.entrySet() ){
+				PendingRequest request = entry.getValue();
+				byte[] body = request.body;
+				
+				// jobs of a batch which already got a status mustn't be submitted again
+				if ( request.batch != null ){
+					synchronized ( request.batch ){
+						if ( request.batch.isEmpty() ) continue;
+						body = MessageBuilder.buildJobBatch( client.getClientID(), request.batch ).toString().getBytes( charset );
+					}
+				}
+				
+				// marked, so the scheduler ignores submissions it got before the connection was lost
+				Map<String, Object> headers = new HashMap<String, Object>();
+				if ( request.props.getHeaders() != null ) headers.putAll( request.props.getHeaders() );
+				headers.put( SchedulerConfigConstants.REPLAY_HEADER, true );
+				
+				this.requestChannel.basicPublish(
+						this.requestExchange, 
+						request.routingKey, 
+						request.props.builder().headers( headers ).build(), 
+						body );
+				replayed++;
+			}
+			
+			DOPAClient.LOG.info("Connection recovered. Published " + replayed + " pending requests again.");
+		} catch ( IOException | ShutdownSignalException e ){
+			DOPAClient.LOG.error("Cannot publish pending requests again.", e);
+		} catch ( InterruptedException ie ){
+			DOPAClient.LOG.warn("Recovery interrupted.", ie);
+		} finally {
+			resubscribing.set( false );
+		}
+	}
+	
 	/**
 	 * Close the connections to the server queues.
 	 * @throws IOException cannot close the connections
 	 */
 	protected void shutDownConnection() throws IOException{
+		this.closed = true;
+		this.pendingRequests.clear();
+		synchronized ( jobRequests ){ this.jobRequests.clear(); }
 		this.unsubscribe();
 		this.requestChannel.close();
 		this.connection.close();
 	}
+	
+	/**
+	 * A published submission or request without an answer yet.
+	 */
+	private static final class PendingRequest {
+		private final String jobID;
+		private final String routingKey;
+		private final BasicProperties props;
+		private final byte[] body;
+		
+		/** reply queue of an own consumer, null if answered by status updates **/
+		private final String replyQueue;
+		
+		/** scripts of the jobs of a batch without a status yet, null for other requests **/
+		private final Map<String, String> batch;
+		
+		private PendingRequest( String jobID, String routingKey, BasicProperties props, byte[] body, String replyQueue ){
+			this( jobID, routingKey, props, body, replyQueue, null );
+		}
+		
+		private PendingRequest( String jobID, String routingKey, BasicProperties props, byte[] body, String replyQueue, 
+				Map<String, String> batch ){
+			this.jobID = jobID;
+			this.routingKey = routingKey;
+			this.props = props;
+			this.body = body;
+			this.replyQueue = replyQueue;
+			this.batch = batch;
+		}
+	}
 }
@@ -1,9 +1,13 @@
 package eu.stratosphere.meteor.client;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 import eu.stratosphere.meteor.common.DSCLJob;
 import org.apache.commons.logging.Log;
@@ -16,6 +20,9 @@ import com.rabbitmq.client.ShutdownSignalException;
 import eu.stratosphere.meteor.common.JobStateListener;
 import eu.stratosphere.meteor.common.MessageBuilder;
 import eu.stratosphere.meteor.common.JobState;
+import eu.stratosphere.meteor.common.SchedulerConfigConstants;
+import eu.stratosphere.meteor.common.SchedulerFuture;
+import eu.stratosphere.meteor.common.transport.TransportFactory;
 
 /**
  * 
@@ -51,21 +58,38 @@ public class DOPAClient {
 	/**
 	 * The connection factory to handle all traffic from and to this client
 	 */
-	private ClientConnectionFactory connectionFac;
+	private volatile ClientConnectionFactory connectionFac;
 	
 	/**
-	 * A map of jobs from this client. The key represents the job ID.
+	 * A map of jobs from this client. The key represents the job ID. Submitting threads
+	 * and consumer threads access it concurrently.
 	 */
-	private HashMap<String, DSCLJob> jobs;
+	private final ConcurrentHashMap<String, DSCLJob> jobs;
 	
 	/**
 	 * The timeout time to connect with the scheduler system
 	 */
-	private int timeout = 5_000;
+	private volatile int timeout = 5_000;
 
-    private String host = null;
+    private volatile String host = null;
 
-    private int port = -1;
+    private volatile int port = -1;
+
+    /**
+     * The transport to connect to the scheduler. If it's null the client connects to
+     * RabbitMQ by given host and port.
+     */
+    private volatile TransportFactory transportFactory = null;
+
+    /**
+     * Optional cache of result files on the local disk.
+     */
+    private volatile ResultCache resultCache = null;
+
+    /**
+     * Invokes the JobStateListeners, created on first use.
+     */
+    private volatile ListenerDispatcher dispatcher = null;
 	
 	/**
 	 * Constructs a new client object. This client isn't connected
@@ -75,7 +99,7 @@ public class DOPAClient {
 	private DOPAClient( final String ID ) {
 		this.clientID = ID;
 		this.connectionFac = null;
-		this.jobs = new HashMap<String, DSCLJob>();
+		this.jobs = new ConcurrentHashMap<String, DSCLJob>();
 	}
 	
 	/**
@@ -116,6 +140,56 @@ public class DOPAClient {
     public void setHost(String host) {
         this.host = host;
     }
+
+    /**
+     * sets the transport to connect to the scheduler, for instance an
+     * {@link eu.stratosphere.meteor.common.transport.InMemoryBroker} to run the client and the
+     * scheduler in one JVM. Pass <code>null</code> to use RabbitMQ with given host and port.
+     */
+    public void setTransportFactory(TransportFactory transportFactory) {
+        this.transportFactory = transportFactory;
+    }
+
+    /**
+     * sets a cache for result files. Requested results are served from the cache if possible.
+     * Pass <code>null</code> to disable the cache (default).
+     */
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * @return the cache for result files or <code>null</code> if there is no cache
+     */
+    public ResultCache getResultCache() {
+        return this.resultCache;
+    }
+	
+    /**
+     * sets the executor to invoke JobStateListeners. Listeners of one job are invoked one after
+     * another in the order of the state changes. Set it before submitting jobs, state changes
+     * already waiting are still dispatched by the previous executor.
+     * By default a pool of SchedulerConfigConstants.LISTENER_DISPATCH_THREADS daemon threads is used.
+     */
+    public synchronized void setListenerExecutor(Executor executor) {
+        this.dispatcher = new ListenerDispatcher( executor,
+                SchedulerConfigConstants.LISTENER_DISPATCH_CAPACITY, SchedulerConfigConstants.LISTENER_LAG_THRESHOLD );
+    }
+
+    /**
+     * @return the dispatcher which invokes the JobStateListeners, with statistics about dropped
+     *      and lagging state changes
+     */
+    public ListenerDispatcher getListenerDispatcher() {
+        ListenerDispatcher current = this.dispatcher;
+        if ( current != null ) return current;
+
+        synchronized ( this ) {
+            if ( this.dispatcher == null ) setListenerExecutor( 
+                    ListenerDispatcher.createDefaultExecutor( SchedulerConfigConstants.LISTENER_DISPATCH_THREADS ) );
+            return this.dispatcher;
+        }
+    }
 	
 	/**
 	 * Try to connect the client with the scheduler services.
@@ -126,7 +200,7 @@ public class DOPAClient {
      * @return <code>true</code> if the client was successfully connected or the client was already connected,
      *      <code>false</code> if the client was not connected to the server
 	 */
-	public boolean connect() {
+	public synchronized boolean connect() {
 		// if the client is still connect
 		if ( this.connectionFac != null ) {
 			LOG.error( "The client is still connected. If you want to reconnect the client disconnect it first." );
@@ -135,7 +209,9 @@ public class DOPAClient {
 		
 		// else try to connect it
 		try {
-            if (host == null || port == -1) {
+            if (transportFactory != null) {
+                this.connectionFac = new ClientConnectionFactory( this, false, transportFactory );
+            } else if (host == null || port == -1) {
                 this.connectionFac = new ClientConnectionFactory( this, timeout );
             } else {
                 this.connectionFac = new ClientConnectionFactory( this, false, timeout, host, port);
@@ -163,7 +239,7 @@ public class DOPAClient {
      * * @return <code>true</code> if the client was successfully reconnected or the client was already connected,
      *      <code>false</code> if the client was not reconnected to the server
 	 */
-	public boolean reconnect(){
+	public synchronized boolean reconnect(){
 		// if the client is still connect
 		if ( this.connectionFac != null ) {
 			LOG.error( "The client is still connected. If you want to reconnect the client disconnect it first." );
@@ -172,7 +248,9 @@ public class DOPAClient {
 
 		// try to reconnect
 		try {
-            if (host == null || port == -1) {
+            if (transportFactory != null) {
+                this.connectionFac = new ClientConnectionFactory( this, true, transportFactory );
+            } else if (host == null || port == -1) {
                 this.connectionFac = new ClientConnectionFactory( this, true, timeout );
             } else {
                 this.connectionFac = new ClientConnectionFactory( this, true, timeout, host, port);
@@ -199,7 +277,7 @@ public class DOPAClient {
 	 * 
 	 * If this method failed for any reason you can try it again.
 	 */
-	public void disconnect() {
+	public synchronized void disconnect() {
 		// is the client connected?
 		if ( this.connectionFac == null ){
 			LOG.error("The client isn't connected. Please connect it first.");
@@ -237,14 +315,16 @@ public class DOPAClient {
 	 * @return DSCLJob object of the submitted job
 	 */
 	public DSCLJob createNewJob( String meteorScript, JobStateListener... stateListener ) {
-		if ( this.connectionFac == null ) 
+		// the client may be disconnected by another thread meanwhile
+		ClientConnectionFactory connFac = this.connectionFac;
+		if ( connFac == null ) 
 			throw new UnsupportedOperationException("Your client isn't connected yet!");
 		
 		// create a jobID
 		String randomJobID = DOPAClient.getRandomID();
 		
 		// create a job object
-		DSCLJobImpl job = new DSCLJobImpl( this.connectionFac, this.clientID, randomJobID, meteorScript );
+		DSCLJobImpl job = new DSCLJobImpl( connFac, this.clientID, randomJobID, meteorScript );
 		
 		// add listeners
 		for ( JobStateListener listener : stateListener )
@@ -254,13 +334,79 @@ public class DOPAClient {
 		this.jobs.put( randomJobID, job );
 		
 		// try to submit
-		try { this.connectionFac.submitJob(meteorScript, clientID, randomJobID ); } 
-		catch (IOException ioe) { LOG.error( "Cannot submit the job. A traffic problem occured", ioe ); }
+		try { connFac.submitJob(meteorScript, clientID, randomJobID ); } 
+		catch (IOException ioe) { 
+			LOG.error( "Cannot submit the job. A traffic problem occured", ioe );
+			job.getSubmission().fail( ioe );
+		}
 		
 		// return the job object
 		return job;
 	}
 	
+	/**
+	 * Submits many jobs at once, e.g. a parameter sweep. The jobs are published in batches of
+	 * SchedulerConfigConstants.SUBMIT_BATCH_SIZE jobs and this method waits once per batch until
+	 * the message broker confirmed it. The scheduler adds all jobs of a batch in one step.
+	 * 
+	 * If a batch cannot be submitted the submission futures of its jobs fail, the other
+	 * batches are submitted anyway.
+	 * 
+	 * @param meteorScripts to submit
+	 * @param stateListener to inform state changes of each job
+	 * @return DSCLJob objects of the submitted jobs in the order of the given scripts
+	 */
+	public List<DSCLJob> createNewJobs( List<String> meteorScripts, JobStateListener... stateListener ) {
+		ClientConnectionFactory connFac = this.connectionFac;
+		if ( connFac == null ) 
+			throw new UnsupportedOperationException("Your client isn't connected yet!");
+		
+		List<DSCLJob> submitted = new ArrayList<DSCLJob>( meteorScripts.size() );
+		int batchSize = Math.max( 1, SchedulerConfigConstants.SUBMIT_BATCH_SIZE );
+		
+		for ( int start = 0; start < meteorScripts.size(); start += batchSize ){
+			// one random ID per batch, the jobs are numbered within
+			String batchID = DOPAClient.getRandomID();
+			Map<String, String> scripts = new LinkedHashMap<String, String>();
+			List<DSCLJobImpl> batch = new ArrayList<DSCLJobImpl>();
+			
+			for ( int i = start; i < Math.min( start + batchSize, meteorScripts.size() ); i++ ){
+				String jobID = batchID + "-" + i;
+				DSCLJobImpl job = new DSCLJobImpl( connFac, this.clientID, jobID, meteorScripts.get(i) );
+				for ( JobStateListener listener : stateListener )
+					job.addJobStateListener( listener );
+				
+				this.jobs.put( jobID, job );
+				scripts.put( jobID, meteorScripts.get(i) );
+				batch.add( job );
+			}
+			
+			// try to submit
+			try { connFac.submitJobs( scripts, clientID, batchID ); }
+			catch ( IOException ioe ){
+				LOG.error( "Cannot submit a batch of jobs. A traffic problem occured", ioe );
+				for ( DSCLJobImpl job : batch ) job.getSubmission().fail( ioe );
+			}
+			
+			submitted.addAll( batch );
+		}
+		
+		return submitted;
+	}
+	
+	/**
+	 * Submits a new job like {@link #createNewJob(String, JobStateListener...)} but returns a future
+	 * which is completed with the job object as soon as the scheduler received it. Use 
+	 * {@link DSCLJob#getCompletion()} of that job to wait for its final state.
+	 * 
+	 * @param meteorScript to submit
+	 * @param stateListener to inform state changes
+	 * @return future of the submission
+	 */
+	public SchedulerFuture<DSCLJob> submitJob( String meteorScript, JobStateListener... stateListener ) {
+		return createNewJob( meteorScript, stateListener ).getSubmission();
+	}
+	
 	/**
 	 * This method ask the scheduler whether the specified job exists on server side or not. 
 	 * If it exists it adds the job to the current job list and add the stateListener to this object.
@@ -273,7 +419,8 @@ public class DOPAClient {
 	 * 			listeners you want
 	 */
 	public DSCLJob reconnectJob( String jobID, JobStateListener... stateListener ){
-		if ( this.connectionFac == null ) 
+		ClientConnectionFactory connFac = this.connectionFac;
+		if ( connFac == null ) 
 			throw new UnsupportedOperationException("Your client isn't connected yet!");
 		
 		try {
@@ -282,7 +429,7 @@ public class DOPAClient {
 			String corrID = DOPAClient.getRandomID();
 			
 			// create new job object with state listeners
-			DSCLJobImpl job = new DSCLJobImpl( this.connectionFac, this.clientID, jobID, null );
+			DSCLJobImpl job = new DSCLJobImpl( connFac, this.clientID, jobID, null );
 			for ( JobStateListener listener : stateListener )
 				job.addJobStateListener( listener );
 			
@@ -293,7 +440,7 @@ public class DOPAClient {
 			this.jobs.put( jobID, job);
 			
 			// send request
-			this.connectionFac.sendRequest( null, requestObject, corrID );
+			connFac.sendRequest( null, requestObject, corrID );
 			
 			// return
 			return job;
@@ -2,13 +2,21 @@ package eu.stratosphere.meteor.client;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import eu.stratosphere.meteor.common.*;
+import eu.stratosphere.meteor.common.transport.TransportChannel;
 import org.json.JSONObject;
 
 import com.rabbitmq.client.ConsumerCancelledException;
@@ -39,35 +47,57 @@ public class DSCLJobImpl implements DSCLJob {
 	private final ClientConnectionFactory connectionFac;
 	
 	/**
-	 * The current job status.
+	 * The current job status. Written by the status consumer, read by any thread.
 	 */
-	private JobState currState;
+	private volatile JobState currState;
+	
+	/**
+	 * Threads in waitForState wait on this monitor for a new state.
+	 */
+	private final Object stateMonitor = new Object();
 	
 	/**
 	 * The script of this job.
 	 */
-	private String meteorScript;
+	private volatile String meteorScript;
 	
 	/**
-	 * List of all listeners at this job
+	 * List of all listeners at this job. Consumer threads iterate over a snapshot while
+	 * application threads add or remove listeners.
 	 */
-	private LinkedList<JobStateListener> listeners;
+	private final CopyOnWriteArrayList<JobStateListener> listeners;
 	
 	/**
 	 * Map of all result file handlers. Key is the value of file index.
 	 * This key is unique for each job.
 	 */
-	private HashMap<Integer, ResultFileHandler> resultHandler;
+	private final ConcurrentHashMap<Integer, ResultFileHandler> resultHandler;
 	
 	/**
 	 * This map contains the result file for its specified index. Normally null.
 	 */
-	private HashMap<Integer, File> results;
+	private final ConcurrentHashMap<Integer, File> results;
 	
 	/**
 	 * Map of internal links. Filled after send a requests
 	 */
-	private HashMap<Integer, String> linksOfResults;
+	private final ConcurrentHashMap<Integer, String> linksOfResults;
+	
+	/**
+	 * State changes of this job waiting for its listeners
+	 */
+	private final ListenerDispatcher.JobQueue dispatchQueue;
+	
+	/**
+	 * Futures of the submission and the completion of this job
+	 */
+	private final SchedulerFuture<DSCLJob> submission;
+	private final SchedulerFuture<JobState> completion;
+	
+	/**
+	 * Phase timings of the last status update which included them
+	 */
+	private volatile Map<String, Double> timings = Collections.emptyMap();
 	
 	/**
 	 * Create a new DSCLJob object. It needs to get the connection factory to register JobStateListeners.
@@ -86,10 +116,13 @@ public class DSCLJobImpl implements DSCLJob {
 		this.currState = JobState.INITIALIZE;
 		
 		// declare collections
-		this.listeners = new LinkedList<JobStateListener>();
-		this.linksOfResults = new HashMap<Integer, String>();
-		this.resultHandler = new HashMap<Integer, ResultFileHandler>();
-		this.results = new HashMap<Integer, File>();
+		this.listeners = new CopyOnWriteArrayList<JobStateListener>();
+		this.linksOfResults = new ConcurrentHashMap<Integer, String>();
+		this.resultHandler = new ConcurrentHashMap<Integer, ResultFileHandler>();
+		this.results = new ConcurrentHashMap<Integer, File>();
+		this.dispatchQueue = new ListenerDispatcher.JobQueue();
+		this.submission = new SchedulerFuture<DSCLJob>();
+		this.completion = new SchedulerFuture<JobState>();
 	}
 	
 	/**
@@ -99,7 +132,33 @@ public class DSCLJobImpl implements DSCLJob {
 	 * @param newState one of the enum JobState
 	 */
 	protected void setStatus( JobState newState ){
-		this.currState = newState;
+		synchronized ( stateMonitor ){
+			this.currState = newState;
+			stateMonitor.notifyAll();
+		}
+		
+		// each status of the scheduler confirms the submission
+		if ( newState != JobState.INITIALIZE && newState != JobState.UNDEFINED ) submission.complete( this );
+		
+		// final states
+		if ( newState == JobState.FINISHED || newState == JobState.ERROR || newState == JobState.DELETED )
+			completion.complete( newState );
+	}
+	
+	/**
+	 * Sets the phase timings reported by the scheduler.
+	 * @param timings phase name -> milliseconds
+	 */
+	protected void setTimings( Map<String, Double> timings ){
+		this.timings = Collections.unmodifiableMap( timings );
+	}
+	
+	/**
+	 * Returns the state changes of this job waiting for the listener dispatcher.
+	 * @return queue of this job
+	 */
+	protected ListenerDispatcher.JobQueue getDispatchQueue(){
+		return dispatchQueue;
 	}
 	
 	/**
@@ -124,7 +183,8 @@ public class DSCLJobImpl implements DSCLJob {
 	 * @param path itself
 	 */
 	protected void setResultLink( int index, String path ){
-		this.linksOfResults.put( index, path );
+		if ( path == null ) this.linksOfResults.remove( index );
+		else this.linksOfResults.put( index, path );
 	}
 	
 	/**
@@ -133,14 +193,15 @@ public class DSCLJobImpl implements DSCLJob {
 	 * @param file result
 	 */
 	protected void setResultFile( int fileIdx, File file ){
-		this.results.put( fileIdx, file );
+		if ( file == null ) this.results.remove( fileIdx );
+		else this.results.put( fileIdx, file );
 	}
 	
 	/**
 	 * Returns the map of all results saved on this job.
-	 * @return a modifiable map of results
+	 * @return a modifiable, thread-safe map of results
 	 */
-	public HashMap<Integer, File> getResults() {
+	public Map<Integer, File> getResults() {
 		return results;
 	}
 	
@@ -152,6 +213,41 @@ public class DSCLJobImpl implements DSCLJob {
 		return currState;
 	}
 	
+	/**
+	 * Returns the time the scheduler spent in each phase of this job.
+	 * @return phase name -> milliseconds
+	 */
+	public Map<String, Double> getTimings(){
+		return timings;
+	}
+	
+	/**
+	 * Blocks until this job reaches one of the given states. The waiting thread is woken up
+	 * by the status consumer, it doesn't poll. Include the final states (ERROR, DELETED) if
+	 * you don't want to wait in vain for a job which failed.
+	 * @param targetStates states to wait for
+	 * @param timeout maximum waiting time in milliseconds, 0 waits forever
+	 * @return the reached state or null if the timeout elapsed
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public JobState waitForState( Set<JobState> targetStates, long timeout ) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( timeout );
+		
+		synchronized ( stateMonitor ){
+			while ( !targetStates.contains( currState ) ){
+				if ( timeout <= 0 ){
+					stateMonitor.wait();
+					continue;
+				}
+				
+				long remaining = TimeUnit.NANOSECONDS.toMillis( deadline - System.nanoTime() );
+				if ( remaining <= 0 ) return null;
+				stateMonitor.wait( remaining );
+			}
+			return currState;
+		}
+	}
+	
 	/**
 	 * Returns the ID of this object.
 	 * @return ID
@@ -217,23 +313,133 @@ public class DSCLJobImpl implements DSCLJob {
 	 * @param handler to handle each incoming block and put them all together
 	 */
 	public void requestResult( int fileIndex, int desiredBlockSize, long maxNumberOfBlocks, ResultFileHandler handler ){
+		fetchResult( fileIndex, desiredBlockSize, maxNumberOfBlocks, handler );
+	}
+	
+	/**
+	 * Requests a result file, see {@link #requestResult(int, int, long, ResultFileHandler)}.
+	 * @param fileIndex of result file
+	 * @param desiredBlockSize size of block you want for one block, scheduler can choose own sizes if necessary
+	 * @param maxNumberOfBlocks threshold for blocks
+	 * @param handler to handle each incoming block and put them all together
+	 * @return future completed with this job after the handler got the last block
+	 */
+	public SchedulerFuture<DSCLJob> fetchResult( int fileIndex, int desiredBlockSize, long maxNumberOfBlocks, ResultFileHandler handler ){
+		SchedulerFuture<DSCLJob> future = new SchedulerFuture<DSCLJob>();
+		
+		// serve the result from the cache if possible, otherwise cache it
+		ResultCache cache = this.connectionFac.getResultCache();
+		if ( cache != null ){
+			File cached = cache.get( CLIENT_ID, JOB_ID, fileIndex, meteorScript );
+			if ( cached != null ){
+				try {
+					// without a handler there is nothing to replay
+					if ( handler != null ){
+						int blockSize = desiredBlockSize > 0 ? Math.min( desiredBlockSize, SchedulerConfigConstants.MAX_BLOCK_SIZE ) : 
+							SchedulerConfigConstants.MAX_BLOCK_SIZE;
+						ResultCache.replay( this, cached, blockSize, handler );
+					}
+					future.complete( this );
+					return future;
+				} catch ( IOException ioe ){
+					DOPAClient.LOG.warn("Cannot read the cached result. Request it from the scheduler.", ioe);
+				}
+			}
+			handler = cache.cachingHandler( CLIENT_ID, JOB_ID, fileIndex, meteorScript, handler );
+		}
+		
 		try {
 			// build message
 			JSONObject request = MessageBuilder.buildRequestResult(CLIENT_ID, JOB_ID, fileIndex, desiredBlockSize, maxNumberOfBlocks);
 			
 			// add given handler to internal list
-			this.resultHandler.put( fileIndex, handler );
+			if ( handler != null ) this.resultHandler.put( fileIndex, handler );
+			else this.resultHandler.remove( fileIndex );
 			
 			// create result consumer to refresh states and invoke handlers automatically
 			String corrID = DOPAClient.getRandomID();
-			ResultConsumer consumer = this.connectionFac.getResultConsumer(corrID);
+			ResultConsumer consumer = this.connectionFac.getResultConsumer(corrID, future);
 			
 			// finally send the request
 			this.connectionFac.sendRequest(consumer, request, corrID);
 		} catch (ShutdownSignalException | ConsumerCancelledException
 				| IOException | InterruptedException e) {
 			DOPAClient.LOG.error("Cannot send result request to scheduler.", e);
+			future.fail( e );
+		}
+		return future;
+	}
+	
+	/**
+	 * Requests a result file and writes it with a {@link ResultFileSink} into the given file.
+	 * @param fileIndex of result file
+	 * @param desiredBlockSize size of block you want for one block, scheduler can choose own sizes if necessary
+	 * @param maxNumberOfBlocks threshold for blocks
+	 * @param target local file, overwritten if it exists
+	 * @return future completed with the target file when the whole result is on the disk
+	 */
+	public SchedulerFuture<File> fetchResultFile( int fileIndex, int desiredBlockSize, long maxNumberOfBlocks, File target ){
+		final ResultFileSink sink = new ResultFileSink( target, fileIndex );
+		
+		// errors of the request or the scheduler fail the file as well
+		fetchResult( fileIndex, desiredBlockSize, maxNumberOfBlocks, sink ).addCallback( new SchedulerFuture.Callback<DSCLJob>() {
+			@Override
+			public void completed( DSCLJob job ){}
+			
+			@Override
+			public void failed( Throwable cause ){
+				sink.getCompletion().fail( cause );
+			}
+		});
+		return sink.getCompletion();
+	}
+	
+	/**
+	 * Requests a result file by specified index and returns a channel to read it while it's received.
+	 * The channel buffers a bounded number of blocks, so the whole file is never held in memory. If the
+	 * reader is slow, receiving blocks is paused. Close the channel to cancel the transfer.
+	 * @param fileIndex of result file
+	 * @param desiredBlockSize size of block you want for one block, scheduler can choose own sizes if necessary
+	 * @param maxNumberOfBlocks threshold for blocks
+	 * @return channel over the result file, it throws an IOException if the scheduler sends an error
+	 * @throws IOException if the request cannot be sent
+	 */
+	public ReadableByteChannel openResultChannel( int fileIndex, int desiredBlockSize, long maxNumberOfBlocks ) throws IOException {
+		// read cached results directly from disk
+		ResultCache cache = this.connectionFac.getResultCache();
+		File cached = cache == null ? null : cache.get( CLIENT_ID, JOB_ID, fileIndex, meteorScript );
+		if ( cached != null ) return FileChannel.open( cached.toPath(), StandardOpenOption.READ );
+		
+		// build message
+		JSONObject request = MessageBuilder.buildRequestResult(CLIENT_ID, JOB_ID, fileIndex, desiredBlockSize, maxNumberOfBlocks);
+		
+		// the stream handles the incoming blocks on its own channel
+		String corrID = DOPAClient.getRandomID();
+		TransportChannel channel = this.connectionFac.createResultChannel();
+		ResultStream stream = new ResultStream( 
+				this.connectionFac, channel, corrID, SchedulerConfigConstants.RESULT_STREAM_BUFFER_BLOCKS );
+		this.resultHandler.put( fileIndex, stream );
+		
+		try { this.connectionFac.sendRequest( this.connectionFac.getResultConsumer(corrID, channel, stream), request, corrID ); }
+		catch ( ShutdownSignalException | ConsumerCancelledException | InterruptedException e ) {
+			stream.close();
+			throw new IOException( "Cannot send result request to scheduler.", e );
 		}
+		
+		return stream;
+	}
+	
+	/**
+	 * Requests a result file by specified index and returns a stream to read it while it's received.
+	 * See {@link #openResultChannel(int, int, long)}.
+	 * @param fileIndex of result file
+	 * @param desiredBlockSize size of block you want for one block, scheduler can choose own sizes if necessary
+	 * @param maxNumberOfBlocks threshold for blocks
+	 * @return input stream over the result file
+	 * @throws IOException if the request cannot be sent
+	 */
+	public InputStream openResultStream( int fileIndex, int desiredBlockSize, long maxNumberOfBlocks ) throws IOException {
+		return Channels.newInputStream( openResultChannel( fileIndex, desiredBlockSize, maxNumberOfBlocks ) );
 	}
 	
 	/**
@@ -242,16 +448,46 @@ public class DSCLJobImpl implements DSCLJob {
 	 * @param fileIndex specified index
 	 */
 	public void getLink( int fileIndex ){
+		fetchLink( fileIndex );
+	}
+	
+	/**
+	 * Requests the HDFS path of an output file, see {@link #getLink(int)}.
+	 * @param fileIndex specified index
+	 * @return future completed with the path or failed with the error message of the scheduler
+	 */
+	public SchedulerFuture<String> fetchLink( int fileIndex ){
+		SchedulerFuture<String> future = new SchedulerFuture<String>();
 		try { // build request object and send message
 			JSONObject request = MessageBuilder.buildGetLink(CLIENT_ID, JOB_ID, fileIndex);
 			
 			String corrID = DOPAClient.getRandomID();
-			LinkConsumer consumer = this.connectionFac.getLinkConsumer(corrID);
+			LinkConsumer consumer = this.connectionFac.getLinkConsumer(corrID, future);
 			this.connectionFac.sendRequest(consumer, request, corrID );
 		} catch (ShutdownSignalException | ConsumerCancelledException
 				| IOException | InterruptedException e) {
 			DOPAClient.LOG.error( "Cannot send request to get output path.", e ); 
+			future.fail( e );
 		}
+		return future;
+	}
+	
+	/**
+	 * Returns a future which is completed with this job as soon as the scheduler received the
+	 * job, which is when the first status of this job arrives.
+	 * @return future of the submission
+	 */
+	public SchedulerFuture<DSCLJob> getSubmission(){
+		return submission;
+	}
+	
+	/**
+	 * Returns a future which is completed when the job reached a final state (FINISHED, ERROR
+	 * or DELETED). It's completed with that state.
+	 * @return future of the completion
+	 */
+	public SchedulerFuture<JobState> getCompletion(){
+		return completion;
 	}
 	
 	/**
@@ -7,13 +7,17 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.rabbitmq.client.AMQP;
-import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Envelope;
-import com.rabbitmq.client.QueueingConsumer;
 
 import eu.stratosphere.meteor.common.JobState;
 import eu.stratosphere.meteor.common.MessageBuilder;
 import eu.stratosphere.meteor.common.RequestConsumable;
+import eu.stratosphere.meteor.common.SchedulerFuture;
+import eu.stratosphere.meteor.common.trace.Span;
+import eu.stratosphere.meteor.common.trace.TraceContext;
+import eu.stratosphere.meteor.common.trace.Tracer;
+import eu.stratosphere.meteor.common.transport.TransportConsumer;
+import eu.stratosphere.meteor.common.transport.TransportChannel;
 
 /**
  * Consumer handles incoming reply for a link request.
@@ -21,28 +25,43 @@ import eu.stratosphere.meteor.common.RequestConsumable;
  * @author André Greiner-Petter
  *
  */
-public class LinkConsumer extends QueueingConsumer implements RequestConsumable {
+public class LinkConsumer extends TransportConsumer implements RequestConsumable {
 	
 	/**
 	 * Client with collection of all jobs
 	 */
 	private final DOPAClient client;
 	
+	/**
+	 * Connection factory which tracks the request
+	 */
+	private final ClientConnectionFactory connFac;
+	
 	/**
 	 * Correlation ID for the request
 	 */
 	private final String corrID;
 	
 	/**
-	 * Creates a QueueingConsumer object
+	 * Future completed with the link, may be null
+	 */
+	private final SchedulerFuture<String> future;
+	
+	/**
+	 * Creates a consumer object
 	 * @param client
+	 * @param connFac
 	 * @param channel
 	 * @param corrID
+	 * @param future completed with the link, may be null
 	 */
-	protected LinkConsumer( DOPAClient client, Channel channel, String corrID ) {
+	protected LinkConsumer( DOPAClient client, ClientConnectionFactory connFac, TransportChannel channel, String corrID,
+			SchedulerFuture<String> future ) {
 		super(channel);
 		this.client = client;
+		this.connFac = connFac;
 		this.corrID = corrID;
+		this.future = future;
 	}
 	
 	/**
@@ -65,16 +84,23 @@ public class LinkConsumer extends QueueingConsumer implements RequestConsumable
 			return;
 		}
 		
+		// a child of the span of the scheduler which replied
+		Span span = Tracer.start( "client.link", TraceContext.extract( properties ) ).tag( "correlationID", corrID );
+		
 		try { // try to handle input
 			// get object
 			Charset charset = Charset.forName( properties.getContentEncoding() );
 			JSONObject obj = new JSONObject( new String( body, charset ) );
 			
 			// if an error occurred kill this service
-			if ( MessageBuilder.getJobStatus( obj ).equals( JobState.ERROR ) ){
+			if ( JobState.ERROR.equals( MessageBuilder.getJobStatus( obj ) ) ){
 				DOPAClient.LOG.error( "The scheduler sends an error message: " + MessageBuilder.getErrorMessage(obj) );
+				if ( future != null ) future.fail( new IOException( 
+						"The scheduler sends an error message: " + MessageBuilder.getErrorMessage(obj) ) );
 				super.getChannel().basicAck(deliveryTag, false);
 				super.getChannel().basicCancel(consumerTag);
+				connFac.completeRequest(corrID);
+				span.tag( "error", MessageBuilder.getErrorMessage(obj) ).finish();
 				return;
 			}
 			
@@ -90,8 +116,10 @@ public class LinkConsumer extends QueueingConsumer implements RequestConsumable
 			
 			// actualize job
 			job.setResultLink( index, path );
+			if ( future != null ) future.complete( path );
 		} catch (JSONException | NullPointerException e) {
 			DOPAClient.LOG.warn("Cannot handle incoming reply for link requests.", e);
+			if ( future != null ) future.fail( e );
 		}
 		
 		// acknowledge rabbitMQ
@@ -99,5 +127,7 @@ public class LinkConsumer extends QueueingConsumer implements RequestConsumable
 		
 		// close this consumer
 		super.getChannel().basicCancel(consumerTag);
+		connFac.completeRequest(corrID);
+		span.finish();
 	}
 }
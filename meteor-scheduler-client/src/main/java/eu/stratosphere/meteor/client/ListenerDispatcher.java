@@ -0,0 +1,211 @@
+package eu.stratosphere.meteor.client;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eu.stratosphere.meteor.common.JobState;
+import eu.stratosphere.meteor.common.JobStateListener;
+
+/**
+ * Invokes the JobStateListeners of jobs on an executor instead of the consumer thread, so a slow
+ * listener doesn't hold back incoming status updates and results.
+ *
+ * The state changes of one job are passed to its listeners one after another in the order they
+ * arrived. State changes of different jobs run in parallel if the executor has several threads.
+ * At most a bounded number of state changes wait for dispatching. Further state changes are
+ * dropped and counted, state changes which waited too long are counted as lagging.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class ListenerDispatcher {
+
+	/** maximum number of state changes of one job handled before other jobs get the thread **/
+	private static final int DRAIN_BATCH = 64;
+
+	/** number of dropped or lagging state changes between two warnings **/
+	private static final int WARNING_INTERVAL = 1000;
+
+	/** runs the listeners **/
+	private final Executor executor;
+
+	/** maximum number of waiting state changes **/
+	private final int capacity;
+
+	/** waiting time in nanoseconds after that a state change is lagging **/
+	private final long lagThreshold;
+
+	/** statistics **/
+	private final AtomicInteger pending;
+	private final AtomicLong dropped;
+	private final AtomicLong lagging;
+
+	/**
+	 * Creates a dispatcher.
+	 * @param executor to invoke the listeners
+	 * @param capacity maximum number of state changes waiting for dispatching
+	 * @param lagThreshold waiting time in milliseconds after that a state change is reported as lagging
+	 */
+	public ListenerDispatcher( Executor executor, int capacity, long lagThreshold ){
+		this.executor = executor;
+		this.capacity = capacity;
+		this.lagThreshold = TimeUnit.MILLISECONDS.toNanos( lagThreshold );
+		this.pending = new AtomicInteger();
+		this.dropped = new AtomicLong();
+		this.lagging = new AtomicLong();
+	}
+
+	/**
+	 * Creates the default executor with a fixed number of daemon threads.
+	 * @param threads number of threads
+	 * @return executor
+	 */
+	public static Executor createDefaultExecutor( int threads ){
+		return Executors.newFixedThreadPool( Math.max( 1, threads ), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread( Runnable r ){
+				Thread thread = new Thread( r, "listener-dispatcher-" + count.incrementAndGet() );
+				thread.setDaemon( true );
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Passes a new state of a job to all its listeners on the executor.
+	 * @param job which changed its state
+	 * @param state new state
+	 */
+	protected void dispatch( DSCLJobImpl job, JobState state ){
+		if ( job.getListeners().isEmpty() ) return;
+
+		if ( pending.incrementAndGet() > capacity ){
+			pending.decrementAndGet();
+			drop( job, state );
+			return;
+		}
+
+		JobQueue queue = job.getDispatchQueue();
+		queue.changes.add( new StateChange( job, state, System.nanoTime() ) );
+		schedule( queue );
+	}
+
+	/**
+	 * Returns the number of state changes waiting for dispatching.
+	 * @return number of state changes
+	 */
+	public int getPendingDispatches(){
+		return pending.get();
+	}
+
+	/**
+	 * Returns the number of state changes dropped because too many state changes were waiting.
+	 * @return number of dropped state changes
+	 */
+	public long getDroppedDispatches(){
+		return dropped.get();
+	}
+
+	/**
+	 * Returns the number of state changes dispatched later than the lag threshold.
+	 * @return number of lagging state changes
+	 */
+	public long getLaggingDispatches(){
+		return lagging.get();
+	}
+
+	/**
+	 * Submits a task to drain the queue of a job if there is none yet.
+	 * @param queue of the job
+	 */
+	private void schedule( final JobQueue queue ){
+		if ( !queue.scheduled.compareAndSet( false, true ) ) return;
+
+		try {
+			executor.execute( new Runnable() {
+				@Override
+				public void run(){ drain( queue ); }
+			});
+		} catch ( RejectedExecutionException ree ){
+			DOPAClient.LOG.error("The listener executor rejected a dispatch.", ree);
+			StateChange change;
+			while ( ( change = queue.changes.poll() ) != null ){
+				pending.decrementAndGet();
+				drop( change.job, change.state );
+			}
+			queue.scheduled.set( false );
+		}
+	}
+
+	/**
+	 * Passes waiting state changes of one job to its listeners.
+	 * @param queue of the job
+	 */
+	private void drain( JobQueue queue ){
+		StateChange change;
+		for ( int i = 0; i < DRAIN_BATCH && ( change = queue.changes.poll() ) != null; i++ ){
+			pending.decrementAndGet();
+
+			long waited = System.nanoTime() - change.created;
+			if ( waited > lagThreshold && lagging.incrementAndGet() % WARNING_INTERVAL == 1 )
+				DOPAClient.LOG.warn("Listeners of job " + change.job.getID() + " are invoked " +
+						TimeUnit.NANOSECONDS.toMillis( waited ) + "ms late. Lagging dispatches so far: " + lagging.get());
+
+			for ( JobStateListener listener : change.job.getListeners() ){
+				try { listener.stateChanged( change.job, change.state ); }
+				catch ( RuntimeException re ){
+					DOPAClient.LOG.error("A listener of job " + change.job.getID() + " failed.", re);
+				}
+			}
+		}
+
+		// another thread may have added a state change meanwhile
+		queue.scheduled.set( false );
+		if ( !queue.changes.isEmpty() ) schedule( queue );
+	}
+
+	/**
+	 * Counts and reports a dropped state change.
+	 * @param job
+	 * @param state
+	 */
+	private void drop( DSCLJobImpl job, JobState state ){
+		if ( dropped.incrementAndGet() % WARNING_INTERVAL == 1 )
+			DOPAClient.LOG.warn("Too many state changes wait for their listeners. Dropped state " + state +
+					" of job " + job.getID() + ". Dropped dispatches so far: " + dropped.get());
+	}
+
+	/**
+	 * The waiting state changes of one job.
+	 */
+	protected static final class JobQueue {
+		private final ConcurrentLinkedQueue<StateChange> changes = new ConcurrentLinkedQueue<StateChange>();
+
+		/** true while a task drains this queue **/
+		private final AtomicBoolean scheduled = new AtomicBoolean( false );
+	}
+
+	/**
+	 * A state change waiting for dispatching.
+	 */
+	private static final class StateChange {
+		private final DSCLJobImpl job;
+		private final JobState state;
+		private final long created;
+
+		private StateChange( DSCLJobImpl job, JobState state, long created ){
+			this.job = job;
+			this.state = state;
+			this.created = created;
+		}
+	}
+}
@@ -0,0 +1,330 @@
+package eu.stratosphere.meteor.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.stratosphere.meteor.common.DSCLJob;
+import eu.stratosphere.meteor.common.ResultFileBlock;
+import eu.stratosphere.meteor.common.ResultFileHandler;
+
+/**
+ * A size-bounded cache of result files on the local disk. Results are keyed by client ID, job ID
+ * and file index. If a result is requested again it's served from the disk instead of being
+ * transferred through the message broker once more.
+ *
+ * The cache directory can be shared by several processes on one machine. Files are written to a
+ * temporary file first and moved to their place when complete, so readers never see a partial
+ * result. The least recently used files are deleted when the total size exceeds the limit.
+ * Each process only counts the files it knows, which are the files found at startup and the files
+ * it used since.
+ *
+ * The name of a cached file contains a hash of the meteor script. If a job is submitted again
+ * with the same ID and another script, its old results aren't found anymore. Submissions of
+ * this client invalidate all results of the job anyway.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class ResultCache {
+
+	/** prefix of files which are written currently **/
+	private static final String TMP_PREFIX = ".tmp-";
+
+	/** script hash of jobs without known script **/
+	private static final String UNKNOWN_SCRIPT = "unknown";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** root directory of the cache **/
+	private final File directory;
+
+	/** maximum number of bytes **/
+	private final long maxBytes;
+
+	/** known files in access order <File -> Size>, guarded by this **/
+	private final LinkedHashMap<File, Long> entries;
+	private long currentBytes = 0;
+
+	/**
+	 * Creates a cache in given directory. Existing files are taken over in the order of their
+	 * last access.
+	 * @param directory root directory of the cache, created if necessary
+	 * @param maxBytes maximum size of all cached files
+	 * @throws IOException if the directory cannot be created
+	 */
+	public ResultCache( File directory, long maxBytes ) throws IOException {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		this.entries = new LinkedHashMap<File, Long>( 16, 0.75f, true );
+
+		Files.createDirectories( directory.toPath() );
+		scan();
+	}
+
+	/**
+	 * Returns the cached result file or null if it's not cached.
+	 * @param clientID specified client
+	 * @param jobID specified job
+	 * @param fileIndex index of the result
+	 * @param meteorScript of the job, null if unknown (any cached version matches)
+	 * @return cached file or null
+	 */
+	public File get( String clientID, String jobID, int fileIndex, String meteorScript ){
+		File file;
+		if ( meteorScript != null ) file = new File( jobDirectory( clientID, jobID ), fileIndex + "." + hash( meteorScript ) );
+		else file = findAnyVersion( jobDirectory( clientID, jobID ), fileIndex );
+
+		if ( file == null || !file.isFile() ){
+			if ( file != null ) remove( file );
+			return null;
+		}
+
+		// mark as used for this and other processes
+		file.setLastModified( System.currentTimeMillis() );
+		synchronized ( this ){
+			if ( entries.get( file ) == null ){
+				entries.put( file, file.length() );
+				currentBytes += file.length();
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Deletes all cached results of a job. Called if a job is (re-)submitted.
+	 * @param clientID specified client
+	 * @param jobID specified job
+	 */
+	public void invalidate( String clientID, String jobID ){
+		File[] files = jobDirectory( clientID, jobID ).listFiles();
+		if ( files == null ) return;
+
+		for ( File file : files )
+			if ( !file.getName().startsWith( TMP_PREFIX ) ){
+				remove( file );
+				file.delete();
+			}
+	}
+
+	/**
+	 * Returns the size of all cached files known by this process.
+	 * @return size in bytes
+	 */
+	public synchronized long size(){
+		return currentBytes;
+	}
+
+	/**
+	 * Returns a handler which forwards all blocks to given handler and writes them into the cache.
+	 * The result is cached after the last block arrived.
+	 * @param clientID specified client
+	 * @param jobID specified job
+	 * @param fileIndex index of the result
+	 * @param meteorScript of the job, may be null
+	 * @param handler of the user
+	 * @return handler which caches the result
+	 */
+	public ResultFileHandler cachingHandler( String clientID, String jobID, int fileIndex, String meteorScript,
+			ResultFileHandler handler ){
+		String name = fileIndex + "." + ( meteorScript == null ? UNKNOWN_SCRIPT : hash( meteorScript ) );
+		return new CachingHandler( new File( jobDirectory( clientID, jobID ), name ), handler );
+	}
+
+	/**
+	 * Passes a cached file to given handler block by block, like it would be received from
+	 * the scheduler.
+	 * @param job specified job
+	 * @param file cached result
+	 * @param blockSize size of each block
+	 * @param handler to invoke
+	 * @throws IOException if the file cannot be read
+	 */
+	public static void replay( DSCLJob job, File file, int blockSize, ResultFileHandler handler ) throws IOException {
+		try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) ){
+			long length = channel.size();
+			long blocks = Math.max( 1, (length + blockSize - 1) / blockSize );
+
+			for ( int idx = 0; idx < blocks; idx++ ){
+				ByteBuffer buffer = ByteBuffer.allocate( (int) Math.min( blockSize, length - (long) idx * blockSize ) );
+				while ( buffer.hasRemaining() && channel.read( buffer ) >= 0 );
+				handler.handleFileBlock( job, new ResultFileBlock( buffer.array(), UTF8, idx, blockSize, blocks ) );
+			}
+		}
+	}
+
+	/**
+	 * Adds a complete file and deletes the least recently used files if necessary.
+	 * @param file complete file in the cache directory
+	 */
+	private void add( File file ){
+		List<File> evicted = new ArrayList<File>();
+		synchronized ( this ){
+			Long old = entries.put( file, file.length() );
+			currentBytes += file.length() - ( old == null ? 0 : old );
+
+			Iterator<Map.Entry<File, Long>> it = entries.entrySet().iterator();
+			while ( currentBytes > maxBytes && it.hasNext() ){
+				Map.Entry<File, Long> eldest = it.next();
+				if ( eldest.getKey().equals( file ) ) continue; // keep the new one
+				currentBytes -= eldest.getValue();
+				evicted.add( eldest.getKey() );
+				it.remove();
+			}
+		}
+
+		for ( File old : evicted ){
+			old.delete();
+			DOPAClient.LOG.info("Result cache evicted " + old);
+		}
+	}
+
+	/**
+	 * Forgets a file.
+	 * @param file
+	 */
+	private synchronized void remove( File file ){
+		Long size = entries.remove( file );
+		if ( size != null ) currentBytes -= size;
+	}
+
+	/**
+	 * Takes over all existing files, least recently used first.
+	 */
+	private void scan(){
+		List<File> files = new ArrayList<File>();
+		File[] clients = directory.listFiles();
+		if ( clients == null ) return;
+
+		for ( File client : clients ){
+			File[] jobs = client.listFiles();
+			if ( jobs == null ) continue;
+			for ( File job : jobs ){
+				File[] results = job.listFiles();
+				if ( results == null ) continue;
+				for ( File result : results )
+					if ( result.isFile() && !result.getName().startsWith( TMP_PREFIX ) ) files.add( result );
+			}
+		}
+
+		Collections.sort( files, new Comparator<File>() {
+			@Override
+			public int compare( File f1, File f2 ){
+				return Long.compare( f1.lastModified(), f2.lastModified() );
+			}
+		});
+
+		for ( File file : files ) add( file );
+	}
+
+	/**
+	 * Returns any cached version of a result.
+	 * @param jobDirectory
+	 * @param fileIndex
+	 * @return file or null
+	 */
+	private static File findAnyVersion( File jobDirectory, int fileIndex ){
+		File[] files = jobDirectory.listFiles();
+		if ( files == null ) return null;
+
+		for ( File file : files )
+			if ( file.getName().startsWith( fileIndex + "." ) ) return file;
+		return null;
+	}
+
+	/**
+	 * Returns the directory of a job.
+	 * @param clientID
+	 * @param jobID
+	 * @return directory
+	 */
+	private File jobDirectory( String clientID, String jobID ){
+		try {
+			return new File( new File( directory, URLEncoder.encode( clientID, "UTF-8" ) ), URLEncoder.encode( jobID, "UTF-8" ) );
+		} catch ( IOException ioe ){
+			throw new IllegalStateException( "UTF-8 isn't supported.", ioe );
+		}
+	}
+
+	/**
+	 * Hashes a meteor script.
+	 * @param script
+	 * @return hex string of the MD5 hash
+	 */
+	private static String hash( String script ){
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest( script.getBytes( UTF8 ) );
+			StringBuilder builder = new StringBuilder();
+			for ( byte b : digest ) builder.append( String.format( "%02x", b & 0xFF ) );
+			return builder.toString();
+		} catch ( NoSuchAlgorithmException nsae ){
+			throw new IllegalStateException( "MD5 isn't supported.", nsae );
+		}
+	}
+
+	/**
+	 * Writes incoming blocks into a temporary file and moves it into the cache after the last block.
+	 */
+	private class CachingHandler implements ResultFileHandler {
+		private final File target;
+		private final ResultFileHandler handler;
+		private File tmp = null;
+		private FileChannel channel = null;
+		private boolean failed = false;
+
+		private CachingHandler( File target, ResultFileHandler handler ){
+			this.target = target;
+			this.handler = handler;
+		}
+
+		@Override
+		public void handleFileBlock( DSCLJob job, ResultFileBlock block ){
+			// the user handler comes first, the cache is optional
+			if ( handler != null ) handler.handleFileBlock( job, block );
+			if ( failed ) return;
+
+			try {
+				if ( channel == null ){
+					Files.createDirectories( target.getParentFile().toPath() );
+					tmp = File.createTempFile( TMP_PREFIX, ".part", target.getParentFile() );
+					channel = FileChannel.open( tmp.toPath(), StandardOpenOption.WRITE );
+				}
+
+				// a replayed request starts again with the first block
+				if ( block.getBlockIndex() == 0 ) channel.truncate( 0 );
+
+				ByteBuffer buffer = block.getByteBuffer();
+				while ( buffer.hasRemaining() ) channel.write( buffer );
+
+				if ( block.getBlockIndex() + 1 >= block.getTotalNumberOfBlocks() ){
+					channel.close();
+					channel = null;
+					Files.move( tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+					add( target );
+				}
+			} catch ( IOException ioe ){
+				DOPAClient.LOG.warn("Cannot write the result into the cache.", ioe);
+				try { if ( channel != null ) channel.close(); }
+				catch ( IOException closeFailed ){}
+				if ( tmp != null ) tmp.delete();
+				channel = null;
+				failed = true;
+			}
+		}
+	}
+}
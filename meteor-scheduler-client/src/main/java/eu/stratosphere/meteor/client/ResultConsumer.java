@@ -6,15 +6,20 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.rabbitmq.client.AMQP;
-import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Envelope;
-import com.rabbitmq.client.QueueingConsumer;
 
+import eu.stratosphere.meteor.common.DSCLJob;
 import eu.stratosphere.meteor.common.JobState;
 import eu.stratosphere.meteor.common.MessageBuilder;
 import eu.stratosphere.meteor.common.RequestConsumable;
 import eu.stratosphere.meteor.common.ResultFileBlock;
 import eu.stratosphere.meteor.common.ResultFileHandler;
+import eu.stratosphere.meteor.common.SchedulerFuture;
+import eu.stratosphere.meteor.common.trace.Span;
+import eu.stratosphere.meteor.common.trace.TraceContext;
+import eu.stratosphere.meteor.common.trace.Tracer;
+import eu.stratosphere.meteor.common.transport.TransportConsumer;
+import eu.stratosphere.meteor.common.transport.TransportChannel;
 
 /**
  * Handle incoming file blocks asynchronously. Its an request consumable class so it's
@@ -23,14 +28,23 @@ import eu.stratosphere.meteor.common.ResultFileHandler;
  * @author André Greiner-Petter
  *
  */
-public class ResultConsumer extends QueueingConsumer implements RequestConsumable {
+public class ResultConsumer extends TransportConsumer implements RequestConsumable {
 	
 	/** client object **/
 	private final DOPAClient client;
 	
+	/** connection factory which tracks the request **/
+	private final ClientConnectionFactory connFac;
+	
 	/** correlation ID of request **/
 	private final String corrID;
 	
+	/** stream of the result, null if the result is handled by a handler only **/
+	private final ResultStream stream;
+	
+	/** future completed after the last block, may be null **/
+	private final SchedulerFuture<DSCLJob> future;
+	
 	/**
 	 * Informations has to be filled by first message
 	 */
@@ -40,16 +54,40 @@ public class ResultConsumer extends QueueingConsumer implements RequestConsumabl
 	private long maxBlockNumbers = 0;
 	private String jobID = null;
 	
+	/**
+	 * Span of the transfer from the first message until the last block, a child of the span
+	 * of the scheduler which sent the result
+	 */
+	private Span span = null;
+	
 	/**
 	 * Create a specified consumer to handle incoming result messages asynchronously.
 	 * @param client DOPAClient
+	 * @param connFac connection factory which tracks the request
+	 * @param ch channel
+	 * @param correlationID of incoming message
+	 */
+	protected ResultConsumer( DOPAClient client, ClientConnectionFactory connFac, TransportChannel ch, String correlationID ) {
+		this( client, connFac, ch, correlationID, null, null );
+	}
+	
+	/**
+	 * Create a specified consumer to handle incoming result messages of a stream or with a future asynchronously.
+	 * @param client DOPAClient
+	 * @param connFac connection factory which tracks the request
 	 * @param ch channel
 	 * @param correlationID of incoming message
+	 * @param stream which gets the error messages of the scheduler, may be null
+	 * @param future completed after the last block, may be null
 	 */
-	protected ResultConsumer( DOPAClient client, Channel ch, String correlationID ) {
+	protected ResultConsumer( DOPAClient client, ClientConnectionFactory connFac, TransportChannel ch, String correlationID,
+			ResultStream stream, SchedulerFuture<DSCLJob> future ) {
 		super(ch);
 		this.client = client;
+		this.connFac = connFac;
 		this.corrID = correlationID;
+		this.stream = stream;
+		this.future = future;
 	}
 	
 	/**
@@ -66,6 +104,7 @@ public class ResultConsumer extends QueueingConsumer implements RequestConsumabl
 		if ( !properties.getCorrelationId().matches(corrID) ){
 			// acknowledge rabbitMQ as well
 			super.getChannel().basicAck( deliveryTag, false );
+			return;
 		}
 		
 		// if incoming delivery is the information message
@@ -81,8 +120,14 @@ public class ResultConsumer extends QueueingConsumer implements RequestConsumabl
 				if ( 	MessageBuilder.getJobStatus(obj) != null &&
 						MessageBuilder.getJobStatus(obj).equals( JobState.ERROR ) ){
 					DOPAClient.LOG.warn("The scheduler send an error message: " + MessageBuilder.getErrorMessage(obj));
+					if ( stream != null ) stream.fail( MessageBuilder.getErrorMessage(obj) );
+					if ( future != null ) future.fail( new IOException( 
+							"The scheduler sends an error message: " + MessageBuilder.getErrorMessage(obj) ) );
 					super.getChannel().basicAck(deliveryTag, false);
 					super.getChannel().basicCancel(consumerTag);
+					connFac.completeRequest(corrID);
+					Tracer.start( "client.result", TraceContext.extract( properties ) )
+							.tag( "error", MessageBuilder.getErrorMessage(obj) ).finish();
 					return;
 				}
 				
@@ -90,6 +135,11 @@ public class ResultConsumer extends QueueingConsumer implements RequestConsumabl
 				blockSize = MessageBuilder.getDesiredBlockSize( obj );
 				jobID = MessageBuilder.getJobID( obj );
 				fileIndex = MessageBuilder.getFileIndex( obj );
+				
+				// a replayed request starts the transfer from the beginning
+				blockIdx = 0;
+				span = Tracer.start( "client.result", TraceContext.extract( properties ) )
+						.tag( "jobID", jobID ).tag( "fileIndex", fileIndex ).tag( "blocks", maxBlockNumbers );
 			} catch (JSONException e) {}
 			
 			// acknowledge rabbitMQ
@@ -117,7 +167,11 @@ public class ResultConsumer extends QueueingConsumer implements RequestConsumabl
 		super.getChannel().basicAck( deliveryTag, false );
 		
 		// finally cancel this consumer
-		if ( blockIdx == maxBlockNumbers )
+		if ( blockIdx == maxBlockNumbers ){
 			super.getChannel().basicCancel(consumerTag);
+			connFac.completeRequest(corrID);
+			if ( span != null ) span.finish();
+			if ( future != null ) future.complete( client.getJobList().get( jobID ) );
+		}
 	}
 }
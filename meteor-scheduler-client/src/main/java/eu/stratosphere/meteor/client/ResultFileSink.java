@@ -0,0 +1,109 @@
+package eu.stratosphere.meteor.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import eu.stratosphere.meteor.common.DSCLJob;
+import eu.stratosphere.meteor.common.ResultFileBlock;
+import eu.stratosphere.meteor.common.ResultFileHandler;
+import eu.stratosphere.meteor.common.SchedulerFuture;
+
+/**
+ * A result file handler which writes the received blocks into a local file. The bytes are
+ * written as they are, nothing is decoded.
+ *
+ * The file is preallocated with the size announced by the scheduler (block size times number of
+ * blocks) when the first block arrives. Each block is written at its own offset, so blocks
+ * delivered twice after a replayed request just overwrite themselves. After the last block the
+ * file is truncated to its real length and forced to the disk once. The file is then recorded
+ * as result of the job, see {@link DSCLJob#getResults()}.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class ResultFileSink implements ResultFileHandler {
+
+	/** target file **/
+	private final File target;
+
+	/** index of the result file in the job **/
+	private final int fileIndex;
+
+	/** completed with the target file after the last block **/
+	private final SchedulerFuture<File> completion;
+
+	/** open while blocks are received, written by the consumer thread only **/
+	private RandomAccessFile file = null;
+	private FileChannel channel = null;
+
+	/**
+	 * Creates a sink for a result file.
+	 * @param target file, overwritten if it exists
+	 * @param fileIndex index of the requested result
+	 */
+	public ResultFileSink( File target, int fileIndex ){
+		this.target = target;
+		this.fileIndex = fileIndex;
+		this.completion = new SchedulerFuture<File>();
+	}
+
+	/**
+	 * Returns a future which is completed with the target file when the whole result is on
+	 * the disk. It fails if the file cannot be written.
+	 * @return future of the file
+	 */
+	public SchedulerFuture<File> getCompletion(){
+		return completion;
+	}
+
+	/**
+	 * Writes a block at its offset.
+	 */
+	@Override
+	public void handleFileBlock( DSCLJob job, ResultFileBlock block ){
+		if ( completion.isDone() ) return;
+
+		try {
+			long offset = (long) block.getBlockIndex() * block.getBlockSize();
+
+			// preallocate the announced size
+			if ( channel == null ){
+				file = new RandomAccessFile( target, "rw" );
+				file.setLength( Math.max( 0, (long) block.getBlockSize() * block.getTotalNumberOfBlocks() ) );
+				channel = file.getChannel();
+			}
+
+			ByteBuffer buffer = block.getByteBuffer();
+			long position = offset;
+			while ( buffer.hasRemaining() ) position += channel.write( buffer, position );
+
+			// the last block determines the real length
+			if ( block.getBlockIndex() + 1 >= block.getTotalNumberOfBlocks() ){
+				channel.truncate( position );
+				channel.force( true );
+				close();
+
+				if ( job instanceof DSCLJobImpl ) ((DSCLJobImpl) job).setResultFile( fileIndex, target );
+				completion.complete( target );
+			}
+		} catch ( IOException ioe ){
+			DOPAClient.LOG.error("Cannot write the result into " + target + ".", ioe);
+			close();
+			target.delete();
+			completion.fail( ioe );
+		}
+	}
+
+	/**
+	 * Closes the file quietly.
+	 */
+	private void close(){
+		try { if ( file != null ) file.close(); }
+		catch ( IOException ioe ){ DOPAClient.LOG.warn("Cannot close " + target + ".", ioe); }
+		file = null;
+		channel = null;
+	}
+}
@@ -0,0 +1,148 @@
+package eu.stratosphere.meteor.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import eu.stratosphere.meteor.common.DSCLJob;
+import eu.stratosphere.meteor.common.ResultFileBlock;
+import eu.stratosphere.meteor.common.ResultFileHandler;
+import eu.stratosphere.meteor.common.transport.TransportChannel;
+
+/**
+ * A readable channel over a requested result file. The stream is the result file handler of
+ * its request and buffers a bounded number of blocks. If the buffer is full the consumer blocks
+ * until the reader catches up. The request uses its own channel with a prefetch limit, so the
+ * message broker stops sending blocks meanwhile and other replies aren't blocked.
+ *
+ * Blocks are passed through without copying. Blocks which are delivered twice (after a
+ * request was replayed) are skipped.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class ResultStream implements ResultFileHandler, ReadableByteChannel {
+
+	/** marks the end of the stream **/
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	/** waiting time of a blocked consumer before it checks whether the reader closed the stream **/
+	private static final long OFFER_TIMEOUT = 100;
+
+	/** connection informations of the request **/
+	private final ClientConnectionFactory connFac;
+	private final TransportChannel channel;
+	private final String corrID;
+
+	/** received blocks not read yet **/
+	private final ArrayBlockingQueue<ByteBuffer> blocks;
+
+	/** index of the next expected block, written by the consumer thread only **/
+	private int nextBlock = 0;
+
+	/** current block of the reader **/
+	private ByteBuffer current = null;
+
+	/** error message of the scheduler **/
+	private volatile String error = null;
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates a stream for a result request.
+	 * @param connFac which sends the request
+	 * @param channel own channel of the request, closed with this stream
+	 * @param corrID correlation ID of the request
+	 * @param bufferedBlocks maximum number of buffered blocks
+	 */
+	protected ResultStream( ClientConnectionFactory connFac, TransportChannel channel, String corrID, int bufferedBlocks ){
+		this.connFac = connFac;
+		this.channel = channel;
+		this.corrID = corrID;
+		this.blocks = new ArrayBlockingQueue<ByteBuffer>( Math.max( bufferedBlocks, 1 ) + 1 ); // +1 for END
+	}
+
+	/**
+	 * Buffers the incoming block. Blocks while the buffer is full.
+	 */
+	@Override
+	public void handleFileBlock( DSCLJob job, ResultFileBlock block ) {
+		// first blocks again, the request was replayed
+		if ( block.getBlockIndex() < nextBlock ) return;
+		nextBlock = block.getBlockIndex() + 1;
+
+		if ( !offer( block.getByteBuffer() ) ) return;
+		if ( nextBlock >= block.getTotalNumberOfBlocks() ) offer( END );
+	}
+
+	/**
+	 * Ends the stream with an error message of the scheduler.
+	 * @param message error message
+	 */
+	protected void fail( String message ){
+		this.error = message;
+		offer( END );
+	}
+
+	/**
+	 * Puts a buffer into the queue and waits while the queue is full.
+	 * @param buffer
+	 * @return false if the reader closed this stream
+	 */
+	private boolean offer( ByteBuffer buffer ){
+		try {
+			while ( !closed )
+				if ( blocks.offer( buffer, OFFER_TIMEOUT, TimeUnit.MILLISECONDS ) ) return true;
+		} catch ( InterruptedException ie ){
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	@Override
+	public int read( ByteBuffer dst ) throws IOException {
+		if ( closed ) throw new ClosedChannelException();
+
+		// get the next block with remaining bytes
+		while ( current == null || !current.hasRemaining() ){
+			if ( current == END ) return -1;
+			try { current = blocks.take(); }
+			catch ( InterruptedException ie ){
+				Thread.currentThread().interrupt();
+				throw new IOException( "Interrupted while waiting for the next block.", ie );
+			}
+
+			if ( current == END && error != null )
+				throw new IOException( "The scheduler sends an error message: " + error );
+		}
+
+		// copy as much as possible
+		int length = Math.min( dst.remaining(), current.remaining() );
+		ByteBuffer slice = current.duplicate();
+		slice.limit( slice.position() + length );
+		dst.put( slice );
+		current.position( current.position() + length );
+		return length;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return !closed;
+	}
+
+	/**
+	 * Closes the stream and its request. Blocks not received yet are dropped.
+	 */
+	@Override
+	public void close() throws IOException {
+		if ( closed ) return;
+		closed = true;
+		blocks.clear();
+
+		// the request ends with this stream
+		connFac.completeRequest( corrID );
+		channel.close();
+	}
+}
@@ -1,29 +1,30 @@
 package eu.stratosphere.meteor.client;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.rabbitmq.client.AMQP;
-import com.rabbitmq.client.Channel;
-import com.rabbitmq.client.ConsumerCancelledException;
 import com.rabbitmq.client.Envelope;
-import com.rabbitmq.client.QueueingConsumer;
-import com.rabbitmq.client.ShutdownSignalException;
 
 import eu.stratosphere.meteor.common.JobState;
-import eu.stratosphere.meteor.common.JobStateListener;
 import eu.stratosphere.meteor.common.MessageBuilder;
 import eu.stratosphere.meteor.common.MessageBuilder.RequestType;
+import eu.stratosphere.meteor.common.trace.Span;
+import eu.stratosphere.meteor.common.trace.Tracer;
+import eu.stratosphere.meteor.common.transport.TransportChannel;
+import eu.stratosphere.meteor.common.transport.TransportConsumer;
 
 /**
- * This class extends the QueueingConsumer and handle deliveries in a special way.
- * The consumer sets the new status to the specified DSCLJob.
+ * This consumer decodes incoming status messages directly from the delivered body and sets
+ * the new status to the specified DSCLJob. Nothing is queued in between.
  *
  * @author André Greiner-Petter
  */
-public class StatusConsumer extends QueueingConsumer {
+public class StatusConsumer extends TransportConsumer {
 	
 	private final ClientConnectionFactory connFac;
 	private final DOPAClient client;
@@ -32,7 +33,7 @@ public class StatusConsumer extends QueueingConsumer {
 	 * Super constructor
 	 * @param ch
 	 */
-	protected StatusConsumer( ClientConnectionFactory connFac, DOPAClient client, Channel ch ) {
+	protected StatusConsumer( ClientConnectionFactory connFac, DOPAClient client, TransportChannel ch ) {
 		super(ch);
 		this.connFac = connFac;
 		this.client = client;
@@ -46,39 +47,85 @@ public class StatusConsumer extends QueueingConsumer {
 	@Override
 	public void handleDelivery( String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body )
 			throws IOException {
-		// forward delivery
-		super.handleDelivery(consumerTag, envelope, properties, body);
+		// status messages are json strings
+		String contentType = properties.getContentType();
+		if ( contentType == null || !contentType.contains("json") ){
+			DOPAClient.LOG.error("Expected json status but was another object type: " + contentType);
+			return;
+		}
 		
 		// try to handle new object
 		try {
-			// create status object
-			JSONObject status = connFac.getStatus( 0 );
+			// decode the status object
+			String charSet = properties.getContentEncoding();
+			JSONObject status = new JSONObject( new String( body, charSet == null ? "UTF-8" : charSet ) );
 			
-			// get informations to update specified job
-			String jobID = status.getString("JobID");
-			DSCLJobImpl job = (DSCLJobImpl) client.getJobList().get( jobID );
-			
-			JobState newStatus = MessageBuilder.getJobStatus(status);
-            MessageBuilder.RequestType requestType = MessageBuilder.RequestType.getRequestType(status);
-			
-            if ( requestType.equals( RequestType.ERROR ) || newStatus == null ){
-            	DOPAClient.LOG.error("The scheduler published an error: '" + 
-            			MessageBuilder.getErrorMessage(status) + "'");
-            	return;
-            } else if ( newStatus.equals( JobState.ERROR ) ) {
-				String msg = "Server published an error message of specified Job: " + jobID + "; "
-						+ "With error message: '" + MessageBuilder.getErrorMessage(status) + "'";
-				DOPAClient.LOG.warn( msg );
-			} else DOPAClient.LOG.info( "Status update! JobID: " + jobID + ", New job status: " + newStatus );
-			
-			// update status
-			job.setStatus( newStatus );
-			
-			// invoke listeners
-			for ( JobStateListener listener : job.getListeners() )
-				listener.stateChanged(job, newStatus );
-		} catch (ShutdownSignalException | ConsumerCancelledException | InterruptedException | JSONException e) {
+			// a batch includes many status objects, unpack them in the order they were sent.
+			// a broken entry is skipped, the others of the batch are still applied
+			if ( RequestType.JOB_STATUS_BATCH.equals( RequestType.getRequestType(status) ) ){
+				for ( JSONObject jobStatus : MessageBuilder.getStatusBatch(status) ){
+					try { handleTracedStatus( jobStatus ); }
+					catch ( JSONException e ){
+						DOPAClient.LOG.error("Cannot handle a status of the batch: " + jobStatus, e);
+					}
+				}
+			} else handleTracedStatus( status );
+		} catch ( UnsupportedEncodingException | JSONException e ) {
 			DOPAClient.LOG.error("Cannot handle asynchronous status messages.", e);
 		} 	
 	}
+	
+	/**
+	 * Handles a status in a span, a child of the span of the scheduler which sent it.
+	 * @param status json object of a single job status
+	 * @throws JSONException if the status doesn't include a job ID
+	 */
+	private void handleTracedStatus( JSONObject status ) throws JSONException {
+		Span span = Tracer.start( "client.status", MessageBuilder.getTrace(status) )
+				.tag( "jobID", MessageBuilder.getJobID(status) )
+				.tag( "state", MessageBuilder.getJobStatus(status) );
+		try { handleStatus( status ); }
+		finally { span.finish(); }
+	}
+	
+	/**
+	 * Updates the state of the specified job and invokes its listeners.
+	 * @param status json object of a single job status
+	 * @throws JSONException if the status doesn't include a job ID
+	 */
+	private void handleStatus( JSONObject status ) throws JSONException {
+		// get informations to update specified job
+		String jobID = status.getString("JobID");
+		DSCLJobImpl job = (DSCLJobImpl) client.getJobList().get( jobID );
+		
+		// each status answers the submission and pending status requests of this job
+		connFac.completeJobRequests( jobID );
+		
+		// a job of an earlier client instance
+		if ( job == null ){
+			DOPAClient.LOG.info("Status update of unknown job " + jobID + " ignored.");
+			return;
+		}
+		
+		JobState newStatus = MessageBuilder.getJobStatus(status);
+        MessageBuilder.RequestType requestType = MessageBuilder.RequestType.getRequestType(status);
+		
+        if ( requestType.equals( RequestType.ERROR ) || newStatus == null ){
+        	DOPAClient.LOG.error("The scheduler published an error: '" + 
+        			MessageBuilder.getErrorMessage(status) + "'");
+        	return;
+        } else if ( newStatus.equals( JobState.ERROR ) ) {
+			String msg = "Server published an error message of specified Job: " + jobID + "; "
+					+ "With error message: '" + MessageBuilder.getErrorMessage(status) + "'";
+			DOPAClient.LOG.warn( msg );
+		} else DOPAClient.LOG.info( "Status update! JobID: " + jobID + ", New job status: " + newStatus );
+		
+		// update status, the timings first so listeners see them
+		Map<String, Double> timings = MessageBuilder.getTimings(status);
+		if ( !timings.isEmpty() ) job.setTimings( timings );
+		job.setStatus( newStatus );
+		
+		// invoke listeners off this consumer thread
+		client.getListenerDispatcher().dispatch( job, newStatus );
+	}
 }
\ No newline at end of file
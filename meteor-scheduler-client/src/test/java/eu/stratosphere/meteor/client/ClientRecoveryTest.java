@@ -0,0 +1,156 @@
+package eu.stratosphere.meteor.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.QueueingConsumer.Delivery;
+
+import eu.stratosphere.meteor.common.DSCLJob;
+import eu.stratosphere.meteor.common.JobState;
+import eu.stratosphere.meteor.common.MessageBuilder;
+import eu.stratosphere.meteor.common.SchedulerConfigConstants;
+import eu.stratosphere.meteor.common.transport.InMemoryBroker;
+import eu.stratosphere.meteor.common.transport.QueueingTransportConsumer;
+import eu.stratosphere.meteor.common.transport.Transport;
+import eu.stratosphere.meteor.common.transport.TransportChannel;
+
+/**
+ * Tests that a client publishes its pending submissions again after its connection recovered,
+ * but not the jobs which got a status already. A fake scheduler on an in-memory broker answers
+ * the registrations and collects all other requests.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class ClientRecoveryTest {
+
+	private static final String CLIENT = "recovery-client";
+	private static final String STATUS_EXCHANGE = "status";
+	private static final long TIMEOUT = 5_000;
+
+	private static final BasicProperties JSON_PROPS = new BasicProperties.Builder()
+			.contentType( SchedulerConfigConstants.JSON )
+			.contentEncoding( "UTF-8" )
+			.build();
+
+	private InMemoryBroker broker;
+	private Transport transport;
+	private TransportChannel channel;
+	private BlockingQueue<Delivery> received;
+	private Thread scheduler;
+	private DOPAClient client;
+
+	@Before
+	public void setup() throws Exception {
+		broker = new InMemoryBroker();
+		transport = broker.newTransport();
+		channel = transport.createChannel();
+		received = new LinkedBlockingQueue<Delivery>();
+
+		String exchange = SchedulerConfigConstants.getRequestExchange( CLIENT );
+		channel.exchangeDeclare( exchange, InMemoryBroker.TOPIC, true );
+		channel.exchangeDeclare( STATUS_EXCHANGE, InMemoryBroker.DIRECT, false );
+		channel.queueDeclare( "requests", true, false, false );
+		channel.queueBind( "requests", exchange, "#" );
+
+		final QueueingTransportConsumer requests = new QueueingTransportConsumer( channel );
+		channel.basicConsume( "requests", true, requests );
+		scheduler = new Thread( new Runnable() {
+			@Override
+			public void run(){
+				try {
+					while ( true ){
+						Delivery delivery = requests.nextDelivery();
+						if ( !delivery.getEnvelope().getRoutingKey().equals( "register.login" ) ) received.add( delivery );
+						else channel.basicPublish(
+								"", delivery.getProperties().getReplyTo(), delivery.getProperties(), STATUS_EXCHANGE.getBytes( "UTF-8" ) );
+					}
+				} catch ( Exception e ){} // interrupted by the end of the test
+			}
+		}, "fake-scheduler" );
+		scheduler.setDaemon( true );
+		scheduler.start();
+
+		client = DOPAClient.createNewClient( CLIENT );
+		client.setTransportFactory( broker );
+		assertTrue( client.connect() );
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.disconnect();
+		scheduler.interrupt();
+		transport.close();
+		broker.shutdown();
+	}
+
+	@Test ( timeout = TIMEOUT )
+	public void testReplaySubmission() throws Exception {
+		DSCLJob job = client.createNewJob( "$input = read from 'in.json';" );
+		Delivery submission = nextRequest();
+		assertEquals( "setJob." + CLIENT + "." + job.getID(), submission.getEnvelope().getRoutingKey() );
+		assertNull( submission.getProperties().getHeaders().get( SchedulerConfigConstants.REPLAY_HEADER ) );
+
+		// no status yet, so the submission is published again and marked as replayed
+		broker.interruptConnections();
+		Delivery replay = nextRequest();
+		assertEquals( submission.getEnvelope().getRoutingKey(), replay.getEnvelope().getRoutingKey() );
+		assertArrayEquals( submission.getBody(), replay.getBody() );
+		assertEquals( Boolean.TRUE, replay.getProperties().getHeaders().get( SchedulerConfigConstants.REPLAY_HEADER ) );
+
+		// the first status answers the submission
+		publishStatus( job.getID() );
+		broker.interruptConnections();
+		assertNull( received.poll( 200, TimeUnit.MILLISECONDS ) );
+	}
+
+	@Test ( timeout = TIMEOUT )
+	public void testReplayBatch() throws Exception {
+		List<DSCLJob> jobs = client.createNewJobs( Arrays.asList( "first", "second" ) );
+		Delivery batch = nextRequest();
+		assertEquals( "setJobs." + CLIENT, batch.getEnvelope().getRoutingKey() );
+
+		// only the job without a status is submitted again
+		publishStatus( jobs.get(0).getID() );
+		broker.interruptConnections();
+		Map<String, String> replayed = MessageBuilder.getJobBatch( new JSONObject( new String( nextRequest().getBody(), "UTF-8" ) ) );
+		assertEquals( Collections.singletonMap( jobs.get(1).getID(), "second" ), replayed );
+
+		publishStatus( jobs.get(1).getID() );
+		broker.interruptConnections();
+		assertNull( received.poll( 200, TimeUnit.MILLISECONDS ) );
+	}
+
+	private Delivery nextRequest() throws InterruptedException {
+		return received.poll( TIMEOUT, TimeUnit.MILLISECONDS );
+	}
+
+	/**
+	 * Publishes the status WAITING of a job and waits until the client got it.
+	 */
+	private void publishStatus( String jobID ) throws Exception {
+		JSONObject status = MessageBuilder.buildJobStatus( CLIENT, jobID, JobState.WAITING );
+		channel.basicPublish( STATUS_EXCHANGE, SchedulerConfigConstants.getRoutingKey( CLIENT ), JSON_PROPS,
+				status.toString().getBytes( "UTF-8" ) );
+
+		DSCLJobImpl job = (DSCLJobImpl) client.getJobList().get( jobID );
+		assertEquals( JobState.WAITING, job.waitForState( EnumSet.of( JobState.WAITING ), TIMEOUT ) );
+	}
+}
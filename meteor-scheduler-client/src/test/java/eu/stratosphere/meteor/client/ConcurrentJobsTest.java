@@ -0,0 +1,266 @@
+package eu.stratosphere.meteor.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Envelope;
+
+import eu.stratosphere.meteor.common.DSCLJob;
+import eu.stratosphere.meteor.common.JobState;
+import eu.stratosphere.meteor.common.JobStateListener;
+import eu.stratosphere.meteor.common.SchedulerConfigConstants;
+import eu.stratosphere.meteor.common.transport.InMemoryBroker;
+import eu.stratosphere.meteor.common.transport.TransportChannel;
+import eu.stratosphere.meteor.common.transport.TransportConsumer;
+
+/**
+ * Tests that application threads and consumer threads may use the jobs of a client and the
+ * client itself at the same time: registering jobs, listeners, links and results, changing
+ * states and disconnecting while jobs are submitted.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class ConcurrentJobsTest {
+
+	private static final String CLIENT = "concurrent-client";
+	private static final int THREADS = 4;
+	private static final int ROUNDS = 500;
+
+	private ExecutorService executor;
+	private CountDownLatch start;
+
+	@Before
+	public void setup(){
+		executor = Executors.newFixedThreadPool( THREADS + 1 );
+		start = new CountDownLatch( 1 );
+	}
+
+	@After
+	public void tearDown(){
+		executor.shutdownNow();
+	}
+
+	@Test ( timeout = 10_000 )
+	public void testListeners() throws Exception {
+		final DSCLJobImpl job = new DSCLJobImpl( null, CLIENT, "job", null );
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for ( int t = 0; t < THREADS; t++ ){
+			futures.add( submit( new Callable<Void>() {
+				@Override
+				public Void call(){
+					for ( int i = 0; i < ROUNDS; i++ ){
+						JobStateListener listener = new JobStateListener() {
+							@Override
+							public void stateChanged( DSCLJob job, JobState newStatus ){}
+						};
+						job.addJobStateListener( listener );
+						if ( i % 2 == 0 ) job.removeJobStateListener( listener );
+					}
+					return null;
+				}
+			}));
+		}
+
+		// a consumer thread iterates over the listeners meanwhile
+		futures.add( submit( new Callable<Void>() {
+			@Override
+			public Void call(){
+				for ( int i = 0; i < ROUNDS; i++ )
+					for ( JobStateListener listener : job.getListeners() ) listener.stateChanged( job, JobState.RUNNING );
+				return null;
+			}
+		}));
+
+		awaitAll( futures );
+		assertEquals( THREADS * ROUNDS / 2, job.getListeners().size() );
+	}
+
+	@Test ( timeout = 10_000 )
+	public void testLinksAndResults() throws Exception {
+		final DSCLJobImpl job = new DSCLJobImpl( null, CLIENT, "job", null );
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for ( int t = 0; t < THREADS; t++ ){
+			final int offset = t * ROUNDS;
+			futures.add( submit( new Callable<Void>() {
+				@Override
+				public Void call(){
+					for ( int i = offset; i < offset + ROUNDS; i++ ){
+						job.setResultLink( i, "hdfs:///result" + i );
+						job.setResultFile( i, new File( "result" + i ) );
+						job.getResults().size();
+
+						// null removes an entry
+						if ( i % 2 == 0 ){
+							job.setResultLink( i, null );
+							job.setResultFile( i, null );
+						}
+					}
+					return null;
+				}
+			}));
+		}
+
+		awaitAll( futures );
+		assertEquals( THREADS * ROUNDS / 2, job.getResults().size() );
+		assertNull( job.getResultLink( 0 ) );
+		assertEquals( "hdfs:///result1", job.getResultLink( 1 ) );
+	}
+
+	/**
+	 * A thread waiting for the final state wakes up however many threads change the state.
+	 */
+	@Test ( timeout = 10_000 )
+	public void testStates() throws Exception {
+		final DSCLJobImpl job = new DSCLJobImpl( null, CLIENT, "job", null );
+		Future<JobState> reached = executor.submit( new Callable<JobState>() {
+			@Override
+			public JobState call() throws InterruptedException {
+				return job.waitForState( EnumSet.of( JobState.FINISHED ), 0 );
+			}
+		});
+
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for ( int t = 0; t < THREADS - 1; t++ ){
+			futures.add( submit( new Callable<Void>() {
+				@Override
+				public Void call(){
+					for ( int i = 0; i < ROUNDS; i++ ) job.setStatus( i % 2 == 0 ? JobState.WAITING : JobState.RUNNING );
+					return null;
+				}
+			}));
+		}
+		awaitAll( futures );
+		job.setStatus( JobState.FINISHED );
+
+		assertEquals( JobState.FINISHED, reached.get( 5, TimeUnit.SECONDS ) );
+		assertEquals( JobState.FINISHED, job.getCompletion().get( 1, TimeUnit.SECONDS ) );
+		assertTrue( job.getSubmission().isDone() );
+	}
+
+	/**
+	 * All jobs submitted by several threads are registered while another thread reads the registry.
+	 */
+	@Test ( timeout = 10_000 )
+	public void testRegistry() throws Exception {
+		InMemoryBroker broker = new InMemoryBroker();
+		answerRegistrations( broker );
+		final DOPAClient client = DOPAClient.createNewClient( CLIENT );
+		client.setTransportFactory( broker );
+		assertTrue( client.connect() );
+
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for ( int t = 0; t < THREADS; t++ ){
+				futures.add( submit( new Callable<Void>() {
+					@Override
+					public Void call(){
+						for ( int i = 0; i < ROUNDS / 10; i++ ) client.createNewJob( "script" );
+						return null;
+					}
+				}));
+			}
+			futures.add( submit( new Callable<Void>() {
+				@Override
+				public Void call(){
+					for ( int i = 0; i < ROUNDS; i++ )
+						for ( DSCLJob job : client.getJobList().values() ) job.getStatus();
+					return null;
+				}
+			}));
+
+			awaitAll( futures );
+			assertEquals( THREADS * ROUNDS / 10, client.getJobList().size() );
+		} finally {
+			client.disconnect();
+			broker.shutdown();
+		}
+	}
+
+	/**
+	 * A disconnect while other threads submit jobs fails their running submissions by their futures,
+	 * later ones are rejected. The threads don't see other exceptions.
+	 */
+	@Test ( timeout = 10_000 )
+	public void testDisconnectWhileSubmitting() throws Exception {
+		InMemoryBroker broker = new InMemoryBroker();
+		answerRegistrations( broker );
+		final DOPAClient client = DOPAClient.createNewClient( CLIENT );
+		client.setTransportFactory( broker );
+		assertTrue( client.connect() );
+
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for ( int t = 0; t < THREADS; t++ ){
+			futures.add( submit( new Callable<Void>() {
+				@Override
+				public Void call(){
+					try {
+						while ( true ) client.createNewJob( "script" );
+					} catch ( UnsupportedOperationException uoe ){
+						return null; // disconnected
+					}
+				}
+			}));
+		}
+
+		start.countDown();
+		Thread.sleep( 50 );
+		client.disconnect();
+		for ( Future<?> future : futures ) future.get( 5, TimeUnit.SECONDS );
+		broker.shutdown();
+	}
+
+	/**
+	 * Submits a task which starts with the others.
+	 */
+	private Future<?> submit( final Callable<Void> task ){
+		return executor.submit( new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				start.await();
+				return task.call();
+			}
+		});
+	}
+
+	private void awaitAll( List<Future<?>> futures ) throws Exception {
+		start.countDown();
+		for ( Future<?> future : futures ) future.get( 5, TimeUnit.SECONDS );
+	}
+
+	/**
+	 * Answers registrations of clients like the scheduler does.
+	 */
+	private static void answerRegistrations( InMemoryBroker broker ) throws IOException {
+		final TransportChannel channel = broker.newTransport().createChannel();
+		channel.exchangeDeclare( SchedulerConfigConstants.getRequestExchange( CLIENT ), InMemoryBroker.TOPIC, true );
+		channel.exchangeDeclare( "status", InMemoryBroker.DIRECT, false );
+		channel.queueDeclare( "registrations", false, true, true );
+		channel.queueBind( "registrations", SchedulerConfigConstants.getRequestExchange( CLIENT ), "register.login" );
+		channel.basicConsume( "registrations", true, new TransportConsumer( channel ) {
+			@Override
+			public void handleDelivery( String consumerTag, Envelope envelope, BasicProperties properties, byte[] body )
+					throws IOException {
+				channel.basicPublish( "", properties.getReplyTo(), properties, "status".getBytes( "UTF-8" ) );
+			}
+		});
+	}
+}
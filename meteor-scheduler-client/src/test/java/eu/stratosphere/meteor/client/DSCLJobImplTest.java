@@ -0,0 +1,110 @@
+package eu.stratosphere.meteor.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.EnumSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Envelope;
+
+import eu.stratosphere.meteor.common.JobState;
+import eu.stratosphere.meteor.common.ResultFileBlock;
+import eu.stratosphere.meteor.common.SchedulerConfigConstants;
+import eu.stratosphere.meteor.common.transport.InMemoryBroker;
+import eu.stratosphere.meteor.common.transport.TransportChannel;
+import eu.stratosphere.meteor.common.transport.TransportConsumer;
+
+/**
+ * Tests waiting for states of a job and cached results without a running scheduler.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class DSCLJobImplTest {
+
+	@Test
+	public void testWaitForState() throws Exception {
+		final DSCLJobImpl job = new DSCLJobImpl( null, "client", "job", null );
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		Future<JobState> reached = executor.submit( new Callable<JobState>() {
+			@Override
+			public JobState call() throws InterruptedException {
+				return job.waitForState( EnumSet.of( JobState.FINISHED, JobState.ERROR ), 0 );
+			}
+		});
+
+		job.setStatus( JobState.WAITING );
+		job.setStatus( JobState.RUNNING );
+		job.setStatus( JobState.FINISHED );
+
+		assertEquals( JobState.FINISHED, reached.get( 5, TimeUnit.SECONDS ) );
+		executor.shutdown();
+	}
+
+	@Test
+	public void testWaitForStateTimeout() throws InterruptedException {
+		DSCLJobImpl job = new DSCLJobImpl( null, "client", "job", null );
+		job.setStatus( JobState.RUNNING );
+
+		assertNull( job.waitForState( EnumSet.of( JobState.FINISHED ), 20 ) );
+		assertEquals( JobState.RUNNING, job.waitForState( EnumSet.of( JobState.RUNNING ), 20 ) );
+	}
+
+	/**
+	 * A cached result completes the request even without a handler.
+	 */
+	@Test ( timeout = 5_000 )
+	public void testCachedResultWithoutHandler() throws Exception {
+		File directory = Files.createTempDirectory( "result-cache" ).toFile();
+		ResultCache cache = new ResultCache( directory, 1024 );
+		cache.cachingHandler( "cache-client", "job", 0, "script", null ).handleFileBlock( 
+				null, new ResultFileBlock( "cached".getBytes( "UTF-8" ), "UTF-8", 0, 16, 1 ) );
+
+		InMemoryBroker broker = new InMemoryBroker();
+		answerRegistrations( broker );
+		DOPAClient client = DOPAClient.createNewClient( "cache-client" );
+		client.setTransportFactory( broker );
+		client.setResultCache( cache );
+		assertTrue( client.connect() );
+
+		try {
+			DSCLJobImpl job = (DSCLJobImpl) client.reconnectJob( "job" );
+			assertSame( job, job.fetchResult( 0, 16, 1, null ).get( 1, TimeUnit.SECONDS ) );
+		} finally {
+			client.disconnect();
+			broker.shutdown();
+		}
+	}
+
+	/**
+	 * Answers registrations of clients like the scheduler does.
+	 */
+	private static void answerRegistrations( InMemoryBroker broker ) throws IOException {
+		final TransportChannel channel = broker.newTransport().createChannel();
+		channel.exchangeDeclare( SchedulerConfigConstants.getRequestExchange( "cache-client" ), InMemoryBroker.TOPIC, true );
+		channel.exchangeDeclare( "status", InMemoryBroker.DIRECT, false );
+		channel.queueDeclare( "registrations", false, true, true );
+		channel.queueBind( "registrations", SchedulerConfigConstants.getRequestExchange( "cache-client" ), "register.login" );
+		channel.basicConsume( "registrations", true, new TransportConsumer( channel ) {
+			@Override
+			public void handleDelivery( String consumerTag, Envelope envelope, BasicProperties properties, byte[] body )
+					throws IOException {
+				channel.basicPublish( "", properties.getReplyTo(), properties, "status".getBytes( "UTF-8" ) );
+			}
+		});
+	}
+}
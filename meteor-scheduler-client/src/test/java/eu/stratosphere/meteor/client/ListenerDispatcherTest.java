@@ -0,0 +1,93 @@
+package eu.stratosphere.meteor.client;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import eu.stratosphere.meteor.common.DSCLJob;
+import eu.stratosphere.meteor.common.JobState;
+import eu.stratosphere.meteor.common.JobStateListener;
+
+/**
+ * Tests ordering and bounds of the listener dispatcher without a running scheduler.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class ListenerDispatcherTest {
+
+	@Test
+	public void testOrderPerJob() throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool( 4 );
+		ListenerDispatcher dispatcher = new ListenerDispatcher( executor, 10000, 1000 );
+
+		DSCLJobImpl job1 = new DSCLJobImpl( null, "client", "job1", null );
+		DSCLJobImpl job2 = new DSCLJobImpl( null, "client", "job2", null );
+		List<JobState> received1 = record( job1 );
+		List<JobState> received2 = record( job2 );
+
+		List<JobState> sent = new ArrayList<JobState>();
+		for ( int i = 0; i < 1000; i++ ){
+			JobState state = JobState.values()[ i % JobState.values().length ];
+			sent.add( state );
+			dispatcher.dispatch( job1, state );
+			dispatcher.dispatch( job2, state );
+		}
+
+		// wait until the listeners got all states
+		long deadline = System.currentTimeMillis() + 10000;
+		while ( ( received1.size() < sent.size() || received2.size() < sent.size() ) && System.currentTimeMillis() < deadline )
+			Thread.sleep( 10 );
+		executor.shutdown();
+
+		assertEquals( sent, received1 );
+		assertEquals( sent, received2 );
+		assertEquals( 0, dispatcher.getPendingDispatches() );
+		assertEquals( 0, dispatcher.getDroppedDispatches() );
+	}
+
+	@Test
+	public void testDropWhenFull(){
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		ListenerDispatcher dispatcher = new ListenerDispatcher( new Executor() {
+			@Override
+			public void execute( Runnable task ){ tasks.add( task ); }
+		}, 2, 1000 );
+
+		DSCLJobImpl job = new DSCLJobImpl( null, "client", "job", null );
+		List<JobState> received = record( job );
+
+		for ( int i = 0; i < 5; i++ )
+			dispatcher.dispatch( job, JobState.RUNNING );
+
+		assertEquals( 2, dispatcher.getPendingDispatches() );
+		assertEquals( 3, dispatcher.getDroppedDispatches() );
+
+		// one task drains all waiting state changes of the job
+		assertEquals( 1, tasks.size() );
+		tasks.get(0).run();
+		assertEquals( 2, received.size() );
+		assertEquals( 0, dispatcher.getPendingDispatches() );
+	}
+
+	/**
+	 * Adds a listener which records all states of given job.
+	 */
+	private static List<JobState> record( DSCLJobImpl job ){
+		final List<JobState> received = Collections.synchronizedList( new ArrayList<JobState>() );
+		job.addJobStateListener( new JobStateListener() {
+			@Override
+			public void stateChanged( DSCLJob job, JobState newStatus ){
+				received.add( newStatus );
+			}
+		});
+		return received;
+	}
+}
@@ -0,0 +1,82 @@
+package eu.stratosphere.meteor.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.stratosphere.meteor.common.ResultFileBlock;
+import eu.stratosphere.meteor.common.ResultFileHandler;
+
+/**
+ * Tests the result cache without a running scheduler.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class ResultCacheTest {
+
+	private static final String SCRIPT = "$li = read from 'file:///input.json'; write $li to 'file:///output.json';";
+
+	private File directory;
+
+	@Before
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("result-cache").toFile();
+	}
+
+	@Test
+	public void testCacheAndServe() throws IOException {
+		ResultCache cache = new ResultCache( directory, 1024 );
+		assertNull( cache.get( "client", "job", 0, SCRIPT ) );
+
+		receive( cache.cachingHandler( "client", "job", 0, SCRIPT, null ), "first block;", "second block" );
+
+		File cached = cache.get( "client", "job", 0, SCRIPT );
+		assertNotNull( cached );
+		assertEquals( "first block;second block", new String( Files.readAllBytes( cached.toPath() ), "UTF-8" ) );
+
+		// other scripts don't match, unknown scripts match any version
+		assertNull( cache.get( "client", "job", 0, "another script" ) );
+		assertNotNull( cache.get( "client", "job", 0, null ) );
+
+		// a resubmission invalidates the result
+		cache.invalidate( "client", "job" );
+		assertNull( cache.get( "client", "job", 0, SCRIPT ) );
+		assertEquals( 0, cache.size() );
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() throws IOException {
+		ResultCache cache = new ResultCache( directory, 25 );
+
+		receive( cache.cachingHandler( "client", "job1", 0, SCRIPT, null ), "0123456789" );
+		receive( cache.cachingHandler( "client", "job2", 0, SCRIPT, null ), "0123456789" );
+
+		// use the first one, so the second one is the eldest
+		assertNotNull( cache.get( "client", "job1", 0, SCRIPT ) );
+		receive( cache.cachingHandler( "client", "job3", 0, SCRIPT, null ), "0123456789" );
+
+		assertNotNull( cache.get( "client", "job1", 0, SCRIPT ) );
+		assertNull( cache.get( "client", "job2", 0, SCRIPT ) );
+		assertNotNull( cache.get( "client", "job3", 0, SCRIPT ) );
+		assertEquals( 20, cache.size() );
+
+		// a new process finds the files
+		assertEquals( 20, new ResultCache( directory, 25 ).size() );
+	}
+
+	/**
+	 * Passes the given blocks to the handler like the result consumer does.
+	 */
+	private static void receive( ResultFileHandler handler, String... blocks ) throws IOException {
+		for ( int i = 0; i < blocks.length; i++ )
+			handler.handleFileBlock( null, new ResultFileBlock( blocks[i].getBytes("UTF-8"), "UTF-8", i, 16, blocks.length ) );
+	}
+}
@@ -0,0 +1,59 @@
+package eu.stratosphere.meteor.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import eu.stratosphere.meteor.common.ResultFileBlock;
+
+/**
+ * Tests the result file sink without a running scheduler.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class ResultFileSinkTest {
+
+	@Test
+	public void testWriteBlocks() throws Exception {
+		File target = new File( Files.createTempDirectory("result-sink").toFile(), "result.json" );
+		DSCLJobImpl job = new DSCLJobImpl( null, "client", "job", null );
+		ResultFileSink sink = new ResultFileSink( target, 2 );
+
+		// the scheduler announced 3 blocks of 4 bytes, the first one is delivered twice after a replay
+		sink.handleFileBlock( job, block( "0123", 0 ) );
+		sink.handleFileBlock( job, block( "0123", 0 ) );
+		sink.handleFileBlock( job, block( "4567", 1 ) );
+		assertEquals( 12, target.length() );
+		sink.handleFileBlock( job, block( "89", 2 ) );
+
+		assertEquals( target, sink.getCompletion().get( 1, TimeUnit.SECONDS ) );
+		assertEquals( "0123456789", new String( Files.readAllBytes( target.toPath() ), "UTF-8" ) );
+		assertEquals( target, job.getResults().get( 2 ) );
+	}
+
+	@Test
+	public void testEmptyResult() throws Exception {
+		File target = new File( Files.createTempDirectory("result-sink").toFile(), "empty.json" );
+		ResultFileSink sink = new ResultFileSink( target, 0 );
+
+		sink.handleFileBlock( null, block( "", 0, 1 ) );
+
+		assertTrue( sink.getCompletion().isDone() );
+		assertEquals( 0, target.length() );
+	}
+
+	private static ResultFileBlock block( String content, int index ) throws IOException {
+		return block( content, index, 3 );
+	}
+
+	private static ResultFileBlock block( String content, int index, long blocks ) throws IOException {
+		return new ResultFileBlock( content.getBytes("UTF-8"), "UTF-8", index, 4, blocks );
+	}
+}
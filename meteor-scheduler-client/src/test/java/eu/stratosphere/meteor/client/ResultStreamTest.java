@@ -0,0 +1,252 @@
+package eu.stratosphere.meteor.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.QueueingConsumer.Delivery;
+
+import eu.stratosphere.meteor.common.MessageBuilder;
+import eu.stratosphere.meteor.common.MessageBuilder.RequestType;
+import eu.stratosphere.meteor.common.SchedulerConfigConstants;
+import eu.stratosphere.meteor.common.transport.InMemoryBroker;
+import eu.stratosphere.meteor.common.transport.QueueingTransportConsumer;
+import eu.stratosphere.meteor.common.transport.Transport;
+import eu.stratosphere.meteor.common.transport.TransportChannel;
+
+/**
+ * Tests reading a result while it's received: the blocks in their order, the bounded buffer,
+ * blocks delivered again after a replayed request, error messages of the scheduler and closing
+ * the stream. A fake scheduler on an in-memory broker answers the registrations and the test
+ * sends the blocks of the result like the scheduler does.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class ResultStreamTest {
+
+	private static final String CLIENT = "stream-client";
+	private static final String JOB = "job";
+	private static final String STATUS_EXCHANGE = "status";
+	private static final int BLOCK_SIZE = 4;
+	private static final int BUFFERED_BLOCKS = 2;
+	private static final long TIMEOUT = 5_000;
+
+	private InMemoryBroker broker;
+	private Transport transport;
+	private TransportChannel channel;
+	private BlockingQueue<Delivery> requests;
+	private Thread scheduler;
+	private DOPAClient client;
+	private DSCLJobImpl job;
+	private int bufferedBlocks;
+
+	@Before
+	public void setup() throws Exception {
+		bufferedBlocks = SchedulerConfigConstants.RESULT_STREAM_BUFFER_BLOCKS;
+		SchedulerConfigConstants.RESULT_STREAM_BUFFER_BLOCKS = BUFFERED_BLOCKS;
+
+		broker = new InMemoryBroker();
+		transport = broker.newTransport();
+		channel = transport.createChannel();
+		requests = new LinkedBlockingQueue<Delivery>();
+
+		String exchange = SchedulerConfigConstants.getRequestExchange( CLIENT );
+		channel.exchangeDeclare( exchange, InMemoryBroker.TOPIC, true );
+		channel.exchangeDeclare( STATUS_EXCHANGE, InMemoryBroker.DIRECT, false );
+		channel.queueDeclare( "requests", false, true, true );
+		channel.queueBind( "requests", exchange, "#" );
+
+		final QueueingTransportConsumer consumer = new QueueingTransportConsumer( channel );
+		channel.basicConsume( "requests", true, consumer );
+		scheduler = new Thread( new Runnable() {
+			@Override
+			public void run(){
+				try {
+					while ( true ){
+						Delivery delivery = consumer.nextDelivery();
+						if ( !delivery.getEnvelope().getRoutingKey().equals( "register.login" ) ) requests.add( delivery );
+						else channel.basicPublish(
+								"", delivery.getProperties().getReplyTo(), delivery.getProperties(), STATUS_EXCHANGE.getBytes( "UTF-8" ) );
+					}
+				} catch ( Exception e ){} // interrupted by the end of the test
+			}
+		}, "fake-scheduler" );
+		scheduler.setDaemon( true );
+		scheduler.start();
+
+		client = DOPAClient.createNewClient( CLIENT );
+		client.setTransportFactory( broker );
+		assertTrue( client.connect() );
+		job = (DSCLJobImpl) client.reconnectJob( JOB );
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		SchedulerConfigConstants.RESULT_STREAM_BUFFER_BLOCKS = bufferedBlocks;
+		client.disconnect();
+		scheduler.interrupt();
+		transport.close();
+		broker.shutdown();
+	}
+
+	@Test ( timeout = TIMEOUT )
+	public void testReadBlocks() throws Exception {
+		InputStream in = job.openResultStream( 0, BLOCK_SIZE, 3 );
+		Delivery request = nextResultRequest();
+		sendSpecification( request, 0, 3 );
+		sendBlock( request, "abcd" );
+		sendBlock( request, "efgh" );
+		sendBlock( request, "ij" );
+
+		assertEquals( "abcdefghij", readAll( in ) );
+		assertEquals( -1, in.read() );
+		in.close();
+	}
+
+	/**
+	 * A reader which doesn't read holds back the blocks in the message broker.
+	 */
+	@Test ( timeout = TIMEOUT )
+	public void testBoundedBuffer() throws Exception {
+		int blocks = 5 * BUFFERED_BLOCKS;
+		InputStream in = job.openResultStream( 0, BLOCK_SIZE, blocks );
+		Delivery request = nextResultRequest();
+		String replyQueue = request.getProperties().getReplyTo();
+
+		StringBuilder expected = new StringBuilder();
+		sendSpecification( request, 0, blocks );
+		for ( int i = 0; i < blocks; i++ ){
+			String block = String.format( "%04d", i );
+			expected.append( block );
+			sendBlock( request, block );
+		}
+
+		Thread.sleep( 200 );
+		assertTrue( broker.getMessageCount( replyQueue ) > 0 );
+
+		// everything arrives while reading
+		assertEquals( expected.toString(), readAll( in ) );
+		in.close();
+	}
+
+	/**
+	 * A replayed request sends the first blocks again, they are skipped.
+	 */
+	@Test ( timeout = TIMEOUT )
+	public void testReplayedBlocks() throws Exception {
+		InputStream in = job.openResultStream( 0, BLOCK_SIZE, 3 );
+		Delivery request = nextResultRequest();
+		sendSpecification( request, 0, 3 );
+		sendBlock( request, "abcd" );
+		sendBlock( request, "efgh" );
+
+		sendSpecification( request, 0, 3 );
+		sendBlock( request, "abcd" );
+		sendBlock( request, "efgh" );
+		sendBlock( request, "ij" );
+
+		assertEquals( "abcdefghij", readAll( in ) );
+		in.close();
+	}
+
+	@Test ( timeout = TIMEOUT )
+	public void testSchedulerError() throws Exception {
+		InputStream in = job.openResultStream( 0, BLOCK_SIZE, 3 );
+		Delivery request = nextResultRequest();
+		send( request, SchedulerConfigConstants.JSON,
+				MessageBuilder.buildErrorStatus( CLIENT, JOB, "no result" ).toString() );
+
+		try {
+			in.read();
+			fail( "The error of the scheduler ends the stream." );
+		} catch ( IOException ioe ){
+			assertTrue( ioe.getMessage().contains( "no result" ) );
+		}
+		in.close();
+	}
+
+	/**
+	 * Closing a stream drops the buffered blocks, even if the consumer waits for free space.
+	 */
+	@Test ( timeout = TIMEOUT )
+	public void testClose() throws Exception {
+		ReadableByteChannel stream = job.openResultChannel( 0, BLOCK_SIZE, 10 );
+		Delivery request = nextResultRequest();
+		sendSpecification( request, 0, 10 );
+		for ( int i = 0; i < 10; i++ ) sendBlock( request, "abcd" );
+		Thread.sleep( 200 );
+
+		stream.close();
+		assertFalse( stream.isOpen() );
+		try {
+			stream.read( ByteBuffer.allocate( BLOCK_SIZE ) );
+			fail( "A closed stream cannot be read." );
+		} catch ( ClosedChannelException cce ){}
+
+		// the client still gets the answers of other requests
+		InputStream in = job.openResultStream( 1, BLOCK_SIZE, 1 );
+		Delivery other = nextResultRequest();
+		sendSpecification( other, 1, 1 );
+		sendBlock( other, "next" );
+		assertEquals( "next", readAll( in ) );
+		in.close();
+	}
+
+	/**
+	 * Returns the next result request, other requests are skipped.
+	 */
+	private Delivery nextResultRequest() throws Exception {
+		while ( true ){
+			Delivery delivery = requests.poll( TIMEOUT, TimeUnit.MILLISECONDS );
+			JSONObject request = new JSONObject( new String( delivery.getBody(), "UTF-8" ) );
+			if ( RequestType.REQUEST_RESULT.equals( RequestType.getRequestType( request ) ) ) return delivery;
+		}
+	}
+
+	private void sendSpecification( Delivery request, int fileIndex, long blocks ) throws IOException {
+		send( request, SchedulerConfigConstants.JSON,
+				MessageBuilder.buildRequestResult( CLIENT, JOB, fileIndex, BLOCK_SIZE, blocks ).toString() );
+	}
+
+	private void sendBlock( Delivery request, String block ) throws IOException {
+		send( request, "text/plain", block );
+	}
+
+	/**
+	 * Replies a result request like the scheduler does.
+	 */
+	private void send( Delivery request, String contentType, String body ) throws IOException {
+		BasicProperties props = new BasicProperties.Builder()
+				.contentType( contentType )
+				.contentEncoding( "UTF-8" )
+				.correlationId( request.getProperties().getCorrelationId() )
+				.build();
+		channel.basicPublish( "", request.getProperties().getReplyTo(), props, body.getBytes( "UTF-8" ) );
+	}
+
+	private static String readAll( InputStream in ) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[3]; // smaller than a block
+		int read;
+		while ( (read = in.read( buffer )) >= 0 ) out.write( buffer, 0, read );
+		return new String( out.toByteArray(), "UTF-8" );
+	}
+}
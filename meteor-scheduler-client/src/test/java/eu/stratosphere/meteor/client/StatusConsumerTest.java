@@ -0,0 +1,183 @@
+package eu.stratosphere.meteor.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Envelope;
+
+import eu.stratosphere.meteor.common.DSCLJob;
+import eu.stratosphere.meteor.common.JobState;
+import eu.stratosphere.meteor.common.JobStateListener;
+import eu.stratosphere.meteor.common.MessageBuilder;
+import eu.stratosphere.meteor.common.SchedulerConfigConstants;
+import eu.stratosphere.meteor.common.transport.InMemoryBroker;
+import eu.stratosphere.meteor.common.transport.Transport;
+import eu.stratosphere.meteor.common.transport.TransportChannel;
+import eu.stratosphere.meteor.common.transport.TransportConsumer;
+
+/**
+ * Tests that the status consumer decodes single status messages and batches of them and applies
+ * them to the jobs of the client. The status messages are published on an in-memory broker like
+ * the scheduler does.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class StatusConsumerTest {
+
+	private static final String CLIENT = "status-client";
+	private static final String STATUS_EXCHANGE = "status";
+	private static final long TIMEOUT = 5_000;
+
+	private static final BasicProperties JSON_PROPS = new BasicProperties.Builder()
+			.contentType( SchedulerConfigConstants.JSON )
+			.contentEncoding( "UTF-8" )
+			.build();
+
+	private InMemoryBroker broker;
+	private Transport transport;
+	private TransportChannel channel;
+	private DOPAClient client;
+
+	@Before
+	public void setup() throws Exception {
+		broker = new InMemoryBroker();
+		transport = broker.newTransport();
+		channel = transport.createChannel();
+		answerRegistrations();
+
+		client = DOPAClient.createNewClient( CLIENT );
+		client.setTransportFactory( broker );
+		assertTrue( client.connect() );
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.disconnect();
+		transport.close();
+		broker.shutdown();
+	}
+
+	/**
+	 * A status is applied to its job with its timings and passed to the listeners.
+	 */
+	@Test ( timeout = TIMEOUT )
+	public void testStatus() throws Exception {
+		final BlockingQueue<JobState> changes = new LinkedBlockingQueue<JobState>();
+		DSCLJobImpl job = (DSCLJobImpl) client.reconnectJob( "job", new JobStateListener() {
+			@Override
+			public void stateChanged( DSCLJob job, JobState newStatus ){ changes.add( newStatus ); }
+		});
+
+		JSONObject status = MessageBuilder.buildJobStatus( CLIENT, "job", JobState.FINISHED );
+		publish( MessageBuilder.addTimings( status, Collections.singletonMap( "execution", 12.5 ) ) );
+
+		assertEquals( JobState.FINISHED, changes.poll( TIMEOUT, TimeUnit.MILLISECONDS ) );
+		assertEquals( JobState.FINISHED, job.getStatus() );
+		assertEquals( Collections.singletonMap( "execution", 12.5 ), job.getTimings() );
+	}
+
+	/**
+	 * The statuses of a batch are applied in their order, messages which aren't json are ignored.
+	 */
+	@Test ( timeout = TIMEOUT )
+	public void testBatch() throws Exception {
+		final BlockingQueue<String> changes = new LinkedBlockingQueue<String>();
+		JobStateListener listener = new JobStateListener() {
+			@Override
+			public void stateChanged( DSCLJob job, JobState newStatus ){ changes.add( job.getID() + ":" + newStatus ); }
+		};
+		client.reconnectJob( "first", listener );
+		client.reconnectJob( "second", listener );
+
+		channel.basicPublish( STATUS_EXCHANGE, SchedulerConfigConstants.getRoutingKey( CLIENT ),
+				new BasicProperties.Builder().contentType( "text/plain" ).build(), "FINISHED".getBytes( "UTF-8" ) );
+		publish( MessageBuilder.buildStatusBatch( CLIENT, Arrays.asList(
+				MessageBuilder.buildJobStatus( CLIENT, "first", JobState.WAITING ),
+				MessageBuilder.buildJobStatus( CLIENT, "second", JobState.RUNNING ),
+				MessageBuilder.buildJobStatus( CLIENT, "first", JobState.RUNNING ) ) ) );
+
+		List<String> received = new ArrayList<String>();
+		for ( int i = 0; i < 3; i++ ) received.add( changes.poll( TIMEOUT, TimeUnit.MILLISECONDS ) );
+		assertTrue( received.indexOf( "first:WAITING" ) < received.indexOf( "first:RUNNING" ) );
+		assertTrue( received.contains( "second:RUNNING" ) );
+		assertNull( changes.poll( 100, TimeUnit.MILLISECONDS ) );
+	}
+
+	/**
+	 * The status of a job which the client doesn't know, e.g. of an earlier instance of the client,
+	 * is ignored. It doesn't add the job.
+	 */
+	@Test ( timeout = TIMEOUT )
+	public void testUnknownJob() throws Exception {
+		DSCLJobImpl known = (DSCLJobImpl) client.reconnectJob( "known" );
+		publish( MessageBuilder.buildJobStatus( CLIENT, "unknown", JobState.FINISHED ) );
+		publish( MessageBuilder.buildJobStatus( CLIENT, "known", JobState.FINISHED ) );
+
+		assertEquals( JobState.FINISHED, known.waitForState( EnumSet.of( JobState.FINISHED ), TIMEOUT ) );
+		assertFalse( client.getJobList().containsKey( "unknown" ) );
+		assertEquals( 1, client.getJobList().size() );
+	}
+
+	/**
+	 * A broken entry of a batch is skipped, the other entries are still applied.
+	 */
+	@Test ( timeout = TIMEOUT )
+	public void testBrokenBatchEntry() throws Exception {
+		DSCLJobImpl first = (DSCLJobImpl) client.reconnectJob( "first" );
+		DSCLJobImpl second = (DSCLJobImpl) client.reconnectJob( "second" );
+
+		JSONObject broken = new JSONObject().put( "RequestCode", "JOB_STATUS" );
+		publish( MessageBuilder.buildStatusBatch( CLIENT, Arrays.asList(
+				MessageBuilder.buildJobStatus( CLIENT, "first", JobState.WAITING ),
+				broken,
+				MessageBuilder.buildJobStatus( CLIENT, "second", JobState.RUNNING ) ) ) );
+
+		assertEquals( JobState.WAITING, first.waitForState( EnumSet.of( JobState.WAITING ), TIMEOUT ) );
+		assertEquals( JobState.RUNNING, second.waitForState( EnumSet.of( JobState.RUNNING ), TIMEOUT ) );
+	}
+
+	/**
+	 * Publishes a status message to the client like the scheduler does.
+	 */
+	private void publish( JSONObject message ) throws IOException {
+		channel.basicPublish( STATUS_EXCHANGE, SchedulerConfigConstants.getRoutingKey( CLIENT ), JSON_PROPS,
+				message.toString().getBytes( "UTF-8" ) );
+	}
+
+	/**
+	 * Answers registrations of the client like the scheduler does.
+	 */
+	private void answerRegistrations() throws IOException {
+		String exchange = SchedulerConfigConstants.getRequestExchange( CLIENT );
+		channel.exchangeDeclare( exchange, InMemoryBroker.TOPIC, true );
+		channel.exchangeDeclare( STATUS_EXCHANGE, InMemoryBroker.DIRECT, false );
+		channel.queueDeclare( "registrations", false, true, true );
+		channel.queueBind( "registrations", exchange, "register.login" );
+		channel.basicConsume( "registrations", true, new TransportConsumer( channel ) {
+			@Override
+			public void handleDelivery( String consumerTag, Envelope envelope, BasicProperties properties, byte[] body )
+					throws IOException {
+				channel.basicPublish( "", properties.getReplyTo(), properties, STATUS_EXCHANGE.getBytes( "UTF-8" ) );
+			}
+		});
+	}
+}
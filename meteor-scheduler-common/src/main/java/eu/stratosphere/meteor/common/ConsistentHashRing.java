@@ -0,0 +1,92 @@
+package eu.stratosphere.meteor.common;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maps keys (client IDs) to shards by consistent hashing. Each shard owns a number of
+ * virtual nodes on a hash ring and a key belongs to the first virtual node following
+ * its own hash. If a shard is added only the keys of the new virtual nodes move to the
+ * new shard, all others stay where they are.
+ *
+ * The hash doesn't depend on the JVM, so clients and schedulers compute the same mapping.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class ConsistentHashRing {
+
+	/**
+	 * Charset to hash keys
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * The ring <Hash -> Shard>
+	 */
+	private final TreeMap<Long, Integer> ring;
+
+	/**
+	 * Number of shards
+	 */
+	private final int shards;
+
+	/**
+	 * Creates a ring of given number of shards.
+	 * @param shards number of shards, at least 1
+	 * @param virtualNodes virtual nodes per shard, at least 1
+	 * @throws IllegalArgumentException if one of the arguments is smaller than 1
+	 */
+	public ConsistentHashRing( int shards, int virtualNodes ) throws IllegalArgumentException {
+		if ( shards < 1 || virtualNodes < 1 )
+			throw new IllegalArgumentException("A ring needs at least one shard and one virtual node per shard.");
+
+		this.shards = shards;
+		this.ring = new TreeMap<Long, Integer>();
+
+		for ( int shard = 0; shard < shards; shard++ )
+			for ( int node = 0; node < virtualNodes; node++ )
+				ring.put( hash( "shard-" + shard + "#" + node ), shard );
+	}
+
+	/**
+	 * Returns the shard of given key.
+	 * @param key client ID for instance
+	 * @return shard index between 0 and getNumberOfShards()-1
+	 */
+	public int getShard( String key ){
+		if ( shards == 1 ) return 0;
+
+		Map.Entry<Long, Integer> entry = ring.ceilingEntry( hash( key ) );
+		if ( entry == null ) entry = ring.firstEntry(); // end of the ring
+		return entry.getValue();
+	}
+
+	/**
+	 * Returns the number of shards
+	 * @return number of shards
+	 */
+	public int getNumberOfShards(){
+		return shards;
+	}
+
+	/**
+	 * Hashes the given string with the first 8 bytes of MD5.
+	 * @param key
+	 * @return hash
+	 */
+	private static long hash( String key ){
+		MessageDigest md5;
+		try { md5 = MessageDigest.getInstance("MD5"); }
+		catch ( NoSuchAlgorithmException nsae ){ throw new IllegalStateException( "MD5 isn't supported.", nsae ); }
+
+		byte[] digest = md5.digest( key.getBytes( UTF8 ) );
+		long hash = 0;
+		for ( int i = 0; i < 8; i++ )
+			hash = (hash << 8) | (digest[i] & 0xFF);
+		return hash;
+	}
+}
@@ -1,9 +1,12 @@
 package eu.stratosphere.meteor.common;
 
 import java.io.File;
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Created by mleich on 11/12/13.
@@ -12,9 +15,9 @@ public interface DSCLJob {
 
     /**
      * Returns the map of all results saved on this job.
-     * @return a modifiable map of results
+     * @return a modifiable, thread-safe map of results
      */
-    public HashMap<Integer, File> getResults();
+    public Map<Integer, File> getResults();
 
     /**
      * Returns the current status of this job.
@@ -22,6 +25,24 @@ public interface DSCLJob {
      */
     public JobState getStatus();
 
+    /**
+     * Blocks until this job reaches one of the given states, without polling. Include the final
+     * states (ERROR, DELETED) if you don't want to wait in vain for a job which failed.
+     * @param targetStates states to wait for, e.g. EnumSet.of( JobState.FINISHED, JobState.ERROR )
+     * @param timeout maximum waiting time in milliseconds, 0 waits forever
+     * @return the reached state or null if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public JobState waitForState( Set<JobState> targetStates, long timeout ) throws InterruptedException;
+
+    /**
+     * Returns the time in milliseconds the scheduler spent in each phase of this job (receive,
+     * wait, dispatch, execution, result and total), as reported with the last status update.
+     * Phases the job didn't pass yet are missing.
+     * @return phase name -> milliseconds, empty if the scheduler didn't report any
+     */
+    public Map<String, Double> getTimings();
+
     /**
      * Returns the ID of this object.
      * @return ID
@@ -74,6 +95,71 @@ public interface DSCLJob {
      */
     public void requestResult( int fileIndex, int desiredBlockSize, long maxNumberOfBlocks, ResultFileHandler handler );
 
+    /**
+     * Requests a result file by specified index and returns a channel to read it while it's received.
+     * The channel buffers a bounded number of blocks, so the whole file is never held in memory. If the
+     * reader is slow, receiving blocks is paused. Close the channel to cancel the transfer.
+     * @param fileIndex of result file
+     * @param desiredBlockSize size of block you want for one block, scheduler can choose own sizes if necessary
+     * @param maxNumberOfBlocks threshold for blocks
+     * @return channel over the result file, it throws an IOException if the scheduler sends an error
+     * @throws IOException if the request cannot be sent
+     */
+    public ReadableByteChannel openResultChannel( int fileIndex, int desiredBlockSize, long maxNumberOfBlocks ) throws IOException;
+
+    /**
+     * Requests a result file by specified index and returns a stream to read it while it's received.
+     * See {@link #openResultChannel(int, int, long)}.
+     * @param fileIndex of result file
+     * @param desiredBlockSize size of block you want for one block, scheduler can choose own sizes if necessary
+     * @param maxNumberOfBlocks threshold for blocks
+     * @return input stream over the result file
+     * @throws IOException if the request cannot be sent
+     */
+    public InputStream openResultStream( int fileIndex, int desiredBlockSize, long maxNumberOfBlocks ) throws IOException;
+
+    /**
+     * Returns a future which is completed with this job as soon as the scheduler received the
+     * job, which is when the first status of this job arrives.
+     * @return future of the submission
+     */
+    public SchedulerFuture<DSCLJob> getSubmission();
+
+    /**
+     * Returns a future which is completed when the job reached a final state (FINISHED, ERROR
+     * or DELETED). It's completed with that state.
+     * @return future of the completion
+     */
+    public SchedulerFuture<JobState> getCompletion();
+
+    /**
+     * Requests the HDFS path of an output file, see {@link #getLink(int)}.
+     * @param fileIndex specified index
+     * @return future completed with the path or failed with the error message of the scheduler
+     */
+    public SchedulerFuture<String> fetchLink( int fileIndex );
+
+    /**
+     * Requests a result file, see {@link #requestResult(int, int, long, ResultFileHandler)}.
+     * @param fileIndex of result file
+     * @param desiredBlockSize size of block you want for one block, scheduler can choose own sizes if necessary
+     * @param maxNumberOfBlocks threshold for blocks
+     * @param handler to handle each incoming block and put them all together
+     * @return future completed with this job after the handler got the last block
+     */
+    public SchedulerFuture<DSCLJob> fetchResult( int fileIndex, int desiredBlockSize, long maxNumberOfBlocks, ResultFileHandler handler );
+
+    /**
+     * Requests a result file and writes it into the given local file. The file is added to
+     * {@link #getResults()} when it's complete.
+     * @param fileIndex of result file
+     * @param desiredBlockSize size of block you want for one block, scheduler can choose own sizes if necessary
+     * @param maxNumberOfBlocks threshold for blocks
+     * @param target local file, overwritten if it exists
+     * @return future completed with the target file when the whole result is on the disk
+     */
+    public SchedulerFuture<File> fetchResultFile( int fileIndex, int desiredBlockSize, long maxNumberOfBlocks, File target );
+
     /**
      * Get HDFS path of output file for use in follow-up jobs. You specified the link by a given
      * index. The connection factory add the link automatically after received.
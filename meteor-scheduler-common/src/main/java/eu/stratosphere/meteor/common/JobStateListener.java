@@ -9,7 +9,9 @@ package eu.stratosphere.meteor.common;
  * given a DSCLJob to specify the job.
  * 
  * The method stateChanged will invoke asynchronously instant a new status arrived
- * the connection factory. This call all listeners of incoming jobs.
+ * the connection factory. The client calls the listeners on its dispatch executor, not on
+ * the connection thread. Listeners of one job are called in the order of its state changes,
+ * listeners of different jobs may be called concurrently.
  * 
  * @author André Greiner-Petter
  *
@@ -1,8 +1,18 @@
 package eu.stratosphere.meteor.common;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import eu.stratosphere.meteor.common.trace.TraceContext;
+
 /**
  * A static class to create json objects for requests and answers on scheduler and client side.
  * To iterate through all possible requests it includes a public static enumeration of request
@@ -22,6 +32,8 @@ public class MessageBuilder {
 	public static enum RequestType {
 		JOB_EXISTS, // ask whether this job exists on scheduler or not
 		JOB_STATUS, // ask for status of a specified job
+		JOB_STATUS_BATCH, // collection of status updates for one client - a message type as well
+		JOB_BATCH, // collection of submitted jobs of one client - a message type as well
 		JOB_ABORT, // want to abort a specified job
 		GET_LINK, // get result links of a finished job
 		REQUEST_RESULT, // get result of a finished job
@@ -47,6 +59,11 @@ public class MessageBuilder {
 		private static final String JST = "JobStatus";
 		private static final String PAT = "Path";
 		private static final String ERR = "Error";
+		private static final String STB = "Statuses";
+		private static final String JBS = "Jobs";
+		private static final String SCR = "Script";
+		private static final String TIM = "Timings";
+		private static final String TRC = "Trace";
 		
 		/**
 		 * Returns the request type object by a specified JSONObject.
@@ -110,6 +127,56 @@ public class MessageBuilder {
 		} catch (JSONException e) { return null; }
 	}
 	
+	/**
+	 * Returns one json object which includes all given status objects of a client. The scheduler
+	 * uses this to send many status updates in just one message.
+	 * @param clientID of client
+	 * @param statuses collection of status objects, each build by buildJobStatus or buildErrorStatus
+	 * @return json object with all given status objects
+	 */
+	public static JSONObject buildStatusBatch( String clientID, Collection<JSONObject> statuses ){
+		JSONObject obj = RequestType.JOB_STATUS_BATCH.createJSONRequest(clientID, "");
+		
+		try {
+			// a batch doesn't belong to a single job
+			obj.remove(RequestType.JID);
+			
+			JSONArray array = new JSONArray();
+			for ( JSONObject status : statuses )
+				array.put( status );
+			obj.put( RequestType.STB, array );
+		} catch ( JSONException e ){}
+		
+		return obj;
+	}
+	
+	/**
+	 * Returns one json object which includes the scripts of many jobs of a client. Clients use
+	 * this to submit many jobs in just one message.
+	 * @param clientID of client
+	 * @param scripts meteor scripts by job ID, submitted in iteration order
+	 * @return json object with all given jobs
+	 */
+	public static JSONObject buildJobBatch( String clientID, Map<String, String> scripts ){
+		JSONObject obj = RequestType.JOB_BATCH.createJSONRequest(clientID, "");
+		
+		try {
+			// a batch doesn't belong to a single job
+			obj.remove(RequestType.JID);
+			
+			JSONArray array = new JSONArray();
+			for ( Map.Entry<String, String> entry : scripts.entrySet() ){
+				JSONObject job = new JSONObject();
+				job.put( RequestType.JID, entry.getKey() );
+				job.put( RequestType.SCR, entry.getValue() );
+				array.put( job );
+			}
+			obj.put( RequestType.JBS, array );
+		} catch ( JSONException e ){}
+		
+		return obj;
+	}
+	
 	/**
 	 * Build an error status object with given error message
 	 * @param clientID
@@ -199,6 +266,33 @@ public class MessageBuilder {
 		catch (JSONException e) { return obj;	}
 	}
 	
+	/**
+	 * Adds the time the scheduler spent in each phase of a job to a status.
+	 * @param obj status of the job
+	 * @param timings phase name -> milliseconds
+	 * @return given json object with added timings
+	 */
+	public static JSONObject addTimings( JSONObject obj, Map<String, Double> timings ){
+		try { 
+			JSONObject json = new JSONObject();
+			for ( Map.Entry<String, Double> timing : timings.entrySet() )
+				json.put( timing.getKey(), timing.getValue().doubleValue() );
+			return obj.put( RequestType.TIM, json ); 
+		} catch (JSONException e) { return obj; }
+	}
+	
+	/**
+	 * Adds the trace context of the span which sent a status. Statuses are batched, so they
+	 * carry their context themselves instead of the message headers.
+	 * @param obj status of the job
+	 * @param context of the sending span
+	 * @return given json object with added context
+	 */
+	public static JSONObject addTrace( JSONObject obj, TraceContext context ){
+		try { return obj.put( RequestType.TRC, context.toString() ); }
+		catch (JSONException e) { return obj; }
+	}
+	
 	/**
 	 * Returns client ID
 	 * @param request
@@ -232,6 +326,44 @@ public class MessageBuilder {
 		} catch (JSONException e) { return null; }
 	}
 	
+	/**
+	 * Returns all status objects included in a status batch. If the given object isn't a batch
+	 * it returns an empty list.
+	 * @param batch
+	 * @return list of status objects
+	 */
+	public static List<JSONObject> getStatusBatch( JSONObject batch ){
+		List<JSONObject> statuses = new ArrayList<JSONObject>();
+		
+		try {
+			JSONArray array = batch.getJSONArray( RequestType.STB );
+			for ( int i = 0; i < array.length(); i++ )
+				statuses.add( array.getJSONObject(i) );
+		} catch ( JSONException e ){}
+		
+		return statuses;
+	}
+	
+	/**
+	 * Returns all jobs included in a job batch in the order of submission. If the given object 
+	 * isn't a batch it returns an empty map.
+	 * @param batch
+	 * @return meteor scripts by job ID
+	 */
+	public static Map<String, String> getJobBatch( JSONObject batch ){
+		Map<String, String> scripts = new LinkedHashMap<String, String>();
+		
+		try {
+			JSONArray array = batch.getJSONArray( RequestType.JBS );
+			for ( int i = 0; i < array.length(); i++ ){
+				JSONObject job = array.getJSONObject(i);
+				scripts.put( job.getString( RequestType.JID ), job.getString( RequestType.SCR ) );
+			}
+		} catch ( JSONException e ){}
+		
+		return scripts;
+	}
+	
 	/**
 	 * Returns path
 	 * @param request
@@ -252,6 +384,35 @@ public class MessageBuilder {
 		catch (JSONException e) { return null; }
 	}
 	
+	/**
+	 * Returns the time the scheduler spent in each phase of a job. If the status doesn't
+	 * include timings it returns an empty map.
+	 * @param status
+	 * @return phase name -> milliseconds
+	 */
+	public static Map<String, Double> getTimings( JSONObject status ){
+		Map<String, Double> timings = new LinkedHashMap<String, Double>();
+		
+		try {
+			JSONObject json = status.getJSONObject( RequestType.TIM );
+			for ( Iterator<?> keys = json.keys(); keys.hasNext(); ){
+				String key = keys.next().toString();
+				timings.put( key, json.getDouble( key ) );
+			}
+		} catch ( JSONException e ){}
+		
+		return timings;
+	}
+	
+	/**
+	 * Returns the trace context of the span which sent a status.
+	 * @param status
+	 * @return context or null if the status isn't traced
+	 */
+	public static TraceContext getTrace( JSONObject status ){
+		return TraceContext.parse( status.optString( RequestType.TRC, null ) );
+	}
+	
 	/**
 	 * Returns fileIndex
 	 * @param request
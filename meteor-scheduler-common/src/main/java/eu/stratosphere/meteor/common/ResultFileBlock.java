@@ -1,10 +1,15 @@
 package eu.stratosphere.meteor.common;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 /**
  * Represents a file block of big file. Created by incoming messages from the scheduler
  * and used by result file handlers.
+ * 
+ * The block wraps the received message body without copying it. The string representation
+ * is decoded when it's requested the first time, so handlers which only write bytes never
+ * pay for decoding.
  *
  * @author André Greiner-Petter
  *
@@ -19,28 +24,36 @@ public class ResultFileBlock {
 	private final long numOfAllBlocks;
 	private final int informationLength;
 	
-	/** calculated informations **/
+	/** calculated informations, decoded lazily **/
 	private String stringRepresentation;
 	
 	/**
 	 * It creates a block object and configure usable informations.
-	 * @param block the byte[] itself
+	 * @param block the byte[] itself, it will be wrapped and not copied
 	 * @param encoding the encoding type for this object
 	 * @param blockIdx the index of this block
 	 */
 	public ResultFileBlock( byte[] block, String encoding, int blockIdx, int blockSize, long numOfAllBlocks ){
-		this.encoding = Charset.forName(encoding);
+		this( block, Charset.forName(encoding), blockIdx, blockSize, numOfAllBlocks );
+	}
+	
+	/**
+	 * It creates a block object and configure usable informations.
+	 * @param block the byte[] itself, it will be wrapped and not copied
+	 * @param encoding the encoding type for this object
+	 * @param blockIdx the index of this block
+	 */
+	public ResultFileBlock( byte[] block, Charset encoding, int blockIdx, int blockSize, long numOfAllBlocks ){
+		this.block = block;
+		this.encoding = encoding;
 		this.blockIdx = blockIdx;
 		this.blockSize = blockSize;
 		this.numOfAllBlocks = numOfAllBlocks;
-		this.stringRepresentation = new String( block, this.encoding );
 		this.informationLength = block.length;
-		
-		this.block = new byte[blockSize];
-        System.arraycopy(block, 0, this.block, 0, block.length);
 	}
 
 	/**
+	 * Returns the received bytes themselves (no copy). Don't modify them.
 	 * @return the block
 	 */
 	public byte[] getBlock() {
@@ -48,11 +61,20 @@ public class ResultFileBlock {
 	}
 	
 	/**
-	 * The block itself got a static size. First block got the same size as each other.
-	 * But the current informations are not reaches the end of the block for the whole time.
-	 * This informations returns the index where new informations end at the block.
+	 * Returns a read-only view of the received bytes. Use it to write the block to
+	 * a channel without copying.
+	 * @return read-only buffer from position 0 to informationLength()
+	 */
+	public ByteBuffer getByteBuffer() {
+		return ByteBuffer.wrap( block, 0, informationLength ).asReadOnlyBuffer();
+	}
+	
+	/**
+	 * The scheduler sends blocks of a static size (see getBlockSize()), but the last block
+	 * usually doesn't reach the end of the block size. This informations returns the index where
+	 * new informations end at the block, which is the length of the received body.
 	 * 
-	 * So block[0] to block[informationLength()] contains the bytes of this block.
+	 * So block[0] to block[informationLength()-1] contains the bytes of this block.
 	 * 
 	 * @return index where informations ends
 	 */
@@ -91,9 +113,16 @@ public class ResultFileBlock {
 	}
 
 	/**
+	 * Decodes the block by its encoding the first time it's called.
 	 * @return the stringRepresentation
 	 */
 	public String getStringRepresentation() {
-		return stringRepresentation;
+		// strings are immutable, concurrent callers decode twice at worst
+		String string = stringRepresentation;
+		if ( string == null ){
+			string = new String( block, 0, informationLength, encoding );
+			stringRepresentation = string;
+		}
+		return string;
 	}
 }
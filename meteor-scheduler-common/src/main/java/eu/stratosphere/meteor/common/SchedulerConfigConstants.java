@@ -56,10 +56,30 @@ public final class SchedulerConfigConstants {
 	 * True: rabbitMQ delete a message from the queue automatically after the scheduler peeked for it.
 	 * False: rabbitMQ server holds the message while the scheduler doesn't acknowledged it manually.
 	 * 
-	 * If (for any reason) we need to set this flag to false, please checkout the information box 
-	 * "Note on message persistance" at www.rabbitmq.com/tutorials/tutorial-two-java.html
+	 * The scheduler acknowledges a request after it handled it. Jobs and registrations are 
+	 * acknowledged after they're queued, or after they're forced to the journal if JOURNAL_DIRECTORY
+	 * is set. So a request which arrives while the scheduler crashes is delivered again.
+	 * For more informations checkout the information box "Note on message persistance" at 
+	 * www.rabbitmq.com/tutorials/tutorial-two-java.html
 	 */
-	public static final boolean REQUEST_AUTO_ACKNOWLEDGES = true;
+	public static final boolean REQUEST_AUTO_ACKNOWLEDGES = false;
+	
+	/**
+	 * Delivery mode of submissions and requests. Persistent messages in the durable request queue
+	 * survive a restart of the message broker.
+	 */
+	public static final int PERSISTENT = 2;
+	
+	/**
+	 * AMQP header of submissions and requests which a client publishes again after its connection
+	 * recovered. The scheduler may have received them already.
+	 */
+	public static final String REPLAY_HEADER = "x-replayed";
+	
+	/**
+	 * The maximum number of requests delivered to the scheduler but not acknowledged yet.
+	 */
+	public static int REQUEST_PREFETCH_COUNT = 1000;
 	
 	/**
 	 * The routing key mask for jobs.
@@ -68,6 +88,13 @@ public final class SchedulerConfigConstants {
 	 */
 	public static final String JOB_KEY_MASK = "setJob.*.#";
 	
+	/**
+	 * The routing key mask for batches of jobs. The body is build by MessageBuilder.buildJobBatch.
+	 * 
+	 * Routing Key: setJobs.<clientID>
+	 */
+	public static final String BATCH_KEY_MASK = "setJobs.*";
+	
 	/**
 	 * The routing key mask for requests.
 	 * 
@@ -98,6 +125,201 @@ public final class SchedulerConfigConstants {
 	 */
 	public static final int MAX_BLOCK_SIZE = 100 * 1024 * 1024;
 	
+	/**
+	 * The time window (in milliseconds) the scheduler collects status changes of one client before
+	 * it sends them as one message. Within a window only the latest status of each job is sent.
+	 * Set it to 0 to send each status update instantly.
+	 */
+	public static long STATUS_NOTIFICATION_WINDOW = 20;
+	
+	/**
+	 * The number of result blocks a result stream buffers on the client before the message broker
+	 * stops sending until the reader catches up.
+	 */
+	public static int RESULT_STREAM_BUFFER_BLOCKS = 4;
+	
+	/**
+	 * The number of threads a client uses to invoke JobStateListeners.
+	 */
+	public static int LISTENER_DISPATCH_THREADS = 2;
+	
+	/**
+	 * The maximum number of state changes waiting for their listeners on a client. Further state
+	 * changes are dropped and reported.
+	 */
+	public static int LISTENER_DISPATCH_CAPACITY = 10000;
+	
+	/**
+	 * The waiting time of a state change for its listeners in milliseconds after that it's 
+	 * reported as lagging.
+	 */
+	public static long LISTENER_LAG_THRESHOLD = 1000;
+	
+	/**
+	 * The maximum number of jobs a bulk submission publishes in one message. The client waits
+	 * for the confirmation of the message broker once per batch.
+	 */
+	public static int SUBMIT_BATCH_SIZE = 500;
+	
+	/**
+	 * The time a client waits for the confirmation of a published batch in milliseconds.
+	 */
+	public static long SUBMIT_CONFIRM_TIMEOUT = 10000;
+	
+	/**
+	 * The directory of the job journal of the scheduler. The scheduler journals registrations,
+	 * submissions, state changes and aborts there and replays them after a restart. Set it to
+	 * null to keep all jobs in memory only.
+	 */
+	public static String JOURNAL_DIRECTORY = null;
+	
+	/**
+	 * The maximum time (in milliseconds) the journal collects records before it forces them to 
+	 * the disk together. A submission is durable at most this time plus one fsync after it arrived.
+	 */
+	public static long JOURNAL_COMMIT_DELAY = 5;
+	
+	/**
+	 * The number of collected journal bytes which forces them to the disk before the commit
+	 * delay is over.
+	 */
+	public static int JOURNAL_COMMIT_BYTES = 1024 * 1024;
+	
+	/**
+	 * The time (in milliseconds) between two snapshots of the scheduler state. After a snapshot 
+	 * the older journal segments are deleted, so a restart restores the snapshot and replays only
+	 * the changes since. Set it to 0 to keep the whole journal.
+	 */
+	public static long SNAPSHOT_INTERVAL = 60 * 1000;
+	
+	/**
+	 * The directory of the result index of the scheduler. The index keeps the finished jobs with
+	 * their result files, sizes and record counts in a memory-mapped file instead of the heap and
+	 * keeps them over restarts. Set it to null to keep finished jobs in memory.
+	 */
+	public static String RESULT_INDEX_DIRECTORY = null;
+	
+	/**
+	 * The initial number of slots of a new result index. The index grows if it's needed.
+	 */
+	public static int RESULT_INDEX_CAPACITY = 4096;
+	
+	/**
+	 * The time (in milliseconds) the results of a finished job are kept. After that the job
+	 * is removed and its result files are deleted. Set it to 0 to keep results until the client
+	 * aborts the job.
+	 */
+	public static long RESULT_EXPIRATION = 0;
+	
+	/**
+	 * The maximum number of result files deleted in one batch.
+	 */
+	public static int RECLAIM_BATCH_SIZE = 100;
+	
+	/**
+	 * The waiting time (in milliseconds) between two batches of deleted result files. It limits
+	 * the load of the deletions on the disk or the name node while jobs are running.
+	 */
+	public static long RECLAIM_INTERVAL = 1000;
+	
+	/**
+	 * The maximum number of queued jobs per client. Further jobs are rejected with an error
+	 * status. Set it to 0 for no limit.
+	 */
+	public static int CLIENT_QUEUE_QUOTA = 0;
+	
+	/**
+	 * The maximum number of result transfers per client at the same time. Further result
+	 * requests are answered with an error. Set it to 0 for no limit.
+	 */
+	public static int CLIENT_TRANSFER_QUOTA = 0;
+	
+	/**
+	 * The maximum bytes of stored results per client. If a client reaches it, its new jobs
+	 * are rejected with an error status until it aborts finished jobs. Set it to 0 for no limit.
+	 */
+	public static long CLIENT_STORAGE_QUOTA = 0;
+	
+	/**
+	 * Whether the scheduler exports its metrics over JMX. The metrics are collected anyway.
+	 */
+	public static boolean METRICS_JMX = true;
+	
+	/**
+	 * File the spans of traced requests are appended to, one json object per line. Null
+	 * doesn't export spans, but trace contexts are passed on anyway.
+	 */
+	public static String TRACE_FILE = null;
+	
+	/**
+	 * The first waiting time (in milliseconds) before a lost connection to RabbitMQ is
+	 * reestablished. The waiting time doubles after each failed attempt.
+	 */
+	public static long RECOVERY_INITIAL_INTERVAL = 500;
+	
+	/**
+	 * The maximum waiting time (in milliseconds) between two attempts to reestablish
+	 * a lost connection to RabbitMQ.
+	 */
+	public static long RECOVERY_MAX_INTERVAL = 30_000;
+	
+	/**
+	 * The number of request shards. Each shard has its own request exchange and is served by
+	 * one scheduler instance. Clients are mapped to shards by a {@link ConsistentHashRing}, so
+	 * clients and all schedulers have to use the same number.
+	 */
+	public static int REQUEST_SHARDS = 1;
+	
+	/**
+	 * The shard served by this scheduler instance, between 0 and REQUEST_SHARDS-1.
+	 */
+	public static int SCHEDULER_SHARD = 0;
+	
+	/**
+	 * Virtual nodes per shard on the hash ring. More nodes distribute the clients more evenly.
+	 */
+	public static final int SHARD_VIRTUAL_NODES = 128;
+	
+	/**
+	 * The ring of the current number of shards, created once needed
+	 */
+	private static volatile ConsistentHashRing shardRing;
+	
+	/**
+	 * Returns the shard of a client.
+	 * @param clientID specified client
+	 * @return shard index
+	 */
+	public static int getShard( String clientID ){
+		if ( REQUEST_SHARDS <= 1 ) return 0;
+		
+		ConsistentHashRing ring = shardRing;
+		if ( ring == null || ring.getNumberOfShards() != REQUEST_SHARDS ){
+			ring = new ConsistentHashRing( REQUEST_SHARDS, SHARD_VIRTUAL_NODES );
+			shardRing = ring;
+		}
+		return ring.getShard( clientID );
+	}
+	
+	/**
+	 * Returns the name of the request exchange of given shard. The first shard uses
+	 * REQUEST_EXCHANGE itself, so a single scheduler works like before.
+	 * @param shard index
+	 * @return name of the exchange
+	 */
+	public static String getRequestExchange( int shard ){
+		return shard == 0 ? REQUEST_EXCHANGE : REQUEST_EXCHANGE + "." + shard;
+	}
+	
+	/**
+	 * Returns the name of the request exchange a client has to publish to.
+	 * @param clientID specified client
+	 * @return name of the exchange
+	 */
+	public static String getRequestExchange( String clientID ){
+		return getRequestExchange( getShard( clientID ) );
+	}
+	
 	/**
 	 * Generate a key by given queueName. This method warrant consistency.
 	 * @param clientName given name of a queue
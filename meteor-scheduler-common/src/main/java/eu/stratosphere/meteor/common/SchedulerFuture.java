@@ -0,0 +1,184 @@
+package eu.stratosphere.meteor.common;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The result of an asynchronous operation on the scheduler, like a submission, the completion
+ * of a job or a requested link. The future is completed by the consumers of the client when the
+ * answer of the scheduler arrives, so waiting needs no own thread.
+ *
+ * You can block with get() or register callbacks. Callbacks are invoked by the thread which
+ * completes the future (a consumer thread), or instantly if the future is already done. Keep
+ * them short or hand the work over to your own executor.
+ *
+ * @author André Greiner-Petter
+ *
+ * @param <V> type of the result
+ */
+public class SchedulerFuture<V> implements Future<V> {
+
+	private static final Log LOG = LogFactory.getLog( SchedulerFuture.class );
+
+	/**
+	 * Callback for the result of a future.
+	 * @param <V> type of the result
+	 */
+	public interface Callback<V> {
+		/**
+		 * Called when the future completed successfully.
+		 * @param value result
+		 */
+		public void completed( V value );
+
+		/**
+		 * Called when the future failed or was cancelled.
+		 * @param cause of the failure, a CancellationException if it was cancelled
+		 */
+		public void failed( Throwable cause );
+	}
+
+	/** states **/
+	private static final int PENDING = 0, COMPLETED = 1, FAILED = 2, CANCELLED = 3;
+
+	/** current state, guarded by this **/
+	private int state = PENDING;
+
+	/** results, written once before the latch opens **/
+	private volatile V value;
+	private volatile Throwable cause;
+
+	/** opens when the future is done **/
+	private final CountDownLatch done = new CountDownLatch( 1 );
+
+	/** registered callbacks **/
+	private final CopyOnWriteArrayList<Callback<? super V>> callbacks = new CopyOnWriteArrayList<Callback<? super V>>();
+
+	/**
+	 * Completes this future with given value. Does nothing if the future is already done.
+	 * @param value result
+	 * @return true if this call completed the future
+	 */
+	public boolean complete( V value ){
+		synchronized ( this ){
+			if ( state != PENDING ) return false;
+			this.value = value;
+			this.state = COMPLETED;
+		}
+		finish();
+		return true;
+	}
+
+	/**
+	 * Fails this future with given cause. Does nothing if the future is already done.
+	 * @param cause of the failure
+	 * @return true if this call failed the future
+	 */
+	public boolean fail( Throwable cause ){
+		return fail( cause, FAILED );
+	}
+
+	/**
+	 * Cancels the waiting. The operation on the scheduler isn't cancelled by this, use
+	 * {@link DSCLJob#abortJob()} to abort a job.
+	 */
+	@Override
+	public boolean cancel( boolean mayInterruptIfRunning ){
+		return fail( new CancellationException("Future cancelled."), CANCELLED );
+	}
+
+	/**
+	 * Registers a callback. If the future is already done the callback is invoked instantly.
+	 * @param callback
+	 */
+	public void addCallback( Callback<? super V> callback ){
+		synchronized ( this ){
+			if ( state == PENDING ){
+				callbacks.add( callback );
+				return;
+			}
+		}
+		invoke( callback );
+	}
+
+	@Override
+	public boolean isCancelled(){
+		synchronized ( this ){ return state == CANCELLED; }
+	}
+
+	@Override
+	public boolean isDone(){
+		synchronized ( this ){ return state != PENDING; }
+	}
+
+	@Override
+	public V get() throws InterruptedException, ExecutionException {
+		done.await();
+		return result();
+	}
+
+	@Override
+	public V get( long timeout, TimeUnit unit ) throws InterruptedException, ExecutionException, TimeoutException {
+		if ( !done.await( timeout, unit ) ) throw new TimeoutException("No answer of the scheduler in time.");
+		return result();
+	}
+
+	/**
+	 * Sets the failure.
+	 * @param cause of failure
+	 * @param newState FAILED or CANCELLED
+	 * @return true if the state changed
+	 */
+	private boolean fail( Throwable cause, int newState ){
+		synchronized ( this ){
+			if ( state != PENDING ) return false;
+			this.cause = cause;
+			this.state = newState;
+		}
+		finish();
+		return true;
+	}
+
+	/**
+	 * Opens the latch and invokes all callbacks.
+	 */
+	private void finish(){
+		done.countDown();
+		for ( Callback<? super V> callback : callbacks )
+			invoke( callback );
+		callbacks.clear();
+	}
+
+	/**
+	 * Invokes a callback of a done future.
+	 * @param callback
+	 */
+	private void invoke( Callback<? super V> callback ){
+		try {
+			if ( cause == null ) callback.completed( value );
+			else callback.failed( cause );
+		} catch ( RuntimeException re ){
+			// a failing callback mustn't stop the consumer thread
+			LOG.error( "Callback of a future failed.", re );
+		}
+	}
+
+	/**
+	 * Returns the result of a done future.
+	 * @return value
+	 * @throws ExecutionException if it failed
+	 */
+	private V result() throws ExecutionException {
+		if ( cause instanceof CancellationException ) throw (CancellationException) cause;
+		if ( cause != null ) throw new ExecutionException( cause );
+		return value;
+	}
+}
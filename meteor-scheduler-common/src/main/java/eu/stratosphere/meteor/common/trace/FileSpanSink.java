@@ -0,0 +1,74 @@
+package eu.stratosphere.meteor.common.trace;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Appends spans to a local file, one json object per line. Lines are buffered and written at
+ * most one second after their span finished, so tracing doesn't cost a write per span.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class FileSpanSink implements SpanSink {
+
+	private static final long FLUSH_INTERVAL = 1000000000L;
+
+	private final File file;
+
+	/**
+	 * Guarded by this
+	 */
+	private final Writer writer;
+	private long lastFlush = System.nanoTime();
+
+	/**
+	 * Opens the file to append spans.
+	 * @param file to append spans to
+	 * @throws IOException if the file cannot be opened
+	 */
+	public FileSpanSink( File file ) throws IOException {
+		this.file = file;
+		this.writer = new BufferedWriter( new OutputStreamWriter(
+				new FileOutputStream( file, true ), Charset.forName( "UTF-8" ) ) );
+	}
+
+	/**
+	 * Returns the file spans are appended to.
+	 * @return file
+	 */
+	public File getFile(){
+		return file;
+	}
+
+	@Override
+	public synchronized void export( Span span ) throws IOException {
+		writer.write( span.toJSON().toString() );
+		writer.write( '\n' );
+
+		long now = System.nanoTime();
+		if ( now - lastFlush >= FLUSH_INTERVAL ){
+			writer.flush();
+			lastFlush = now;
+		}
+	}
+
+	/**
+	 * Writes all buffered spans to the file.
+	 * @throws IOException if the spans cannot be written
+	 */
+	public synchronized void flush() throws IOException {
+		writer.flush();
+		lastFlush = System.nanoTime();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+}
@@ -0,0 +1,101 @@
+package eu.stratosphere.meteor.common.trace;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A timed operation of one hop, e.g. publishing a submission, executing a job or sending a
+ * result. Spans are started by the {@link Tracer} and exported when they're finished. The start
+ * time is the wall clock, so spans of different processes can be put in order, the duration is
+ * measured monotonically.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class Span {
+
+	private final String name;
+	private final TraceContext context;
+	private final String parentID;
+	private final long startTime;
+	private final long startNanos;
+	private final Map<String, String> tags = new LinkedHashMap<String, String>();
+
+	/**
+	 * -1 until the span is finished, guarded by this
+	 */
+	private long duration = -1;
+
+	/**
+	 * Creates a span.
+	 * @param name of the operation
+	 * @param parent context or null if this span starts a trace
+	 * @param startNanos start time from System.nanoTime()
+	 */
+	protected Span( String name, TraceContext parent, long startNanos ){
+		this.name = name;
+		this.context = TraceContext.newSpan( parent );
+		this.parentID = parent == null ? null : parent.getSpanID();
+		this.startNanos = startNanos;
+		this.startTime = System.currentTimeMillis() - (System.nanoTime() - startNanos) / 1000000;
+	}
+
+	/**
+	 * Returns the context to pass to the next hop.
+	 * @return context of this span
+	 */
+	public TraceContext getContext(){
+		return context;
+	}
+
+	/**
+	 * Returns the name of the operation.
+	 * @return name
+	 */
+	public String getName(){
+		return name;
+	}
+
+	/**
+	 * Adds a tag, e.g. the job ID.
+	 * @param key of the tag
+	 * @param value of the tag
+	 * @return this span
+	 */
+	public synchronized Span tag( String key, Object value ){
+		tags.put( key, String.valueOf( value ) );
+		return this;
+	}
+
+	/**
+	 * Finishes this span and exports it. Only the first call counts.
+	 */
+	public void finish(){
+		synchronized ( this ){
+			if ( duration >= 0 ) return;
+			duration = Math.max( 0, System.nanoTime() - startNanos );
+		}
+		Tracer.export( this );
+	}
+
+	/**
+	 * Returns this span as json object, times in microseconds.
+	 * @return json object
+	 */
+	public synchronized JSONObject toJSON(){
+		JSONObject json = new JSONObject();
+		try {
+			json.put( "traceID", context.getTraceID() );
+			json.put( "spanID", context.getSpanID() );
+			if ( parentID != null ) json.put( "parentID", parentID );
+			json.put( "name", name );
+			json.put( "start", startTime * 1000 );
+			json.put( "duration", duration / 1000 );
+			if ( !tags.isEmpty() ) json.put( "tags", new JSONObject( tags ) );
+		} catch ( JSONException je ){} // never reached, no key is null
+		return json;
+	}
+}
@@ -0,0 +1,25 @@
+package eu.stratosphere.meteor.common.trace;
+
+import java.io.IOException;
+
+/**
+ * Receives finished spans, see {@link Tracer#setSink(SpanSink)}.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public interface SpanSink {
+
+	/**
+	 * Exports a finished span. Called by the thread which finished it.
+	 * @param span finished span
+	 * @throws IOException if the span cannot be exported
+	 */
+	public void export( Span span ) throws IOException;
+
+	/**
+	 * Exports pending spans and releases all resources.
+	 * @throws IOException if pending spans cannot be exported
+	 */
+	public void close() throws IOException;
+}
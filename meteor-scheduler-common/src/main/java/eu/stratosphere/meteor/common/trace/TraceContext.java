@@ -0,0 +1,117 @@
+package eu.stratosphere.meteor.common.trace;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+/**
+ * Identifies a span within a trace. The context of the sending span is passed along with each
+ * message, in the AMQP headers x-trace-id and x-span-id, so the receiver can record its span as a
+ * child. Status updates are batched per client, so each status carries its context in the
+ * message itself (see MessageBuilder.addTrace).
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public final class TraceContext {
+
+	/**
+	 * AMQP header keys
+	 */
+	public static final String TRACE_HEADER = "x-trace-id";
+	public static final String SPAN_HEADER = "x-span-id";
+
+	private final String traceID;
+	private final String spanID;
+
+	/**
+	 * Creates a context.
+	 * @param traceID shared by all spans of a trace
+	 * @param spanID of the span
+	 */
+	public TraceContext( String traceID, String spanID ){
+		this.traceID = traceID;
+		this.spanID = spanID;
+	}
+
+	/**
+	 * Creates the context of a new span, in the trace of given parent or in a new trace.
+	 * @param parent context or null to start a new trace
+	 * @return new context
+	 */
+	public static TraceContext newSpan( TraceContext parent ){
+		String traceID = parent == null ? randomID() : parent.traceID;
+		return new TraceContext( traceID, randomID() );
+	}
+
+	/**
+	 * Returns the trace ID.
+	 * @return trace ID
+	 */
+	public String getTraceID(){
+		return traceID;
+	}
+
+	/**
+	 * Returns the span ID.
+	 * @return span ID
+	 */
+	public String getSpanID(){
+		return spanID;
+	}
+
+	/**
+	 * Returns a copy of given properties with this context in its headers.
+	 * @param props properties of a message
+	 * @return properties with trace headers
+	 */
+	public BasicProperties inject( BasicProperties props ){
+		Map<String, Object> headers = new HashMap<String, Object>();
+		if ( props.getHeaders() != null ) headers.putAll( props.getHeaders() );
+		headers.put( TRACE_HEADER, traceID );
+		headers.put( SPAN_HEADER, spanID );
+		return props.builder().headers( headers ).build();
+	}
+
+	/**
+	 * Returns the context in the headers of a message.
+	 * @param props properties of a message
+	 * @return context or null if the message isn't traced
+	 */
+	public static TraceContext extract( BasicProperties props ){
+		if ( props == null || props.getHeaders() == null ) return null;
+
+		// RabbitMQ delivers strings as LongStrings
+		Object traceID = props.getHeaders().get( TRACE_HEADER );
+		Object spanID = props.getHeaders().get( SPAN_HEADER );
+		if ( traceID == null || spanID == null ) return null;
+		return new TraceContext( traceID.toString(), spanID.toString() );
+	}
+
+	/**
+	 * Parses the string representation of a context.
+	 * @param context as returned by toString, may be null
+	 * @return context or null if the string isn't a context
+	 */
+	public static TraceContext parse( String context ){
+		if ( context == null ) return null;
+		int separator = context.indexOf( ':' );
+		if ( separator <= 0 || separator == context.length() - 1 ) return null;
+		return new TraceContext( context.substring( 0, separator ), context.substring( separator + 1 ) );
+	}
+
+	/**
+	 * Returns the context as <trace ID>:<span ID>.
+	 */
+	@Override
+	public String toString(){
+		return traceID + ":" + spanID;
+	}
+
+	private static String randomID(){
+		String id = Long.toHexString( ThreadLocalRandom.current().nextLong() );
+		return "0000000000000000".substring( id.length() ) + id;
+	}
+}
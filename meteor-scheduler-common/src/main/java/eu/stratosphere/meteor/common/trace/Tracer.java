@@ -0,0 +1,111 @@
+package eu.stratosphere.meteor.common.trace;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Starts spans and exports the finished ones to one sink per JVM. Without a sink spans are still
+ * created, so trace contexts are passed on to the next hop, but nothing is exported. Client and
+ * scheduler in the same JVM share the sink.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public final class Tracer {
+
+	private static final Log LOG = LogFactory.getLog( Tracer.class );
+
+	/**
+	 * Receives finished spans, null if nothing is exported
+	 */
+	private static volatile SpanSink sink;
+
+	/**
+	 * Closes the sink when the JVM exits, registered on first use
+	 */
+	private static Thread closer;
+
+	private Tracer(){}
+
+	/**
+	 * Starts a span now.
+	 * @param name of the operation, e.g. scheduler.execute
+	 * @param parent context from the previous hop or null to start a new trace
+	 * @return started span
+	 */
+	public static Span start( String name, TraceContext parent ){
+		return new Span( name, parent, System.nanoTime() );
+	}
+
+	/**
+	 * Starts a span at a time in the past, e.g. when a job was queued.
+	 * @param name of the operation
+	 * @param parent context from the previous hop or null to start a new trace
+	 * @param startNanos start time from System.nanoTime()
+	 * @return started span
+	 */
+	public static Span start( String name, TraceContext parent, long startNanos ){
+		return new Span( name, parent, startNanos );
+	}
+
+	/**
+	 * Returns whether finished spans are exported.
+	 * @return true if there is a sink
+	 */
+	public static boolean isEnabled(){
+		return sink != null;
+	}
+
+	/**
+	 * Sets the sink of finished spans. The former sink is closed.
+	 * @param newSink or null to stop exporting
+	 */
+	public static synchronized void setSink( SpanSink newSink ){
+		SpanSink former = sink;
+		sink = newSink;
+		if ( former != null && former != newSink ) close( former );
+
+		if ( newSink != null && closer == null ){
+			closer = new Thread( "trace-sink-closer" ){
+				@Override
+				public void run(){
+					SpanSink current = sink;
+					if ( current != null ) close( current );
+				}
+			};
+			Runtime.getRuntime().addShutdownHook( closer );
+		}
+	}
+
+	/**
+	 * Exports spans to given file, one json object per line. Does nothing if spans are exported to
+	 * this file already.
+	 * @param file to append spans to
+	 * @throws IOException if the file cannot be opened
+	 */
+	public static synchronized void exportTo( File file ) throws IOException {
+		SpanSink current = sink;
+		if ( current instanceof FileSpanSink &&
+				((FileSpanSink) current).getFile().getAbsoluteFile().equals( file.getAbsoluteFile() ) ) return;
+		setSink( new FileSpanSink( file ) );
+	}
+
+	/**
+	 * Exports a finished span.
+	 * @param span finished span
+	 */
+	static void export( Span span ){
+		SpanSink current = sink;
+		if ( current == null ) return;
+		try { current.export( span ); }
+		catch ( IOException ioe ){ LOG.warn( "Cannot export the span " + span.getName() + ".", ioe ); }
+	}
+
+	private static void close( SpanSink sink ){
+		try { sink.close(); }
+		catch ( IOException ioe ){ LOG.warn( "Cannot close the span sink.", ioe ); }
+	}
+}
@@ -0,0 +1,432 @@
+package eu.stratosphere.meteor.common.transport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+/**
+ * A message broker running in the same JVM. It's used to run the scheduler and its clients
+ * in one process, for embedded use, tests and benchmarks without a RabbitMQ server.
+ *
+ * All exchanges, queues and bindings are kept in concurrent collections. Publishing never blocks.
+ * Each queue is drained by at most one thread of the broker at the same time, so the deliveries
+ * of one queue are in order and never overlap. A consumer gets no more unacknowledged deliveries
+ * than the prefetch count of its channel allows.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class InMemoryBroker implements TransportFactory {
+	
+	/**
+	 * Exchange types
+	 */
+	public static final String DIRECT = "direct";
+	public static final String TOPIC = "topic";
+	public static final String FANOUT = "fanout";
+	
+	/**
+	 * All exchanges by name. The default exchange has no entry.
+	 */
+	private final ConcurrentHashMap<String, Exchange> exchanges;
+	
+	/**
+	 * All queues by name
+	 */
+	private final ConcurrentHashMap<String, MemoryQueue> queues;
+	
+	/**
+	 * Counter for generated queue names
+	 */
+	private final AtomicLong queueCounter;
+	
+	/**
+	 * Open connections to this broker
+	 */
+	private final ConcurrentLinkedQueue<InMemoryTransport> transports;
+	
+	/**
+	 * Threads delivering messages to consumers
+	 */
+	private final ExecutorService dispatcher;
+	
+	/**
+	 * Creates an empty broker.
+	 */
+	public InMemoryBroker(){
+		this.exchanges = new ConcurrentHashMap<String, Exchange>();
+		this.queues = new ConcurrentHashMap<String, MemoryQueue>();
+		this.queueCounter = new AtomicLong();
+		this.transports = new ConcurrentLinkedQueue<InMemoryTransport>();
+		this.dispatcher = Executors.newCachedThreadPool( new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			
+			@Override
+			public Thread newThread( Runnable r ){
+				Thread thread = new Thread( r, "in-memory-broker-" + count.incrementAndGet() );
+				thread.setDaemon( true );
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * Opens a new connection to this broker.
+	 */
+	@Override
+	public Transport newTransport() {
+		InMemoryTransport transport = new InMemoryTransport( this );
+		transports.add( transport );
+		return transport;
+	}
+	
+	/**
+	 * Simulates that the connections of all transports are lost and recover right away. Each
+	 * unacknowledged delivery is requeued and delivered again, the messages in exclusive queues
+	 * are lost. Exchanges, queues, bindings and consumers are kept, as if they were recovered.
+	 * Returns after the recovery listeners of all transports were informed.
+	 */
+	public void interruptConnections(){
+		for ( InMemoryTransport transport : transports )
+			transport.interrupt();
+		for ( InMemoryTransport transport : transports )
+			transport.notifyRecovered();
+	}
+	
+	void removeTransport( InMemoryTransport transport ){
+		transports.remove( transport );
+	}
+	
+	/**
+	 * Stops all threads of this broker. Messages which aren't delivered yet are lost.
+	 */
+	public void shutdown(){
+		dispatcher.shutdownNow();
+	}
+	
+	/**
+	 * Returns the number of messages waiting in the given queue or -1 if the queue doesn't exist.
+	 * @param queue name of the queue
+	 * @return number of ready messages
+	 */
+	public int getMessageCount( String queue ){
+		MemoryQueue q = queues.get( queue );
+		return q == null ? -1 : q.messages.size();
+	}
+	
+	/**
+	 * Declares an exchange if it doesn't exist yet.
+	 */
+	void exchangeDeclare( String name, String type ) throws IOException {
+		if ( !DIRECT.equals(type) && !TOPIC.equals(type) && !FANOUT.equals(type) )
+			throw new IOException( "Unsupported exchange type: " + type );
+		
+		Exchange existing = exchanges.putIfAbsent( name, new Exchange( type ) );
+		if ( existing != null && !existing.type.equals( type ) )
+			throw new IOException( "Exchange '" + name + "' already declared with type " + existing.type );
+	}
+	
+	/**
+	 * Declares a queue with a generated name.
+	 */
+	String queueDeclare( InMemoryTransport owner ){
+		String name = "amq.gen-" + queueCounter.incrementAndGet();
+		queueDeclare( name, owner, true );
+		return name;
+	}
+	
+	/**
+	 * Declares a queue if it doesn't exist yet. Exclusive queues belong to their owner.
+	 */
+	void queueDeclare( String name, InMemoryTransport owner, boolean exclusive ){
+		MemoryQueue queue = new MemoryQueue( name );
+		if ( queues.putIfAbsent( name, queue ) == null && exclusive )
+			owner.addExclusiveQueue( name );
+	}
+	
+	/**
+	 * Binds a queue to an exchange.
+	 */
+	void queueBind( String queue, String exchange, String routingKey ) throws IOException {
+		Exchange ex = exchanges.get( exchange );
+		if ( ex == null ) throw new IOException( "No exchange '" + exchange + "' declared." );
+		if ( !queues.containsKey( queue ) ) throw new IOException( "No queue '" + queue + "' declared." );
+		ex.bindings.addIfAbsent( new Binding( queue, routingKey ) );
+	}
+	
+	/**
+	 * Deletes a queue and all bindings to it. The consumers are cancelled.
+	 */
+	void queueDelete( String name ){
+		MemoryQueue queue = queues.remove( name );
+		if ( queue == null ) return;
+		
+		for ( Exchange ex : exchanges.values() )
+			for ( Binding binding : ex.bindings )
+				if ( binding.queue.equals( name ) ) ex.bindings.remove( binding );
+		
+		for ( Subscription s : queue.subscriptions ){
+			queue.subscriptions.remove( s );
+			s.consumer.handleCancel( s.consumerTag );
+		}
+		queue.messages.clear();
+	}
+	
+	/**
+	 * Removes all ready messages of a queue.
+	 */
+	void queuePurge( String name ){
+		MemoryQueue queue = queues.get( name );
+		if ( queue != null ) queue.messages.clear();
+	}
+	
+	/**
+	 * Routes a message to all matching queues.
+	 */
+	void publish( String exchange, String routingKey, BasicProperties props, byte[] body ) throws IOException {
+		// copy the body once, the publisher may reuse its buffer
+		Message message = new Message( exchange, routingKey, props, body == null ? new byte[0] : body.clone(), false );
+		
+		// default exchange routes by queue name
+		if ( exchange == null || exchange.isEmpty() ){
+			MemoryQueue queue = queues.get( routingKey );
+			if ( queue != null ) queue.offer( message );
+			return;
+		}
+		
+		Exchange ex = exchanges.get( exchange );
+		if ( ex == null ) throw new IOException( "No exchange '" + exchange + "' declared." );
+		
+		String[] words = TOPIC.equals( ex.type ) ? routingKey.split("\\.") : null;
+		List<String> routed = new ArrayList<String>( 2 );
+		for ( Binding binding : ex.bindings ){
+			if ( !binding.matches( ex.type, routingKey, words ) || routed.contains( binding.queue ) ) continue;
+			
+			MemoryQueue queue = queues.get( binding.queue );
+			if ( queue == null ) continue;
+			routed.add( binding.queue );
+			queue.offer( message );
+		}
+	}
+	
+	/**
+	 * Registers a consumer at a queue. An exclusive consumer must be the only one.
+	 */
+	void consume( String queue, Subscription subscription ) throws IOException {
+		MemoryQueue q = queues.get( queue );
+		if ( q == null ) throw new IOException( "No queue '" + queue + "' declared." );
+		
+		synchronized ( q ){
+			for ( Subscription other : q.subscriptions )
+				if ( subscription.exclusive || other.exclusive )
+					throw new IOException( "Queue '" + queue + "' is consumed exclusively." );
+			subscription.queue = q;
+			q.subscriptions.add( subscription );
+		}
+		q.schedule();
+	}
+	
+	/**
+	 * Puts a message back to its queue, marked as redelivered.
+	 */
+	void requeue( MemoryQueue queue, Message message ){
+		if ( queues.get( queue.name ) != queue ) return; // deleted
+		queue.offer( new Message( message.exchange, message.routingKey, message.props, message.body, true ) );
+	}
+	
+	/**
+	 * Returns true if the routing key matches the binding key of a topic exchange.
+	 * '*' matches exactly one word, '#' matches zero or more words.
+	 * @param pattern binding key split into words
+	 * @param words routing key split into words
+	 * @return true if it matches
+	 */
+	static boolean topicMatches( String[] pattern, int p, String[] words, int w ){
+		if ( p == pattern.length ) return w == words.length;
+		
+		if ( pattern[p].equals("#") ){
+			for ( int i = w; i <= words.length; i++ )
+				if ( topicMatches( pattern, p+1, words, i ) ) return true;
+			return false;
+		}
+		
+		if ( w == words.length ) return false;
+		if ( pattern[p].equals("*") || pattern[p].equals( words[w] ) )
+			return topicMatches( pattern, p+1, words, w+1 );
+		return false;
+	}
+	
+	/**
+	 * An exchange with its bindings
+	 */
+	private static final class Exchange {
+		private final String type;
+		private final CopyOnWriteArrayList<Binding> bindings;
+		
+		private Exchange( String type ){
+			this.type = type;
+			this.bindings = new CopyOnWriteArrayList<Binding>();
+		}
+	}
+	
+	/**
+	 * A binding of a queue to an exchange
+	 */
+	private static final class Binding {
+		private final String queue;
+		private final String key;
+		private final String[] pattern;
+		
+		private Binding( String queue, String key ){
+			this.queue = queue;
+			this.key = key;
+			this.pattern = key.split("\\.");
+		}
+		
+		private boolean matches( String type, String routingKey, String[] words ){
+			if ( FANOUT.equals(type) ) return true;
+			if ( DIRECT.equals(type) ) return key.equals( routingKey );
+			return topicMatches( pattern, 0, words, 0 );
+		}
+		
+		@Override
+		public boolean equals( Object obj ){
+			if ( !(obj instanceof Binding) ) return false;
+			Binding other = (Binding) obj;
+			return queue.equals( other.queue ) && key.equals( other.key );
+		}
+		
+		@Override
+		public int hashCode(){
+			return 31 * queue.hashCode() + key.hashCode();
+		}
+	}
+	
+	/**
+	 * A published message
+	 */
+	static final class Message {
+		final String exchange;
+		final String routingKey;
+		final BasicProperties props;
+		final byte[] body;
+		final boolean redeliver;
+		
+		Message( String exchange, String routingKey, BasicProperties props, byte[] body, boolean redeliver ){
+			this.exchange = exchange == null ? "" : exchange;
+			this.routingKey = routingKey;
+			this.props = props;
+			this.body = body;
+			this.redeliver = redeliver;
+		}
+	}
+	
+	/**
+	 * A consumer registered at a queue
+	 */
+	static final class Subscription {
+		final InMemoryChannel channel;
+		final String consumerTag;
+		final TransportConsumer consumer;
+		final boolean autoAck;
+		final boolean exclusive;
+		final int prefetchCount;
+		final AtomicInteger unacked;
+		volatile MemoryQueue queue;
+		
+		Subscription( InMemoryChannel channel, String consumerTag, TransportConsumer consumer, boolean autoAck, 
+				boolean exclusive, int prefetchCount ){
+			this.channel = channel;
+			this.consumerTag = consumerTag;
+			this.consumer = consumer;
+			this.autoAck = autoAck;
+			this.exclusive = exclusive;
+			this.prefetchCount = prefetchCount;
+			this.unacked = new AtomicInteger();
+		}
+		
+		/**
+		 * Returns false if the consumer already holds as many unacknowledged deliveries as it may prefetch.
+		 */
+		boolean hasCapacity(){
+			return autoAck || prefetchCount <= 0 || unacked.get() < prefetchCount;
+		}
+	}
+	
+	/**
+	 * A queue of messages. The thread which increments the work counter from zero drains
+	 * the queue until no more work is signalled.
+	 */
+	final class MemoryQueue {
+		final String name;
+		final ConcurrentLinkedQueue<Message> messages;
+		final CopyOnWriteArrayList<Subscription> subscriptions;
+		private final AtomicInteger wip;
+		private final AtomicInteger next;
+		
+		private final Runnable drainTask = new Runnable() {
+			@Override
+			public void run(){ drain(); }
+		};
+		
+		private MemoryQueue( String name ){
+			this.name = name;
+			this.messages = new ConcurrentLinkedQueue<Message>();
+			this.subscriptions = new CopyOnWriteArrayList<Subscription>();
+			this.wip = new AtomicInteger();
+			this.next = new AtomicInteger();
+		}
+		
+		void offer( Message message ){
+			messages.offer( message );
+			schedule();
+		}
+		
+		void schedule(){
+			if ( wip.getAndIncrement() == 0 && !dispatcher.isShutdown() )
+				dispatcher.execute( drainTask );
+		}
+		
+		/**
+		 * Returns the next consumer in turn which may take another delivery or null if there is none.
+		 */
+		private Subscription nextSubscription(){
+			int size = subscriptions.size();
+			for ( int i = 0; i < size; i++ ){
+				Subscription subscription;
+				try { subscription = subscriptions.get( (next.getAndIncrement() & Integer.MAX_VALUE) % size ); }
+				catch ( IndexOutOfBoundsException e ){ return null; } // cancelled concurrently
+				if ( subscription.hasCapacity() ) return subscription;
+			}
+			return null;
+		}
+		
+		private void drain(){
+			int missed = 1;
+			while ( true ){
+				while ( true ){
+					Subscription subscription = nextSubscription();
+					if ( subscription == null ) break;
+					
+					Message message = messages.poll();
+					if ( message == null ) break;
+					
+					subscription.channel.deliver( subscription, message );
+				}
+				
+				missed = wip.addAndGet( -missed );
+				if ( missed == 0 ) return;
+			}
+		}
+	}
+}
@@ -0,0 +1,253 @@
+package eu.stratosphere.meteor.common.transport;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Envelope;
+
+import eu.stratosphere.meteor.common.transport.InMemoryBroker.MemoryQueue;
+import eu.stratosphere.meteor.common.transport.InMemoryBroker.Message;
+import eu.stratosphere.meteor.common.transport.InMemoryBroker.Subscription;
+
+/**
+ * A channel of an {@link InMemoryTransport}. Keeps track of unacknowledged deliveries
+ * and requeues them when the channel closes.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+class InMemoryChannel implements TransportChannel {
+	
+	private static final Log LOG = LogFactory.getLog( InMemoryChannel.class );
+	
+	private final InMemoryBroker broker;
+	private final InMemoryTransport transport;
+	
+	/**
+	 * Delivery tags and generated consumer tags
+	 */
+	private final AtomicLong deliveryTags;
+	private final AtomicLong consumerTags;
+	
+	/**
+	 * Consumers of this channel by consumer tag
+	 */
+	private final ConcurrentHashMap<String, Subscription> subscriptions;
+	
+	/**
+	 * Delivered but not yet acknowledged messages by delivery tag
+	 */
+	private final ConcurrentSkipListMap<Long, Unacked> unacked;
+	
+	/**
+	 * Maximum number of unacknowledged deliveries per consumer, 0 for no limit
+	 */
+	private volatile int prefetchCount = 0;
+	
+	private volatile boolean closed = false;
+	
+	InMemoryChannel( InMemoryBroker broker, InMemoryTransport transport ){
+		this.broker = broker;
+		this.transport = transport;
+		this.deliveryTags = new AtomicLong();
+		this.consumerTags = new AtomicLong();
+		this.subscriptions = new ConcurrentHashMap<String, Subscription>();
+		this.unacked = new ConcurrentSkipListMap<Long, Unacked>();
+	}
+	
+	private void ensureOpen() throws IOException {
+		if ( closed ) throw new IOException( "Channel already closed." );
+	}
+	
+	@Override
+	public void exchangeDeclare( String exchange, String type, boolean durable ) throws IOException {
+		ensureOpen();
+		broker.exchangeDeclare( exchange, type );
+	}
+	
+	@Override
+	public String queueDeclare() throws IOException {
+		ensureOpen();
+		return broker.queueDeclare( transport );
+	}
+	
+	@Override
+	public void queueDeclare( String queue, boolean durable, boolean exclusive, boolean autoDelete ) throws IOException {
+		ensureOpen();
+		broker.queueDeclare( queue, transport, exclusive );
+	}
+	
+	@Override
+	public void queueBind( String queue, String exchange, String routingKey ) throws IOException {
+		ensureOpen();
+		broker.queueBind( queue, exchange, routingKey );
+	}
+	
+	@Override
+	public void queueDelete( String queue ) throws IOException {
+		ensureOpen();
+		broker.queueDelete( queue );
+	}
+	
+	@Override
+	public void basicPublish( String exchange, String routingKey, BasicProperties props, byte[] body ) throws IOException {
+		ensureOpen();
+		broker.publish( exchange, routingKey, props, body );
+	}
+	
+	@Override
+	public String basicConsume( String queue, boolean autoAck, TransportConsumer consumer ) throws IOException {
+		return basicConsume( queue, autoAck, "amq.ctag-" + consumerTags.incrementAndGet(), consumer );
+	}
+	
+	@Override
+	public String basicConsume( String queue, boolean autoAck, String consumerTag, TransportConsumer consumer )
+			throws IOException {
+		return basicConsume( queue, autoAck, consumerTag, false, consumer );
+	}
+	
+	@Override
+	public String basicConsume( String queue, boolean autoAck, String consumerTag, boolean exclusive, 
+			TransportConsumer consumer ) throws IOException {
+		ensureOpen();
+		Subscription subscription = new Subscription( this, consumerTag, consumer, autoAck, exclusive, prefetchCount );
+		if ( subscriptions.putIfAbsent( consumerTag, subscription ) != null )
+			throw new IOException( "Consumer tag '" + consumerTag + "' already in use." );
+		
+		try { broker.consume( queue, subscription ); }
+		catch ( IOException ioe ){
+			subscriptions.remove( consumerTag );
+			throw ioe;
+		}
+		return consumerTag;
+	}
+	
+	/**
+	 * Delivers a message to a consumer of this channel. Called by the draining thread of a queue.
+	 */
+	void deliver( Subscription subscription, Message message ){
+		if ( closed || subscriptions.get( subscription.consumerTag ) != subscription ){
+			// cancelled while draining
+			broker.requeue( subscription.queue, message );
+			return;
+		}
+		
+		long tag = deliveryTags.incrementAndGet();
+		if ( !subscription.autoAck ){
+			subscription.unacked.incrementAndGet();
+			unacked.put( tag, new Unacked( subscription, message ) );
+		}
+		
+		try {
+			subscription.consumer.handleDelivery( 
+					subscription.consumerTag, 
+					new Envelope( tag, message.redeliver, message.exchange, message.routingKey ), 
+					message.props, 
+					message.body );
+		} catch ( Exception e ){
+			LOG.error( "Consumer " + subscription.consumerTag + " threw an exception.", e );
+		}
+	}
+	
+	@Override
+	public void basicQos( int prefetchCount ) throws IOException {
+		// like RabbitMQ the limit applies to each consumer started afterwards
+		ensureOpen();
+		this.prefetchCount = prefetchCount;
+	}
+	
+	@Override
+	public void confirmSelect() throws IOException {
+		ensureOpen();
+	}
+	
+	@Override
+	public boolean waitForConfirms( long timeout ) throws IOException {
+		// messages are routed synchronously by basicPublish, they are all confirmed already
+		ensureOpen();
+		return true;
+	}
+	
+	@Override
+	public void basicAck( long deliveryTag, boolean multiple ) throws IOException {
+		if ( !multiple ){
+			release( unacked.remove( deliveryTag ) );
+			return;
+		}
+		
+		for ( Long tag : unacked.headMap( deliveryTag, true ).keySet() )
+			release( unacked.remove( tag ) );
+	}
+	
+	/**
+	 * Frees the prefetch slot of an acknowledged delivery and lets its queue deliver the next message.
+	 */
+	private void release( Unacked acked ){
+		if ( acked == null ) return;
+		acked.subscription.unacked.decrementAndGet();
+		acked.queue.schedule();
+	}
+	
+	@Override
+	public void basicCancel( String consumerTag ) throws IOException {
+		Subscription subscription = subscriptions.remove( consumerTag );
+		if ( subscription == null ) return;
+		
+		MemoryQueue queue = subscription.queue;
+		if ( queue != null ) queue.subscriptions.remove( subscription );
+		subscription.consumer.handleCancel( consumerTag );
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if ( closed ) return;
+		closed = true;
+		transport.removeChannel( this );
+		
+		for ( String consumerTag : subscriptions.keySet() )
+			basicCancel( consumerTag );
+		
+		// requeue everything which isn't acknowledged
+		ConcurrentNavigableMap<Long, Unacked> pending = unacked.clone();
+		unacked.clear();
+		for ( Map.Entry<Long, Unacked> entry : pending.entrySet() )
+			broker.requeue( entry.getValue().queue, entry.getValue().message );
+	}
+	
+	/**
+	 * Requeues all unacknowledged deliveries like a lost connection. Acknowledgments of these
+	 * deliveries are ignored, the consumers get the messages again.
+	 */
+	void recover(){
+		// requeued messages may be delivered again meanwhile, they aren't lost
+		ConcurrentNavigableMap<Long, Unacked> lost = unacked.headMap( deliveryTags.get(), true );
+		Map.Entry<Long, Unacked> entry;
+		while ( (entry = lost.pollFirstEntry()) != null ){
+			entry.getValue().subscription.unacked.decrementAndGet();
+			broker.requeue( entry.getValue().queue, entry.getValue().message );
+		}
+	}
+	
+	/**
+	 * A delivered message waiting for its acknowledgment
+	 */
+	private static final class Unacked {
+		private final Subscription subscription;
+		private final MemoryQueue queue;
+		private final Message message;
+		
+		private Unacked( Subscription subscription, Message message ){
+			this.subscription = subscription;
+			this.queue = subscription.queue;
+			this.message = message;
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package eu.stratosphere.meteor.common.transport;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A connection to an {@link InMemoryBroker}.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+class InMemoryTransport implements Transport {
+	
+	private final InMemoryBroker broker;
+	
+	/**
+	 * Open channels of this connection
+	 */
+	private final ConcurrentLinkedQueue<InMemoryChannel> channels;
+	
+	/**
+	 * Queues deleted when this connection closes
+	 */
+	private final ConcurrentLinkedQueue<String> exclusiveQueues;
+	
+	/**
+	 * Listeners informed after a simulated connection loss
+	 */
+	private final CopyOnWriteArrayList<TransportRecoveryListener> recoveryListeners;
+	
+	InMemoryTransport( InMemoryBroker broker ){
+		this.broker = broker;
+		this.channels = new ConcurrentLinkedQueue<InMemoryChannel>();
+		this.exclusiveQueues = new ConcurrentLinkedQueue<String>();
+		this.recoveryListeners = new CopyOnWriteArrayList<TransportRecoveryListener>();
+	}
+	
+	@Override
+	public TransportChannel createChannel() {
+		InMemoryChannel channel = new InMemoryChannel( broker, this );
+		channels.add( channel );
+		return channel;
+	}
+	
+	/**
+	 * An in-memory connection only breaks by {@link InMemoryBroker#interruptConnections()}.
+	 */
+	@Override
+	public void addRecoveryListener( TransportRecoveryListener listener ){
+		recoveryListeners.add( listener );
+	}
+	
+	/**
+	 * Loses the deliveries and exclusive messages like a broken connection.
+	 */
+	void interrupt(){
+		for ( InMemoryChannel channel : channels )
+			channel.recover();
+		for ( String queue : exclusiveQueues )
+			broker.queuePurge( queue );
+	}
+	
+	void notifyRecovered(){
+		for ( TransportRecoveryListener listener : recoveryListeners )
+			listener.transportRecovered( this );
+	}
+	
+	void addExclusiveQueue( String queue ){
+		exclusiveQueues.add( queue );
+	}
+	
+	void removeChannel( InMemoryChannel channel ){
+		channels.remove( channel );
+	}
+	
+	@Override
+	public void close() throws IOException {
+		broker.removeTransport( this );
+		InMemoryChannel channel;
+		while ( (channel = channels.poll()) != null )
+			channel.close();
+		
+		String queue;
+		while ( (queue = exclusiveQueues.poll()) != null )
+			broker.queueDelete( queue );
+	}
+}
@@ -0,0 +1,61 @@
+package eu.stratosphere.meteor.common.transport;
+
+import java.io.IOException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.QueueingConsumer.Delivery;
+
+/**
+ * A consumer which puts all deliveries to an internal queue. You pull them
+ * by calling nextDelivery.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class QueueingTransportConsumer extends TransportConsumer {
+	
+	/**
+	 * Received but not yet pulled deliveries
+	 */
+	private final LinkedBlockingQueue<Delivery> queue;
+	
+	/**
+	 * Creates a consumer with an empty queue.
+	 * @param channel
+	 */
+	public QueueingTransportConsumer( TransportChannel channel ) {
+		super(channel);
+		this.queue = new LinkedBlockingQueue<Delivery>();
+	}
+	
+	/**
+	 * Puts the delivery to the queue.
+	 */
+	@Override
+	public void handleDelivery( String consumerTag, Envelope envelope, BasicProperties properties, byte[] body )
+			throws IOException {
+		this.queue.add( new Delivery( envelope, properties, body ) );
+	}
+	
+	/**
+	 * Waits for the next delivery.
+	 * @return next delivery
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public Delivery nextDelivery() throws InterruptedException {
+		return queue.take();
+	}
+	
+	/**
+	 * Waits at most timeOut milliseconds for the next delivery.
+	 * @param timeOut in milliseconds
+	 * @return next delivery or null if nothing received in time
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public Delivery nextDelivery( long timeOut ) throws InterruptedException {
+		return queue.poll( timeOut, TimeUnit.MILLISECONDS );
+	}
+}
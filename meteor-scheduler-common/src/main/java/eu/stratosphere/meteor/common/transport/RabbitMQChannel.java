@@ -0,0 +1,291 @@
+package eu.stratosphere.meteor.common.transport;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * A channel to a RabbitMQ server. Each call is delegated to the RabbitMQ channel and recorded
+ * by the {@link RabbitMQTransport}, so the channel can be reopened after a lost connection.
+ *
+ * Delivery tags restart with each RabbitMQ channel. To keep them unique the channel adds an offset
+ * after each recovery. Acknowledgments of deliveries received before the recovery are dropped.
+ * RabbitMQ requeued the unacknowledged messages of the lost channel and delivers them again,
+ * marked as redelivered. That holds for queues which outlive the connection only, like the durable
+ * request queue of the scheduler. Exclusive queues are deleted with their messages when the
+ * connection is lost.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class RabbitMQChannel implements TransportChannel {
+
+	/**
+	 * The transport which records the topology
+	 */
+	private final RabbitMQTransport transport;
+
+	/**
+	 * The current RabbitMQ channel
+	 */
+	private volatile Channel channel;
+
+	/**
+	 * Delivery tags up to this offset belong to channels before the last recovery
+	 */
+	private volatile long tagOffset = 0;
+	private final AtomicLong highestTag;
+
+	/**
+	 * Recorded prefetch limit, 0 for unlimited
+	 */
+	private volatile int prefetchCount = 0;
+	
+	/**
+	 * True if publisher confirms are enabled
+	 */
+	private volatile boolean confirms = false;
+	
+	/**
+	 * Recorded consumers by consumer tag
+	 */
+	private final ConcurrentHashMap<String, RecordedConsumer> consumers;
+
+	/**
+	 * Wraps an open RabbitMQ channel
+	 * @param transport which records the topology
+	 * @param channel
+	 */
+	protected RabbitMQChannel( RabbitMQTransport transport, Channel channel ){
+		this.transport = transport;
+		this.channel = channel;
+		this.highestTag = new AtomicLong();
+		this.consumers = new ConcurrentHashMap<String, RecordedConsumer>();
+	}
+
+	/**
+	 * Reopens this channel on a recovered connection and restarts all consumers.
+	 * @param connection new connection
+	 * @throws IOException if the channel or a consumer cannot be reopened
+	 */
+	void recover( Connection connection ) throws IOException {
+		Channel newChannel = connection.createChannel();
+		if ( prefetchCount > 0 ) newChannel.basicQos( prefetchCount );
+		if ( confirms ) newChannel.confirmSelect();
+		tagOffset = highestTag.get();
+
+		for ( Map.Entry<String, RecordedConsumer> entry : consumers.entrySet() ){
+			RecordedConsumer recorded = entry.getValue();
+			newChannel.basicConsume(
+					transport.currentName( recorded.queue ),
+					recorded.autoAck,
+					entry.getKey(),
+					false,
+					recorded.exclusive,
+					null,
+					new ConsumerAdapter( newChannel, recorded.consumer, tagOffset ) );
+		}
+
+		this.channel = newChannel;
+	}
+
+	@Override
+	public void exchangeDeclare( String exchange, String type, boolean durable ) throws IOException {
+		try { channel.exchangeDeclare( exchange, type, durable ); }
+		catch ( ShutdownSignalException sse ){ throw connectionLost( sse ); }
+		transport.recordExchange( exchange, type, durable );
+	}
+
+	@Override
+	public String queueDeclare() throws IOException {
+		String queue;
+		try { queue = channel.queueDeclare().getQueue(); }
+		catch ( ShutdownSignalException sse ){ throw connectionLost( sse ); }
+		transport.recordQueue( queue, false, true, true, true );
+		return queue;
+	}
+
+	@Override
+	public void queueDeclare( String queue, boolean durable, boolean exclusive, boolean autoDelete ) throws IOException {
+		try { channel.queueDeclare( queue, durable, exclusive, autoDelete, null ); }
+		catch ( ShutdownSignalException sse ){ throw connectionLost( sse ); }
+		transport.recordQueue( queue, durable, exclusive, autoDelete, false );
+	}
+
+	@Override
+	public void queueBind( String queue, String exchange, String routingKey ) throws IOException {
+		try { channel.queueBind( transport.currentName( queue ), exchange, routingKey ); }
+		catch ( ShutdownSignalException sse ){ throw connectionLost( sse ); }
+		transport.recordBinding( queue, exchange, routingKey );
+	}
+
+	@Override
+	public void queueDelete( String queue ) throws IOException {
+		try { channel.queueDelete( transport.currentName( queue ) ); }
+		catch ( ShutdownSignalException sse ){ throw connectionLost( sse ); }
+		finally { transport.deleteQueue( queue ); }
+	}
+
+	@Override
+	public void basicPublish( String exchange, String routingKey, BasicProperties props, byte[] body ) throws IOException {
+		// translate own recovered queues
+		if ( exchange.isEmpty() ) routingKey = transport.currentName( routingKey );
+		if ( props != null && props.getReplyTo() != null ){
+			String replyTo = transport.currentName( props.getReplyTo() );
+			if ( !replyTo.equals( props.getReplyTo() ) ) props = props.builder().replyTo( replyTo ).build();
+		}
+
+		try { channel.basicPublish( exchange, routingKey, props, body ); }
+		catch ( ShutdownSignalException sse ){ throw connectionLost( sse ); }
+	}
+
+	@Override
+	public String basicConsume( String queue, boolean autoAck, TransportConsumer consumer ) throws IOException {
+		String consumerTag;
+		try {
+			consumerTag = channel.basicConsume(
+					transport.currentName( queue ), autoAck, new ConsumerAdapter( channel, consumer, tagOffset ) );
+		} catch ( ShutdownSignalException sse ){ throw connectionLost( sse ); }
+		consumers.put( consumerTag, new RecordedConsumer( queue, autoAck, false, consumer ) );
+		return consumerTag;
+	}
+
+	@Override
+	public String basicConsume( String queue, boolean autoAck, String consumerTag, TransportConsumer consumer )
+			throws IOException {
+		return basicConsume( queue, autoAck, consumerTag, false, consumer );
+	}
+
+	@Override
+	public String basicConsume( String queue, boolean autoAck, String consumerTag, boolean exclusive, 
+			TransportConsumer consumer ) throws IOException {
+		try {
+			channel.basicConsume( transport.currentName( queue ), autoAck, consumerTag, false, exclusive, null, 
+					new ConsumerAdapter( channel, consumer, tagOffset ) );
+		} catch ( ShutdownSignalException sse ){ throw connectionLost( sse ); }
+		consumers.put( consumerTag, new RecordedConsumer( queue, autoAck, exclusive, consumer ) );
+		return consumerTag;
+	}
+
+	@Override
+	public void basicQos( int prefetchCount ) throws IOException {
+		try { channel.basicQos( prefetchCount ); }
+		catch ( ShutdownSignalException sse ){ throw connectionLost( sse ); }
+		this.prefetchCount = prefetchCount;
+	}
+
+	@Override
+	public void confirmSelect() throws IOException {
+		try { channel.confirmSelect(); }
+		catch ( ShutdownSignalException sse ){ throw connectionLost( sse ); }
+		this.confirms = true;
+	}
+
+	@Override
+	public boolean waitForConfirms( long timeout ) throws IOException, InterruptedException {
+		try { return timeout > 0 ? channel.waitForConfirms( timeout ) : channel.waitForConfirms(); }
+		catch ( TimeoutException te ){ throw new IOException( "The broker didn't confirm in time.", te ); }
+		catch ( ShutdownSignalException sse ){ throw connectionLost( sse ); }
+	}
+
+	@Override
+	public void basicAck( long deliveryTag, boolean multiple ) throws IOException {
+		long offset = tagOffset;
+		if ( deliveryTag <= offset ) return; // delivered by a channel before the recovery
+
+		try { channel.basicAck( deliveryTag - offset, multiple ); }
+		catch ( ShutdownSignalException sse ){ throw connectionLost( sse ); }
+	}
+
+	@Override
+	public void basicCancel( String consumerTag ) throws IOException {
+		consumers.remove( consumerTag );
+		try { channel.basicCancel( consumerTag ); }
+		catch ( ShutdownSignalException sse ){ throw connectionLost( sse ); }
+	}
+
+	@Override
+	public void close() throws IOException {
+		transport.removeChannel( this );
+		consumers.clear();
+		try { channel.close(); }
+		catch ( ShutdownSignalException sse ){} // already closed
+	}
+
+	/**
+	 * Converts the unchecked exception of RabbitMQ to an IOException.
+	 * @param sse
+	 * @return IOException
+	 */
+	private static IOException connectionLost( ShutdownSignalException sse ){
+		return new IOException( "Connection to RabbitMQ is down.", sse );
+	}
+
+	/**
+	 * A recorded consumer
+	 */
+	private static final class RecordedConsumer {
+		private final String queue;
+		private final boolean autoAck;
+		private final boolean exclusive;
+		private final TransportConsumer consumer;
+
+		private RecordedConsumer( String queue, boolean autoAck, boolean exclusive, TransportConsumer consumer ){
+			this.queue = queue;
+			this.autoAck = autoAck;
+			this.exclusive = exclusive;
+			this.consumer = consumer;
+		}
+	}
+
+	/**
+	 * Forwards RabbitMQ callbacks to a transport consumer.
+	 */
+	private class ConsumerAdapter extends DefaultConsumer {
+		private final TransportConsumer consumer;
+		private final long offset;
+
+		private ConsumerAdapter( Channel channel, TransportConsumer consumer, long offset ){
+			super(channel);
+			this.consumer = consumer;
+			this.offset = offset;
+		}
+
+		@Override
+		public void handleDelivery( String consumerTag, Envelope envelope, BasicProperties properties, byte[] body )
+				throws IOException {
+			long tag = envelope.getDeliveryTag() + offset;
+
+			// remember the highest tag, it's the offset after the next recovery
+			long highest;
+			while ( (highest = highestTag.get()) < tag && !highestTag.compareAndSet( highest, tag ) );
+
+			consumer.handleDelivery(
+					consumerTag,
+					new Envelope( tag, envelope.isRedeliver(), envelope.getExchange(), envelope.getRoutingKey() ),
+					properties,
+					body );
+		}
+
+		@Override
+		public void handleCancelOk( String consumerTag ){
+			consumer.handleCancel( consumerTag );
+		}
+
+		@Override
+		public void handleCancel( String consumerTag ){
+			// cancelled by the server, don't restart it after a recovery
+			consumers.remove( consumerTag );
+			consumer.handleCancel( consumerTag );
+		}
+	}
+}
@@ -0,0 +1,310 @@
+package eu.stratosphere.meteor.common.transport;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+import eu.stratosphere.meteor.common.SchedulerConfigConstants;
+
+/**
+ * A connection to a RabbitMQ server which recovers automatically.
+ *
+ * The transport records all exchanges, queues, bindings and consumers declared through its
+ * channels. If the connection is lost (not closed by the application) a background thread tries
+ * to reconnect with exponential backoff, starting with
+ * {@link SchedulerConfigConstants#RECOVERY_INITIAL_INTERVAL} up to
+ * {@link SchedulerConfigConstants#RECOVERY_MAX_INTERVAL}. After it reconnected it redeclares the
+ * recorded topology, reopens all channels, restarts all consumers and informs the recovery listeners.
+ *
+ * Queues with a generated name get a new name from RabbitMQ. The channels translate the original
+ * names (in queue operations, routing keys of the default exchange and reply-to properties), so
+ * the application keeps using the names it got first.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class RabbitMQTransport implements Transport {
+
+	private static final Log LOG = LogFactory.getLog( RabbitMQTransport.class );
+
+	/**
+	 * Factory to reconnect
+	 */
+	private final ConnectionFactory connectionFactory;
+
+	/**
+	 * The current RabbitMQ connection
+	 */
+	private volatile Connection connection;
+
+	/**
+	 * All open channels of this transport
+	 */
+	private final CopyOnWriteArrayList<RabbitMQChannel> channels;
+
+	/**
+	 * Listeners informed after recovery
+	 */
+	private final CopyOnWriteArrayList<TransportRecoveryListener> recoveryListeners;
+
+	/**
+	 * Recorded topology. Queues and bindings by original queue names.
+	 */
+	private final ConcurrentHashMap<String, RecordedExchange> exchanges;
+	private final ConcurrentHashMap<String, RecordedQueue> queues;
+	private final CopyOnWriteArrayList<RecordedBinding> bindings;
+
+	/**
+	 * Current names of recovered queues with generated names <original name -> current name>
+	 */
+	private final ConcurrentHashMap<String, String> queueNames;
+
+	/**
+	 * Flags
+	 */
+	private final AtomicBoolean recovering;
+	private volatile boolean closed = false;
+
+	/**
+	 * Starts the recovery if the connection is lost
+	 */
+	private final ShutdownListener shutdownListener = new ShutdownListener() {
+		@Override
+		public void shutdownCompleted( ShutdownSignalException cause ){
+			if ( closed || cause.isInitiatedByApplication() ) return;
+			LOG.warn( "Lost the connection to RabbitMQ. Try to recover it.", cause );
+			startRecovery();
+		}
+	};
+
+	/**
+	 * Opens a new connection by given factory.
+	 * @param connectionFactory configured with host, port and timeout
+	 * @throws IOException if the connection cannot be established
+	 */
+	protected RabbitMQTransport( ConnectionFactory connectionFactory ) throws IOException {
+		this.connectionFactory = connectionFactory;
+		this.channels = new CopyOnWriteArrayList<RabbitMQChannel>();
+		this.recoveryListeners = new CopyOnWriteArrayList<TransportRecoveryListener>();
+		this.exchanges = new ConcurrentHashMap<String, RecordedExchange>();
+		this.queues = new ConcurrentHashMap<String, RecordedQueue>();
+		this.bindings = new CopyOnWriteArrayList<RecordedBinding>();
+		this.queueNames = new ConcurrentHashMap<String, String>();
+		this.recovering = new AtomicBoolean( false );
+
+		this.connection = connectionFactory.newConnection();
+		this.connection.addShutdownListener( shutdownListener );
+	}
+
+	@Override
+	public TransportChannel createChannel() throws IOException {
+		RabbitMQChannel channel;
+		try { channel = new RabbitMQChannel( this, connection.createChannel() ); }
+		catch ( ShutdownSignalException sse ){ throw new IOException( "Connection to RabbitMQ is down.", sse ); }
+		channels.add( channel );
+		return channel;
+	}
+
+	@Override
+	public void addRecoveryListener( TransportRecoveryListener listener ){
+		recoveryListeners.add( listener );
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		try { connection.close(); }
+		catch ( ShutdownSignalException sse ){} // already down
+	}
+
+	/**
+	 * Returns the current name of a queue. Only queues with generated names change
+	 * their names through recovery.
+	 * @param queue original name
+	 * @return current name
+	 */
+	String currentName( String queue ){
+		if ( queue == null || queueNames.isEmpty() ) return queue;
+		String current = queueNames.get( queue );
+		return current == null ? queue : current;
+	}
+
+	void recordExchange( String exchange, String type, boolean durable ){
+		exchanges.put( exchange, new RecordedExchange( type, durable ) );
+	}
+
+	void recordQueue( String queue, boolean durable, boolean exclusive, boolean autoDelete, boolean serverNamed ){
+		queues.put( queue, new RecordedQueue( durable, exclusive, autoDelete, serverNamed ) );
+	}
+
+	void recordBinding( String queue, String exchange, String routingKey ){
+		bindings.addIfAbsent( new RecordedBinding( queue, exchange, routingKey ) );
+	}
+
+	void deleteQueue( String queue ){
+		queues.remove( queue );
+		queueNames.remove( queue );
+		for ( RecordedBinding binding : bindings )
+			if ( binding.queue.equals( queue ) ) bindings.remove( binding );
+	}
+
+	void removeChannel( RabbitMQChannel channel ){
+		channels.remove( channel );
+	}
+
+	/**
+	 * Starts the recovery thread if it isn't running yet.
+	 */
+	private void startRecovery(){
+		if ( !recovering.compareAndSet( false, true ) ) return;
+
+		Thread thread = new Thread( "rabbitmq-recovery" ){
+			@Override
+			public void run(){
+				boolean recovered = false;
+				try { recovered = recover(); }
+				finally { recovering.set( false ); }
+
+				// lost again right after the recovery, the shutdown listener was ignored
+				if ( recovered && !connection.isOpen() ){
+					startRecovery();
+					return;
+				}
+
+				// listeners may block, a new loss of the connection starts a new recovery meanwhile
+				if ( recovered ) notifyListeners();
+			}
+		};
+		thread.setDaemon( true );
+		thread.start();
+	}
+
+	/**
+	 * Reconnects with exponential backoff and recovers the topology.
+	 * @return true if recovered, false if the transport was closed meanwhile
+	 */
+	private boolean recover(){
+		long interval = SchedulerConfigConstants.RECOVERY_INITIAL_INTERVAL;
+		int attempt = 0;
+
+		while ( !closed ){
+			try { Thread.sleep( interval ); }
+			catch ( InterruptedException ie ){ return false; }
+
+			attempt++;
+			Connection newConnection = null;
+			try {
+				newConnection = connectionFactory.newConnection();
+				recoverTopology( newConnection );
+				for ( RabbitMQChannel channel : channels )
+					channel.recover( newConnection );
+
+				this.connection = newConnection;
+				newConnection.addShutdownListener( shutdownListener );
+				if ( !newConnection.isOpen() ) continue; // lost again while recovering
+
+				LOG.info( "Recovered the connection to RabbitMQ after " + attempt + " attempt(s)." );
+				break;
+			} catch ( IOException | ShutdownSignalException e ){
+				LOG.warn( "Recovery attempt " + attempt + " failed. Try again in " + interval + "ms.", e );
+				if ( newConnection != null ) newConnection.abort();
+				interval = Math.min( interval * 2, SchedulerConfigConstants.RECOVERY_MAX_INTERVAL );
+			}
+		}
+
+		return !closed;
+	}
+
+	/**
+	 * Informs all recovery listeners.
+	 */
+	private void notifyListeners(){
+		for ( TransportRecoveryListener listener : recoveryListeners ){
+			try { listener.transportRecovered( this ); }
+			catch ( RuntimeException re ){ LOG.error( "Recovery listener failed.", re ); }
+		}
+	}
+
+	/**
+	 * Redeclares all recorded exchanges, queues and bindings on the given connection.
+	 * @param newConnection
+	 * @throws IOException if a declaration failed
+	 */
+	private void recoverTopology( Connection newConnection ) throws IOException {
+		Channel channel = newConnection.createChannel();
+
+		for ( String name : exchanges.keySet() ){
+			RecordedExchange exchange = exchanges.get( name );
+			if ( exchange != null ) channel.exchangeDeclare( name, exchange.type, exchange.durable );
+		}
+
+		for ( String name : queues.keySet() ){
+			RecordedQueue queue = queues.get( name );
+			if ( queue == null ) continue;
+
+			if ( queue.serverNamed ) queueNames.put( name, channel.queueDeclare().getQueue() );
+			else channel.queueDeclare( name, queue.durable, queue.exclusive, queue.autoDelete, null );
+		}
+
+		for ( RecordedBinding binding : bindings )
+			channel.queueBind( currentName( binding.queue ), binding.exchange, binding.routingKey );
+
+		channel.close();
+	}
+
+	/**
+	 * Recorded declarations
+	 */
+	private static final class RecordedExchange {
+		private final String type;
+		private final boolean durable;
+
+		private RecordedExchange( String type, boolean durable ){
+			this.type = type;
+			this.durable = durable;
+		}
+	}
+
+	private static final class RecordedQueue {
+		private final boolean durable, exclusive, autoDelete, serverNamed;
+
+		private RecordedQueue( boolean durable, boolean exclusive, boolean autoDelete, boolean serverNamed ){
+			this.durable = durable;
+			this.exclusive = exclusive;
+			this.autoDelete = autoDelete;
+			this.serverNamed = serverNamed;
+		}
+	}
+
+	private static final class RecordedBinding {
+		private final String queue, exchange, routingKey;
+
+		private RecordedBinding( String queue, String exchange, String routingKey ){
+			this.queue = queue;
+			this.exchange = exchange;
+			this.routingKey = routingKey;
+		}
+
+		@Override
+		public boolean equals( Object obj ){
+			if ( !(obj instanceof RecordedBinding) ) return false;
+			RecordedBinding other = (RecordedBinding) obj;
+			return queue.equals( other.queue ) && exchange.equals( other.exchange ) && routingKey.equals( other.routingKey );
+		}
+
+		@Override
+		public int hashCode(){
+			return ( queue.hashCode() * 31 + exchange.hashCode() ) * 31 + routingKey.hashCode();
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package eu.stratosphere.meteor.common.transport;
+
+import java.io.IOException;
+
+import com.rabbitmq.client.ConnectionFactory;
+
+import eu.stratosphere.meteor.common.SchedulerConfigConstants;
+
+/**
+ * Creates connections to a RabbitMQ server. Each connection recovers automatically
+ * if it's lost (see {@link RabbitMQTransport}).
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class RabbitMQTransportFactory implements TransportFactory {
+	
+	/**
+	 * RabbitMQ connection factory configured with host, port and timeout
+	 */
+	private final ConnectionFactory connectionFactory;
+	
+	/**
+	 * Creates a factory for given RabbitMQ server.
+	 * @param host of the RabbitMQ server
+	 * @param port of the RabbitMQ server
+	 * @param timeout to build a connection in milliseconds
+	 */
+	public RabbitMQTransportFactory( String host, int port, int timeout ){
+		this.connectionFactory = new ConnectionFactory();
+		this.connectionFactory.setHost( host );
+		this.connectionFactory.setPort( port );
+		this.connectionFactory.setConnectionTimeout( timeout );
+	}
+	
+	/**
+	 * Creates a factory for the RabbitMQ server defined in {@link SchedulerConfigConstants}.
+	 * @param timeout to build a connection in milliseconds
+	 */
+	public RabbitMQTransportFactory( int timeout ){
+		this( SchedulerConfigConstants.SCHEDULER_HOST_ADDRESS, SchedulerConfigConstants.SCHEDULER_PORT, timeout );
+	}
+	
+	@Override
+	public Transport newTransport() throws IOException {
+		return new RabbitMQTransport( connectionFactory );
+	}
+}
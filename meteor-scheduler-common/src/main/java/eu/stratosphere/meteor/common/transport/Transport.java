@@ -0,0 +1,32 @@
+package eu.stratosphere.meteor.common.transport;
+
+import java.io.IOException;
+
+/**
+ * A single connection to a message broker. A connection opens as many channels as you need.
+ * If the connection closes all exclusive queues of this connection are deleted.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public interface Transport {
+	/**
+	 * Creates a new channel on this connection.
+	 * @return new channel
+	 * @throws IOException if the channel cannot be opened
+	 */
+	public TransportChannel createChannel() throws IOException;
+	
+	/**
+	 * Adds a listener which is informed after this transport recovered from a lost connection.
+	 * Transports which cannot lose their connection never call it.
+	 * @param listener
+	 */
+	public void addRecoveryListener( TransportRecoveryListener listener );
+	
+	/**
+	 * Closes this connection with all its channels.
+	 * @throws IOException if the connection cannot be closed
+	 */
+	public void close() throws IOException;
+}
@@ -0,0 +1,153 @@
+package eu.stratosphere.meteor.common.transport;
+
+import java.io.IOException;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+/**
+ * A channel to declare exchanges and queues, publish messages and consume them. The semantics
+ * follow AMQP 0-9-1 (the protocol of RabbitMQ), but only the subset used by the scheduler and
+ * its clients is included.
+ *
+ * Exchange types are "direct", "topic" and "fanout". The exchange with the empty name is the
+ * default exchange and routes each message directly to the queue named by the routing key.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public interface TransportChannel {
+	
+	/**
+	 * Declares an exchange. Does nothing if the exchange already exists.
+	 * @param exchange name of the exchange
+	 * @param type "direct", "topic" or "fanout"
+	 * @param durable true if the exchange survives broker restarts
+	 * @throws IOException if the exchange cannot be declared
+	 */
+	public void exchangeDeclare( String exchange, String type, boolean durable ) throws IOException;
+	
+	/**
+	 * Declares a non-durable, exclusive, auto-deleted queue with a generated name.
+	 * @return name of the new queue
+	 * @throws IOException if the queue cannot be declared
+	 */
+	public String queueDeclare() throws IOException;
+	
+	/**
+	 * Declares a queue. Does nothing if the queue already exists.
+	 * @param queue name of the queue
+	 * @param durable true if the queue survives broker restarts
+	 * @param exclusive true if the queue is deleted when this connection closes
+	 * @param autoDelete true if the queue is deleted when it's no longer used
+	 * @throws IOException if the queue cannot be declared
+	 */
+	public void queueDeclare( String queue, boolean durable, boolean exclusive, boolean autoDelete ) throws IOException;
+	
+	/**
+	 * Binds a queue to an exchange.
+	 * @param queue name of the queue
+	 * @param exchange name of the exchange
+	 * @param routingKey binding key
+	 * @throws IOException if the binding cannot be created
+	 */
+	public void queueBind( String queue, String exchange, String routingKey ) throws IOException;
+	
+	/**
+	 * Deletes a queue with all its messages.
+	 * @param queue name of the queue
+	 * @throws IOException if the queue cannot be deleted
+	 */
+	public void queueDelete( String queue ) throws IOException;
+	
+	/**
+	 * Publishes a message.
+	 * @param exchange name of the exchange
+	 * @param routingKey routing key of the message
+	 * @param props message properties
+	 * @param body message itself
+	 * @throws IOException if the message cannot be sent
+	 */
+	public void basicPublish( String exchange, String routingKey, BasicProperties props, byte[] body ) throws IOException;
+	
+	/**
+	 * Starts a consumer on the given queue with a generated consumer tag.
+	 * @param queue name of the queue
+	 * @param autoAck true if the broker forgets a message as soon as it's delivered
+	 * @param consumer handles the deliveries
+	 * @return consumer tag
+	 * @throws IOException if the consumer cannot be registered
+	 */
+	public String basicConsume( String queue, boolean autoAck, TransportConsumer consumer ) throws IOException;
+	
+	/**
+	 * Starts a consumer on the given queue.
+	 * @param queue name of the queue
+	 * @param autoAck true if the broker forgets a message as soon as it's delivered
+	 * @param consumerTag unique tag of the consumer on this channel
+	 * @param consumer handles the deliveries
+	 * @return consumer tag
+	 * @throws IOException if the consumer cannot be registered
+	 */
+	public String basicConsume( String queue, boolean autoAck, String consumerTag, TransportConsumer consumer ) throws IOException;
+	
+	/**
+	 * Starts a consumer on the given queue. An exclusive consumer is the only consumer of the queue,
+	 * it cannot be started while the queue has other consumers and no other consumer can be started
+	 * while it exists.
+	 * @param queue name of the queue
+	 * @param autoAck true if the broker forgets a message as soon as it's delivered
+	 * @param consumerTag unique tag of the consumer on this channel
+	 * @param exclusive true if no other consumer may consume the queue
+	 * @param consumer handles the deliveries
+	 * @return consumer tag
+	 * @throws IOException if the consumer cannot be registered
+	 */
+	public String basicConsume( String queue, boolean autoAck, String consumerTag, boolean exclusive, 
+			TransportConsumer consumer ) throws IOException;
+	
+	/**
+	 * Limits the number of unacknowledged messages delivered to the consumers of this channel.
+	 * A consumer which blocks while handling a delivery stops further deliveries this way.
+	 * @param prefetchCount maximum number of unacknowledged messages, 0 for unlimited
+	 * @throws IOException if the limit cannot be set
+	 */
+	public void basicQos( int prefetchCount ) throws IOException;
+	
+	/**
+	 * Enables publisher confirms on this channel. The broker confirms each published message
+	 * as soon as it took responsibility for it.
+	 * @throws IOException if confirms cannot be enabled
+	 */
+	public void confirmSelect() throws IOException;
+	
+	/**
+	 * Waits until the broker confirmed all messages published on this channel since the last call.
+	 * Requires {@link #confirmSelect()}.
+	 * @param timeout maximum waiting time in milliseconds, 0 waits forever
+	 * @return true if all messages are confirmed, false if the broker rejected any message
+	 * @throws IOException if the timeout elapsed or the connection was lost
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean waitForConfirms( long timeout ) throws IOException, InterruptedException;
+	
+	/**
+	 * Acknowledges one or more messages.
+	 * @param deliveryTag tag of the delivery
+	 * @param multiple true to acknowledge all messages up to and including the delivery tag
+	 * @throws IOException if the acknowledgment cannot be sent
+	 */
+	public void basicAck( long deliveryTag, boolean multiple ) throws IOException;
+	
+	/**
+	 * Cancels a consumer.
+	 * @param consumerTag of the consumer
+	 * @throws IOException if the consumer cannot be cancelled
+	 */
+	public void basicCancel( String consumerTag ) throws IOException;
+	
+	/**
+	 * Closes this channel. Unacknowledged messages are requeued.
+	 * @throws IOException if the channel cannot be closed
+	 */
+	public void close() throws IOException;
+}
@@ -0,0 +1,54 @@
+package eu.stratosphere.meteor.common.transport;
+
+import java.io.IOException;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Envelope;
+
+/**
+ * Base class for all consumers registered at a {@link TransportChannel}. Each delivery
+ * invokes handleDelivery asynchronously. Deliveries of one queue never overlap.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public abstract class TransportConsumer {
+	
+	/**
+	 * The channel this consumer belongs to
+	 */
+	private final TransportChannel channel;
+	
+	/**
+	 * Creates a consumer for given channel.
+	 * @param channel to acknowledge and cancel deliveries
+	 */
+	protected TransportConsumer( TransportChannel channel ){
+		this.channel = channel;
+	}
+	
+	/**
+	 * Returns the channel of this consumer.
+	 * @return channel
+	 */
+	public TransportChannel getChannel(){
+		return channel;
+	}
+	
+	/**
+	 * Called when a new message is delivered.
+	 * @param consumerTag of this consumer
+	 * @param envelope delivery informations
+	 * @param properties message properties
+	 * @param body message itself
+	 * @throws IOException if the consumer cannot talk to the broker
+	 */
+	public abstract void handleDelivery( String consumerTag, Envelope envelope, BasicProperties properties, byte[] body )
+			throws IOException;
+	
+	/**
+	 * Called when the consumer is cancelled. Does nothing by default.
+	 * @param consumerTag of this consumer
+	 */
+	public void handleCancel( String consumerTag ){}
+}
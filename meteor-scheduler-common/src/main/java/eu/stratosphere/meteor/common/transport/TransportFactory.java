@@ -0,0 +1,21 @@
+package eu.stratosphere.meteor.common.transport;
+
+import java.io.IOException;
+
+/**
+ * Creates new connections to a message broker. The scheduler and the clients don't depend on
+ * a specific broker but on this interface. There are two implementations: the
+ * {@link RabbitMQTransportFactory} connects to a running RabbitMQ server and the
+ * {@link InMemoryBroker} runs the broker in the same JVM.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public interface TransportFactory {
+	/**
+	 * Opens a new connection to the broker.
+	 * @return connected transport
+	 * @throws IOException if the connection cannot be established
+	 */
+	public Transport newTransport() throws IOException;
+}
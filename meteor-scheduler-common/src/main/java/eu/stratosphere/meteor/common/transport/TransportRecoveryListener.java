@@ -0,0 +1,17 @@
+package eu.stratosphere.meteor.common.transport;
+
+/**
+ * Listener informed after a transport recovered from a lost connection. When it's called
+ * all exchanges, queues, bindings and consumers declared on the transport exist again.
+ * Messages which were in flight while the connection was down may be lost.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public interface TransportRecoveryListener {
+	/**
+	 * Called after the connection and its topology recovered.
+	 * @param transport which recovered
+	 */
+	public void transportRecovered( Transport transport );
+}
@@ -0,0 +1,51 @@
+package eu.stratosphere.meteor.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the distribution and the stability of the client mapping to shards.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class ConsistentHashRingTest {
+
+	private static final int CLIENTS = 10_000;
+
+	@Test
+	public void testEvenDistribution(){
+		ConsistentHashRing ring = new ConsistentHashRing( 4, SchedulerConfigConstants.SHARD_VIRTUAL_NODES );
+		int[] counter = new int[4];
+
+		for ( int i = 0; i < CLIENTS; i++ )
+			counter[ ring.getShard( "client-" + i ) ]++;
+
+		// each shard should get roughly a quarter of all clients
+		for ( int count : counter )
+			assertTrue( "Unbalanced shard with " + count + " clients.", count > CLIENTS / 8 && count < CLIENTS / 2 );
+	}
+
+	@Test
+	public void testMinimalMovement(){
+		ConsistentHashRing before = new ConsistentHashRing( 4, SchedulerConfigConstants.SHARD_VIRTUAL_NODES );
+		ConsistentHashRing after = new ConsistentHashRing( 5, SchedulerConfigConstants.SHARD_VIRTUAL_NODES );
+
+		int moved = 0;
+		for ( int i = 0; i < CLIENTS; i++ ){
+			int oldShard = before.getShard( "client-" + i );
+			int newShard = after.getShard( "client-" + i );
+
+			// clients only move to the new shard
+			if ( oldShard != newShard ){
+				assertEquals( 4, newShard );
+				moved++;
+			}
+		}
+
+		// about a fifth of all clients move
+		assertTrue( "Too many clients moved: " + moved, moved < CLIENTS / 3 );
+	}
+}
@@ -0,0 +1,68 @@
+package eu.stratosphere.meteor.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+/**
+ * Tests that a result block wraps the received bytes without copying them and decodes its
+ * string representation on first use only.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class ResultFileBlockTest {
+
+	private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+	@Test
+	public void testWrapsBody(){
+		byte[] body = "[{\"a\":1}]".getBytes( UTF8 );
+		ResultFileBlock block = new ResultFileBlock( body, "UTF-8", 2, 1024, 3 );
+
+		// the last block isn't padded to the block size
+		assertSame( body, block.getBlock() );
+		assertEquals( body.length, block.informationLength() );
+		assertEquals( 1024, block.getBlockSize() );
+		assertEquals( 2, block.getBlockIndex() );
+		assertEquals( 3, block.getTotalNumberOfBlocks() );
+
+		// the buffer is a view of the body
+		ByteBuffer buffer = block.getByteBuffer();
+		assertTrue( buffer.isReadOnly() );
+		assertEquals( 0, buffer.position() );
+		assertEquals( body.length, buffer.remaining() );
+		body[0] = '{';
+		assertEquals( '{', buffer.get( 0 ) );
+
+		// each call returns a new view
+		buffer.get( new byte[3] );
+		assertEquals( body.length, block.getByteBuffer().remaining() );
+	}
+
+	@Test ( expected = ReadOnlyBufferException.class )
+	public void testReadOnlyBuffer(){
+		new ResultFileBlock( new byte[4], UTF8, 0, 4, 1 ).getByteBuffer().put( (byte) 1 );
+	}
+
+	@Test
+	public void testLazyDecoding(){
+		byte[] body = "grün".getBytes( UTF8 );
+		ResultFileBlock block = new ResultFileBlock( body, UTF8, 0, 1024, 1 );
+
+		// nothing is decoded before the first call
+		body[0] = 'G';
+		String string = block.getStringRepresentation();
+		assertEquals( "Grün", string );
+
+		// later calls return the decoded string
+		body[0] = 'g';
+		assertSame( string, block.getStringRepresentation() );
+	}
+}
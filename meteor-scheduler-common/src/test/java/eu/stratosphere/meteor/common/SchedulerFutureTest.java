@@ -0,0 +1,94 @@
+package eu.stratosphere.meteor.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests completion, failure and callbacks of futures.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class SchedulerFutureTest {
+
+	@Test
+	public void testCompleteOnce() throws Exception {
+		SchedulerFuture<String> future = new SchedulerFuture<String>();
+		assertFalse( future.isDone() );
+
+		assertTrue( future.complete("hdfs://result") );
+		assertFalse( future.complete("other") );
+		assertFalse( future.fail( new IOException() ) );
+
+		assertTrue( future.isDone() );
+		assertEquals( "hdfs://result", future.get( 1, TimeUnit.SECONDS ) );
+	}
+
+	@Test
+	public void testCallbacks() throws Exception {
+		final AtomicReference<Object> before = new AtomicReference<Object>();
+		final AtomicReference<Object> after = new AtomicReference<Object>();
+		SchedulerFuture<JobState> future = new SchedulerFuture<JobState>();
+
+		future.addCallback( new Recorder<JobState>( before ) );
+		future.complete( JobState.FINISHED );
+		future.addCallback( new Recorder<JobState>( after ) );
+
+		assertEquals( JobState.FINISHED, before.get() );
+		assertEquals( JobState.FINISHED, after.get() );
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		SchedulerFuture<String> future = new SchedulerFuture<String>();
+
+		try {
+			future.get( 10, TimeUnit.MILLISECONDS );
+			fail("Expected a timeout.");
+		} catch ( TimeoutException te ){}
+
+		IOException cause = new IOException("error of the scheduler");
+		final AtomicReference<Object> failure = new AtomicReference<Object>();
+		future.addCallback( new Recorder<String>( failure ) );
+		future.fail( cause );
+
+		assertEquals( cause, failure.get() );
+		try {
+			future.get();
+			fail("Expected an execution exception.");
+		} catch ( ExecutionException ee ){
+			assertEquals( cause, ee.getCause() );
+		}
+	}
+
+	/**
+	 * Records the value or the cause of a future
+	 */
+	private static class Recorder<V> implements SchedulerFuture.Callback<V> {
+		private final AtomicReference<Object> record;
+
+		private Recorder( AtomicReference<Object> record ){
+			this.record = record;
+		}
+
+		@Override
+		public void completed( V value ){
+			record.set( value );
+		}
+
+		@Override
+		public void failed( Throwable cause ){
+			record.set( cause );
+		}
+	}
+}
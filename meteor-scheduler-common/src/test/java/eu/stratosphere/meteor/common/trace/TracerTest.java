@@ -0,0 +1,115 @@
+package eu.stratosphere.meteor.common.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+import eu.stratosphere.meteor.common.MessageBuilder;
+
+/**
+ * Tests the propagation of trace contexts and the export of spans.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class TracerTest {
+
+	@After
+	public void tearDown(){
+		Tracer.setSink( null );
+	}
+
+	@Test
+	public void testInjectExtract(){
+		BasicProperties props = new BasicProperties.Builder()
+				.correlationId( "corr" )
+				.headers( Collections.<String, Object>singletonMap( "other", "value" ) )
+				.build();
+		assertNull( TraceContext.extract( props ) );
+
+		TraceContext context = TraceContext.newSpan( null );
+		BasicProperties traced = context.inject( props );
+
+		// the original properties and headers are kept
+		assertEquals( "corr", traced.getCorrelationId() );
+		assertEquals( "value", traced.getHeaders().get( "other" ) );
+		assertNull( props.getHeaders().get( TraceContext.TRACE_HEADER ) );
+
+		TraceContext extracted = TraceContext.extract( traced );
+		assertEquals( context.getTraceID(), extracted.getTraceID() );
+		assertEquals( context.getSpanID(), extracted.getSpanID() );
+	}
+
+	@Test
+	public void testNewSpan(){
+		TraceContext root = TraceContext.newSpan( null );
+		TraceContext child = TraceContext.newSpan( root );
+
+		assertEquals( 16, root.getTraceID().length() );
+		assertEquals( root.getTraceID(), child.getTraceID() );
+		assertFalse( root.getSpanID().equals( child.getSpanID() ) );
+		assertFalse( root.getTraceID().equals( TraceContext.newSpan( null ).getTraceID() ) );
+	}
+
+	@Test
+	public void testParse() throws Exception {
+		TraceContext context = TraceContext.newSpan( null );
+		TraceContext parsed = TraceContext.parse( context.toString() );
+		assertEquals( context.getTraceID(), parsed.getTraceID() );
+		assertEquals( context.getSpanID(), parsed.getSpanID() );
+
+		assertNull( TraceContext.parse( null ) );
+		assertNull( TraceContext.parse( "nocontext" ) );
+		assertNull( TraceContext.parse( ":span" ) );
+		assertNull( TraceContext.parse( "trace:" ) );
+
+		// statuses carry the context in the message
+		JSONObject status = MessageBuilder.addTrace( new JSONObject(), context );
+		assertEquals( context.getSpanID(), MessageBuilder.getTrace( status ).getSpanID() );
+		assertNull( MessageBuilder.getTrace( new JSONObject() ) );
+	}
+
+	@Test
+	public void testFileSink() throws Exception {
+		File file = File.createTempFile( "spans", ".json" );
+		file.deleteOnExit();
+		assertFalse( Tracer.isEnabled() );
+
+		Tracer.exportTo( file );
+		assertTrue( Tracer.isEnabled() );
+
+		Span parent = Tracer.start( "client.submit", null ).tag( "jobID", "job1" );
+		Span child = Tracer.start( "scheduler.submit", TraceContext.extract( parent.getContext().inject(
+				new BasicProperties.Builder().build() ) ) );
+		child.finish();
+		child.finish();
+		parent.finish();
+		Tracer.setSink( null );
+
+		List<String> lines = Files.readAllLines( file.toPath(), Charset.forName( "UTF-8" ) );
+		assertEquals( 2, lines.size() );
+
+		JSONObject first = new JSONObject( lines.get( 0 ) );
+		JSONObject second = new JSONObject( lines.get( 1 ) );
+		assertEquals( "scheduler.submit", first.getString( "name" ) );
+		assertEquals( "client.submit", second.getString( "name" ) );
+		assertEquals( second.getString( "traceID" ), first.getString( "traceID" ) );
+		assertEquals( second.getString( "spanID" ), first.getString( "parentID" ) );
+		assertFalse( second.has( "parentID" ) );
+		assertEquals( "job1", second.getJSONObject( "tags" ).getString( "jobID" ) );
+		assertTrue( second.getLong( "duration" ) >= first.getLong( "duration" ) );
+	}
+}
@@ -0,0 +1,242 @@
+package eu.stratosphere.meteor.common.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.QueueingConsumer.Delivery;
+
+/**
+ * Tests the routing and acknowledgment semantics of the in-memory broker.
+ * These tests don't need a running RabbitMQ server.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class InMemoryBrokerTest {
+	/**
+	 * The time threshold for tests in milliseconds
+	 */
+	private static final long THRESHOLD = 5_000;
+	
+	private static final BasicProperties PROPS = new BasicProperties.Builder().contentEncoding("UTF-8").build();
+	
+	private InMemoryBroker broker;
+	private Transport transport;
+	private TransportChannel channel;
+	
+	@Before
+	public void setup() throws IOException {
+		broker = new InMemoryBroker();
+		transport = broker.newTransport();
+		channel = transport.createChannel();
+	}
+	
+	@After
+	public void shutdown() throws IOException {
+		transport.close();
+		broker.shutdown();
+	}
+	
+	/**
+	 * Topic bindings of the scheduler: '*' matches one word, '#' zero or more words.
+	 */
+	@Test ( timeout = THRESHOLD )
+	public void testTopicRouting() throws Exception {
+		channel.exchangeDeclare( "requests", InMemoryBroker.TOPIC, true );
+		channel.queueDeclare( "scheduler", true, true, false );
+		channel.queueBind( "scheduler", "requests", "setJob.*.#" );
+		channel.queueBind( "scheduler", "requests", "register.*" );
+		
+		QueueingTransportConsumer consumer = new QueueingTransportConsumer( channel );
+		channel.basicConsume( "scheduler", true, consumer );
+		
+		channel.basicPublish( "requests", "setJob.client.job", PROPS, "job".getBytes() );
+		channel.basicPublish( "requests", "register.login.too.long", PROPS, "lost".getBytes() );
+		channel.basicPublish( "requests", "register.login", PROPS, "login".getBytes() );
+		
+		assertEquals( "job", new String( consumer.nextDelivery().getBody() ) );
+		assertEquals( "login", new String( consumer.nextDelivery().getBody() ) );
+		assertNull( consumer.nextDelivery( 100 ) );
+	}
+	
+	/**
+	 * The default exchange routes directly to the queue named by the routing key.
+	 * The publisher may reuse its buffer after publishing.
+	 */
+	@Test ( timeout = THRESHOLD )
+	public void testDefaultExchange() throws Exception {
+		String queue = channel.queueDeclare();
+		QueueingTransportConsumer consumer = new QueueingTransportConsumer( channel );
+		channel.basicConsume( queue, true, consumer );
+		
+		byte[] buffer = "first".getBytes();
+		channel.basicPublish( "", queue, PROPS, buffer );
+		buffer[0] = 'F';
+		
+		Delivery delivery = consumer.nextDelivery();
+		assertEquals( "first", new String( delivery.getBody() ) );
+		assertEquals( queue, delivery.getEnvelope().getRoutingKey() );
+	}
+	
+	/**
+	 * Messages published before a consumer exists are delivered in order after it subscribed.
+	 */
+	@Test ( timeout = THRESHOLD )
+	public void testOrderedBacklog() throws Exception {
+		String queue = channel.queueDeclare();
+		for ( int i = 0; i < 1000; i++ )
+			channel.basicPublish( "", queue, PROPS, Integer.toString(i).getBytes() );
+		
+		assertEquals( 1000, broker.getMessageCount( queue ) );
+		
+		QueueingTransportConsumer consumer = new QueueingTransportConsumer( channel );
+		channel.basicConsume( queue, true, consumer );
+		for ( int i = 0; i < 1000; i++ )
+			assertEquals( Integer.toString(i), new String( consumer.nextDelivery().getBody() ) );
+	}
+	
+	/**
+	 * Unacknowledged messages are redelivered after their channel closed.
+	 */
+	@Test ( timeout = THRESHOLD )
+	public void testRedeliveryOfUnacked() throws Exception {
+		channel.queueDeclare( "work", true, false, false );
+		channel.basicPublish( "", "work", PROPS, "acked".getBytes() );
+		channel.basicPublish( "", "work", PROPS, "lost".getBytes() );
+		
+		TransportChannel first = transport.createChannel();
+		QueueingTransportConsumer consumer = new QueueingTransportConsumer( first );
+		first.basicConsume( "work", false, consumer );
+		
+		Delivery acked = consumer.nextDelivery();
+		first.basicAck( acked.getEnvelope().getDeliveryTag(), false );
+		assertFalse( consumer.nextDelivery().getEnvelope().isRedeliver() );
+		first.close();
+		
+		QueueingTransportConsumer second = new QueueingTransportConsumer( channel );
+		channel.basicConsume( "work", false, second );
+		Delivery redelivered = second.nextDelivery();
+		assertEquals( "lost", new String( redelivered.getBody() ) );
+		assertTrue( redelivered.getEnvelope().isRedeliver() );
+	}
+	
+	/**
+	 * A consumer holds no more unacknowledged deliveries than its prefetch count.
+	 * Each acknowledgment lets the next message through.
+	 */
+	@Test ( timeout = THRESHOLD )
+	public void testPrefetchLimit() throws Exception {
+		channel.queueDeclare( "work", true, false, false );
+		for ( int i = 0; i < 5; i++ )
+			channel.basicPublish( "", "work", PROPS, Integer.toString(i).getBytes() );
+		
+		channel.basicQos( 2 );
+		QueueingTransportConsumer consumer = new QueueingTransportConsumer( channel );
+		channel.basicConsume( "work", false, consumer );
+		
+		Delivery first = consumer.nextDelivery();
+		assertEquals( "1", new String( consumer.nextDelivery().getBody() ) );
+		assertNull( consumer.nextDelivery( 100 ) );
+		assertEquals( 3, broker.getMessageCount( "work" ) );
+		
+		channel.basicAck( first.getEnvelope().getDeliveryTag(), false );
+		Delivery third = consumer.nextDelivery();
+		assertEquals( "2", new String( third.getBody() ) );
+		assertNull( consumer.nextDelivery( 100 ) );
+		
+		// a multiple acknowledgment frees all slots up to the tag
+		channel.basicAck( third.getEnvelope().getDeliveryTag(), true );
+		assertEquals( "3", new String( consumer.nextDelivery().getBody() ) );
+		assertEquals( "4", new String( consumer.nextDelivery().getBody() ) );
+		assertEquals( 0, broker.getMessageCount( "work" ) );
+	}
+	
+	/**
+	 * An exclusive consumer is the only consumer of its queue until it's cancelled.
+	 */
+	@Test ( timeout = THRESHOLD )
+	public void testExclusiveConsumer() throws Exception {
+		channel.queueDeclare( "work", true, false, false );
+		channel.basicConsume( "work", false, "owner", true, new QueueingTransportConsumer( channel ) );
+		
+		Transport second = broker.newTransport();
+		TransportChannel other = second.createChannel();
+		try {
+			other.basicConsume( "work", false, new QueueingTransportConsumer( other ) );
+			fail( "A second consumer of an exclusively consumed queue." );
+		} catch ( IOException expected ){}
+		
+		channel.basicCancel( "owner" );
+		other.basicConsume( "work", false, new QueueingTransportConsumer( other ) );
+		try {
+			channel.basicConsume( "work", false, "owner", true, new QueueingTransportConsumer( channel ) );
+			fail( "An exclusive consumer of a queue with other consumers." );
+		} catch ( IOException expected ){}
+		second.close();
+	}
+	
+	/**
+	 * A lost connection requeues unacknowledged deliveries and loses the messages of exclusive
+	 * queues. The consumers get the requeued messages again after the listeners were informed.
+	 */
+	@Test ( timeout = THRESHOLD )
+	public void testInterruptedConnection() throws Exception {
+		final AtomicInteger recovered = new AtomicInteger();
+		transport.addRecoveryListener( new TransportRecoveryListener() {
+			@Override
+			public void transportRecovered( Transport recoveredTransport ){
+				recovered.incrementAndGet();
+			}
+		});
+		
+		channel.queueDeclare( "work", true, false, false );
+		String exclusive = channel.queueDeclare();
+		channel.basicPublish( "", "work", PROPS, "unacked".getBytes() );
+		channel.basicPublish( "", exclusive, PROPS, "lost".getBytes() );
+		
+		QueueingTransportConsumer consumer = new QueueingTransportConsumer( channel );
+		channel.basicQos( 1 );
+		channel.basicConsume( "work", false, consumer );
+		Delivery first = consumer.nextDelivery();
+		assertFalse( first.getEnvelope().isRedeliver() );
+		
+		broker.interruptConnections();
+		assertEquals( 1, recovered.get() );
+		assertEquals( 0, broker.getMessageCount( exclusive ) );
+		
+		// the late acknowledgment neither removes the requeued message nor frees a slot twice
+		channel.basicAck( first.getEnvelope().getDeliveryTag(), false );
+		Delivery redelivered = consumer.nextDelivery();
+		assertEquals( "unacked", new String( redelivered.getBody() ) );
+		assertTrue( redelivered.getEnvelope().isRedeliver() );
+		
+		channel.basicPublish( "", "work", PROPS, "next".getBytes() );
+		assertNull( consumer.nextDelivery( 100 ) );
+		channel.basicAck( redelivered.getEnvelope().getDeliveryTag(), false );
+		assertEquals( "next", new String( consumer.nextDelivery().getBody() ) );
+	}
+	
+	/**
+	 * Exclusive queues are deleted with their connection.
+	 */
+	@Test ( timeout = THRESHOLD )
+	public void testExclusiveQueueDeletedOnClose() throws Exception {
+		Transport other = broker.newTransport();
+		String queue = other.createChannel().queueDeclare();
+		assertEquals( 0, broker.getMessageCount( queue ) );
+		
+		other.close();
+		assertEquals( -1, broker.getMessageCount( queue ) );
+	}
+}
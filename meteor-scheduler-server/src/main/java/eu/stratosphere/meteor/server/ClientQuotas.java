@@ -0,0 +1,161 @@
+package eu.stratosphere.meteor.server;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eu.stratosphere.meteor.server.index.ResultEntry;
+
+/**
+ * Limits per client: the number of queued jobs, the number of result transfers at the same time
+ * and the bytes of stored results. The usage is tracked incrementally. The stored bytes grow
+ * when a job finishes and shrink when a finished job is removed, the transfers are counted
+ * while they run.
+ *
+ * A limit of 0 or less means unlimited. Stored bytes are tracked by the main loop of the scheduler
+ * only, transfers may finish in any thread.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class ClientQuotas {
+
+	/**
+	 * The limits per client
+	 */
+	private final int maxQueuedJobs;
+	private final int maxTransfers;
+	private final long maxStoredBytes;
+
+	/**
+	 * Bytes of the results of finished jobs per client
+	 */
+	private final HashMap<String, Long> storedBytes;
+
+	/**
+	 * Running transfers per client
+	 */
+	private final ConcurrentHashMap<String, AtomicInteger> transfers;
+
+	/**
+	 * Creates quotas with given limits.
+	 * @param maxQueuedJobs maximum number of queued jobs per client
+	 * @param maxTransfers maximum number of result transfers at the same time per client
+	 * @param maxStoredBytes maximum bytes of results per client
+	 */
+	public ClientQuotas( int maxQueuedJobs, int maxTransfers, long maxStoredBytes ){
+		this.maxQueuedJobs = maxQueuedJobs;
+		this.maxTransfers = maxTransfers;
+		this.maxStoredBytes = maxStoredBytes;
+		this.storedBytes = new HashMap<String, Long>();
+		this.transfers = new ConcurrentHashMap<String, AtomicInteger>();
+	}
+
+	/**
+	 * Checks whether a client may submit another job.
+	 * @param clientID
+	 * @param queuedJobs number of jobs the client has queued
+	 * @return the reason to reject the job or null if the job is accepted
+	 */
+	public String checkSubmission( String clientID, int queuedJobs ){
+		if ( maxQueuedJobs > 0 && queuedJobs >= maxQueuedJobs )
+			return "Rejected the job. You reached the quota of " + maxQueuedJobs + " queued jobs. " +
+					"Submit it again after your queued jobs finished.";
+		if ( maxStoredBytes > 0 && getStoredBytes( clientID ) >= maxStoredBytes )
+			return "Rejected the job. Your results reached the quota of " + maxStoredBytes + " bytes. " +
+					"Abort finished jobs to delete their results.";
+		return null;
+	}
+
+	/**
+	 * Counts a new transfer of a client if the client didn't reach its quota.
+	 * @param clientID
+	 * @return true if the transfer may start, false if the quota is reached
+	 */
+	public boolean startTransfer( String clientID ){
+		AtomicInteger running = transfers.get( clientID );
+		if ( running == null ){
+			transfers.putIfAbsent( clientID, new AtomicInteger() );
+			running = transfers.get( clientID );
+		}
+
+		while ( true ){
+			int current = running.get();
+			if ( maxTransfers > 0 && current >= maxTransfers ) return false;
+			if ( running.compareAndSet( current, current + 1 ) ) return true;
+		}
+	}
+
+	/**
+	 * Counts a finished transfer of a client.
+	 * @param clientID
+	 */
+	public void finishTransfer( String clientID ){
+		AtomicInteger running = transfers.get( clientID );
+		if ( running != null ) running.decrementAndGet();
+	}
+
+	/**
+	 * Returns the number of running transfers of a client.
+	 * @param clientID
+	 * @return running transfers
+	 */
+	public int getTransfers( String clientID ){
+		AtomicInteger running = transfers.get( clientID );
+		return running == null ? 0 : running.get();
+	}
+
+	/**
+	 * Adds the bytes of the results of a finished job. Unknown sizes count as 0.
+	 * @param job finished job
+	 */
+	public void addResults( ResultEntry job ){
+		addStoredBytes( job.getClientID(), sumResultSizes( job ) );
+	}
+
+	/**
+	 * Subtracts the bytes of the results of a removed job.
+	 * @param job removed job
+	 */
+	public void removeResults( ResultEntry job ){
+		addStoredBytes( job.getClientID(), -sumResultSizes( job ) );
+	}
+
+	/**
+	 * Changes the stored bytes of a client.
+	 * @param clientID
+	 * @param bytes added bytes, negative to subtract
+	 */
+	public void addStoredBytes( String clientID, long bytes ){
+		if ( bytes == 0 ) return;
+		long stored = Math.max( 0, getStoredBytes( clientID ) + bytes );
+		if ( stored == 0 ) storedBytes.remove( clientID );
+		else storedBytes.put( clientID, stored );
+	}
+
+	/**
+	 * Returns the bytes of the results of a client.
+	 * @param clientID
+	 * @return stored bytes
+	 */
+	public long getStoredBytes( String clientID ){
+		Long stored = storedBytes.get( clientID );
+		return stored == null ? 0 : stored;
+	}
+
+	/**
+	 * Returns the stored bytes of all clients.
+	 * @return <ClientID -> bytes>
+	 */
+	public Map<String, Long> getStoredBytes(){
+		return new HashMap<String, Long>( storedBytes );
+	}
+
+	private static long sumResultSizes( ResultEntry job ){
+		long sum = 0;
+		for ( int i = 0; i < job.getNumberOfResults(); i++ )
+			if ( job.getResultSize(i) > 0 ) sum += job.getResultSize(i);
+		return sum;
+	}
+}
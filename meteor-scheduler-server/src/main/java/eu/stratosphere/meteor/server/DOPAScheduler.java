@@ -8,10 +8,21 @@ import java.net.URISyntaxException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -28,9 +39,24 @@ import eu.stratosphere.meteor.common.JobState;
 import eu.stratosphere.meteor.common.MessageBuilder;
 import eu.stratosphere.meteor.common.MessageBuilder.RequestType;
 import eu.stratosphere.meteor.common.SchedulerConfigConstants;
+import eu.stratosphere.meteor.common.trace.Span;
+import eu.stratosphere.meteor.common.trace.TraceContext;
+import eu.stratosphere.meteor.common.trace.Tracer;
+import eu.stratosphere.meteor.common.transport.RabbitMQTransportFactory;
+import eu.stratosphere.meteor.common.transport.TransportFactory;
 import eu.stratosphere.meteor.server.executor.FileSender;
+import eu.stratosphere.meteor.server.executor.FrontendExecutor;
+import eu.stratosphere.meteor.server.executor.JobTimeline;
 import eu.stratosphere.meteor.server.executor.RRJob;
+import eu.stratosphere.meteor.server.executor.ResultReclaimer;
 import eu.stratosphere.meteor.server.executor.RoundRobin;
+import eu.stratosphere.meteor.server.executor.ScriptExecutor;
+import eu.stratosphere.meteor.server.index.ResultEntry;
+import eu.stratosphere.meteor.server.index.ResultIndex;
+import eu.stratosphere.meteor.server.journal.JobJournal;
+import eu.stratosphere.meteor.server.journal.JobSnapshot;
+import eu.stratosphere.meteor.server.journal.JournalHandler;
+import eu.stratosphere.meteor.server.metrics.SchedulerMetrics;
 
 /**
  * The scheduler will started by Server.java. The scheduler connects to
@@ -55,11 +81,21 @@ public class DOPAScheduler {
 		"--configDir", "/dopa-vm/stratosphere-0.5-hadoop2-SNAPSHOT/conf", 
 		"--updateTime", "1000", "--wait" };
 	
+	/**
+	 * Executes the scripts of the jobs, on Nephele configured by EXECUTER_CONFIG by default
+	 */
+	public static ScriptExecutor SCRIPT_EXECUTOR = new FrontendExecutor();
+	
 	/**
 	 * Factory to handle all connections with rabbitMQ
 	 */
 	private ServerConnectionFactory connectionFactory;
 	
+	/**
+	 * Collects status updates and sends them batched per client
+	 */
+	private StatusNotifier notifier;
+	
 	/**
 	 * Collection of all jobs to iterate through while working process.
 	 * Each element is just a reference to job object in workingJobsCollection or in finishedJobsCollection.
@@ -74,14 +110,69 @@ public class DOPAScheduler {
 	/**
 	 * Contains the finished jobs sorted by clientID and jobID.
 	 * <ClientID -> <JobID -> RRJob>>
+	 * If the result index is used, it contains only jobs which cannot be indexed.
 	 */
 	private HashMap<String, HashMap<String, RRJob>> finishedJobsCollection;
 	
+	/**
+	 * Memory-mapped index of finished jobs, null if finished jobs are kept in memory only
+	 */
+	private ResultIndex resultIndex;
+	
 	/**
 	 * Contains the registered clients.
 	 */
 	private LinkedList<String> registeredClients;
 	
+	/**
+	 * Journal of all changes to recover jobs after a restart, null if jobs are kept in memory only
+	 */
+	private JobJournal journal;
+	private File journalDirectory;
+	
+	/**
+	 * Writes snapshots beside the main loop, the last written snapshot, its time and the last
+	 * journaled record it covers
+	 */
+	private ExecutorService snapshotWriter;
+	private Future<?> snapshotTask;
+	private long lastSnapshotTime;
+	private long lastSnapshotSequence;
+	
+	/**
+	 * Deletes the results of removed jobs in the background and the last time expired
+	 * results were searched
+	 */
+	private final ResultReclaimer reclaimer;
+	private long lastExpirationTime;
+	
+	/**
+	 * Limits and usage of queued jobs, transfers and stored results per client
+	 */
+	private final ClientQuotas quotas;
+	
+	/**
+	 * Queue depths, job states, requests and transfers of this scheduler
+	 */
+	private final SchedulerMetrics metrics;
+	
+	/**
+	 * Timelines of the latest indexed jobs, the result index doesn't keep them. Only the main
+	 * loop uses this map.
+	 */
+	private final LinkedHashMap<String, JobTimeline> indexedTimelines;
+	
+	/**
+	 * Maximum number of timelines of indexed jobs kept in memory
+	 */
+	private static final int MAX_INDEXED_TIMELINES = 10000;
+	
+	/**
+	 * Handled deliveries waiting for their journal records to be forced to the disk before
+	 * they're acknowledged, in the order of their records
+	 */
+	private final ArrayDeque<PendingAck> pendingAcks;
+	
 	/**
 	 * Paused main-loop flag
 	 */
@@ -102,60 +193,308 @@ public class DOPAScheduler {
 	 * once. Note that only one client per system is allowed.
 	 */
 	private DOPAScheduler() {
-		this.submittedJobs = new RoundRobin();
+		this.metrics = new SchedulerMetrics();
+		this.submittedJobs = new RoundRobin( metrics );
+		this.indexedTimelines = new LinkedHashMap<String, JobTimeline>(){
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry( Map.Entry<String, JobTimeline> eldest ){
+				return size() > MAX_INDEXED_TIMELINES;
+			}
+		};
 		this.curr_WorkingJob = null;
 		this.finishedJobsCollection = new HashMap<String, HashMap<String, RRJob>>();
 		this.registeredClients = new LinkedList<String>();
+		this.pendingAcks = new ArrayDeque<PendingAck>();
+		this.reclaimer = new ResultReclaimer( 
+				SchedulerConfigConstants.RECLAIM_BATCH_SIZE, SchedulerConfigConstants.RECLAIM_INTERVAL );
+		this.quotas = new ClientQuotas( SchedulerConfigConstants.CLIENT_QUEUE_QUOTA, 
+				SchedulerConfigConstants.CLIENT_TRANSFER_QUOTA, SchedulerConfigConstants.CLIENT_STORAGE_QUOTA );
 	}
 	
 	/**
-	 * Connects the scheduler with the rabbitMQ system to handle all traffic from and to clientList.
+	 * Connects the scheduler with the message broker to handle all traffic from and to clientList.
+	 * @param transportFactory to connect to the message broker
 	 */
-	private void connect() {
-		try { this.connectionFactory = new ServerConnectionFactory( this );
+	private void connect( TransportFactory transportFactory ) {
+		try { 
+			this.connectionFactory = new ServerConnectionFactory( this, transportFactory );
+			this.notifier = new StatusNotifier( connectionFactory, SchedulerConfigConstants.STATUS_NOTIFICATION_WINDOW );
 		} catch (IOException e) {
 			LOG.fatal("Cannot initialize the connections for the scheduler.");
 		}
 	}
 	
 	/**
-	 * Adds a new incoming job. If a job with same identifications still exists it will be overwrite it.
+	 * Restores the last snapshot and replays the younger journal segments in given directory.
+	 * All further changes are journaled there.
+	 * @param directory of the journal
+	 */
+	private void openJournal( File directory ){
+		try {
+			if ( !directory.isDirectory() && !directory.mkdirs() )
+				throw new IOException( "Cannot create the journal directory " + directory + "." );
+			
+			long start = System.currentTimeMillis();
+			JournalReplay replay = new JournalReplay();
+			long segment = JobSnapshot.restore( directory, replay );
+			long records = JobJournal.replay( directory, segment, replay );
+			LOG.info("Restored " + (segment > 0 ? "snapshot and " : "") + records + " journal records in " + 
+					(System.currentTimeMillis() - start) + "ms. " + registeredClients.size() + " clients registered.");
+			
+			this.journal = new JobJournal( directory, 
+					SchedulerConfigConstants.JOURNAL_COMMIT_DELAY, SchedulerConfigConstants.JOURNAL_COMMIT_BYTES );
+			this.journalDirectory = directory;
+			this.lastSnapshotTime = System.currentTimeMillis();
+		} catch ( IOException ioe ){
+			LOG.fatal("Cannot open the journal in " + directory + ". Jobs are kept in memory only.", ioe);
+		}
+	}
+	
+	/**
+	 * Opens the result index in given directory. Finished jobs are indexed there instead of
+	 * kept in memory.
+	 * @param directory of the result index
+	 */
+	private void openResultIndex( File directory ){
+		try {
+			if ( !directory.isDirectory() && !directory.mkdirs() )
+				throw new IOException( "Cannot create the result index directory " + directory + "." );
+			
+			this.resultIndex = new ResultIndex( directory, SchedulerConfigConstants.RESULT_INDEX_CAPACITY );
+			for ( Map.Entry<String, Long> stored : resultIndex.sumResultSizes().entrySet() )
+				quotas.addStoredBytes( stored.getKey(), stored.getValue() );
+			LOG.info("Opened the result index with " + resultIndex.size() + " finished jobs.");
+		} catch ( IOException ioe ){
+			LOG.fatal("Cannot open the result index in " + directory + ". Finished jobs are kept in memory.", ioe);
+		}
+	}
+	
+	/**
+	 * Takes a snapshot if the snapshot interval is over and the journal changed since the last
+	 * one. The state is collected here, it's written by another thread. After the snapshot is
+	 * written the journal segments it covers are deleted.
+	 */
+	private void snapshotIfDue(){
+		if ( journal == null || SchedulerConfigConstants.SNAPSHOT_INTERVAL <= 0 ) return;
+		if ( System.currentTimeMillis() - lastSnapshotTime < SchedulerConfigConstants.SNAPSHOT_INTERVAL ) return;
+		if ( snapshotTask != null && !snapshotTask.isDone() ) return;
+		
+		lastSnapshotTime = System.currentTimeMillis();
+		final long sequence = journal.getAppendedSequence();
+		if ( sequence == lastSnapshotSequence ) return;
+		
+		final JobSnapshot snapshot;
+		try { snapshot = collectSnapshot( journal.roll() ); }
+		catch ( IOException ioe ){
+			LOG.error("Cannot roll the journal for a snapshot.", ioe);
+			return;
+		}
+		lastSnapshotSequence = sequence;
+		
+		if ( snapshotWriter == null ){
+			snapshotWriter = Executors.newSingleThreadExecutor( new ThreadFactory() {
+				@Override
+				public Thread newThread( Runnable r ){
+					Thread thread = new Thread( r, "snapshot-writer" );
+					thread.setDaemon( true );
+					return thread;
+				}
+			});
+		}
+		
+		final JobJournal journal = this.journal;
+		final ResultIndex resultIndex = this.resultIndex;
+		snapshotTask = snapshotWriter.submit( new Runnable() {
+			@Override
+			public void run(){
+				try {
+					long start = System.currentTimeMillis();
+					long size = snapshot.write( journalDirectory );
+					
+					// the covered records have to be in their segments before these are deleted
+					journal.awaitDurable( sequence, 0 );
+					if ( resultIndex != null ) resultIndex.force();
+					int deleted = journal.deleteSegmentsBefore( snapshot.getSegment() );
+					LOG.info("Snapshot of " + size + " bytes written in " + (System.currentTimeMillis() - start) + 
+							"ms. Deleted " + deleted + " journal segments.");
+				} catch ( IOException ioe ){
+					LOG.error("Cannot write a snapshot. The journal keeps all segments.", ioe);
+				} catch ( InterruptedException ie ){
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Collects the current state for a snapshot: queued jobs in round robin order, finished jobs
+	 * and registered clients. The running job runs again after a restart, so it's queued first.
+	 * Indexed jobs aren't part of the snapshot, the result index keeps them itself.
+	 * @param segment first journal segment which isn't covered by the snapshot
+	 * @return snapshot
+	 */
+	private JobSnapshot collectSnapshot( long segment ){
+		JobSnapshot snapshot = new JobSnapshot( segment );
+		LinkedHashMap<String, List<RRJob>> queued = submittedJobs.getQueuedJobs();
+		
+		if ( curr_WorkingJob != null && queued.containsKey( curr_WorkingJob.getClientID() ) )
+			queued.get( curr_WorkingJob.getClientID() ).add( 0, curr_WorkingJob );
+		
+		for ( Map.Entry<String, List<RRJob>> entry : queued.entrySet() ){
+			snapshot.addClient( entry.getKey(), registeredClients.contains( entry.getKey() ) );
+			for ( RRJob job : entry.getValue() )
+				snapshot.addQueuedJob( entry.getKey(), job.getJobID(), job.getOriginalScript(), job.getSubmitTime() );
+		}
+		
+		for ( String clientID : registeredClients )
+			snapshot.addClient( clientID, true );
+		
+		for ( Map.Entry<String, HashMap<String, RRJob>> entry : finishedJobsCollection.entrySet() ){
+			if ( entry.getValue() == null ) continue;
+			snapshot.addClient( entry.getKey(), registeredClients.contains( entry.getKey() ) );
+			for ( RRJob job : entry.getValue().values() )
+				snapshot.addFinishedJob( entry.getKey(), job.getJobID(), job.getOriginalScript(), job.getSubmitTime(), 
+						job.getStatus(), job.getErrorMessage() );
+		}
+		return snapshot;
+	}
+	
+	/**
+	 * Adds a new incoming job. If a job with same identifications still exists it's replaced, 
+	 * unless the submission was delivered again.
 	 * @param clientID specified client
 	 * @param jobID specified job
 	 * @param properties from request
 	 * @param script of this job
+	 * @param redelivered true if the submission may have been handled before
 	 */
-	private void handleIncomingJob( String clientID, String jobID, BasicProperties properties, byte[] script ){
+	private void handleIncomingJob( String clientID, String jobID, BasicProperties properties, byte[] script, 
+			boolean redelivered ){
+		long receivedTime = System.nanoTime();
 		DOPAScheduler.LOG.info("New job received. JobID: " + jobID );
-		RRJob job;
-		
-		// removes the job. if this job doesn't existed in the working list removes it from the finished job list
-		if ( !submittedJobs.remove(clientID, jobID) );
-			this.removeFinishedJob(clientID, jobID);
+		Span span = Tracer.start( "scheduler.submit", TraceContext.extract( properties ) ).tag( "jobID", jobID );
 		
 		try {
 			// create new job
 			String encoding = properties.getContentEncoding();
 			String meteorScript = new String( script, encoding );
-			Date submitTime = properties.getTimestamp();
-			
-			// create job
-			job = new RRJob( clientID, jobID, meteorScript, submitTime );
 			
-			// put to existing list or create once
-			submittedJobs.add(clientID, job);
-			if ( !finishedJobsCollection.containsKey(clientID) )
-				finishedJobsCollection.put(clientID, new HashMap<String, RRJob>());
-			
-			// send new job status to client
-			statusUpdate( clientID, jobID );
+			addJob( clientID, jobID, meteorScript, properties.getTimestamp(), receivedTime, redelivered, span.getContext() );
 		} catch ( UnsupportedEncodingException uee ){
 			LOG.error( "Cannot add a new DSCLJob, encode given script failed with false encoding informations.", uee );
 		} catch ( NullPointerException npe ){
 			LOG.error( "Any informations are null. Cannot handle incoming job.", npe );
+		} finally {
+			span.finish();
+		}
+	}
+	
+	/**
+	 * Adds all jobs of an incoming batch in one step. The status updates of these jobs are sent
+	 * together by the notifier.
+	 * @param clientID specified client
+	 * @param properties from request
+	 * @param body json batch build by MessageBuilder.buildJobBatch
+	 * @param redelivered true if the batch may have been handled before
+	 */
+	private void handleIncomingJobBatch( String clientID, BasicProperties properties, byte[] body, boolean redelivered ){
+		long receivedTime = System.nanoTime();
+		Span span = Tracer.start( "scheduler.submitBatch", TraceContext.extract( properties ) );
+		try {
+			JSONObject batch = new JSONObject( new String( body, properties.getContentEncoding() ) );
+			Map<String, String> scripts = MessageBuilder.getJobBatch( batch );
+			DOPAScheduler.LOG.info("New batch of " + scripts.size() + " jobs received from client " + clientID + "." );
+			span.tag( "jobs", scripts.size() );
+			
+			// all jobs of the batch are children of this span
+			Date submitTime = properties.getTimestamp();
+			for ( Map.Entry<String, String> entry : scripts.entrySet() )
+				addJob( clientID, entry.getKey(), entry.getValue(), submitTime, receivedTime, redelivered, span.getContext() );
+		} catch ( UnsupportedEncodingException uee ){
+			LOG.error( "Cannot add a batch of jobs, encode given batch failed with false encoding informations.", uee );
+		} catch ( JSONException | NullPointerException e ){
+			LOG.error( "Cannot read an incoming batch of jobs.", e );
+		} finally {
+			span.finish();
 		}
 	}
 	
+	/**
+	 * Creates a job, adds it to the working list and informs the client. A job with same 
+	 * identifications is replaced, the client submitted it again. But if the submission itself was
+	 * delivered again (after a crash or a reconnect of the client) and the job exists, it's a
+	 * duplicate. It's ignored and the client gets the current status.
+	 * If the client reached one of its quotas the job is rejected with an error status.
+	 * @param clientID specified client
+	 * @param jobID specified job
+	 * @param meteorScript of this job
+	 * @param submitTime from client site
+	 * @param receivedTime System.nanoTime() when the submission was received
+	 * @param redelivered true if the submission may have been handled before
+	 * @param trace context of the span which received the submission
+	 */
+	private void addJob( String clientID, String jobID, String meteorScript, Date submitTime, 
+			long receivedTime, boolean redelivered, TraceContext trace ){
+		if ( redelivered && jobExists( clientID, jobID ) ){
+			LOG.info("Job " + jobID + " of client " + clientID + " submitted again. Ignored the duplicate.");
+			statusUpdate( clientID, jobID, trace );
+			return;
+		}
+		
+		String rejection = quotas.checkSubmission( clientID, submittedJobs.size( clientID ) );
+		if ( rejection != null ){
+			LOG.warn("Job " + jobID + " of client " + clientID + ": " + rejection);
+			this.notifier.publish( clientID, jobID, 
+					MessageBuilder.addTrace( MessageBuilder.buildErrorStatus( clientID, jobID, rejection ), trace ) );
+			return;
+		}
+		
+		RRJob job = queueJob( clientID, jobID, meteorScript, submitTime );
+		job.getTimeline().mark( JobTimeline.Stage.RECEIVED, receivedTime );
+		job.setTraceContext( trace );
+		
+		// journal only queued jobs, so the replay doesn't fail on them
+		if ( journal != null ){
+			try { journal.logSubmit( clientID, jobID, meteorScript, submitTime ); }
+			catch ( IOException ioe ){ LOG.error("Cannot journal the job " + jobID + ".", ioe); }
+		}
+		
+		// send new job status to client
+		statusUpdate( clientID, jobID, trace );
+	}
+	
+	/**
+	 * Creates a job and adds it to the working list. A waiting or finished job with same
+	 * identifications is replaced, so a resubmitted job runs again.
+	 * @param clientID specified client
+	 * @param jobID specified job
+	 * @param meteorScript of this job
+	 * @param submitTime from client site
+	 * @return the queued job
+	 */
+	private RRJob queueJob( String clientID, String jobID, String meteorScript, Date submitTime ){
+		// removes the job. if this job doesn't existed in the working list removes it from the finished job list
+		if ( !submittedJobs.remove(clientID, jobID) )
+			this.removeFinishedJob(clientID, jobID);
+		
+		// create job
+		RRJob job = new RRJob( clientID, jobID, meteorScript, submitTime );
+		
+		// the job writes its results again, they mustn't be deleted anymore
+		for ( int i = 0; i < job.getNumberOfResults(); i++ )
+			reclaimer.cancel( job.getMappedResult(i) );
+		
+		// put to existing list or create once
+		submittedJobs.add(clientID, job);
+		job.getTimeline().mark( JobTimeline.Stage.QUEUED );
+		metrics.jobStateChanged( JobState.WAITING );
+		if ( !finishedJobsCollection.containsKey(clientID) )
+			finishedJobsCollection.put(clientID, new HashMap<String, RRJob>());
+		return job;
+	}
+	
 	/**
 	 * Handle an incoming delivery by find out request type and reply that request.
 	 * @param delivery incoming message
@@ -179,10 +518,12 @@ public class DOPAScheduler {
 		String jobID = MessageBuilder.getJobID(request);
 		
 		// handle specific request
-		switch ( RequestType.getRequestType(request) ){
+		RequestType type = RequestType.getRequestType(request);
+		if ( type != null ) metrics.requestReceived( type.name() );
+		switch ( type ){
 			case JOB_STATUS: // same as JOB_EXISTS request
 			case JOB_EXISTS:
-				statusUpdate( clientID, jobID ); 
+				statusUpdate( clientID, jobID, TraceContext.extract( delivery.getProperties() ) ); 
 				break;
 			case GET_LINK:
 				replyLink( clientID, jobID, request, delivery.getProperties() ); 
@@ -198,27 +539,40 @@ public class DOPAScheduler {
 	}
 	
 	/**
-	 * Sends a status update to specified client of its job.
+	 * Sends a status update to specified client of its job. The status carries the context of
+	 * its span, a child of the given context.
 	 * @param clientID specified client
 	 * @param jobID specified job
+	 * @param trace context of the request or the job, null to start a new trace
 	 */
-	private void statusUpdate( String clientID, String jobID ){
+	private void statusUpdate( String clientID, String jobID, TraceContext trace ){
 		LOG.info("Status update for client " + clientID + " of job " + jobID + ".");
-		//get the specified RRjob from the workingJobsCollection by the ClientID and the JobID
-		RRJob job = submittedJobs.get(clientID, jobID);
-		if ( job == null ) job = getFinishedJob( clientID, jobID );
+		// waiting and running jobs are on the heap, finished jobs only in the finished list or the index
+		RRJob job = getActiveJob(clientID, jobID);
 		
 		// build json object for reply
 		JSONObject jobStatus;
 		
-		// if job still doesn't exists (no working job, no finished job) the status is deleted.
-		if ( job == null ) jobStatus = MessageBuilder.buildJobStatus( clientID, jobID, JobState.DELETED );
-		else if ( job.getStatus().equals( JobState.ERROR ) ) jobStatus = job.getErrorJSON();
-		else jobStatus = MessageBuilder.buildJobStatus( clientID, jobID, job.getStatus() );
+		if ( job != null && job.getStatus().equals( JobState.ERROR ) ) jobStatus = job.getErrorJSON();
+		else if ( job != null ) jobStatus = MessageBuilder.buildJobStatus( clientID, jobID, job.getStatus() );
+		else {
+			ResultEntry finished = getFinishedJob( clientID, jobID );
+			
+			// if job still doesn't exists (no working job, no finished job) the status is deleted.
+			if ( finished == null ) jobStatus = MessageBuilder.buildJobStatus( clientID, jobID, JobState.DELETED );
+			else jobStatus = finished.getStatusJSON();
+		}
+		
+		// where the job spent its time so far
+		if ( job != null ) MessageBuilder.addTimings( jobStatus, job.getTimeline().getBreakdown() );
+		
+		Span span = Tracer.start( "scheduler.status", trace ).tag( "jobID", jobID )
+				.tag( "state", MessageBuilder.getJobStatus( jobStatus ) );
+		MessageBuilder.addTrace( jobStatus, span.getContext() );
 		
-		// send reply
-		try { this.connectionFactory.sendJobStatus( clientID, jobStatus ); }
-		catch ( IOException ioe ){ LOG.error("Cannot send status update.", ioe); }
+		// send reply with the next batch of this client
+		this.notifier.publish( clientID, jobID, jobStatus );
+		span.finish();
 	}
 	
 	/**
@@ -230,8 +584,8 @@ public class DOPAScheduler {
 	 */
 	private void replyLink( String clientID, String jobID, JSONObject request, BasicProperties properties ){
 		LOG.info("Reply a link request from client " + clientID + " for the job " + jobID + ".");
-		//get the specified RRjob from the workingJobsCollection by the ClientID and the JobID
-		RRJob job = getFinishedJob( clientID, jobID );
+		//get the specified finished job by the ClientID and the JobID
+		ResultEntry job = getFinishedJob( clientID, jobID );
 		
 		// get index from request
 		int idx = MessageBuilder.getFileIndex( request );
@@ -245,9 +599,12 @@ public class DOPAScheduler {
 				"The job with the ID: '" + jobID + "' doesn't finished yet or exists anymore. "
 						+ "Ask for the status if you're not sure whether this job exists.");
 		
-		// send message
-		try { this.connectionFactory.replyRequest( properties, reply ); }
+		// send message, the reply continues the trace of this span
+		Span span = Tracer.start( "scheduler.link", TraceContext.extract( properties ) )
+				.tag( "jobID", jobID ).tag( "fileIndex", idx );
+		try { this.connectionFactory.replyRequest( span.getContext().inject( properties ), reply ); }
 		catch ( IOException ioe ){ LOG.error( "Cannot send link of job.", ioe ); }
+		finally { span.finish(); }
 	}
 	
 	/**
@@ -256,13 +613,19 @@ public class DOPAScheduler {
 	 * @param jobID specified job
 	 */
 	private void abortJob( String clientID, String jobID ){
-		if ( !submittedJobs.remove(clientID, jobID) )
-			this.removeFinishedJob(clientID, jobID);
+		journalRemoval( clientID, jobID );
+		
+		boolean removed = submittedJobs.remove(clientID, jobID);
+		if ( !removed ){
+			ResultEntry finished = getFinishedJob( clientID, jobID );
+			removed = this.removeFinishedJob(clientID, jobID);
+			if ( removed ) reclaimResults( Collections.singletonList( finished ) );
+		}
 		
-		// send new status
+		// send new status, only jobs which existed are counted
 		JSONObject reply = MessageBuilder.buildJobStatus( clientID, jobID, JobState.DELETED );
-		try { this.connectionFactory.sendJobStatus(clientID, reply); }
-		catch ( IOException ioe ) { LOG.error( "Cannot send deleted job status, after deleted job.", ioe ); }
+		this.notifier.publish( clientID, jobID, reply );
+		if ( removed ) metrics.jobStateChanged( JobState.DELETED );
 		
 		DOPAScheduler.LOG.info("Job aborted. JobID: " + jobID);
 	}
@@ -277,10 +640,10 @@ public class DOPAScheduler {
 	private void sendResult( String clientID, String jobID, Delivery delivery ){
 		LOG.info("Reply a result request from client " + clientID + " for the job " + jobID + ".");
 		
-		RRJob job = this.getFinishedJob(clientID, jobID);
+		ResultEntry job = this.getFinishedJob(clientID, jobID);
 		if ( job == null ) {
 			String errorMsg = "Your specified job with the ID: '"+jobID+"' ";
-			if ( submittedJobs.contains(clientID, jobID) )
+			if ( getActiveJob(clientID, jobID) != null )
 				errorMsg += "doesn't finished yet. You cannot ask for the result at this stage.";
 			else errorMsg += "doesn't exists on the server.";
 			sendErrorMessage( delivery.getProperties(), clientID, jobID, errorMsg );
@@ -288,10 +651,19 @@ public class DOPAScheduler {
 			return;
 		}
 		
-		// otherwise start parallel thread to sending blocks of the result
-		FileSender sender = new FileSender( this.connectionFactory, job, delivery );
-		try { sender.start(); }
+		if ( !quotas.startTransfer( clientID ) ){
+			String errorMsg = "You reached the quota of " + SchedulerConfigConstants.CLIENT_TRANSFER_QUOTA + 
+					" result transfers at the same time. Request the result again after a transfer finished.";
+			sendErrorMessage( delivery.getProperties(), clientID, jobID, errorMsg );
+			LOG.info("Doesn't send the message because of: " + errorMsg);
+			return;
+		}
+		
+		// otherwise start parallel thread to sending blocks of the result, the transfer is
+		// released here if the sender cannot be created or started
+		try { new FileSender( this.connectionFactory, job, delivery, quotas, metrics ).start(); }
 		catch ( Exception e ){
+			quotas.finishTransfer( clientID );
 			String errorMsg = "Cannot send the result back to you cause: " + System.lineSeparator();
 			errorMsg += e.getMessage();
 			sendErrorMessage( delivery.getProperties(), clientID, jobID, errorMsg );
@@ -314,16 +686,63 @@ public class DOPAScheduler {
 	}
 	
 	/**
-	 * Test whether specified job contains in finished list. If it is so it returns the job object,
-	 * otherwise returns null.
+	 * Returns true if the job is waiting, running or finished.
+	 * @param clientID
+	 * @param jobID
+	 * @return true if the job exists
+	 */
+	private boolean jobExists( String clientID, String jobID ){
+		return getActiveJob(clientID, jobID) != null || getFinishedJob(clientID, jobID) != null;
+	}
+	
+	/**
+	 * Returns the specified job if it's waiting or running, otherwise null.
+	 * @param clientID
+	 * @param jobID
+	 * @return waiting or running job, otherwise null
+	 */
+	private RRJob getActiveJob( String clientID, String jobID ){
+		if ( curr_WorkingJob != null && curr_WorkingJob.getClientID().equals(clientID) && 
+				curr_WorkingJob.getJobID().equals(jobID) ) return curr_WorkingJob;
+		return submittedJobs.get(clientID, jobID);
+	}
+	
+	/**
+	 * Test whether specified job contains in finished list or in the result index. If it is so
+	 * it returns the metadata of the job, otherwise returns null.
 	 * @param clientID
 	 * @param jobID
-	 * @return RRjob if its exists, otherwise null
+	 * @return finished job if its exists, otherwise null
 	 */
-	private RRJob getFinishedJob( String clientID, String jobID ){
+	private ResultEntry getFinishedJob( String clientID, String jobID ){
 		HashMap<String, RRJob> clientMap = finishedJobsCollection.get(clientID);
-		if ( clientMap != null ) return clientMap.get(jobID);
-		return null;
+		if ( clientMap != null && clientMap.containsKey(jobID) ) return clientMap.get(jobID).getResultEntry();
+		if ( resultIndex == null ) return null;
+		
+		ResultEntry entry = resultIndex.get( clientID, jobID );
+		if ( entry != null ) entry.setTimeline( indexedTimelines.get( clientID + "/" + jobID ) );
+		return entry;
+	}
+	
+	/**
+	 * Adds a finished job to the result index or to the finished list if there is no index
+	 * or it cannot index the job.
+	 * @param job finished job
+	 */
+	private void finishJob( RRJob job ){
+		ResultEntry entry = job.getResultEntry();
+		quotas.addResults( entry );
+		
+		if ( resultIndex != null ){
+			try { 
+				resultIndex.put( entry );
+				indexedTimelines.put( job.getClientID() + "/" + job.getJobID(), job.getTimeline() );
+				return;
+			} catch ( IOException ioe ){ 
+				LOG.error("Cannot index the job " + job.getJobID() + ". It's kept in memory.", ioe); 
+			}
+		}
+		this.finishedJobsCollection.get( job.getClientID() ).put( job.getJobID(), job );
 	}
 	
 	/**
@@ -333,9 +752,75 @@ public class DOPAScheduler {
 	 * @return true if it changed the list or false if not
 	 */
 	private boolean removeFinishedJob( String clientID, String jobID ){
-		RRJob job = getFinishedJob( clientID, jobID );
+		ResultEntry job = getFinishedJob( clientID, jobID );
 		if ( job == null ) return false;
-		return finishedJobsCollection.get(clientID).remove(jobID) != null;
+		
+		HashMap<String, RRJob> clientMap = finishedJobsCollection.get(clientID);
+		if ( clientMap != null ) clientMap.remove(jobID);
+		if ( resultIndex != null ) resultIndex.remove( clientID, jobID );
+		indexedTimelines.remove( clientID + "/" + jobID );
+		quotas.removeResults( job );
+		return true;
+	}
+	
+	/**
+	 * Removes finished jobs whose results expired. At most one batch of jobs is removed each
+	 * reclaim interval, their results are deleted by the reclaimer.
+	 */
+	private void expireResults(){
+		if ( SchedulerConfigConstants.RESULT_EXPIRATION <= 0 ) return;
+		if ( System.currentTimeMillis() - lastExpirationTime < SchedulerConfigConstants.RECLAIM_INTERVAL ) return;
+		lastExpirationTime = System.currentTimeMillis();
+		
+		long expired = lastExpirationTime - SchedulerConfigConstants.RESULT_EXPIRATION;
+		int limit = SchedulerConfigConstants.RECLAIM_BATCH_SIZE;
+		List<ResultEntry> removed = new ArrayList<ResultEntry>();
+		
+		for ( HashMap<String, RRJob> clientMap : finishedJobsCollection.values() ){
+			if ( clientMap == null ) continue;
+			for ( RRJob job : clientMap.values() ){
+				if ( removed.size() >= limit ) break;
+				if ( job.getFinishTime() < expired ) removed.add( job.getResultEntry() );
+			}
+		}
+		if ( resultIndex != null && removed.size() < limit )
+			removed.addAll( resultIndex.finishedBefore( expired, limit - removed.size() ) );
+		
+		if ( removed.isEmpty() ) return;
+		for ( ResultEntry job : removed ){
+			journalRemoval( job.getClientID(), job.getJobID() );
+			removeFinishedJob( job.getClientID(), job.getJobID() );
+		}
+		
+		reclaimResults( removed );
+		LOG.info("Removed " + removed.size() + " expired jobs.");
+	}
+	
+	/**
+	 * Passes the results of removed jobs to the reclaimer. Results which other jobs of the same
+	 * client still write or wrote are kept. The reclaimer deletes a result only below the directory
+	 * of its client.
+	 * @param removed finished jobs which are removed already
+	 */
+	private void reclaimResults( List<ResultEntry> removed ){
+		// mapped result -> client
+		Map<String, String> results = new HashMap<String, String>();
+		for ( ResultEntry job : removed )
+			for ( int i = 0; i < job.getNumberOfResults(); i++ ) results.put( job.getMappedResult(i), job.getClientID() );
+		if ( results.isEmpty() ) return;
+		
+		// results of queued, running and finished jobs
+		List<RRJob> jobs = new ArrayList<RRJob>();
+		for ( List<RRJob> queued : submittedJobs.getQueuedJobs().values() ) jobs.addAll( queued );
+		for ( HashMap<String, RRJob> clientMap : finishedJobsCollection.values() ) 
+			if ( clientMap != null ) jobs.addAll( clientMap.values() );
+		if ( curr_WorkingJob != null ) jobs.add( curr_WorkingJob );
+		
+		for ( RRJob job : jobs )
+			for ( int i = 0; i < job.getNumberOfResults(); i++ ) results.remove( job.getMappedResult(i) );
+		if ( resultIndex != null ) results.keySet().removeAll( resultIndex.findResults( results.keySet() ) );
+		
+		for ( Map.Entry<String, String> result : results.entrySet() ) reclaimer.reclaim( result.getValue(), result.getKey() );
 	}
 	
 	/**
@@ -346,15 +831,19 @@ public class DOPAScheduler {
 		if ( this.curr_WorkingJob != null ){
 			// if this job is still in process
 			if ( this.curr_WorkingJob.finished() ) {
-				// add job to finished job list
-				this.finishedJobsCollection.get( 
-						curr_WorkingJob.getClientID() ).put( curr_WorkingJob.getJobID(), curr_WorkingJob );
+				journalState( curr_WorkingJob );
+				metrics.jobFinished( curr_WorkingJob.getTimeline() );
+				metrics.jobStateChanged( curr_WorkingJob.getStatus() );
 				
-				// inform client that its job finished
-				this.statusUpdate(this.curr_WorkingJob.getClientID(), this.curr_WorkingJob.getJobID());
+				// add job to finished job list
+				RRJob finished = curr_WorkingJob;
+				finishJob( finished );
 				
-				// working with new jobs
+				// working with new jobs, the status of the finished job comes from the finished list or the index
 				curr_WorkingJob = null;
+				
+				// inform client that its job finished
+				this.statusUpdate(finished.getClientID(), finished.getJobID(), finished.getTraceContext());
 			} else return; // go on with it!
 		}
 		
@@ -367,12 +856,89 @@ public class DOPAScheduler {
 		
 		// execute the current job
 		curr_WorkingJob.execute();
+		journalState( curr_WorkingJob );
+		metrics.jobStarted( curr_WorkingJob.getTimeline() );
+		metrics.jobStateChanged( JobState.RUNNING );
 		
 		// inform administrator about new job executions
 		DOPAScheduler.LOG.info( "New job executed. " + curr_WorkingJob.getJobID() );
 		
 		// inform the client that the status changed now
-		statusUpdate( curr_WorkingJob.getClientID(), curr_WorkingJob.getJobID() );
+		statusUpdate( curr_WorkingJob.getClientID(), curr_WorkingJob.getJobID(), curr_WorkingJob.getTraceContext() );
+	}
+	
+	/**
+	 * Returns true if a delivery may have been handled before: the broker delivers it again
+	 * or the client published it again after its connection recovered.
+	 * @param delivery incoming message
+	 * @return true if it may be a duplicate
+	 */
+	private static boolean isRedelivered( Delivery delivery ){
+		if ( delivery.getEnvelope().isRedeliver() ) return true;
+		Map<String, Object> headers = delivery.getProperties().getHeaders();
+		return headers != null && Boolean.TRUE.equals( headers.get( SchedulerConfigConstants.REPLAY_HEADER ) );
+	}
+	
+	/**
+	 * Splits the routing key of a submission. A single job is keyed by 'setJob.<ClientID>.<JobID>',
+	 * a batch of jobs by 'setJobs.<ClientID>'.
+	 * @param routingKey of the delivery
+	 * @return the parts of the key, null if it isn't the key of a submission
+	 */
+	public static String[] parseSubmissionKey( String routingKey ){
+		String[] separateKey = routingKey.split("\\.");
+		if ( separateKey[0].matches("setJob") && separateKey.length >= 3 ) return separateKey;
+		if ( separateKey[0].matches("setJobs") && separateKey.length >= 2 ) return separateKey;
+		return null;
+	}
+	
+	/**
+	 * Acknowledges a handled delivery. If the delivery caused journal records which aren't forced
+	 * to the disk yet, the acknowledgment waits until they are.
+	 * @param delivery handled delivery
+	 */
+	private void acknowledge( Delivery delivery ){
+		if ( journal != null ){
+			long sequence = journal.getAppendedSequence();
+			if ( !pendingAcks.isEmpty() || sequence > journal.getDurableSequence() ){
+				pendingAcks.add( new PendingAck( delivery, sequence ) );
+				return;
+			}
+		}
+		connectionFactory.acknowledge( delivery );
+	}
+	
+	/**
+	 * Acknowledges all waiting deliveries whose journal records are on the disk.
+	 */
+	private void flushAcknowledges(){
+		if ( pendingAcks.isEmpty() ) return;
+		
+		// a failed journal doesn't hold back the requests, it's reported already
+		long durable = journal.hasFailed() ? Long.MAX_VALUE : journal.getDurableSequence();
+		while ( !pendingAcks.isEmpty() && pendingAcks.peek().sequence <= durable )
+			connectionFactory.acknowledge( pendingAcks.poll().delivery );
+	}
+	
+	/**
+	 * Journals that a job was aborted or removed.
+	 * @param clientID
+	 * @param jobID
+	 */
+	private void journalRemoval( String clientID, String jobID ){
+		if ( journal == null ) return;
+		try { journal.logAbort( clientID, jobID ); }
+		catch ( IOException ioe ){ LOG.error("Cannot journal the removal of job " + jobID + ".", ioe); }
+	}
+	
+	/**
+	 * Journals the current state of a job.
+	 * @param job changed its state
+	 */
+	private void journalState( RRJob job ){
+		if ( journal == null ) return;
+		try { journal.logState( job.getClientID(), job.getJobID(), job.getStatus(), job.getErrorMessage() ); }
+		catch ( IOException ioe ){ LOG.error("Cannot journal the state of job " + job.getJobID() + ".", ioe); }
 	}
 	
 	/**
@@ -435,6 +1001,15 @@ public class DOPAScheduler {
 	protected boolean addClient(String clientID) {
 		if ( registeredClients.contains(clientID) ) return false;
 		else {
+			// client and scheduler disagree about the number of shards
+			if ( SchedulerConfigConstants.getShard(clientID) != SchedulerConfigConstants.SCHEDULER_SHARD )
+				DOPAScheduler.LOG.warn("Client '" + clientID + "' belongs to another shard. Check the number of shards.");
+
+			if ( journal != null ){
+				try { journal.logRegister( clientID ); }
+				catch ( IOException ioe ){ LOG.error("Cannot journal the registration of client " + clientID + ".", ioe); }
+			}
+			
 			// add client to registered clients
 			registeredClients.add(clientID);
 			// put an empty list for finished jobs of this client
@@ -458,6 +1033,11 @@ public class DOPAScheduler {
 	 * @return true if client removed well, false otherwise
 	 */
 	protected void removeClient( String clientID ){
+		if ( journal != null ){
+			try { journal.logUnregister( clientID ); }
+			catch ( IOException ioe ){ LOG.error("Cannot journal the unregistration of client " + clientID + ".", ioe); }
+		}
+		
 		// remove the client
 		registeredClients.remove(clientID);
 		
@@ -479,11 +1059,12 @@ public class DOPAScheduler {
 		// main loop handle incoming, outgoing messages and work through job lists
 		while( !paused ){
 			
-			// get delivery
-			Delivery delivery = connectionFactory.getRequest( WAITING_TIME );
+			// get delivery, but don't wait longer than the next status window closes or the journal commits
+			long waitingTime = pendingAcks.isEmpty() ? WAITING_TIME : SchedulerConfigConstants.JOURNAL_COMMIT_DELAY;
+			Delivery delivery = connectionFactory.getRequest( notifier.getWaitingTime( waitingTime ) );
 			
 			// if nothing todo at all, sleep a bit and continue after wake up
-			if ( delivery == null && !submittedJobs.hasNext() ){
+			if ( delivery == null && !submittedJobs.hasNext() && !notifier.hasPending() && pendingAcks.isEmpty() ){
 				try { Thread.sleep( WAITING_TIME ); } 
 				catch (InterruptedException e) { Thread.interrupted(); }
 				continue;
@@ -499,18 +1080,39 @@ public class DOPAScheduler {
 					catch (UnsupportedEncodingException e) { LOG.error("Cannot decrypt incoming request.", e); }
 					catch (JSONException e) { LOG.error("Unbelievable. Send me how you produces this error...", e); }
 				} else { // else search for jobs
-					String[] separateKey = routingKey.split("\\.");
-					if ( separateKey[0].matches("setJob") && separateKey.length >= 3 )
-						handleIncomingJob( separateKey[1], separateKey[2], delivery.getProperties(), delivery.getBody() );
+					String[] separateKey = parseSubmissionKey( routingKey );
+					if ( separateKey != null && separateKey[0].equals("setJob") ){
+						metrics.requestReceived( "setJob" );
+						handleIncomingJob( separateKey[1], separateKey[2], delivery.getProperties(), delivery.getBody(), 
+								isRedelivered( delivery ) );
+					} else if ( separateKey != null ){
+						metrics.requestReceived( "setJobs" );
+						handleIncomingJobBatch( separateKey[1], delivery.getProperties(), delivery.getBody(), 
+								isRedelivered( delivery ) );
+					}
 				}
+				
+				// the broker delivers unacknowledged requests again after a crash
+				acknowledge( delivery );
 			} // end if delivery != null
 			
 			// execute jobList via round robin algorithm 
 			workOnJobs();
 			
+			// send collected status updates
+			notifier.flushDue();
+			flushAcknowledges();
+			
+			// bound the journal and the results
+			snapshotIfDue();
+			expireResults();
+			
 			// System yield, to keep this time as short as possible use setSchedulerPriority( int priority )
 			Thread.yield();
 		}
+		
+		// don't hold back any status updates while paused
+		notifier.flushAll();
 	}
 	
 	/**
@@ -532,11 +1134,12 @@ public class DOPAScheduler {
 	
 	/**
 	 * Clean finished jobs collection. This delete all finished jobs from
-	 * unregistered clients.
+	 * unregistered clients. Their results are deleted in the background.
 	 */
 	public void cleanGarbageJobsCollection(){
 		HashMap<String, HashMap<String, RRJob>> tmpFinishedJobs =
 				new HashMap<String, HashMap<String, RRJob>>();
+		List<ResultEntry> removed = new ArrayList<ResultEntry>();
 		
 		// save all finished jobs of registered clients
 		for ( String clientID : registeredClients ){
@@ -544,8 +1147,45 @@ public class DOPAScheduler {
 			tmpFinishedJobs.put(clientID, tmpJobMap);
 		}
 		
+		// collect finished jobs of unregistered clients
+		for ( Map.Entry<String, HashMap<String, RRJob>> entry : finishedJobsCollection.entrySet() ){
+			if ( tmpFinishedJobs.containsKey( entry.getKey() ) || entry.getValue() == null ) continue;
+			for ( RRJob job : entry.getValue().values() ) removed.add( job.getResultEntry() );
+		}
+		
 		// delete all finished jobs of unregistered clients
 		this.finishedJobsCollection = tmpFinishedJobs;
+		if ( resultIndex != null ) resultIndex.retainClients( registeredClients, removed );
+		
+		for ( ResultEntry job : removed ){
+			journalRemoval( job.getClientID(), job.getJobID() );
+			quotas.removeResults( job );
+		}
+		reclaimResults( removed );
+	}
+	
+	/**
+	 * Returns the quotas and the usage of the clients.
+	 * @return quotas
+	 */
+	public ClientQuotas getQuotas(){
+		return quotas;
+	}
+	
+	/**
+	 * Returns the reclaimer which deletes the results of removed jobs.
+	 * @return reclaimer
+	 */
+	public ResultReclaimer getReclaimer(){
+		return reclaimer;
+	}
+	
+	/**
+	 * Returns the metrics of this scheduler.
+	 * @return metrics
+	 */
+	public SchedulerMetrics getMetrics(){
+		return metrics;
 	}
 	
 	/**
@@ -568,7 +1208,16 @@ public class DOPAScheduler {
 	 * @throws IOException
 	 */
 	public void shutdown() throws IOException {
+		this.metrics.unregister();
 		this.connectionFactory.shutdownConnections();
+		this.reclaimer.shutdown();
+		if ( snapshotWriter != null ){
+			snapshotWriter.shutdown();
+			try { snapshotWriter.awaitTermination( 1, TimeUnit.MINUTES ); }
+			catch ( InterruptedException ie ){ Thread.currentThread().interrupt(); }
+		}
+		if ( journal != null ) journal.close();
+		if ( resultIndex != null ) resultIndex.close();
 	}
 	
 	/**
@@ -581,8 +1230,36 @@ public class DOPAScheduler {
 	 * @return DOPAScheulder object in pause mode.
 	 */
 	public static DOPAScheduler createNewSchedulerSystem(){
+		// the rabbitMQ service already runs on this system (the server system)
+		return createNewSchedulerSystem( 
+				new RabbitMQTransportFactory( "localhost", SchedulerConfigConstants.SCHEDULER_PORT, 0 ) );
+	}
+	
+	/**
+	 * Creates and return a new Scheduler object connected by given transport. Use an
+	 * {@link eu.stratosphere.meteor.common.transport.InMemoryBroker} to run the scheduler and
+	 * its clients in one JVM.
+	 * If SchedulerConfigConstants.JOURNAL_DIRECTORY is set the scheduler replays its journal
+	 * first to recover clients and jobs. If SchedulerConfigConstants.RESULT_INDEX_DIRECTORY is
+	 * set finished jobs are indexed there.
+	 * 
+	 * @param transportFactory to connect to the message broker
+	 * @return DOPAScheulder object in pause mode.
+	 */
+	public static DOPAScheduler createNewSchedulerSystem( TransportFactory transportFactory ){
 		DOPAScheduler scheduler = new DOPAScheduler();
-		scheduler.connect();
+		if ( SchedulerConfigConstants.RESULT_INDEX_DIRECTORY != null )
+			scheduler.openResultIndex( new File( SchedulerConfigConstants.RESULT_INDEX_DIRECTORY ) );
+		if ( SchedulerConfigConstants.JOURNAL_DIRECTORY != null )
+			scheduler.openJournal( new File( SchedulerConfigConstants.JOURNAL_DIRECTORY ) );
+		scheduler.connect( transportFactory );
+		scheduler.reclaimer.start();
+		if ( SchedulerConfigConstants.METRICS_JMX )
+			scheduler.metrics.register( SchedulerConfigConstants.SCHEDULER_SHARD );
+		if ( SchedulerConfigConstants.TRACE_FILE != null ){
+			try { Tracer.exportTo( new File( SchedulerConfigConstants.TRACE_FILE ) ); }
+			catch ( IOException ioe ){ LOG.warn( "Cannot export spans to " + SchedulerConfigConstants.TRACE_FILE + ".", ioe ); }
+		}
 		return scheduler;
 	}
 	
@@ -590,7 +1267,11 @@ public class DOPAScheduler {
 	 * You just have to specified the nephele configuration directory with
 	 * 		--configDir <nephele-config-directory-path>
 	 * 
-	 * Other specifications arn't needed.
+	 * Other specifications arn't needed. Optional you can specify the client root directory and
+	 * the shard served by this scheduler if requests are sharded across several schedulers and the
+	 * directories of the job journal and the result index, and a file to export spans to
+	 * 		--clientRoot <root-path> --shards <number-of-shards> --shard <index> --journal <directory>
+	 * 		--resultIndex <directory> --traceFile <file>
 	 * 
 	 * @param args should '--configDir <nephele-config-directory-path>'
 	 */
@@ -603,14 +1284,85 @@ public class DOPAScheduler {
 			}
             DOPAScheduler.EXECUTER_CONFIG[1] = args[1];
 
-			if (args.length >= 4) {
-                if (args[2].matches("--clientRoot")) {
-                    SchedulerConfigConstants.SCHEDULER_FILESYSTEM_ROOT_PATH = args[3];
-                }
-            }
+			// optional arguments in pairs
+			for ( int i = 2; i+1 < args.length; i += 2 ){
+				if ( args[i].matches("--clientRoot") )
+					SchedulerConfigConstants.SCHEDULER_FILESYSTEM_ROOT_PATH = args[i+1];
+				else if ( args[i].matches("--shards") )
+					SchedulerConfigConstants.REQUEST_SHARDS = Integer.parseInt( args[i+1] );
+				else if ( args[i].matches("--shard") )
+					SchedulerConfigConstants.SCHEDULER_SHARD = Integer.parseInt( args[i+1] );
+				else if ( args[i].matches("--journal") )
+					SchedulerConfigConstants.JOURNAL_DIRECTORY = args[i+1];
+				else if ( args[i].matches("--resultIndex") )
+					SchedulerConfigConstants.RESULT_INDEX_DIRECTORY = args[i+1];
+				else if ( args[i].matches("--traceFile") )
+					SchedulerConfigConstants.TRACE_FILE = args[i+1];
+			}
+			
+			if ( SchedulerConfigConstants.SCHEDULER_SHARD < 0 || 
+					SchedulerConfigConstants.SCHEDULER_SHARD >= SchedulerConfigConstants.REQUEST_SHARDS ){
+				System.err.println( "The shard of this scheduler has to be between 0 and the number of shards - 1." );
+				return;
+			}
 		}
 		
 		DOPAScheduler scheduler = createNewSchedulerSystem();
 		scheduler.start();
 	}
+	
+	/**
+	 * Rebuilds clients, queues and finished jobs from the journal. Nothing is journaled again
+	 * and no client is informed while replaying.
+	 */
+	private class JournalReplay implements JournalHandler {
+		
+		@Override
+		public void clientRegistered( String clientID ){
+			addClient( clientID );
+		}
+		
+		@Override
+		public void clientUnregistered( String clientID ){
+			removeClient( clientID );
+		}
+		
+		@Override
+		public void jobSubmitted( String clientID, String jobID, String meteorScript, Date submitTime ){
+			// the result index survived the restart, an indexed job finished already
+			if ( resultIndex != null && resultIndex.contains( clientID, jobID ) ) return;
+			queueJob( clientID, jobID, meteorScript, submitTime );
+		}
+		
+		@Override
+		public void jobStateChanged( String clientID, String jobID, JobState state, String errorMessage ){
+			// a running job was interrupted by the restart, it stays in the queue and runs again
+			if ( !state.equals( JobState.FINISHED ) && !state.equals( JobState.ERROR ) ) return;
+			if ( !submittedJobs.contains( clientID, jobID ) ) return;
+			
+			RRJob job = submittedJobs.get( clientID, jobID );
+			submittedJobs.remove( clientID, job );
+			job.restoreStatus( state, errorMessage );
+			finishJob( job );
+		}
+		
+		@Override
+		public void jobAborted( String clientID, String jobID ){
+			if ( !submittedJobs.contains(clientID, jobID) || !submittedJobs.remove(clientID, jobID) )
+				removeFinishedJob(clientID, jobID);
+		}
+	}
+	
+	/**
+	 * A handled delivery and the last journal record it caused.
+	 */
+	private static final class PendingAck {
+		private final Delivery delivery;
+		private final long sequence;
+		
+		private PendingAck( Delivery delivery, long sequence ){
+			this.delivery = delivery;
+			this.sequence = sequence;
+		}
+	}
 }
@@ -7,17 +7,21 @@ import java.util.Date;
 import org.json.JSONObject;
 
 import com.rabbitmq.client.AMQP.BasicProperties;
-import com.rabbitmq.client.Channel;
-import com.rabbitmq.client.Connection;
-import com.rabbitmq.client.ConnectionFactory;
 import com.rabbitmq.client.ConsumerCancelledException;
 import com.rabbitmq.client.QueueingConsumer;
 import com.rabbitmq.client.ShutdownSignalException;
 
 import eu.stratosphere.meteor.common.SchedulerConfigConstants;
+import eu.stratosphere.meteor.common.trace.TraceContext;
+import eu.stratosphere.meteor.common.transport.QueueingTransportConsumer;
+import eu.stratosphere.meteor.common.transport.Transport;
+import eu.stratosphere.meteor.common.transport.TransportChannel;
+import eu.stratosphere.meteor.common.transport.TransportFactory;
+import eu.stratosphere.meteor.common.transport.TransportRecoveryListener;
+import eu.stratosphere.meteor.server.metrics.SchedulerMetrics;
 
 /**
- * This class handle all traffic between RabbitMQ servers and the DOPA-Scheduler.
+ * This class handle all traffic between the message broker (RabbitMQ by default) and the DOPA-Scheduler.
  * Use this class as an interface for incoming and outgoing messages.
  * 
  * It handles incoming clients itself in a little handshake process.
@@ -46,19 +50,28 @@ public class ServerConnectionFactory {
 	/**
 	 * There are two kinds of routing keys. A key for job-submissions and one for requests.
 	 * Job: 'setJob.*.*.#'
+	 * Batch of jobs: 'setJobs.*'
 	 * Request: 'requestStatus.*.*'
 	 * HandShake: 'handShake.*'
 	 */
 	private final String[] keys = new String[]{
 			SchedulerConfigConstants.JOB_KEY_MASK,
+			SchedulerConfigConstants.BATCH_KEY_MASK,
 			SchedulerConfigConstants.REQUEST_KEY_MASK,
 			SchedulerConfigConstants.REGISTER_KEY_MASK
 	};
 	
 	/**
-	 * The queue for incoming messages.
+	 * The queue for incoming messages. Each shard has its own queue. It's durable and outlives
+	 * the connection of the scheduler, so requests wait in it while the scheduler reconnects or 
+	 * restarts. Only one scheduler consumes it.
 	 */
-	private final String REQUEST_QUEUE_NAME = "scheduler.requests.queue";
+	private final String REQUEST_QUEUE_NAME;
+	
+	/**
+	 * The request exchange of the shard served by this scheduler.
+	 */
+	private final String REQUEST_EXCHANGE;
 	
 	/**
 	 * Standard charset for the scheduler.
@@ -70,33 +83,48 @@ public class ServerConnectionFactory {
 	 */
 	private final DOPAScheduler scheduler;
 	
+	/**
+	 * Counts received registrations and published messages
+	 */
+	private final SchedulerMetrics metrics;
+	
 	/**
 	 * Connection objects
 	 */
-	private ConnectionFactory connectionFactory;
-	private Connection connection;
-	private Channel requestChannel, responseChannel;
-	private QueueingConsumer consumer;
+	private Transport connection;
+	private TransportChannel requestChannel, responseChannel;
+	private QueueingTransportConsumer consumer;
 	
 	/**
-	 * This default constructor initialize all connections and queues for the complete server side.
+	 * This constructor initialize all connections and queues for the complete server side.
 	 * To change settings for this you have to change the constants in {@link SchedulerConfigConstants}.
-	 * @throws IOException if the scheduler cannot connect to rabbitMQ
+	 * @param scheduler which uses this connection factory
+	 * @param transportFactory to connect to the message broker
+	 * @throws IOException if the scheduler cannot connect to the message broker
 	 */
-	protected ServerConnectionFactory( final DOPAScheduler scheduler ) throws IOException{
+	protected ServerConnectionFactory( final DOPAScheduler scheduler, TransportFactory transportFactory ) throws IOException{
 		this.scheduler = scheduler;
+		this.metrics = scheduler.getMetrics();
 		
-		DOPAScheduler.LOG.info("Initialize connections to RabbitMQ.");
-		
-		// create connection connectionFactory
-		this.connectionFactory = new ConnectionFactory();
+		// the first shard keeps the names of an unsharded scheduler
+		int shard = SchedulerConfigConstants.SCHEDULER_SHARD;
+		this.REQUEST_EXCHANGE = SchedulerConfigConstants.getRequestExchange( shard );
+		this.REQUEST_QUEUE_NAME = shard == 0 ? "scheduler.requests.queue" : "scheduler.requests.queue." + shard;
 		
-		// the rabbitMQ service already runs on this system (the server system)
-		this.connectionFactory.setHost( "localhost" );
+		DOPAScheduler.LOG.info("Initialize connections to the message broker. Serving shard " + 
+				shard + " of " + SchedulerConfigConstants.REQUEST_SHARDS + ".");
 		
 		try {
 			// creates a requestChannel to a connection
-			this.connection = connectionFactory.newConnection();
+			this.connection = transportFactory.newTransport();
+			this.connection.addRecoveryListener( new TransportRecoveryListener() {
+				@Override
+				public void transportRecovered( Transport transport ){
+					// the request queue kept the requests, unacknowledged ones are delivered again
+					DOPAScheduler.LOG.info("Connection to the message broker recovered. Unacknowledged requests are " +
+							"delivered again and clients register again.");
+				}
+			});
 			this.requestChannel = connection.createChannel();
 			this.responseChannel = connection.createChannel();
 			
@@ -107,17 +135,21 @@ public class ServerConnectionFactory {
 			this.declareResponseExchange();
 			
 			// creates a consumer to receive messages asynchronously
-			this.consumer = new QueueingConsumer( requestChannel );
+			this.consumer = new QueueingTransportConsumer( requestChannel );
+			if ( !SchedulerConfigConstants.REQUEST_AUTO_ACKNOWLEDGES )
+				this.requestChannel.basicQos( SchedulerConfigConstants.REQUEST_PREFETCH_COUNT );
 			this.requestChannel.basicConsume( 
 					REQUEST_QUEUE_NAME, 
 					SchedulerConfigConstants.REQUEST_AUTO_ACKNOWLEDGES, 
+					"requestConsumer",
+					true, // a second scheduler of this shard fails here
 					consumer 
 					);
 			
-			DOPAScheduler.LOG.info("Succeed! Your scheduler is now connected with RabbitMQ.");
+			DOPAScheduler.LOG.info("Succeed! Your scheduler is now connected with the message broker.");
 		} catch ( IOException e ) {
-			DOPAScheduler.LOG.error("Cannot initialize connections to RabbitMQ.", e);
-			throw new IOException("Fail to connect to RabbitMQ.");
+			DOPAScheduler.LOG.error("Cannot initialize connections to the message broker.", e);
+			throw new IOException("Fail to connect to the message broker.");
 		}
 	}
 	
@@ -133,7 +165,7 @@ public class ServerConnectionFactory {
 	private void declareRequestExchange() throws IOException{
 		// exchange declaration
 		this.requestChannel.exchangeDeclare( 
-				SchedulerConfigConstants.REQUEST_EXCHANGE,
+				REQUEST_EXCHANGE,
 				SchedulerConfigConstants.REQUEST_EXCHANGE_TYPE,
 				SchedulerConfigConstants.REQUEST_EXCHANGE_DURABLE
 		);
@@ -142,9 +174,8 @@ public class ServerConnectionFactory {
 		this.requestChannel.queueDeclare(
 				REQUEST_QUEUE_NAME, 
 				SchedulerConfigConstants.REQUEST_EXCHANGE_DURABLE, 
-				true, // exclusive for this connection
-				false, // not an auto-deleted queue
-				null // no other arguments
+				false, // survives the connection, the consumer is exclusive instead
+				false // not an auto-deleted queue
 				);
 		
 		/**
@@ -155,7 +186,7 @@ public class ServerConnectionFactory {
 		for(String bindingKey : keys)
 			requestChannel.queueBind (
 					REQUEST_QUEUE_NAME, 
-					SchedulerConfigConstants.REQUEST_EXCHANGE, 
+					REQUEST_EXCHANGE, 
 					bindingKey
 					);
 	}
@@ -209,6 +240,7 @@ public class ServerConnectionFactory {
 					"Still registered!".getBytes( encoding )
 					);
 		}
+		metrics.messagePublished();
 	}
 	
 	/**
@@ -235,13 +267,15 @@ public class ServerConnectionFactory {
 	    		props,
 	    		status.toString().getBytes( charset )
 	    		);
+		metrics.messagePublished();
 	}
 	
 	/**
 	 * Reply a request. To do this we need the original properties from the request and get the
 	 * name of the temporary reply queue and the correlation ID for this order. After the properties
 	 * set we sends the reply with informations about the content type (application/json for instance).
-	 * If no content type is set its use text/plain by default.
+	 * If no content type is set its use text/plain by default. The trace context of the request
+	 * properties is passed on with the reply.
 	 * 
 	 * @param requestProperties original properties from the request
 	 * @param answer the reply itself
@@ -270,19 +304,25 @@ public class ServerConnectionFactory {
 				.correlationId( corrID )
 				.build();
 		
+		// the reply continues the trace of the request
+		TraceContext trace = TraceContext.extract( requestProperties );
+		if ( trace != null ) replyProps = trace.inject( replyProps );
+		
 		// else try to reply
 		this.requestChannel.basicPublish( 
 				"", // no routing key
 				reply_To, // reply queue
 				replyProps, // own properties
 				answer.toString().getBytes( requestProperties.getContentEncoding() ) ); // message
+		metrics.messagePublished();
 	}
 	
 	/**
 	 * Sends a specified block of data represents of a byte array. The given properties have to be come
 	 * from the original request. If there are wrong arguments included in this properties maybe you didn't
 	 * use the correct properties. It throws an IllegalArgumentException if the name for the reply queue
-	 * is lost. However, it can throws an IOException if sending the block failed.
+	 * is lost. However, it can throws an IOException if sending the block failed. The trace context of
+	 * the request properties is passed on with the block.
 	 * 
 	 * @param requestProperties original from the request
 	 * @param block you want to send, raw format data block
@@ -308,8 +348,12 @@ public class ServerConnectionFactory {
 				.contentType( "text/plain" )
 				.build();
 		
+		TraceContext trace = TraceContext.extract( requestProperties );
+		if ( trace != null ) blockProps = trace.inject( blockProps );
+		
 		// send block
 		this.requestChannel.basicPublish("", reply_To, blockProps, block);
+		metrics.messagePublished();
 	}
 	
 	/**
@@ -328,26 +372,55 @@ public class ServerConnectionFactory {
 			if ( delivery == null ) return null;
 			
 			// get the routing key from delivery (not from properties)
-			String[] routingKey = delivery.getEnvelope().getRoutingKey().split("\\.");
+			String registration = parseRegistrationKey( delivery.getEnvelope().getRoutingKey() );
 			
 			// registration
-			if ( routingKey[0].matches("register") && routingKey[1].matches("login") ) 
+			if ( "login".equals( registration ) ){
+				metrics.requestReceived( "login" );
 				this.subscribe( delivery );
+			}
 			
 			// log off
-			if ( routingKey[0].matches("register") && routingKey[1].matches("logoff") )
+			if ( "logoff".equals( registration ) ){
+				metrics.requestReceived( "logoff" );
 				this.scheduler.removeClient( new String( delivery.getBody(), delivery.getProperties().getContentEncoding() ));
+			}
 			
 			// if login handled
 			return delivery;
 		} catch ( IOException | ShutdownSignalException | ConsumerCancelledException | InterruptedException exc ) {
-			// any error encountered while waiting
-			System.err.println("An error encountered while waiting for new deliveries!");
-			exc.printStackTrace();
+			// any error encountered while waiting, the transport recovers lost connections itself
+			DOPAScheduler.LOG.error("An error encountered while waiting for new deliveries!", exc);
 			return null;
 		}
 	}
 	
+	/**
+	 * Returns the action of a registration, keyed by 'register.login' or 'register.logoff'.
+	 * @param routingKey of the delivery
+	 * @return login, logoff or null if it isn't the key of a registration
+	 */
+	public static String parseRegistrationKey( String routingKey ){
+		String[] separateKey = routingKey.split("\\.");
+		if ( separateKey.length < 2 || !separateKey[0].matches("register") ) return null;
+		if ( separateKey[1].matches("login") || separateKey[1].matches("logoff") ) return separateKey[1];
+		return null;
+	}
+	
+	/**
+	 * Acknowledges a handled delivery from the request queue, so the message broker forgets it.
+	 * Does nothing if requests are acknowledged automatically.
+	 * @param delivery from getRequest
+	 */
+	protected void acknowledge( QueueingConsumer.Delivery delivery ){
+		if ( SchedulerConfigConstants.REQUEST_AUTO_ACKNOWLEDGES ) return;
+		try { this.requestChannel.basicAck( delivery.getEnvelope().getDeliveryTag(), false ); }
+		catch ( IOException ioe ){
+			// the broker delivers it again, jobs are deduplicated
+			DOPAScheduler.LOG.warn("Cannot acknowledge a request.", ioe);
+		}
+	}
+	
 	/**
 	 * Shutdown all connections and bindings
 	 * @throws IOException
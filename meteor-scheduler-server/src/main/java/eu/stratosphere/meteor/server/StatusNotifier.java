@@ -0,0 +1,154 @@
+package eu.stratosphere.meteor.server;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+import eu.stratosphere.meteor.common.MessageBuilder;
+
+/**
+ * Collects status changes per client and sends them in one message. A client whose jobs change
+ * their states many times in a short time window gets just one message with the latest state
+ * of each job instead of one message per change.
+ *
+ * The notifier is not thread safe. It's used by the main loop of the scheduler only.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class StatusNotifier {
+
+	/**
+	 * Connection factory to send the messages
+	 */
+	private final ServerConnectionFactory connectionFactory;
+
+	/**
+	 * Time window in milliseconds
+	 */
+	private final long window;
+
+	/**
+	 * Pending status objects mapped <ClientID -> <JobID -> Status>>. The inner map
+	 * keeps the order of the latest changes.
+	 */
+	private final HashMap<String, LinkedHashMap<String, JSONObject>> pending;
+
+	/**
+	 * The time when the window of each client closes.
+	 */
+	private final HashMap<String, Long> deadlines;
+
+	/**
+	 * Creates a notifier with given time window.
+	 * @param connectionFactory to send messages
+	 * @param window in milliseconds, 0 means each status is sent instantly
+	 */
+	protected StatusNotifier( ServerConnectionFactory connectionFactory, long window ){
+		this.connectionFactory = connectionFactory;
+		this.window = window < 0 ? 0 : window;
+		this.pending = new HashMap<String, LinkedHashMap<String, JSONObject>>();
+		this.deadlines = new HashMap<String, Long>();
+	}
+
+	/**
+	 * Adds a new status of a job. If there is still a pending status for that job
+	 * it will be replaced by the new one.
+	 * @param clientID specified client
+	 * @param jobID specified job
+	 * @param status json object build by the MessageBuilder
+	 */
+	protected void publish( String clientID, String jobID, JSONObject status ){
+		if ( window == 0 ){
+			send( clientID, status );
+			return;
+		}
+
+		LinkedHashMap<String, JSONObject> clientStatus = pending.get( clientID );
+		if ( clientStatus == null ){
+			clientStatus = new LinkedHashMap<String, JSONObject>();
+			pending.put( clientID, clientStatus );
+			deadlines.put( clientID, System.currentTimeMillis() + window );
+		}
+
+		// remove first to move the job to the end of the order
+		clientStatus.remove( jobID );
+		clientStatus.put( jobID, status );
+	}
+
+	/**
+	 * Returns true if there are status updates waiting for their window to close.
+	 * @return true if anything is pending
+	 */
+	protected boolean hasPending(){
+		return !pending.isEmpty();
+	}
+
+	/**
+	 * Returns the time (in milliseconds) until the next window closes, but never more than
+	 * the given maximum.
+	 * @param max maximum waiting time
+	 * @return time to wait in milliseconds
+	 */
+	protected long getWaitingTime( long max ){
+		long now = System.currentTimeMillis();
+		long wait = max;
+		for ( Long deadline : deadlines.values() )
+			wait = Math.min( wait, deadline - now );
+		return Math.max( wait, 0 );
+	}
+
+	/**
+	 * Sends all pending status updates whose window closed.
+	 */
+	protected void flushDue(){
+		if ( pending.isEmpty() ) return;
+
+		long now = System.currentTimeMillis();
+		Iterator<Map.Entry<String, Long>> it = deadlines.entrySet().iterator();
+		while ( it.hasNext() ){
+			Map.Entry<String, Long> entry = it.next();
+			if ( entry.getValue() > now ) continue;
+
+			it.remove();
+			flush( entry.getKey(), pending.remove( entry.getKey() ) );
+		}
+	}
+
+	/**
+	 * Sends all pending status updates, no matter if their windows closed or not.
+	 */
+	protected void flushAll(){
+		for ( Map.Entry<String, LinkedHashMap<String, JSONObject>> entry : pending.entrySet() )
+			flush( entry.getKey(), entry.getValue() );
+
+		pending.clear();
+		deadlines.clear();
+	}
+
+	/**
+	 * Sends the collected status of one client. A single status is sent as it is.
+	 * @param clientID receiver
+	 * @param clientStatus collected status objects
+	 */
+	private void flush( String clientID, LinkedHashMap<String, JSONObject> clientStatus ){
+		if ( clientStatus == null || clientStatus.isEmpty() ) return;
+
+		if ( clientStatus.size() == 1 ) send( clientID, clientStatus.values().iterator().next() );
+		else send( clientID, MessageBuilder.buildStatusBatch( clientID, clientStatus.values() ) );
+	}
+
+	/**
+	 * Sends the message itself.
+	 * @param clientID receiver
+	 * @param message json object
+	 */
+	private void send( String clientID, JSONObject message ){
+		try { this.connectionFactory.sendJobStatus( clientID, message ); }
+		catch ( IOException ioe ){ DOPAScheduler.LOG.error("Cannot send status update.", ioe); }
+	}
+}
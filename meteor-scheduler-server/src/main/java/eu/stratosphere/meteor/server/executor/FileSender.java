@@ -4,6 +4,7 @@ import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
@@ -24,8 +25,14 @@ import com.rabbitmq.client.QueueingConsumer.Delivery;
 
 import eu.stratosphere.meteor.common.SchedulerConfigConstants;
 import eu.stratosphere.meteor.common.MessageBuilder;
+import eu.stratosphere.meteor.common.trace.Span;
+import eu.stratosphere.meteor.common.trace.TraceContext;
+import eu.stratosphere.meteor.common.trace.Tracer;
+import eu.stratosphere.meteor.server.ClientQuotas;
 import eu.stratosphere.meteor.server.DOPAScheduler;
 import eu.stratosphere.meteor.server.ServerConnectionFactory;
+import eu.stratosphere.meteor.server.index.ResultEntry;
+import eu.stratosphere.meteor.server.metrics.SchedulerMetrics;
 
 /**
  * This class sends a file (from local file system or hadoop) back to the client.
@@ -44,12 +51,12 @@ public class FileSender extends Thread {
 	 * split full hdfs path into host and path component. 
 	 * first group is host, second is path
 	 */
-	private static final Pattern hdfsPattern = Pattern.compile("(hdfs://[a-zA-Z0-9\\.:\\-]+)(/[a-zA-Z\\./_]+)");
+	static final Pattern hdfsPattern = Pattern.compile("(hdfs://[a-zA-Z0-9\\.:\\-]+)(/[a-zA-Z\\./_]+)");
 	
 	/**
 	 * Pattern to get path to local file system
 	 */
-	private static final Pattern localPattern = Pattern.compile("file://(/[\\w\\./:\\-_]+)");
+	static final Pattern localPattern = Pattern.compile("file://(/[\\w\\./:\\-_]+)");
 	
 	/**
 	 * High Distributed File System
@@ -62,15 +69,30 @@ public class FileSender extends Thread {
 	private ServerConnectionFactory connFac;
 	
 	/**
-	 * Job itself includes paths
+	 * Finished job includes paths
 	 */
-	private RRJob job;
+	private ResultEntry job;
+	
+	/**
+	 * Counts the running transfers of the client, may be null
+	 */
+	private final ClientQuotas quotas;
+	
+	/**
+	 * Counts the transfers and sent bytes, may be null
+	 */
+	private final SchedulerMetrics metrics;
 	
 	/**
 	 * Save request properties to send replies correctly
 	 */
 	private final BasicProperties requestProps;
 	
+	/**
+	 * Span of the transfer, a child of the span of the request
+	 */
+	private final Span span;
+	
 	private Charset charset;
 	
 	/**
@@ -83,12 +105,40 @@ public class FileSender extends Thread {
 	/**
 	 * Creates a FileSender object which sends (in a Thread) blocks to the client.
 	 * @param connFac the ServerConnectionFactory
-	 * @param job
+	 * @param job finished job
+	 * @param delivery original from request
+	 */
+	public FileSender( ServerConnectionFactory connFac, ResultEntry job, Delivery delivery ){
+		this( connFac, job, delivery, null );
+	}
+	
+	/**
+	 * Creates a FileSender object which sends (in a Thread) blocks to the client. The transfer
+	 * has to be started at the quotas already, it's finished there after the last block.
+	 * @param connFac the ServerConnectionFactory
+	 * @param job finished job
 	 * @param delivery original from request
+	 * @param quotas counts the running transfers of the client, may be null
 	 */
-	public FileSender( ServerConnectionFactory connFac, RRJob job, Delivery delivery ){
+	public FileSender( ServerConnectionFactory connFac, ResultEntry job, Delivery delivery, ClientQuotas quotas ){
+		this( connFac, job, delivery, quotas, null );
+	}
+	
+	/**
+	 * Creates a FileSender object which sends (in a Thread) blocks to the client and counts
+	 * the transfer at the metrics of the scheduler.
+	 * @param connFac the ServerConnectionFactory
+	 * @param job finished job
+	 * @param delivery original from request
+	 * @param quotas counts the running transfers of the client, may be null
+	 * @param metrics counts the transfers and sent bytes, may be null
+	 */
+	public FileSender( ServerConnectionFactory connFac, ResultEntry job, Delivery delivery, 
+			ClientQuotas quotas, SchedulerMetrics metrics ){
 		this.job = job;
 		this.connFac = connFac;
+		this.quotas = quotas;
+		this.metrics = metrics;
 		this.charset = Charset.forName( delivery.getProperties().getContentEncoding() );
 		
 		// try to get all informations included in the request
@@ -97,14 +147,17 @@ public class FileSender extends Thread {
 		// set this charset to HDFS charset
 		this.charset = HDFS_CHARSET;
 		
-		// build copy of properties with new encoding type
-		this.requestProps = new BasicProperties
+		this.span = Tracer.start( "scheduler.result", TraceContext.extract( delivery.getProperties() ) )
+				.tag( "jobID", job.getJobID() ).tag( "fileIndex", fileIndex );
+		
+		// build copy of properties with new encoding type, the blocks continue the trace of the transfer
+		this.requestProps = span.getContext().inject( new BasicProperties
 				.Builder()
 				.contentType( SchedulerConfigConstants.JSON )
 				.contentEncoding( charset.name() )
 				.correlationId( delivery.getProperties().getCorrelationId() )
 				.replyTo( delivery.getProperties().getReplyTo() )
-				.build();
+				.build() );
 	}
 	
 	/**
@@ -113,7 +166,7 @@ public class FileSender extends Thread {
 	 * the requested file.
 	 * @param delivery request itself
 	 */
-	private void filterDelivery( RRJob job, Delivery delivery ){
+	private void filterDelivery( ResultEntry job, Delivery delivery ){
 		// get JSON request itself.
 		JSONObject request;
 		try { request = new JSONObject( new String( delivery.getBody(), charset ) ); }
@@ -137,6 +190,19 @@ public class FileSender extends Thread {
 	 */
 	@Override
 	public void run(){
+		if ( metrics != null ) metrics.transferStarted();
+		try { send(); }
+		finally {
+			if ( quotas != null ) quotas.finishTransfer( job.getClientID() );
+			if ( metrics != null ) metrics.transferFinished();
+			span.tag( "blocks", sumOfBlocks ).finish();
+		}
+	}
+	
+	/**
+	 * Sends the requested result.
+	 */
+	private void send(){
 		// open connection to HDFS
 		String host = null;
 		String path = null;
@@ -175,9 +241,7 @@ public class FileSender extends Thread {
 		}
 		
 		// calculate block size or change 
-		if ( fileStatus.getLen() / blockSize > sumOfBlocks )
-			blockSize = (int) (fileStatus.getLen()/sumOfBlocks);
-		else sumOfBlocks = (fileStatus.getLen()+1) / blockSize;
+		this.layoutBlocks( fileStatus.getLen() );
 		
 		/** Sends informations about following blocks back to the client **/
 		
@@ -190,18 +254,7 @@ public class FileSender extends Thread {
 		
 		// after send the informations of blocks, send the blocks itself
 		try ( FSDataInputStream in = new FSDataInputStream( hdfs.open( fileStatus.getPath() ) ) ) {
-			// create a buffer
-			byte[] buffer = new byte[blockSize];
-			
-			// read as long as you can
-			int len = in.read( buffer );
-			while ( len > 0 ){
-				// if we reached the end just send the smaller block, else send complete block
-				if ( len < blockSize ) connFac.sendBlock(requestProps, Arrays.copyOfRange(buffer, 0, len));
-				else connFac.sendBlock(requestProps, buffer);
-				
-				len = in.read( buffer );
-			} // finally closed channels
+			this.sendBlocks( in );
 		} catch ( IllegalArgumentException iae ){
 			DOPAScheduler.LOG.error("Cannot send with this properties.", iae);
 			throw new IllegalArgumentException("Cannot send with this properties.", iae);
@@ -224,9 +277,7 @@ public class FileSender extends Thread {
 		}
 		
 		// calculate block size or change 
-		if ( file.length() / blockSize > sumOfBlocks )
-			blockSize = (int) ( file.length()/sumOfBlocks);
-		else sumOfBlocks = file.length() / blockSize + 1;
+		this.layoutBlocks( file.length() );
 		
 		// send specifications
 		try { this.sendSpecifications(); }
@@ -237,23 +288,54 @@ public class FileSender extends Thread {
 		
 		// open streams, read and send input
 		try ( DataInputStream in = new DataInputStream( new FileInputStream( file ) ) ){
-			byte[] buffer = new byte[blockSize];
-			
-			// read from buffer as long as you can
-			int len = in.read( buffer );
-			while ( len > 0 ){
-				// if we reached the end just send the smaller block, else send complete block
-				if ( len < blockSize ) connFac.sendBlock(requestProps, Arrays.copyOfRange(buffer, 0, len));
-				else connFac.sendBlock(requestProps, buffer);
-				
-				len = in.read( buffer );
-			}
+			this.sendBlocks( in );
 		} catch ( IOException ioe ){
 			DOPAScheduler.LOG.error( "Cannot read from local file. A streaming error occurred.", ioe);
 			throw new IllegalArgumentException( "Cannot read from local file. A streaming error occurred.", ioe);
 		}
 	}
 	
+	/**
+	 * Calculates the block size and the number of blocks for a file. All blocks are full except
+	 * the last one, so the client can write each block at index * blockSize.
+	 * @param length of the file in bytes
+	 */
+	private void layoutBlocks( long length ){
+		if ( blockSize <= 0 ) blockSize = SchedulerConfigConstants.MAX_BLOCK_SIZE;
+		
+		// bigger blocks if the client limited the number of blocks
+		if ( sumOfBlocks > 0 && length > (long) blockSize * sumOfBlocks )
+			blockSize = (int) ( (length + sumOfBlocks - 1) / sumOfBlocks );
+		
+		// an empty file is sent as one empty block
+		sumOfBlocks = Math.max( 1, (length + blockSize - 1) / blockSize );
+	}
+	
+	/**
+	 * Sends the announced number of blocks. Each block is filled completely except the last one.
+	 * @param in stream of the file
+	 * @throws IOException if the file cannot be read or a block cannot be sent
+	 */
+	private void sendBlocks( InputStream in ) throws IOException {
+		byte[] buffer = new byte[blockSize];
+		
+		for ( long idx = 0; idx < sumOfBlocks; idx++ ){
+			// streams may return less bytes than requested before the end
+			int len = 0, read;
+			while ( len < blockSize && (read = in.read( buffer, len, blockSize - len )) > 0 ) len += read;
+			
+			// if we reached the end just send the smaller block, else send complete block
+			if ( len < blockSize ) connFac.sendBlock(requestProps, Arrays.copyOfRange(buffer, 0, len));
+			else connFac.sendBlock(requestProps, buffer);
+			if ( metrics != null ) metrics.bytesTransferred( len );
+			
+			// only the first result sent for a job counts
+			JobTimeline timeline = job.getTimeline();
+			if ( idx == 0 && timeline != null && timeline.mark( JobTimeline.Stage.FIRST_RESULT_BYTE ) && metrics != null )
+				metrics.resultSent( timeline );
+		}
+	}
+	
 	/**
 	 * Sends the specifications. Should be defined before you send the specifications to the client.
 	 * @throws IllegalArgumentException if one or more informations lost
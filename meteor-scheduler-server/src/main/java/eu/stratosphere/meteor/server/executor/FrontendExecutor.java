@@ -0,0 +1,20 @@
+package eu.stratosphere.meteor.server.executor;
+
+import eu.stratosphere.meteor.client.ClientFrontend;
+import eu.stratosphere.meteor.server.DOPAScheduler;
+
+/**
+ * Executes scripts on Nephele by the meteor webfrontend, configured by DOPAScheduler.EXECUTER_CONFIG.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class FrontendExecutor implements ScriptExecutor {
+
+	@Override
+	public void execute( RRJob job, String meteorScript ) throws Exception {
+		// one frontend per job, the configuration may change until the job is executed
+		ClientFrontend frontend = new ClientFrontend( DOPAScheduler.EXECUTER_CONFIG );
+		frontend.execute( meteorScript );
+	}
+}
@@ -2,8 +2,10 @@ package eu.stratosphere.meteor.server.executor;
 
 import java.io.IOException;
 
-import eu.stratosphere.meteor.client.ClientFrontend;
 import eu.stratosphere.meteor.common.JobState;
+import eu.stratosphere.meteor.common.SchedulerConfigConstants;
+import eu.stratosphere.meteor.common.trace.Span;
+import eu.stratosphere.meteor.common.trace.Tracer;
 import eu.stratosphere.meteor.server.DOPAScheduler;
 import eu.stratosphere.sopremo.query.QueryParserException;
 
@@ -18,7 +20,6 @@ public class JobExecutor extends Thread {
 	private final RRJob job;
 	
 	private String meteorScript;
-	private ClientFrontend client;
 	
 	/**
 	 * 
@@ -27,14 +28,19 @@ public class JobExecutor extends Thread {
 	protected JobExecutor( RRJob job ) {
 		this.job = job;
 		this.meteorScript = job.getMeteorScript();
-		this.client = job.getClientFrontend();
 	}
 	
 	@Override
 	public void run() {
+		Span span = Tracer.start( "scheduler.execute", job.getTraceContext() ).tag( "jobID", job.getJobID() );
 		try {
 			DOPAScheduler.LOG.info("Execute new job " + job.getJobID());
-			client.execute( meteorScript );
+			job.getTimeline().mark( JobTimeline.Stage.STARTED );
+			DOPAScheduler.SCRIPT_EXECUTOR.execute( job, meteorScript );
+			
+			// the result index and the storage quota need sizes, inspect them before the job is finished
+			if ( SchedulerConfigConstants.RESULT_INDEX_DIRECTORY != null || 
+					SchedulerConfigConstants.CLIENT_STORAGE_QUOTA > 0 ) job.inspectResults();
 			job.setStatus( JobState.FINISHED );
 			DOPAScheduler.LOG.info("Finished job " + job.getJobID() );
 		} catch (QueryParserException e) {
@@ -45,6 +51,8 @@ public class JobExecutor extends Thread {
 			job.setErrorMessage( "Cannot execute your job. " + e.toString() );
 			job.setStatus( JobState.ERROR );
 			DOPAScheduler.LOG.warn("Cannot execute the job " + job.getJobID(), e);
+		} finally {
+			span.tag( "state", job.getStatus() ).finish();
 		}
 	}
 }
@@ -0,0 +1,144 @@
+package eu.stratosphere.meteor.server.executor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Monotonic timestamps of the stages a job passes on the scheduler. The stages are marked by
+ * different threads (main loop, job executor, file sender), each stage only once. The time between
+ * two stages is a phase, so the phases show where a job spent its time.
+ *
+ * The timestamps come from System.nanoTime() and can only be compared within one scheduler run.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class JobTimeline {
+
+	/**
+	 * Stages of a job in the order they're reached
+	 */
+	public static enum Stage {
+		RECEIVED, // the main loop got the submission from the broker
+		QUEUED, // added to the round robin queue
+		DISPATCHED, // taken from the queue by the main loop
+		STARTED, // the executor thread started the script
+		FINISHED, // the script finished or failed
+		FIRST_RESULT_BYTE // the first block of a result was sent
+	}
+
+	/**
+	 * Phases between two stages
+	 */
+	public static enum Phase {
+		RECEIVE( Stage.RECEIVED, Stage.QUEUED ), // handling the submission
+		WAIT( Stage.QUEUED, Stage.DISPATCHED ), // waiting in the queue
+		DISPATCH( Stage.DISPATCHED, Stage.STARTED ), // starting the executor thread
+		EXECUTION( Stage.STARTED, Stage.FINISHED ), // frontend setup and execution on Nephele
+		RESULT( Stage.FINISHED, Stage.FIRST_RESULT_BYTE ); // until the client fetched a result
+
+		private final Stage from, to;
+
+		private Phase( Stage from, Stage to ){
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * Returns the name used in status replies and metrics.
+		 * @return lower case name
+		 */
+		public String getName(){
+			return name().toLowerCase();
+		}
+	}
+
+	/**
+	 * Marks stages which aren't reached yet
+	 */
+	private static final long UNSET = Long.MIN_VALUE;
+
+	private final AtomicLongArray times = new AtomicLongArray( Stage.values().length );
+
+	/**
+	 * Creates a timeline without reached stages.
+	 */
+	public JobTimeline(){
+		for ( int i = 0; i < times.length(); i++ ) times.set( i, UNSET );
+	}
+
+	/**
+	 * Marks given stage now.
+	 * @param stage reached stage
+	 * @return true if the stage wasn't marked before
+	 */
+	public boolean mark( Stage stage ){
+		return mark( stage, System.nanoTime() );
+	}
+
+	/**
+	 * Marks given stage at given time.
+	 * @param stage reached stage
+	 * @param nanos time from System.nanoTime()
+	 * @return true if the stage wasn't marked before
+	 */
+	public boolean mark( Stage stage, long nanos ){
+		return times.compareAndSet( stage.ordinal(), UNSET, nanos );
+	}
+
+	/**
+	 * Returns whether given stage is reached.
+	 * @param stage
+	 * @return true if the stage is marked
+	 */
+	public boolean reached( Stage stage ){
+		return times.get( stage.ordinal() ) != UNSET;
+	}
+
+	/**
+	 * Returns the duration of given phase in nanoseconds.
+	 * @param phase
+	 * @return duration or -1 if one of its stages isn't reached
+	 */
+	public long getDuration( Phase phase ){
+		return between( phase.from, phase.to );
+	}
+
+	/**
+	 * Returns the time between two stages in nanoseconds.
+	 * @param from earlier stage
+	 * @param to later stage
+	 * @return time or -1 if one of the stages isn't reached
+	 */
+	public long between( Stage from, Stage to ){
+		long start = times.get( from.ordinal() );
+		long end = times.get( to.ordinal() );
+		if ( start == UNSET || end == UNSET ) return -1;
+		return Math.max( 0, end - start );
+	}
+
+	/**
+	 * Returns the durations of all finished phases and the total time from the first to the last
+	 * reached stage in milliseconds.
+	 * @return phase name -> milliseconds, "total" last
+	 */
+	public Map<String, Double> getBreakdown(){
+		Map<String, Double> breakdown = new LinkedHashMap<String, Double>();
+		for ( Phase phase : Phase.values() ){
+			long duration = getDuration( phase );
+			if ( duration >= 0 ) breakdown.put( phase.getName(), duration / 1e6 );
+		}
+
+		long first = UNSET, last = UNSET;
+		for ( int i = 0; i < times.length(); i++ ){
+			long time = times.get(i);
+			if ( time == UNSET ) continue;
+			if ( first == UNSET ) first = time;
+			last = time;
+		}
+		if ( first != UNSET ) breakdown.put( "total", Math.max( 0, last - first ) / 1e6 );
+
+		return breakdown;
+	}
+}
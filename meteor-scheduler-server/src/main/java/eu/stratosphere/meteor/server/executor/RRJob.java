@@ -1,6 +1,7 @@
 package eu.stratosphere.meteor.server.executor;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -10,10 +11,11 @@ import java.util.regex.Pattern;
 import org.json.JSONObject;
 
 import eu.stratosphere.meteor.common.SchedulerConfigConstants;
-import eu.stratosphere.meteor.client.ClientFrontend;
 import eu.stratosphere.meteor.common.JobState;
 import eu.stratosphere.meteor.common.MessageBuilder;
+import eu.stratosphere.meteor.common.trace.TraceContext;
 import eu.stratosphere.meteor.server.DOPAScheduler;
+import eu.stratosphere.meteor.server.index.ResultEntry;
 
 /**
  * This class represents a job on the server site of the DOPAScheduler system.
@@ -41,14 +43,10 @@ public class RRJob {
 	 */
 	private JSONObject errorJSON;
 	
-	/**
-	 * Comes from the MeteorWebfrontend
-	 */
-	private final ClientFrontend frontend;
-	
 	/**
 	 * Internal informations about script and results (just links)
 	 */
+	private final String originalScript;
 	private String mappedScript;
 	private List<String> mappedResult;
 	private List<String> originalResult;
@@ -58,6 +56,27 @@ public class RRJob {
 	 */
 	private final Date submitTime;
 	
+	/**
+	 * The time this job finished in milliseconds, -1 while it runs or if unknown
+	 */
+	private long finishTime = -1;
+	
+	/**
+	 * Monotonic times of the stages this job passed on the scheduler
+	 */
+	private final JobTimeline timeline = new JobTimeline();
+	
+	/**
+	 * Context of the span which received this job, null if it isn't traced
+	 */
+	private volatile TraceContext trace;
+	
+	/**
+	 * Sizes and record counts of the results, null if they weren't inspected
+	 */
+	private long[] resultSizes;
+	private long[] recordCounts;
+	
 	/**
 	 * The executor is a thread to submit the job parallelized to the DOPAScheduler
 	 */
@@ -81,10 +100,10 @@ public class RRJob {
 		this.clientID = clientID;
 		this.jobID = jobID;
 		this.status= JobState.WAITING;
-		this.frontend = new ClientFrontend( DOPAScheduler.EXECUTER_CONFIG );
 		this.submitTime = submitTime;
 		this.mappedResult = new ArrayList<String>();
 		this.errorJSON = new JSONObject();
+		this.originalScript = meteorScript;
 		this.mappedScript = this.mappingScript( meteorScript );
 		this.executor = new JobExecutor( this );
 	}
@@ -155,8 +174,8 @@ public class RRJob {
 	 * @param error
 	 */
 	protected void setErrorMessage( String error ){
-		this.status = JobState.ERROR;
 		this.errorJSON = MessageBuilder.buildErrorStatus(clientID, jobID, error);
+		setStatus( JobState.ERROR );
 	}
 	
 	/**
@@ -164,15 +183,35 @@ public class RRJob {
 	 * @param status
 	 */
 	protected void setStatus( JobState status ){
+		if ( finishTime < 0 && ( status.equals( JobState.FINISHED ) || status.equals( JobState.ERROR ) ) ){
+			this.finishTime = System.currentTimeMillis();
+			timeline.mark( JobTimeline.Stage.FINISHED );
+		}
 		this.status = status;
 	}
 	
 	/**
-	 * Returns the client frontend which executes the job
-	 * @return clientFrontend
+	 * Measures size and number of records of each result. A result which cannot be
+	 * inspected keeps -1 for both.
 	 */
-	protected ClientFrontend getClientFrontend(){
-		return this.frontend;
+	protected void inspectResults(){
+		long[] sizes = new long[ mappedResult.size() ];
+		long[] records = new long[ mappedResult.size() ];
+		
+		for ( int i = 0; i < sizes.length; i++ ){
+			try {
+				long[] inspected = ResultInspector.inspect( mappedResult.get(i) );
+				sizes[i] = inspected[0];
+				records[i] = inspected[1];
+			} catch ( IOException ioe ){
+				DOPAScheduler.LOG.warn("Cannot inspect the result " + mappedResult.get(i) + " of job " + jobID + ".", ioe);
+				sizes[i] = -1;
+				records[i] = -1;
+			}
+		}
+		
+		this.resultSizes = sizes;
+		this.recordCounts = records;
 	}
 	
 	/**
@@ -183,6 +222,35 @@ public class RRJob {
 		return this.mappedScript;
 	}
 	
+	/**
+	 * Returns the script as the client submitted it, before the paths were mapped
+	 * @return original meteor script
+	 */
+	public String getOriginalScript(){
+		return this.originalScript;
+	}
+	
+	/**
+	 * Sets the state of a job which finished before the scheduler restarted. The real finish time
+	 * isn't journaled, so the time of the restore counts. The results of restored jobs don't
+	 * expire earlier than the results of new ones.
+	 * @param status recorded state
+	 * @param errorMessage recorded error message if the status is ERROR
+	 */
+	public void restoreStatus( JobState status, String errorMessage ){
+		if ( status.equals( JobState.ERROR ) ) setErrorMessage( errorMessage );
+		else setStatus( status );
+	}
+	
+	/**
+	 * Returns the error message or null if no error occurred while executing this job.
+	 * @return error message
+	 */
+	public String getErrorMessage(){
+		JSONObject error = getErrorJSON();
+		return error == null ? null : MessageBuilder.getErrorMessage( error );
+	}
+	
 	/**
 	 * Returns a json object with error informations or null if no error occurred while executing this job.
 	 * @return JSONObject with error informations or null if no error occurred
@@ -224,6 +292,47 @@ public class RRJob {
 		return submitTime;
 	}
 	
+	/**
+	 * Returns the time this job finished in milliseconds or -1 if it doesn't finished yet.
+	 * @return finish time
+	 */
+	public long getFinishTime(){
+		return finishTime;
+	}
+	
+	/**
+	 * Returns the stages this job passed on the scheduler.
+	 * @return timeline
+	 */
+	public JobTimeline getTimeline(){
+		return timeline;
+	}
+	
+	/**
+	 * Returns the context of the span which received this job.
+	 * @return context or null if this job isn't traced
+	 */
+	public TraceContext getTraceContext(){
+		return trace;
+	}
+	
+	/**
+	 * Sets the context of the span which received this job. Spans of its execution and its
+	 * status updates are recorded as children of it.
+	 * @param trace context or null
+	 */
+	public void setTraceContext( TraceContext trace ){
+		this.trace = trace;
+	}
+	
+	/**
+	 * Returns the number of results of this job.
+	 * @return number of results
+	 */
+	public int getNumberOfResults(){
+		return mappedResult.size();
+	}
+	
 	/**
 	 * Returns the mapped result path of specified index
 	 * @param index
@@ -244,6 +353,25 @@ public class RRJob {
 		return this.originalResult.get(index);
 	}
 	
+	/**
+	 * Returns the metadata of this finished job for the result index.
+	 * @return entry of this job
+	 */
+	public ResultEntry getResultEntry(){
+		long[] sizes = new long[ mappedResult.size() ];
+		long[] records = new long[ mappedResult.size() ];
+		for ( int i = 0; i < sizes.length; i++ ){
+			sizes[i] = resultSizes == null ? -1 : resultSizes[i];
+			records[i] = recordCounts == null ? -1 : recordCounts[i];
+		}
+		
+		ResultEntry entry = new ResultEntry( clientID, jobID, status, getErrorMessage(), finishTime, 
+				originalResult.toArray( new String[ originalResult.size() ] ),
+				mappedResult.toArray( new String[ mappedResult.size() ] ), sizes, records );
+		entry.setTimeline( timeline );
+		return entry;
+	}
+	
 	/**
 	 * Returns whether this job finished yet.
 	 * @return true if this job finished, otherwise false
@@ -256,6 +384,7 @@ public class RRJob {
      * Runs a new thread to execute the job parallel
      */
 	public void execute() {
+		timeline.mark( JobTimeline.Stage.DISPATCHED );
 		this.status = JobState.RUNNING;
 		this.executor.start();
 	}
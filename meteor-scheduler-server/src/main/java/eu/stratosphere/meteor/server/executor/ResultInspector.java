@@ -0,0 +1,125 @@
+package eu.stratosphere.meteor.server.executor;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.regex.Matcher;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Measures the result files of a finished job: the size in bytes and the number of records.
+ * A result is a json array (or a directory of json arrays written in parallel), each element
+ * of the top-level array is one record. The files are scanned once without parsing the records.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+class ResultInspector {
+
+	private ResultInspector(){}
+
+	/**
+	 * Returns the size in bytes and the number of records of a result.
+	 * @param result mapped result path on the local file system or the hdfs
+	 * @return size and number of records
+	 * @throws IOException if the result cannot be read
+	 */
+	static long[] inspect( String result ) throws IOException {
+		Matcher matcher = FileSender.localPattern.matcher( result );
+		if ( matcher.find() ) return inspectLocal( new File( matcher.group(1) ) );
+
+		matcher = FileSender.hdfsPattern.matcher( result );
+		if ( !matcher.find() ) throw new IOException( "Unknown file system of the result " + result + "." );
+
+		try {
+			FileSystem hdfs = FileSystem.get( new URI( matcher.group(1) ), new Configuration() );
+			Path path = new Path( matcher.group(2) );
+
+			FileStatus[] files;
+			if ( hdfs.getFileStatus( path ).isDirectory() ) files = hdfs.listStatus( path );
+			else files = new FileStatus[] { hdfs.getFileStatus( path ) };
+
+			long[] sum = new long[2];
+			for ( FileStatus file : files ){
+				if ( file.isDirectory() ) continue;
+				try ( InputStream in = new BufferedInputStream( hdfs.open( file.getPath() ), 64 * 1024 ) ){
+					sum[0] += file.getLen();
+					sum[1] += countRecords( in );
+				}
+			}
+			return sum;
+		} catch ( URISyntaxException use ){
+			throw new IOException( "Invalid hdfs host of the result " + result + ".", use );
+		}
+	}
+
+	/**
+	 * Inspects a local file or all files of a local directory.
+	 */
+	private static long[] inspectLocal( File file ) throws IOException {
+		if ( !file.exists() ) throw new IOException( "The result " + file + " doesn't exists." );
+
+		File[] files = file.isDirectory() ? file.listFiles() : new File[] { file };
+		long[] sum = new long[2];
+		for ( File part : files ){
+			if ( part.isDirectory() ) continue;
+			try ( InputStream in = new BufferedInputStream( new FileInputStream( part ), 64 * 1024 ) ){
+				sum[0] += part.length();
+				sum[1] += countRecords( in );
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Counts the elements of the top-level json array of a stream. Any other top-level value
+	 * counts as one record.
+	 * @param in stream of a json file
+	 * @return number of records
+	 * @throws IOException if the stream cannot be read
+	 */
+	static long countRecords( InputStream in ) throws IOException {
+		long records = 0;
+		int depth = 0;
+		boolean inString = false, escaped = false, array = false, element = false;
+
+		int b;
+		while ( (b = in.read()) >= 0 ){
+			if ( inString ){
+				if ( escaped ) escaped = false;
+				else if ( b == '\\' ) escaped = true;
+				else if ( b == '"' ) inString = false;
+				continue;
+			}
+			if ( b == ' ' || b == '\t' || b == '\n' || b == '\r' ) continue;
+
+			// top level: an array or a single value
+			if ( depth == 0 ){
+				if ( b == '[' ) array = true;
+				else if ( !element ){
+					element = true;
+					records++;
+				}
+			}
+			// a new element of the top-level array
+			else if ( depth == 1 && array && !element && b != ']' && b != ',' ){
+				element = true;
+				records++;
+			}
+			if ( depth == 1 && array && b == ',' ) element = false;
+
+			if ( b == '"' ) inString = true;
+			else if ( b == '[' || b == '{' ) depth++;
+			else if ( b == ']' || b == '}' ) depth--;
+		}
+		return records;
+	}
+}
@@ -0,0 +1,246 @@
+package eu.stratosphere.meteor.server.executor;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+
+import eu.stratosphere.meteor.common.SchedulerConfigConstants;
+import eu.stratosphere.meteor.server.DOPAScheduler;
+
+/**
+ * Deletes the result files of removed, aborted and expired jobs on the local file system or
+ * the hdfs. The scheduler passes the results to delete, the reclaimer deletes them in its own
+ * thread in batches and waits between two batches, so running jobs don't compete with a burst
+ * of deletions for the disk or the name node.
+ *
+ * Only results below the directory of their client in the root path of the scheduler are deleted.
+ * Paths are normalized before, so '..' segments of a script cannot leave that directory.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class ResultReclaimer extends Thread {
+
+	/**
+	 * Mapped result paths and their clients waiting to be deleted
+	 */
+	private final LinkedBlockingQueue<Reclaim> pending;
+
+	/**
+	 * Maximum number of results per batch and the waiting time between two batches
+	 */
+	private final int batchSize;
+	private final long interval;
+
+	/**
+	 * Deleted results and their bytes since the reclaimer started
+	 */
+	private final AtomicLong reclaimedResults;
+	private final AtomicLong reclaimedBytes;
+
+	private volatile boolean stopped = false;
+
+	/**
+	 * Creates a reclaimer. Start it to delete results.
+	 * @param batchSize maximum number of results deleted in one batch
+	 * @param interval waiting time in milliseconds between two batches
+	 */
+	public ResultReclaimer( int batchSize, long interval ){
+		super( "result-reclaimer" );
+		this.setDaemon( true );
+		this.pending = new LinkedBlockingQueue<Reclaim>();
+		this.batchSize = Math.max( 1, batchSize );
+		this.interval = interval;
+		this.reclaimedResults = new AtomicLong();
+		this.reclaimedBytes = new AtomicLong();
+	}
+
+	/**
+	 * Adds a result to delete.
+	 * @param clientID of the job which wrote the result
+	 * @param mappedResult result path on the file system of the scheduler
+	 */
+	public void reclaim( String clientID, String mappedResult ){
+		if ( clientID != null && mappedResult != null ) pending.add( new Reclaim( clientID, mappedResult ) );
+	}
+
+	/**
+	 * Keeps a result which waits to be deleted, because a new job writes it again.
+	 * @param mappedResult result path on the file system of the scheduler
+	 * @return true if the result was waiting
+	 */
+	public boolean cancel( String mappedResult ){
+		boolean removed = false;
+		for ( Iterator<Reclaim> it = pending.iterator(); it.hasNext(); ){
+			if ( it.next().result.equals( mappedResult ) ){
+				it.remove();
+				removed = true;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Returns the number of results waiting to be deleted.
+	 * @return pending results
+	 */
+	public int getPendingResults(){
+		return pending.size();
+	}
+
+	/**
+	 * Returns the number of deleted results.
+	 * @return reclaimed results
+	 */
+	public long getReclaimedResults(){
+		return reclaimedResults.get();
+	}
+
+	/**
+	 * Returns the number of bytes of all deleted results.
+	 * @return reclaimed bytes
+	 */
+	public long getReclaimedBytes(){
+		return reclaimedBytes.get();
+	}
+
+	/**
+	 * Stops the reclaimer. Results which wait to be deleted are kept.
+	 */
+	public void shutdown(){
+		this.stopped = true;
+		this.interrupt();
+	}
+
+	@Override
+	public void run(){
+		List<Reclaim> batch = new ArrayList<Reclaim>( batchSize );
+
+		while ( !stopped ){
+			try {
+				batch.add( pending.take() );
+				pending.drainTo( batch, batchSize - 1 );
+			} catch ( InterruptedException ie ){
+				continue;
+			}
+
+			long bytes = 0;
+			for ( Reclaim reclaim : batch ){
+				try { bytes += delete( reclaim.clientID, reclaim.result ); }
+				catch ( IOException ioe ){ DOPAScheduler.LOG.warn("Cannot delete the result " + reclaim.result + ".", ioe); }
+			}
+			reclaimedResults.addAndGet( batch.size() );
+			reclaimedBytes.addAndGet( bytes );
+			DOPAScheduler.LOG.info("Reclaimed " + bytes + " bytes of " + batch.size() + " results. " +
+					reclaimedBytes.get() + " bytes reclaimed over all, " + pending.size() + " results pending.");
+			batch.clear();
+
+			// give the file systems a break before the next batch
+			try { Thread.sleep( interval ); }
+			catch ( InterruptedException ie ){}
+		}
+	}
+
+	/**
+	 * Deletes a result file or directory. The result has to be below the directory of its client.
+	 * @param clientID of the job which wrote the result
+	 * @param result mapped result path on the local file system or the hdfs
+	 * @return number of deleted bytes
+	 * @throws IOException if the result isn't below the directory of the client or cannot be deleted
+	 */
+	static long delete( String clientID, String result ) throws IOException {
+		String clientRoot = normalize( SchedulerConfigConstants.SCHEDULER_FILESYSTEM_ROOT_PATH + clientID + "/" );
+		result = normalize( result );
+		if ( clientID.isEmpty() || clientID.contains( "/" ) || clientID.contains( ".." ) || 
+				!result.startsWith( clientRoot ) || result.length() == clientRoot.length() )
+			throw new IOException( "The result isn't below the directory of the client " + clientID + ". Refused to delete it." );
+
+		Matcher matcher = FileSender.localPattern.matcher( result );
+		if ( matcher.find() ) return deleteLocal( new File( matcher.group(1) ).toPath() );
+
+		matcher = FileSender.hdfsPattern.matcher( result );
+		if ( !matcher.find() ) throw new IOException( "Unknown file system of the result." );
+
+		try {
+			FileSystem hdfs = FileSystem.get( new URI( matcher.group(1) ), new Configuration() );
+			org.apache.hadoop.fs.Path path = new org.apache.hadoop.fs.Path( matcher.group(2) );
+			if ( !hdfs.exists( path ) ) return 0;
+
+			long bytes = hdfs.getContentSummary( path ).getLength();
+			hdfs.delete( path, true );
+			return bytes;
+		} catch ( URISyntaxException use ){
+			throw new IOException( "Invalid hdfs host of the result.", use );
+		}
+	}
+
+	/**
+	 * Removes '.' and '..' segments of a path.
+	 * @param path on the local file system or the hdfs
+	 * @return normalized path as <scheme>://<authority><path>
+	 * @throws IOException if the path isn't an absolute uri
+	 */
+	private static String normalize( String path ) throws IOException {
+		URI uri;
+		try { uri = new URI( path ).normalize(); }
+		catch ( URISyntaxException use ){ throw new IOException( "Invalid path " + path + ".", use ); }
+		if ( uri.getScheme() == null || uri.getRawPath() == null ) throw new IOException( "Invalid path " + path + "." );
+
+		// the same form for file:///path, which loses its empty authority when it's normalized
+		String authority = uri.getRawAuthority() == null ? "" : uri.getRawAuthority();
+		return uri.getScheme() + "://" + authority + uri.getRawPath();
+	}
+
+	/**
+	 * Deletes a local file or a directory with all its files.
+	 */
+	private static long deleteLocal( Path path ) throws IOException {
+		if ( !Files.exists( path ) ) return 0;
+
+		final long[] bytes = new long[1];
+		Files.walkFileTree( path, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile( Path file, BasicFileAttributes attributes ) throws IOException {
+				bytes[0] += attributes.size();
+				Files.delete( file );
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory( Path directory, IOException exception ) throws IOException {
+				if ( exception != null ) throw exception;
+				Files.delete( directory );
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return bytes[0];
+	}
+
+	/**
+	 * A result to delete and its client.
+	 */
+	private static final class Reclaim {
+		private final String clientID;
+		private final String result;
+
+		private Reclaim( String clientID, String result ){
+			this.clientID = clientID;
+			this.result = result;
+		}
+	}
+}
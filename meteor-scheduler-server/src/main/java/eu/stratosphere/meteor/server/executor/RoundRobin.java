@@ -1,11 +1,15 @@
 package eu.stratosphere.meteor.server.executor;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import eu.stratosphere.meteor.server.executor.RRJob;
+import eu.stratosphere.meteor.server.metrics.SchedulerMetrics;
 
 /**
  * A iterator to get next elements in round robin algorithm for clients and their jobs.
@@ -28,14 +32,29 @@ public class RoundRobin implements Iterator<RRJob> {
 	private HashMap< String, LinkedList<RRJob> > mappedRRJobList;
 	
 	/**
-	 * A collection of all jobs and clients included in that map.
+	 * A collection of all waiting jobs per client, mapping <clientID> -> (<jobID> -> <RRJob>).
+	 * A job leaves it when it's taken by next() or removed.
 	 */
 	private HashMap< String, HashMap<String, RRJob> > collectionClientsAndJobs;
 	
+	/**
+	 * Counts the waiting jobs per client, null if nothing is counted
+	 */
+	private final SchedulerMetrics metrics;
+	
 	/**
 	 * Create iterative object
 	 */
 	public RoundRobin(){
+		this( null );
+	}
+	
+	/**
+	 * Create iterative object which counts its waiting jobs by given metrics
+	 * @param metrics of the scheduler or null
+	 */
+	public RoundRobin( SchedulerMetrics metrics ){
+		this.metrics = metrics;
 		this.clientRRList = new LinkedList<String>();
 		this.mappedRRJobList = new HashMap< String, LinkedList<RRJob> >();
 		this.collectionClientsAndJobs = new HashMap< String, HashMap<String, RRJob> >();
@@ -75,6 +94,9 @@ public class RoundRobin implements Iterator<RRJob> {
 		
 		// else get next element and put topKey to last position
 		RRJob topElement = elementList.pop();
+		HashMap<String, RRJob> clientJobs = collectionClientsAndJobs.get(topKey);
+		if ( clientJobs != null ) clientJobs.remove( topElement.getJobID() );
+		if ( metrics != null ) metrics.jobDequeued( topKey );
 		
 		// put the client back to working list
 		clientRRList.addLast( topKey );
@@ -97,6 +119,7 @@ public class RoundRobin implements Iterator<RRJob> {
 	 * @param key
 	 */
 	public void remove( String key ){
+		if ( metrics != null ) metrics.clientDequeued( key );
 		mappedRRJobList.remove(key);
 		clientRRList.remove(key);
 		collectionClientsAndJobs.remove(key);
@@ -128,10 +151,13 @@ public class RoundRobin implements Iterator<RRJob> {
 		if ( jobList == null ) return false;
 		
 		// remove it from all registered jobs/clients
-		collectionClientsAndJobs.get(key).remove(element);
+		HashMap<String, RRJob> clientJobs = collectionClientsAndJobs.get(key);
+		if ( clientJobs != null ) clientJobs.remove( element.getJobID() );
 		
 		// return remove from list
-		return jobList.remove( element );
+		if ( !jobList.remove( element ) ) return false;
+		if ( metrics != null ) metrics.jobDequeued( key );
+		return true;
 	}
 	
 	/**
@@ -158,6 +184,7 @@ public class RoundRobin implements Iterator<RRJob> {
 		this.collectionClientsAndJobs.get(key).put(element.getJobID(), element);
 		
 		// at least add the element to the job list
+		if ( metrics != null ) metrics.jobQueued( key );
 		return jobList.add( element );
 	}
 	
@@ -169,7 +196,7 @@ public class RoundRobin implements Iterator<RRJob> {
 	 * @return true if the lists changes or false if nothing changed
 	 */
 	public boolean remove( String clientID, String jobID ){
-		RRJob tmp = this.collectionClientsAndJobs.get(clientID).get(jobID);
+		RRJob tmp = this.get(clientID, jobID);
 		if ( tmp != null ) {
 			return this.remove(clientID, tmp);
 		}
@@ -177,17 +204,28 @@ public class RoundRobin implements Iterator<RRJob> {
 	}
 	
 	/**
-	 * Returns the job object specified by given client ID and job ID
+	 * Returns the number of waiting jobs of a client.
+	 * @param clientID of client
+	 * @return number of waiting jobs
+	 */
+	public int size( String clientID ){
+		LinkedList<RRJob> jobList = this.mappedRRJobList.get(clientID);
+		return jobList == null ? 0 : jobList.size();
+	}
+	
+	/**
+	 * Returns the waiting job object specified by given client ID and job ID
 	 * @param clientID the client submitted that job
 	 * @param jobID job ID
-	 * @return job object
+	 * @return job object or null if the job isn't waiting
 	 */
 	public RRJob get( String clientID, String jobID ){
-		return this.collectionClientsAndJobs.get(clientID).get(jobID);
+		HashMap<String, RRJob> clientJobs = this.collectionClientsAndJobs.get(clientID);
+		return clientJobs == null ? null : clientJobs.get(jobID);
 	}
 	
 	/**
-	 * Returns true if the round robin algorithm contains a specified job or false if not.
+	 * Returns true if the round robin algorithm contains a specified waiting job or false if not.
 	 * @param clientID
 	 * @param jobID
 	 * @return true if the job exists in that algorithm or false if not
@@ -198,10 +236,26 @@ public class RoundRobin implements Iterator<RRJob> {
 		else return true;
 	}
 	
+	/**
+	 * Returns a copy of all waiting jobs per client. The clients are in the order they get
+	 * their next turn, the jobs of each client in the order they will be executed.
+	 * @return clientID -> waiting jobs
+	 */
+	public LinkedHashMap<String, List<RRJob>> getQueuedJobs(){
+		LinkedHashMap<String, List<RRJob>> queued = new LinkedHashMap<String, List<RRJob>>();
+		for ( String client : clientRRList ){
+			LinkedList<RRJob> jobList = mappedRRJobList.get(client);
+			if ( jobList != null && !queued.containsKey(client) )
+				queued.put( client, new ArrayList<RRJob>( jobList ) );
+		}
+		return queued;
+	}
+	
 	/**
 	 * Hard reset of inner architecture. Resets all clients and all jobs.
 	 */
 	public void hardReset(){
+		if ( metrics != null ) metrics.queueCleared();
 		clientRRList = new LinkedList<String>();
 		mappedRRJobList = new HashMap<String, LinkedList<RRJob>>();
 		collectionClientsAndJobs = new HashMap<String, HashMap<String, RRJob>>();
@@ -0,0 +1,20 @@
+package eu.stratosphere.meteor.server.executor;
+
+/**
+ * Executes the meteor scripts of jobs. By default the scheduler executes them on Nephele by
+ * a {@link FrontendExecutor}. Set another one to {@link eu.stratosphere.meteor.server.DOPAScheduler#SCRIPT_EXECUTOR}
+ * before the scheduler executes jobs, e.g. to measure the scheduler without Nephele.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public interface ScriptExecutor {
+	/**
+	 * Executes the script of given job and returns when the job is done. The results have to be
+	 * written to the mapped result paths of the job. It's called by the executor thread of the job.
+	 * @param job to execute
+	 * @param meteorScript of the job with mapped paths
+	 * @throws Exception if the script cannot be executed, the job changes to ERROR with its message
+	 */
+	public void execute( RRJob job, String meteorScript ) throws Exception;
+}
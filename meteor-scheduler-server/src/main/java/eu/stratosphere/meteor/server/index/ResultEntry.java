@@ -0,0 +1,178 @@
+package eu.stratosphere.meteor.server.index;
+
+import org.json.JSONObject;
+
+import eu.stratosphere.meteor.common.JobState;
+import eu.stratosphere.meteor.common.MessageBuilder;
+import eu.stratosphere.meteor.server.executor.JobTimeline;
+
+/**
+ * The metadata of a finished job: its state, the time it finished and its result files. Entries
+ * are created for a single lookup and not kept, see {@link ResultIndex}.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class ResultEntry {
+
+	/** identification **/
+	private final String clientID;
+	private final String jobID;
+
+	/** FINISHED or ERROR **/
+	private final JobState status;
+	private final String errorMessage;
+
+	/** time in milliseconds, -1 if unknown **/
+	private final long finishTime;
+
+	/** result files by index, sizes and record counts are -1 if unknown **/
+	private final String[] originalResults;
+	private final String[] mappedResults;
+	private final long[] resultSizes;
+	private final long[] recordCounts;
+
+	/** stages of the job on this scheduler, null if unknown (e.g. indexed before a restart) **/
+	private JobTimeline timeline;
+
+	/**
+	 * Creates an entry.
+	 * @param clientID
+	 * @param jobID
+	 * @param status FINISHED or ERROR
+	 * @param errorMessage if the status is ERROR, otherwise null
+	 * @param finishTime in milliseconds, -1 if unknown
+	 * @param originalResults result paths as the client wrote them
+	 * @param mappedResults result paths on the file system of the scheduler
+	 * @param resultSizes in bytes, -1 if unknown
+	 * @param recordCounts number of records, -1 if unknown
+	 */
+	public ResultEntry( String clientID, String jobID, JobState status, String errorMessage, long finishTime,
+			String[] originalResults, String[] mappedResults, long[] resultSizes, long[] recordCounts ){
+		this.clientID = clientID;
+		this.jobID = jobID;
+		this.status = status;
+		this.errorMessage = errorMessage;
+		this.finishTime = finishTime;
+		this.originalResults = originalResults;
+		this.mappedResults = mappedResults;
+		this.resultSizes = resultSizes;
+		this.recordCounts = recordCounts;
+	}
+
+	/**
+	 * Returns client id
+	 * @return clientID
+	 */
+	public String getClientID(){
+		return clientID;
+	}
+
+	/**
+	 * Returns job id
+	 * @return jobID
+	 */
+	public String getJobID(){
+		return jobID;
+	}
+
+	/**
+	 * Returns the final status
+	 * @return FINISHED or ERROR
+	 */
+	public JobState getStatus(){
+		return status;
+	}
+
+	/**
+	 * Returns the error message or null if the job finished well.
+	 * @return error message
+	 */
+	public String getErrorMessage(){
+		return errorMessage;
+	}
+
+	/**
+	 * Returns the status of this job as json object to send it to the client.
+	 * @return status or error status
+	 */
+	public JSONObject getStatusJSON(){
+		JSONObject json;
+		if ( status.equals( JobState.ERROR ) ) json = MessageBuilder.buildErrorStatus( clientID, jobID, errorMessage );
+		else json = MessageBuilder.buildJobStatus( clientID, jobID, status );
+		if ( timeline != null ) MessageBuilder.addTimings( json, timeline.getBreakdown() );
+		return json;
+	}
+
+	/**
+	 * Returns the stages the job passed on this scheduler.
+	 * @return timeline or null if unknown
+	 */
+	public JobTimeline getTimeline(){
+		return timeline;
+	}
+
+	/**
+	 * Sets the stages the job passed on this scheduler.
+	 * @param timeline of the job or null
+	 */
+	public void setTimeline( JobTimeline timeline ){
+		this.timeline = timeline;
+	}
+
+	/**
+	 * Returns the time the job finished in milliseconds or -1 if unknown.
+	 * @return finish time
+	 */
+	public long getFinishTime(){
+		return finishTime;
+	}
+
+	/**
+	 * Returns the number of result files.
+	 * @return number of results
+	 */
+	public int getNumberOfResults(){
+		return mappedResults.length;
+	}
+
+	/**
+	 * Returns the original result path of specified index
+	 * @param index
+	 * @return path of the original result (null if this index doesn't exists)
+	 */
+	public String getOriginalResult( int index ){
+		if ( index < 0 || index >= originalResults.length ) return null;
+		return originalResults[index];
+	}
+
+	/**
+	 * Returns the mapped result path of specified index
+	 * @param index
+	 * @return path of mapped result (null if this result doesn't exists)
+	 */
+	public String getMappedResult( int index ){
+		if ( index < 0 || index >= mappedResults.length ) return null;
+		return mappedResults[index];
+	}
+
+	/**
+	 * Returns the size of the result of specified index in bytes.
+	 * @param index
+	 * @return size or -1 if unknown
+	 */
+	public long getResultSize( int index ){
+		if ( index < 0 || index >= resultSizes.length ) return -1;
+		return resultSizes[index];
+	}
+
+	/**
+	 * Returns the number of records of the result of specified index.
+	 * @param index
+	 * @return number of records or -1 if unknown
+	 */
+	public long getRecordCount( int index ){
+		if ( index < 0 || index >= recordCounts.length ) return -1;
+		return recordCounts[index];
+	}
+}
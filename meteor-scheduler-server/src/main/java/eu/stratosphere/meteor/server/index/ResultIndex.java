@@ -0,0 +1,518 @@
+package eu.stratosphere.meteor.server.index;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import eu.stratosphere.meteor.common.JobState;
+
+/**
+ * An index of finished jobs in a memory-mapped file. It maps (clientID, jobID) to the final
+ * state, the finish time and the result files with their sizes and record counts. The entries
+ * live in the file, not on the heap, and survive restarts of the scheduler.
+ *
+ * The file consists of a header, a hash table with open addressing and the entries appended
+ * behind the table. Each slot of the table holds the hash of the identifications and the
+ * offset of the entry. Removed entries leave a marked slot. If too many slots are used the
+ * file is rebuilt with the live entries only and replaces the old one.
+ *
+ * The index isn't thread-safe. The scheduler uses it in its main loop only, just
+ * {@link #force()} may be called by another thread.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class ResultIndex {
+
+	/** name of the index file in its directory **/
+	public static final String FILE_NAME = "results.index";
+
+	/** file header: magic, version, capacity, size, used slots, end of entries **/
+	private static final int MAGIC = 0x4D524958;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 32;
+	private static final int POS_CAPACITY = 8;
+	private static final int POS_SIZE = 12;
+	private static final int POS_USED = 16;
+	private static final int POS_DATA_END = 20;
+
+	/** a slot holds the hash and the offset of an entry **/
+	private static final int SLOT_SIZE = 16;
+	private static final long EMPTY = 0;
+	private static final long REMOVED = -1;
+
+	/** maximum share of used slots (including removed ones) **/
+	private static final double MAX_LOAD = 0.7;
+
+	/** initial space for entries in bytes **/
+	private static final int INITIAL_DATA_SIZE = 1024 * 1024;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** directory of the index file **/
+	private final File directory;
+
+	/** the mapped file **/
+	private volatile MappedByteBuffer buffer;
+
+	/** number of slots, live entries, used slots and end of the entries **/
+	private int capacity;
+	private int size;
+	private int used;
+	private int dataEnd;
+
+	/**
+	 * Opens the index in the directory or creates a new one.
+	 * @param directory of the index file
+	 * @param initialCapacity number of slots of a new index
+	 * @throws IOException if the index cannot be opened or is no index of this version
+	 */
+	public ResultIndex( File directory, int initialCapacity ) throws IOException {
+		this.directory = directory;
+		File file = new File( directory, FILE_NAME );
+
+		if ( file.exists() ){
+			this.buffer = map( file, file.length() );
+			if ( buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION )
+				throw new IOException( "The file " + file + " is no result index of this version." );
+
+			this.capacity = buffer.getInt( POS_CAPACITY );
+			this.size = buffer.getInt( POS_SIZE );
+			this.used = buffer.getInt( POS_USED );
+			this.dataEnd = buffer.getInt( POS_DATA_END );
+			if ( (long) dataStart() + dataEnd > buffer.capacity() )
+				throw new IOException( "The result index " + file + " is truncated." );
+		} else {
+			this.capacity = Math.max( 16, initialCapacity );
+			this.buffer = create( file, capacity, INITIAL_DATA_SIZE );
+		}
+	}
+
+	/**
+	 * Returns the number of indexed jobs.
+	 * @return number of entries
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Returns true if the job is indexed.
+	 * @param clientID
+	 * @param jobID
+	 * @return true if the job is indexed
+	 */
+	public boolean contains( String clientID, String jobID ){
+		return find( clientID, jobID, hash( clientID, jobID ) ) >= 0;
+	}
+
+	/**
+	 * Returns the entry of a job.
+	 * @param clientID
+	 * @param jobID
+	 * @return entry or null if the job isn't indexed
+	 */
+	public ResultEntry get( String clientID, String jobID ){
+		int slot = find( clientID, jobID, hash( clientID, jobID ) );
+		if ( slot < 0 ) return null;
+		return decode( entry( slot ) );
+	}
+
+	/**
+	 * Adds an entry or replaces the entry of the same job.
+	 * @param entry of a finished job
+	 * @throws IOException if the index file cannot grow
+	 */
+	public void put( ResultEntry entry ) throws IOException {
+		long hash = hash( entry.getClientID(), entry.getJobID() );
+		int slot = find( entry.getClientID(), entry.getJobID(), hash );
+
+		// make room for a new slot first, the rebuild moves the entries
+		if ( slot < 0 && used + 1 > capacity * MAX_LOAD ){
+			rebuild( size + 1 > capacity * MAX_LOAD / 2 ? capacity * 2 : capacity );
+		}
+
+		byte[] record = encode( entry );
+		ensureData( record.length );
+		ByteBuffer data = buffer.duplicate();
+		data.position( dataStart() + dataEnd );
+		data.put( record );
+		int offset = dataEnd;
+		dataEnd += record.length;
+
+		if ( slot < 0 ){
+			slot = freeSlot( hash );
+			if ( buffer.getLong( slotPosition( slot ) ) == EMPTY ) used++;
+			size++;
+		}
+
+		// publish the entry after it's written
+		buffer.putLong( slotPosition( slot ) + 8, offset );
+		buffer.putLong( slotPosition( slot ), hash );
+		writeHeader();
+	}
+
+	/**
+	 * Removes the entry of a job.
+	 * @param clientID
+	 * @param jobID
+	 * @return true if the job was indexed
+	 */
+	public boolean remove( String clientID, String jobID ){
+		int slot = find( clientID, jobID, hash( clientID, jobID ) );
+		if ( slot < 0 ) return false;
+
+		buffer.putLong( slotPosition( slot ), REMOVED );
+		size--;
+		writeHeader();
+		return true;
+	}
+
+	/**
+	 * Removes all entries of clients not included in given collection.
+	 * @param clients to keep
+	 * @return number of removed entries
+	 */
+	public int retainClients( Collection<String> clients ){
+		return retainClients( clients, null );
+	}
+
+	/**
+	 * Removes all entries of clients not included in given collection.
+	 * @param clients to keep
+	 * @param removed collects the removed entries, may be null
+	 * @return number of removed entries
+	 */
+	public int retainClients( Collection<String> clients, Collection<ResultEntry> removed ){
+		int count = 0;
+		for ( int slot = 0; slot < capacity; slot++ ){
+			long hash = buffer.getLong( slotPosition( slot ) );
+			if ( hash == EMPTY || hash == REMOVED ) continue;
+
+			ByteBuffer entry = entry( slot );
+			if ( clients.contains( readString( entry ) ) ) continue;
+
+			if ( removed != null ) removed.add( decode( entry( slot ) ) );
+			buffer.putLong( slotPosition( slot ), REMOVED );
+			size--;
+			count++;
+		}
+		writeHeader();
+		return count;
+	}
+
+	/**
+	 * Returns entries of jobs finished before given time.
+	 * @param time in milliseconds
+	 * @param limit maximum number of returned entries
+	 * @return entries of jobs finished before
+	 */
+	public List<ResultEntry> finishedBefore( long time, int limit ){
+		List<ResultEntry> finished = new ArrayList<ResultEntry>();
+		for ( int slot = 0; slot < capacity && finished.size() < limit; slot++ ){
+			long hash = buffer.getLong( slotPosition( slot ) );
+			if ( hash == EMPTY || hash == REMOVED ) continue;
+
+			// skip the identifications and the state to the finish time
+			ByteBuffer entry = entry( slot );
+			skipString( entry );
+			skipString( entry );
+			entry.get();
+			if ( entry.getLong() < time ) finished.add( decode( entry( slot ) ) );
+		}
+		return finished;
+	}
+
+	/**
+	 * Returns the bytes of the results of all indexed jobs per client. Unknown sizes count as 0.
+	 * @return <ClientID -> bytes>
+	 */
+	public Map<String, Long> sumResultSizes(){
+		Map<String, Long> sums = new HashMap<String, Long>();
+		for ( int slot = 0; slot < capacity; slot++ ){
+			long hash = buffer.getLong( slotPosition( slot ) );
+			if ( hash == EMPTY || hash == REMOVED ) continue;
+
+			ResultEntry entry = decode( entry( slot ) );
+			long sum = sums.containsKey( entry.getClientID() ) ? sums.get( entry.getClientID() ) : 0;
+			for ( int i = 0; i < entry.getNumberOfResults(); i++ )
+				if ( entry.getResultSize(i) > 0 ) sum += entry.getResultSize(i);
+			sums.put( entry.getClientID(), sum );
+		}
+		return sums;
+	}
+
+	/**
+	 * Returns the results of given ones which are results of indexed jobs.
+	 * @param mappedResults result paths on the file system of the scheduler
+	 * @return results of indexed jobs
+	 */
+	public Set<String> findResults( Collection<String> mappedResults ){
+		Set<String> found = new HashSet<String>();
+		if ( mappedResults.isEmpty() ) return found;
+
+		for ( int slot = 0; slot < capacity; slot++ ){
+			long hash = buffer.getLong( slotPosition( slot ) );
+			if ( hash == EMPTY || hash == REMOVED ) continue;
+
+			ResultEntry entry = decode( entry( slot ) );
+			for ( int i = 0; i < entry.getNumberOfResults(); i++ )
+				if ( mappedResults.contains( entry.getMappedResult(i) ) ) found.add( entry.getMappedResult(i) );
+		}
+		return found;
+	}
+
+	/**
+	 * Forces all changes to the disk.
+	 */
+	public void force(){
+		buffer.force();
+	}
+
+	/**
+	 * Forces all changes to the disk and releases the index.
+	 */
+	public void close(){
+		force();
+	}
+
+	/**
+	 * Returns the slot of a job or -1 if it isn't indexed.
+	 */
+	private int find( String clientID, String jobID, long hash ){
+		int slot = startSlot( hash, capacity );
+		for ( int probes = 0; probes < capacity; probes++, slot = (slot + 1) % capacity ){
+			long slotHash = buffer.getLong( slotPosition( slot ) );
+			if ( slotHash == EMPTY ) return -1;
+			if ( slotHash != hash ) continue;
+
+			// same hash, compare the identifications
+			ByteBuffer entry = entry( slot );
+			if ( readString( entry ).equals( clientID ) && readString( entry ).equals( jobID ) ) return slot;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the first empty or removed slot for a hash.
+	 */
+	private int freeSlot( long hash ){
+		int slot = startSlot( hash, capacity );
+		while ( true ){
+			long slotHash = buffer.getLong( slotPosition( slot ) );
+			if ( slotHash == EMPTY || slotHash == REMOVED ) return slot;
+			slot = (slot + 1) % capacity;
+		}
+	}
+
+	/**
+	 * Returns a view of the entry of a slot, positioned behind the length of the entry.
+	 */
+	private ByteBuffer entry( int slot ){
+		ByteBuffer entry = buffer.duplicate();
+		entry.position( dataStart() + (int) buffer.getLong( slotPosition( slot ) + 8 ) + 4 );
+		return entry;
+	}
+
+	/**
+	 * Grows the mapped file if the entries need more space.
+	 */
+	private void ensureData( int length ) throws IOException {
+		long needed = (long) dataStart() + dataEnd + length;
+		if ( needed <= buffer.capacity() ) return;
+
+		long newSize = Math.max( needed, (long) buffer.capacity() * 2 );
+		if ( needed > Integer.MAX_VALUE ) throw new IOException( "The result index exceeds 2GB." );
+		newSize = Math.min( newSize, Integer.MAX_VALUE );
+
+		buffer.force();
+		buffer = map( new File( directory, FILE_NAME ), newSize );
+	}
+
+	/**
+	 * Writes a new index file with given capacity and the live entries only and replaces
+	 * the current file by it.
+	 */
+	private void rebuild( int newCapacity ) throws IOException {
+		File tmp = new File( directory, FILE_NAME + ".tmp" );
+		Files.deleteIfExists( tmp.toPath() );
+
+		MappedByteBuffer target = create( tmp, newCapacity, Math.max( INITIAL_DATA_SIZE, dataEnd ) );
+		int targetStart = HEADER_SIZE + newCapacity * SLOT_SIZE;
+		int targetEnd = 0;
+
+		for ( int slot = 0; slot < capacity; slot++ ){
+			long hash = buffer.getLong( slotPosition( slot ) );
+			if ( hash == EMPTY || hash == REMOVED ) continue;
+
+			// copy the entry
+			int offset = dataStart() + (int) buffer.getLong( slotPosition( slot ) + 8 );
+			ByteBuffer entry = buffer.duplicate();
+			entry.position( offset ).limit( offset + buffer.getInt( offset ) );
+			ByteBuffer copy = target.duplicate();
+			copy.position( targetStart + targetEnd );
+			copy.put( entry );
+
+			// insert it into the new table
+			int newSlot = startSlot( hash, newCapacity );
+			while ( target.getLong( HEADER_SIZE + newSlot * SLOT_SIZE ) != EMPTY )
+				newSlot = (newSlot + 1) % newCapacity;
+			target.putLong( HEADER_SIZE + newSlot * SLOT_SIZE + 8, targetEnd );
+			target.putLong( HEADER_SIZE + newSlot * SLOT_SIZE, hash );
+			targetEnd += entry.limit() - offset;
+		}
+
+		target.putInt( POS_SIZE, size );
+		target.putInt( POS_USED, size );
+		target.putInt( POS_DATA_END, targetEnd );
+		target.force();
+
+		Files.move( tmp.toPath(), new File( directory, FILE_NAME ).toPath(),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+
+		this.buffer = target;
+		this.capacity = newCapacity;
+		this.used = size;
+		this.dataEnd = targetEnd;
+	}
+
+	/**
+	 * Writes size, used slots and end of entries into the header.
+	 */
+	private void writeHeader(){
+		buffer.putInt( POS_SIZE, size );
+		buffer.putInt( POS_USED, used );
+		buffer.putInt( POS_DATA_END, dataEnd );
+	}
+
+	private int dataStart(){
+		return HEADER_SIZE + capacity * SLOT_SIZE;
+	}
+
+	private static int slotPosition( int slot ){
+		return HEADER_SIZE + slot * SLOT_SIZE;
+	}
+
+	private static int startSlot( long hash, int capacity ){
+		return (int) ( (hash >>> 1) % capacity );
+	}
+
+	/**
+	 * FNV-1a hash of the identifications. Never EMPTY or REMOVED.
+	 */
+	private static long hash( String clientID, String jobID ){
+		long hash = 0xcbf29ce484222325L;
+		for ( int i = 0; i < clientID.length(); i++ ) hash = ( hash ^ clientID.charAt(i) ) * 0x100000001b3L;
+		hash = ( hash ^ 0 ) * 0x100000001b3L;
+		for ( int i = 0; i < jobID.length(); i++ ) hash = ( hash ^ jobID.charAt(i) ) * 0x100000001b3L;
+		return hash == EMPTY || hash == REMOVED ? 1 : hash;
+	}
+
+	/**
+	 * Creates a new index file with an empty table.
+	 */
+	private static MappedByteBuffer create( File file, int capacity, int dataSize ) throws IOException {
+		MappedByteBuffer created = map( file, HEADER_SIZE + (long) capacity * SLOT_SIZE + dataSize );
+		created.putInt( 0, MAGIC );
+		created.putInt( 4, VERSION );
+		created.putInt( POS_CAPACITY, capacity );
+		return created;
+	}
+
+	/**
+	 * Maps a file with at least given size. The mapping stays valid after the file is closed.
+	 */
+	private static MappedByteBuffer map( File file, long size ) throws IOException {
+		try ( RandomAccessFile raf = new RandomAccessFile( file, "rw" ) ){
+			if ( raf.length() < size ) raf.setLength( size );
+			return raf.getChannel().map( FileChannel.MapMode.READ_WRITE, 0, raf.length() );
+		}
+	}
+
+	/**
+	 * Encodes an entry with its length in front.
+	 */
+	private static byte[] encode( ResultEntry entry ) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream( 256 );
+		DataOutputStream out = new DataOutputStream( bytes );
+		out.writeInt( 0 );
+		writeString( out, entry.getClientID() );
+		writeString( out, entry.getJobID() );
+		out.writeByte( entry.getStatus().ordinal() );
+		out.writeLong( entry.getFinishTime() );
+		writeString( out, entry.getErrorMessage() );
+		out.writeInt( entry.getNumberOfResults() );
+		for ( int i = 0; i < entry.getNumberOfResults(); i++ ){
+			writeString( out, entry.getOriginalResult(i) );
+			writeString( out, entry.getMappedResult(i) );
+			out.writeLong( entry.getResultSize(i) );
+			out.writeLong( entry.getRecordCount(i) );
+		}
+
+		byte[] record = bytes.toByteArray();
+		ByteBuffer.wrap( record ).putInt( 0, record.length );
+		return record;
+	}
+
+	/**
+	 * Decodes an entry from a view positioned behind its length.
+	 */
+	private static ResultEntry decode( ByteBuffer in ){
+		String clientID = readString( in );
+		String jobID = readString( in );
+		JobState status = JobState.values()[ in.get() ];
+		long finishTime = in.getLong();
+		String errorMessage = readString( in );
+
+		int results = in.getInt();
+		String[] original = new String[results];
+		String[] mapped = new String[results];
+		long[] sizes = new long[results];
+		long[] records = new long[results];
+		for ( int i = 0; i < results; i++ ){
+			original[i] = readString( in );
+			mapped[i] = readString( in );
+			sizes[i] = in.getLong();
+			records[i] = in.getLong();
+		}
+		return new ResultEntry( clientID, jobID, status, errorMessage, finishTime, original, mapped, sizes, records );
+	}
+
+	private static void writeString( DataOutputStream out, String value ) throws IOException {
+		if ( value == null ){
+			out.writeInt( -1 );
+			return;
+		}
+		byte[] bytes = value.getBytes( UTF8 );
+		out.writeInt( bytes.length );
+		out.write( bytes );
+	}
+
+	private static void skipString( ByteBuffer in ){
+		int length = in.getInt();
+		if ( length > 0 ) in.position( in.position() + length );
+	}
+
+	private static String readString( ByteBuffer in ){
+		int length = in.getInt();
+		if ( length < 0 ) return null;
+		byte[] bytes = new byte[length];
+		in.get( bytes );
+		return new String( bytes, UTF8 );
+	}
+}
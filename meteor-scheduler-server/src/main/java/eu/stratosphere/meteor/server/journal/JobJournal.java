@@ -0,0 +1,581 @@
+package eu.stratosphere.meteor.server.journal;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import eu.stratosphere.meteor.common.JobState;
+import eu.stratosphere.meteor.server.DOPAScheduler;
+
+/**
+ * An append-only journal of registrations, submissions, state changes and aborts. Replaying
+ * the journal after a restart rebuilds the queues of the scheduler.
+ *
+ * Records are appended to a buffer without waiting for the disk. A writer thread collects them
+ * for at most the commit delay, writes them together and forces them to the disk once (group
+ * commit). So one fsync covers all records of a group and a record is durable at most the
+ * commit delay plus one fsync after it was appended. Each appended record gets a sequence number,
+ * see {@link #getDurableSequence()} and {@link #awaitDurable(long, long)}.
+ *
+ * The journal is split into numbered segment files. {@link #roll()} starts a new segment, so the
+ * older segments can be deleted once a {@link JobSnapshot} covers them.
+ *
+ * Each record is stored as length, CRC32 and payload. A torn record at the end of a segment
+ * (crash while writing) is dropped when the journal is replayed.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class JobJournal {
+
+	/** names of the segment files in the journal directory **/
+	private static final Pattern SEGMENT_PATTERN = Pattern.compile("jobs-(\\d+)\\.journal");
+	private static final String SEGMENT_FORMAT = "jobs-%010d.journal";
+
+	/** record types **/
+	private static final byte REGISTER = 1;
+	private static final byte UNREGISTER = 2;
+	private static final byte SUBMIT = 3;
+	private static final byte STATE = 4;
+	private static final byte ABORT = 5;
+
+	/** upper bound of a record, everything above is treated as a corrupted length **/
+	private static final int MAX_RECORD_SIZE = 256 * 1024 * 1024;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** journal directory **/
+	private final File directory;
+
+	/** maximum time in nanoseconds records are collected before they're written **/
+	private final long commitDelay;
+
+	/** number of collected bytes which starts a commit before the delay is over **/
+	private final int commitBytes;
+
+	/** guards the buffers, segments and sequence numbers **/
+	private final Object lock = new Object();
+
+	/** segment new records are appended to **/
+	private long segment;
+	private RandomAccessFile appendFile;
+
+	/** segment the writer writes to, owned by the writer thread **/
+	private RandomAccessFile writeFile;
+
+	/** records waiting for the writer and time the first of them was appended **/
+	private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+	private long pendingSince;
+
+	/** records of the previous segment not written yet after a roll **/
+	private ByteArrayOutputStream rolled = null;
+
+	/** encodes a single record **/
+	private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+	private final DataOutputStream recordOut = new DataOutputStream( record );
+	private final CRC32 crc = new CRC32();
+
+	/** last appended and last durable sequence number **/
+	private long appended = 0;
+	private long durable = 0;
+
+	private boolean closed = false;
+	private IOException failure = null;
+
+	private final Thread writer;
+
+	/**
+	 * Opens the newest segment of the journal for appending and starts the writer thread. Call
+	 * {@link #replay(File, long, JournalHandler)} before to rebuild the state.
+	 * @param directory of the journal
+	 * @param commitDelay maximum time in milliseconds records are collected before they're written
+	 * @param commitBytes number of collected bytes which starts a commit before the delay is over
+	 * @throws IOException if the segment cannot be opened
+	 */
+	public JobJournal( File directory, long commitDelay, int commitBytes ) throws IOException {
+		this.directory = directory;
+		this.commitDelay = TimeUnit.MILLISECONDS.toNanos( commitDelay );
+		this.commitBytes = commitBytes;
+
+		List<Long> segments = listSegments( directory );
+		this.segment = segments.isEmpty() ? 1 : segments.get( segments.size() - 1 );
+		this.appendFile = new RandomAccessFile( getSegmentFile( directory, segment ), "rw" );
+		this.appendFile.seek( appendFile.length() );
+		this.writeFile = appendFile;
+
+		this.writer = new Thread( new Runnable() {
+			@Override
+			public void run(){ writeLoop(); }
+		}, "job-journal-writer" );
+		this.writer.setDaemon( true );
+		this.writer.start();
+	}
+
+	/**
+	 * Returns the file of a segment.
+	 * @param directory of the journal
+	 * @param segment number
+	 * @return segment file
+	 */
+	public static File getSegmentFile( File directory, long segment ){
+		return new File( directory, String.format( SEGMENT_FORMAT, segment ) );
+	}
+
+	/**
+	 * Returns the numbers of all segments in the directory in ascending order.
+	 * @param directory of the journal
+	 * @return segment numbers
+	 */
+	public static List<Long> listSegments( File directory ){
+		List<Long> segments = new ArrayList<Long>();
+		String[] names = directory.list();
+		if ( names == null ) return segments;
+
+		for ( String name : names ){
+			Matcher matcher = SEGMENT_PATTERN.matcher( name );
+			if ( matcher.matches() ) segments.add( Long.parseLong( matcher.group(1) ) );
+		}
+		Collections.sort( segments );
+		return segments;
+	}
+
+	/**
+	 * Passes all records of the segments starting with the given one to the handler.
+	 * @param directory of the journal
+	 * @param fromSegment first segment to replay, older segments are covered by a snapshot
+	 * @param handler receives the records
+	 * @return number of replayed records
+	 * @throws IOException if a segment cannot be read
+	 */
+	public static long replay( File directory, long fromSegment, JournalHandler handler ) throws IOException {
+		long records = 0;
+		for ( long segment : listSegments( directory ) )
+			if ( segment >= fromSegment ) records += replay( getSegmentFile( directory, segment ), handler );
+		return records;
+	}
+
+	/**
+	 * Passes all records of a segment to the handler. A torn or corrupted record ends the
+	 * replay and the segment is truncated before that record, so new records follow the last
+	 * valid one.
+	 * @param file of the segment
+	 * @param handler receives the records
+	 * @return number of replayed records
+	 * @throws IOException if the file cannot be read
+	 */
+	private static long replay( File file, JournalHandler handler ) throws IOException {
+		long records = 0;
+		long valid = 0;
+		CRC32 crc = new CRC32();
+
+		try ( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) ) ){
+			while ( true ){
+				int length;
+				try { length = in.readInt(); }
+				catch ( EOFException eof ){ break; }
+
+				if ( length <= 0 || length > MAX_RECORD_SIZE ) break;
+				long checksum = in.readInt() & 0xFFFFFFFFL;
+				byte[] payload = new byte[ length ];
+				in.readFully( payload );
+
+				crc.reset();
+				crc.update( payload, 0, length );
+				if ( crc.getValue() != checksum ) break;
+
+				dispatch( new DataInputStream( new ByteArrayInputStream( payload ) ), handler );
+				valid += 8 + length;
+				records++;
+			}
+		} catch ( EOFException eof ){
+			// torn record at the end
+		}
+
+		if ( valid < file.length() ){
+			DOPAScheduler.LOG.warn("Journal " + file + " ends with a torn record. Dropped " +
+					( file.length() - valid ) + " bytes after " + records + " records.");
+			try ( RandomAccessFile truncate = new RandomAccessFile( file, "rw" ) ){
+				truncate.setLength( valid );
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Decodes one record and passes it to the handler.
+	 */
+	private static void dispatch( DataInputStream in, JournalHandler handler ) throws IOException {
+		byte type = in.readByte();
+		String clientID = readString( in );
+
+		switch ( type ){
+			case REGISTER:
+				handler.clientRegistered( clientID );
+				break;
+			case UNREGISTER:
+				handler.clientUnregistered( clientID );
+				break;
+			case SUBMIT:
+				String jobID = readString( in );
+				String script = readString( in );
+				long time = in.readLong();
+				handler.jobSubmitted( clientID, jobID, script, time < 0 ? null : new Date( time ) );
+				break;
+			case STATE:
+				jobID = readString( in );
+				JobState state = JobState.values()[ in.readByte() ];
+				handler.jobStateChanged( clientID, jobID, state, readString( in ) );
+				break;
+			case ABORT:
+				handler.jobAborted( clientID, readString( in ) );
+				break;
+			default:
+				throw new IOException( "Unknown journal record type " + type + "." );
+		}
+	}
+
+	/**
+	 * Appends the registration of a client.
+	 * @param clientID
+	 * @return sequence number of the record
+	 * @throws IOException if the journal is closed or failed
+	 */
+	public long logRegister( String clientID ) throws IOException {
+		synchronized ( lock ){
+			begin( REGISTER, clientID );
+			return append();
+		}
+	}
+
+	/**
+	 * Appends the unregistration of a client.
+	 * @param clientID
+	 * @return sequence number of the record
+	 * @throws IOException if the journal is closed or failed
+	 */
+	public long logUnregister( String clientID ) throws IOException {
+		synchronized ( lock ){
+			begin( UNREGISTER, clientID );
+			return append();
+		}
+	}
+
+	/**
+	 * Appends a submitted job with its original script.
+	 * @param clientID
+	 * @param jobID
+	 * @param meteorScript original script from the client
+	 * @param submitTime from client site, may be null
+	 * @return sequence number of the record
+	 * @throws IOException if the journal is closed or failed
+	 */
+	public long logSubmit( String clientID, String jobID, String meteorScript, Date submitTime ) throws IOException {
+		synchronized ( lock ){
+			begin( SUBMIT, clientID );
+			writeString( recordOut, jobID );
+			writeString( recordOut, meteorScript );
+			recordOut.writeLong( submitTime == null ? -1 : submitTime.getTime() );
+			return append();
+		}
+	}
+
+	/**
+	 * Appends a state change of a job.
+	 * @param clientID
+	 * @param jobID
+	 * @param state new state
+	 * @param errorMessage if the new state is ERROR, otherwise null
+	 * @return sequence number of the record
+	 * @throws IOException if the journal is closed or failed
+	 */
+	public long logState( String clientID, String jobID, JobState state, String errorMessage ) throws IOException {
+		synchronized ( lock ){
+			begin( STATE, clientID );
+			writeString( recordOut, jobID );
+			recordOut.writeByte( state.ordinal() );
+			writeString( recordOut, errorMessage );
+			return append();
+		}
+	}
+
+	/**
+	 * Appends an aborted job.
+	 * @param clientID
+	 * @param jobID
+	 * @return sequence number of the record
+	 * @throws IOException if the journal is closed or failed
+	 */
+	public long logAbort( String clientID, String jobID ) throws IOException {
+		synchronized ( lock ){
+			begin( ABORT, clientID );
+			writeString( recordOut, jobID );
+			return append();
+		}
+	}
+
+	/**
+	 * Starts a new segment. All records appended before are in older segments, all records
+	 * appended after in the new one.
+	 * @return number of the new segment
+	 * @throws IOException if the journal is closed or failed or the segment cannot be created
+	 */
+	public long roll() throws IOException {
+		synchronized ( lock ){
+			check();
+			
+			// the writer didn't finish the last roll yet
+			try { while ( rolled != null && failure == null ) lock.wait(); }
+			catch ( InterruptedException ie ){
+				Thread.currentThread().interrupt();
+				throw new IOException( "Interrupted while rolling the journal." );
+			}
+			check();
+			
+			RandomAccessFile next = new RandomAccessFile( getSegmentFile( directory, segment + 1 ), "rw" );
+			rolled = pending;
+			pending = new ByteArrayOutputStream();
+			appendFile = next;
+			lock.notifyAll();
+			return ++segment;
+		}
+	}
+
+	/**
+	 * Deletes all segments older than given one.
+	 * @param segment first segment to keep
+	 * @return number of deleted segments
+	 */
+	public int deleteSegmentsBefore( long segment ){
+		int deleted = 0;
+		for ( long older : listSegments( directory ) ){
+			if ( older >= segment ) break;
+			File file = getSegmentFile( directory, older );
+			if ( file.delete() ) deleted++;
+			else DOPAScheduler.LOG.warn("Cannot delete the journal segment " + file + ".");
+		}
+		return deleted;
+	}
+
+	/**
+	 * Returns the sequence number of the last appended record.
+	 * @return sequence number, 0 if nothing is appended yet
+	 */
+	public long getAppendedSequence(){
+		synchronized ( lock ){
+			return appended;
+		}
+	}
+
+	/**
+	 * Returns true if the journal couldn't write records and rejects further ones.
+	 * @return true if the journal failed
+	 */
+	public boolean hasFailed(){
+		synchronized ( lock ){
+			return failure != null;
+		}
+	}
+
+	/**
+	 * Returns the sequence number of the last record forced to the disk.
+	 * @return sequence number, 0 if nothing is durable yet
+	 */
+	public long getDurableSequence(){
+		synchronized ( lock ){
+			return durable;
+		}
+	}
+
+	/**
+	 * Waits until the record with given sequence number is forced to the disk.
+	 * @param sequence of the record
+	 * @param timeout in milliseconds, 0 waits forever
+	 * @return true if the record is durable, false after the timeout or if the journal failed
+	 * @throws InterruptedException
+	 */
+	public boolean awaitDurable( long sequence, long timeout ) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( timeout );
+		synchronized ( lock ){
+			while ( durable < sequence && failure == null ){
+				if ( timeout <= 0 ) lock.wait();
+				else {
+					long remaining = deadline - System.nanoTime();
+					if ( remaining <= 0 ) return false;
+					TimeUnit.NANOSECONDS.timedWait( lock, remaining );
+				}
+			}
+			return durable >= sequence;
+		}
+	}
+
+	/**
+	 * Writes all appended records, stops the writer and closes the segment.
+	 * @throws IOException if the segment cannot be closed
+	 */
+	public void close() throws IOException {
+		synchronized ( lock ){
+			if ( closed ) return;
+			closed = true;
+			lock.notifyAll();
+		}
+
+		try { writer.join(); }
+		catch ( InterruptedException ie ){ Thread.currentThread().interrupt(); }
+		writeFile.close();
+		appendFile.close();
+	}
+
+	/**
+	 * Throws an exception if no more records are accepted.
+	 */
+	private void check() throws IOException {
+		if ( failure != null ) throw new IOException( "The journal in " + directory + " failed before.", failure );
+		if ( closed ) throw new IOException( "The journal in " + directory + " is closed." );
+	}
+
+	/**
+	 * Starts a new record.
+	 */
+	private void begin( byte type, String clientID ) throws IOException {
+		check();
+		record.reset();
+		recordOut.writeByte( type );
+		writeString( recordOut, clientID );
+	}
+
+	/**
+	 * Moves the current record to the pending buffer and wakes up the writer if needed.
+	 * @return sequence number of the record
+	 */
+	private long append() throws IOException {
+		int length = record.size();
+		crc.reset();
+		crc.update( record.toByteArray(), 0, length );
+
+		boolean wasEmpty = pending.size() == 0;
+		if ( wasEmpty ) pendingSince = System.nanoTime();
+
+		DataOutputStream out = new DataOutputStream( pending );
+		out.writeInt( length );
+		out.writeInt( (int) crc.getValue() );
+		record.writeTo( pending );
+
+		if ( wasEmpty || pending.size() >= commitBytes ) lock.notifyAll();
+		return ++appended;
+	}
+
+	/**
+	 * Writes a nullable string as length and UTF-8 bytes.
+	 */
+	static void writeString( DataOutput out, String value ) throws IOException {
+		if ( value == null ){
+			out.writeInt( -1 );
+			return;
+		}
+		byte[] bytes = value.getBytes( UTF8 );
+		out.writeInt( bytes.length );
+		out.write( bytes );
+	}
+
+	/**
+	 * Reads a string written by writeString.
+	 */
+	static String readString( DataInput in ) throws IOException {
+		int length = in.readInt();
+		if ( length < 0 ) return null;
+		byte[] bytes = new byte[ length ];
+		in.readFully( bytes );
+		return new String( bytes, UTF8 );
+	}
+
+	/**
+	 * Collects pending records to groups and forces each group to the disk. Switches to the
+	 * next segment after a roll. Ends after close when all records are written.
+	 */
+	private void writeLoop(){
+		ByteArrayOutputStream group = new ByteArrayOutputStream();
+
+		while ( true ){
+			long sequence;
+			ByteArrayOutputStream previous;
+			RandomAccessFile target;
+			synchronized ( lock ){
+				try {
+					while ( pending.size() == 0 && rolled == null && !closed ) lock.wait();
+
+					// collect more records, but not longer than the commit delay after the first one
+					long remaining;
+					while ( !closed && rolled == null && pending.size() < commitBytes &&
+							( remaining = pendingSince + commitDelay - System.nanoTime() ) > 0 )
+						TimeUnit.NANOSECONDS.timedWait( lock, remaining );
+				} catch ( InterruptedException ie ){
+					// write what we have
+				}
+
+				if ( pending.size() == 0 && rolled == null ) return; // closed and everything written
+
+				previous = rolled;
+				rolled = null;
+				ByteArrayOutputStream tmp = pending;
+				pending = group;
+				group = tmp;
+				sequence = appended;
+				target = appendFile;
+				lock.notifyAll();
+			}
+
+			try {
+				// finish the previous segment first
+				if ( previous != null ){
+					write( previous );
+					writeFile.close();
+					writeFile = target;
+				}
+				write( group );
+			} catch ( IOException ioe ){
+				DOPAScheduler.LOG.fatal("Cannot write the journal in " + directory + ". Further records are rejected.", ioe);
+				synchronized ( lock ){
+					failure = ioe;
+					lock.notifyAll();
+				}
+				return;
+			}
+			group.reset();
+
+			synchronized ( lock ){
+				durable = sequence;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Writes records to the current segment and forces them to the disk.
+	 */
+	private void write( ByteArrayOutputStream records ) throws IOException {
+		if ( records.size() == 0 ) return;
+		FileChannel channel = writeFile.getChannel();
+		records.writeTo( Channels.newOutputStream( channel ) );
+		channel.force( false );
+	}
+}
@@ -0,0 +1,245 @@
+package eu.stratosphere.meteor.server.journal;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import eu.stratosphere.meteor.common.JobState;
+
+/**
+ * A compact binary snapshot of the scheduler state: the clients, their queued jobs in round robin
+ * order and their finished jobs. A snapshot names the first journal segment which isn't covered
+ * by it, so recovery restores the snapshot and replays only the younger segments.
+ *
+ * The scheduler collects a snapshot in its main loop. It holds only strings and states, so
+ * another thread can write it while the scheduler goes on. The file is written next to the
+ * journal and renamed when it's complete, so a crash keeps the previous snapshot.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class JobSnapshot {
+
+	/** name of the snapshot file in the journal directory **/
+	public static final String FILE_NAME = "jobs.snapshot";
+
+	/** file header **/
+	private static final int MAGIC = 0x4D534E50;
+	private static final int VERSION = 1;
+
+	/** first journal segment which isn't covered by this snapshot **/
+	private final long segment;
+
+	/** clients in round robin order **/
+	private final LinkedHashMap<String, ClientEntry> clients;
+
+	/**
+	 * Creates an empty snapshot.
+	 * @param segment first journal segment which isn't covered by this snapshot
+	 */
+	public JobSnapshot( long segment ){
+		this.segment = segment;
+		this.clients = new LinkedHashMap<String, ClientEntry>();
+	}
+
+	/**
+	 * Returns the first journal segment which isn't covered by this snapshot.
+	 * @return segment number
+	 */
+	public long getSegment(){
+		return segment;
+	}
+
+	/**
+	 * Adds a client. Clients are restored in the order they're added.
+	 * @param clientID
+	 * @param registered false if the client unregistered but its finished jobs are still kept
+	 */
+	public void addClient( String clientID, boolean registered ){
+		if ( !clients.containsKey( clientID ) ) clients.put( clientID, new ClientEntry( registered ) );
+	}
+
+	/**
+	 * Adds a queued job to the end of the queue of its client.
+	 * @param clientID
+	 * @param jobID
+	 * @param meteorScript original script from the client
+	 * @param submitTime from client site, may be null
+	 */
+	public void addQueuedJob( String clientID, String jobID, String meteorScript, Date submitTime ){
+		clients.get( clientID ).queued.add( new JobEntry( jobID, meteorScript, submitTime, JobState.WAITING, null ) );
+	}
+
+	/**
+	 * Adds a finished job.
+	 * @param clientID
+	 * @param jobID
+	 * @param meteorScript original script from the client
+	 * @param submitTime from client site, may be null
+	 * @param state FINISHED or ERROR
+	 * @param errorMessage if the state is ERROR, otherwise null
+	 */
+	public void addFinishedJob( String clientID, String jobID, String meteorScript, Date submitTime,
+			JobState state, String errorMessage ){
+		clients.get( clientID ).finished.add( new JobEntry( jobID, meteorScript, submitTime, state, errorMessage ) );
+	}
+
+	/**
+	 * Writes the snapshot into the journal directory and replaces the previous one.
+	 * @param directory of the journal
+	 * @return size of the snapshot in bytes
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public long write( File directory ) throws IOException {
+		File tmp = new File( directory, FILE_NAME + ".tmp" );
+		CRC32 crc = new CRC32();
+
+		try ( FileOutputStream file = new FileOutputStream( tmp ) ){
+			DataOutputStream out = new DataOutputStream(
+					new CheckedOutputStream( new BufferedOutputStream( file, 64 * 1024 ), crc ) );
+			out.writeInt( MAGIC );
+			out.writeInt( VERSION );
+			out.writeLong( segment );
+			out.writeInt( clients.size() );
+
+			for ( String clientID : clients.keySet() ){
+				ClientEntry client = clients.get( clientID );
+				JobJournal.writeString( out, clientID );
+				out.writeBoolean( client.registered );
+				writeJobs( out, client.finished );
+				writeJobs( out, client.queued );
+			}
+
+			// the checksum itself isn't part of the checksum
+			out.flush();
+			new DataOutputStream( file ).writeLong( crc.getValue() );
+			file.getChannel().force( true );
+		}
+
+		Files.move( tmp.toPath(), new File( directory, FILE_NAME ).toPath(),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		return new File( directory, FILE_NAME ).length();
+	}
+
+	/**
+	 * Passes the snapshot in the journal directory to the handler as if its state was journaled.
+	 * @param directory of the journal
+	 * @param handler receives the state
+	 * @return first journal segment which isn't covered by the snapshot, 0 if there is no snapshot
+	 * @throws IOException if the snapshot cannot be read or is corrupted
+	 */
+	public static long restore( File directory, JournalHandler handler ) throws IOException {
+		File file = new File( directory, FILE_NAME );
+		if ( !file.exists() ) return 0;
+
+		// check the whole file first, the handler shouldn't see a part of a corrupted snapshot
+		byte[] content = Files.readAllBytes( file.toPath() );
+		CRC32 crc = new CRC32();
+		if ( content.length >= 8 ) crc.update( content, 0, content.length - 8 );
+		if ( content.length < 8 || ByteBuffer.wrap( content, content.length - 8, 8 ).getLong() != crc.getValue() )
+			throw new IOException( "The snapshot " + file + " is corrupted." );
+
+		DataInputStream in = new DataInputStream( new ByteArrayInputStream( content, 0, content.length - 8 ) );
+		if ( in.readInt() != MAGIC || in.readInt() != VERSION )
+			throw new IOException( "The file " + file + " is no snapshot of this version." );
+
+		JobSnapshot snapshot = new JobSnapshot( in.readLong() );
+		int clientCount = in.readInt();
+		for ( int i = 0; i < clientCount; i++ ){
+			String clientID = JobJournal.readString( in );
+			ClientEntry client = new ClientEntry( in.readBoolean() );
+			readJobs( in, client.finished );
+			readJobs( in, client.queued );
+			snapshot.clients.put( clientID, client );
+		}
+
+		snapshot.restore( handler );
+		return snapshot.segment;
+	}
+
+	/**
+	 * Passes the state to the handler.
+	 */
+	private void restore( JournalHandler handler ){
+		for ( String clientID : clients.keySet() ){
+			ClientEntry client = clients.get( clientID );
+			handler.clientRegistered( clientID );
+
+			for ( JobEntry job : client.finished ){
+				handler.jobSubmitted( clientID, job.jobID, job.script, job.submitTime );
+				handler.jobStateChanged( clientID, job.jobID, job.state, job.errorMessage );
+			}
+			for ( JobEntry job : client.queued )
+				handler.jobSubmitted( clientID, job.jobID, job.script, job.submitTime );
+
+			if ( !client.registered ) handler.clientUnregistered( clientID );
+		}
+	}
+
+	private static void writeJobs( DataOutputStream out, List<JobEntry> jobs ) throws IOException {
+		out.writeInt( jobs.size() );
+		for ( JobEntry job : jobs ){
+			JobJournal.writeString( out, job.jobID );
+			JobJournal.writeString( out, job.script );
+			out.writeLong( job.submitTime == null ? -1 : job.submitTime.getTime() );
+			out.writeByte( job.state.ordinal() );
+			JobJournal.writeString( out, job.errorMessage );
+		}
+	}
+
+	private static void readJobs( DataInputStream in, List<JobEntry> jobs ) throws IOException {
+		int count = in.readInt();
+		for ( int i = 0; i < count; i++ ){
+			String jobID = JobJournal.readString( in );
+			String script = JobJournal.readString( in );
+			long time = in.readLong();
+			JobState state = JobState.values()[ in.readByte() ];
+			jobs.add( new JobEntry( jobID, script, time < 0 ? null : new Date( time ), state, JobJournal.readString( in ) ) );
+		}
+	}
+
+	/**
+	 * The jobs of one client.
+	 */
+	private static final class ClientEntry {
+		private final boolean registered;
+		private final List<JobEntry> finished = new ArrayList<JobEntry>();
+		private final List<JobEntry> queued = new ArrayList<JobEntry>();
+
+		private ClientEntry( boolean registered ){
+			this.registered = registered;
+		}
+	}
+
+	/**
+	 * A job of the snapshot.
+	 */
+	private static final class JobEntry {
+		private final String jobID;
+		private final String script;
+		private final Date submitTime;
+		private final JobState state;
+		private final String errorMessage;
+
+		private JobEntry( String jobID, String script, Date submitTime, JobState state, String errorMessage ){
+			this.jobID = jobID;
+			this.script = script;
+			this.submitTime = submitTime;
+			this.state = state;
+			this.errorMessage = errorMessage;
+		}
+	}
+}
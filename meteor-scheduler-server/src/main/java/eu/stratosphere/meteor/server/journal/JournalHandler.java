@@ -0,0 +1,52 @@
+package eu.stratosphere.meteor.server.journal;
+
+import java.util.Date;
+
+import eu.stratosphere.meteor.common.JobState;
+
+/**
+ * Receives the records of a journal while it's replayed. The records arrive in the order they
+ * were appended.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public interface JournalHandler {
+
+	/**
+	 * A client registered.
+	 * @param clientID
+	 */
+	public void clientRegistered( String clientID );
+
+	/**
+	 * A client unregistered.
+	 * @param clientID
+	 */
+	public void clientUnregistered( String clientID );
+
+	/**
+	 * A job was submitted.
+	 * @param clientID
+	 * @param jobID
+	 * @param meteorScript original script from the client
+	 * @param submitTime from client site, may be null
+	 */
+	public void jobSubmitted( String clientID, String jobID, String meteorScript, Date submitTime );
+
+	/**
+	 * A job changed its state.
+	 * @param clientID
+	 * @param jobID
+	 * @param state new state
+	 * @param errorMessage if the new state is ERROR, otherwise null
+	 */
+	public void jobStateChanged( String clientID, String jobID, JobState state, String errorMessage );
+
+	/**
+	 * A job was aborted.
+	 * @param clientID
+	 * @param jobID
+	 */
+	public void jobAborted( String clientID, String jobID );
+}
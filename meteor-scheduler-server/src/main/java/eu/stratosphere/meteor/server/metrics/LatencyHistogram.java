@@ -0,0 +1,139 @@
+package eu.stratosphere.meteor.server.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A thread-safe histogram of latencies in microseconds. Values are counted in log-linear
+ * buckets, each power of two is split into 32 buckets, so percentiles are exact up to 1/32 of
+ * their value. Recording never allocates and never blocks, so it's used on the hot paths of the
+ * scheduler as well as by the load generator.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Reported percentiles
+	 */
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+	private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p999" };
+
+	private final AtomicLongArray counts = new AtomicLongArray( (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS );
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a latency.
+	 * @param micros latency in microseconds, negative values count as 0
+	 */
+	public void record( long micros ){
+		long value = Math.max( 0, micros );
+		counts.incrementAndGet( index( value ) );
+		count.incrementAndGet();
+		sum.addAndGet( value );
+
+		long current;
+		while ( value > (current = max.get()) && !max.compareAndSet( current, value ) );
+	}
+
+	/**
+	 * Returns the number of recorded latencies
+	 * @return count
+	 */
+	public long getCount(){
+		return count.get();
+	}
+
+	/**
+	 * Returns the mean latency in microseconds or 0 if nothing was recorded
+	 * @return mean
+	 */
+	public double getMean(){
+		long n = count.get();
+		return n == 0 ? 0 : (double) sum.get() / n;
+	}
+
+	/**
+	 * Returns the highest latency in microseconds
+	 * @return max
+	 */
+	public long getMax(){
+		return max.get();
+	}
+
+	/**
+	 * Returns the latency in microseconds given percent of all recorded latencies are lower or equal to.
+	 * @param percentile between 0 and 100
+	 * @return latency at percentile, 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile( double percentile ){
+		long n = count.get();
+		if ( n == 0 ) return 0;
+
+		long rank = Math.max( 1, (long) Math.ceil( percentile / 100 * n ) );
+		long seen = 0;
+		for ( int i = 0; i < counts.length(); i++ ){
+			seen += counts.get(i);
+			if ( seen >= rank ) return Math.min( highestValue(i), max.get() );
+		}
+		return max.get();
+	}
+
+	/**
+	 * Returns count, mean, percentiles and max, the latencies in milliseconds.
+	 * @return summary of this histogram in the order count, mean, p50, p90, p99, p999, max
+	 */
+	public Map<String, Double> getSummary(){
+		Map<String, Double> summary = new LinkedHashMap<String, Double>();
+		summary.put( "count", (double) getCount() );
+		summary.put( "mean", getMean() / 1000 );
+		for ( int i = 0; i < PERCENTILES.length; i++ )
+			summary.put( PERCENTILE_NAMES[i], getValueAtPercentile( PERCENTILES[i] ) / 1000.0 );
+		summary.put( "max", getMax() / 1000.0 );
+		return summary;
+	}
+
+	/**
+	 * Returns the summary as a json object, see {@link #getSummary()}.
+	 * @return summary of this histogram
+	 * @throws JSONException never for finite values
+	 */
+	public JSONObject toJSON() throws JSONException {
+		JSONObject summary = new JSONObject();
+		for ( Map.Entry<String, Double> value : getSummary().entrySet() ) summary.put( value.getKey(), value.getValue() );
+		summary.put( "count", getCount() );
+		return summary;
+	}
+
+	/**
+	 * Returns the bucket of a value. Values below SUB_BUCKETS have their own bucket, the others
+	 * share a bucket with values of the same exponent and the same highest bits.
+	 */
+	static int index( long value ){
+		if ( value < SUB_BUCKETS ) return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros( value ) - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+		return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Returns the highest value counted in given bucket.
+	 */
+	static long highestValue( int index ){
+		if ( index < SUB_BUCKETS ) return index;
+		int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+		long subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
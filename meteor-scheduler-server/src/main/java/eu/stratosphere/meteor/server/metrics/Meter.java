@@ -0,0 +1,74 @@
+package eu.stratosphere.meteor.server.metrics;
+
+/**
+ * Counts events and their rate per second. Marking an event only adds to a striped counter. The
+ * rate is an exponentially weighted average over about one minute, updated in ticks of five
+ * seconds when it's read. Until the first tick it's the mean rate since the meter was created.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class Meter {
+
+	private static final long TICK = 5000000000L;
+	private static final double ALPHA = 1 - Math.exp( -5 / 60.0 );
+
+	/**
+	 * After this number of missed ticks the old rate doesn't count anymore
+	 */
+	private static final long MAX_TICKS = 100;
+
+	private final StripedCounter count = new StripedCounter();
+	private final long startTime = System.nanoTime();
+
+	/**
+	 * Guarded by this
+	 */
+	private long lastTick = startTime;
+	private long lastCount;
+	private double rate = -1;
+
+	/**
+	 * Marks one event.
+	 */
+	public void mark(){
+		count.increment();
+	}
+
+	/**
+	 * Marks given number of events, e.g. bytes.
+	 * @param events number of events
+	 */
+	public void mark( long events ){
+		count.add( events );
+	}
+
+	/**
+	 * Returns the number of all marked events.
+	 * @return count
+	 */
+	public long getCount(){
+		return count.sum();
+	}
+
+	/**
+	 * Returns the events per second over about the last minute.
+	 * @return rate per second
+	 */
+	public synchronized double getRate(){
+		long now = System.nanoTime();
+		long ticks = (now - lastTick) / TICK;
+
+		if ( ticks > 0 ){
+			long current = count.sum();
+			double instant = (current - lastCount) * 1e9 / (ticks * TICK);
+			if ( rate < 0 || ticks >= MAX_TICKS ) rate = instant;
+			else for ( long i = 0; i < ticks; i++ ) rate += ALPHA * (instant - rate);
+			lastCount = current;
+			lastTick += ticks * TICK;
+		}
+
+		if ( rate >= 0 ) return rate;
+		return now == startTime ? 0 : count.sum() * 1e9 / (now - startTime);
+	}
+}
@@ -0,0 +1,333 @@
+package eu.stratosphere.meteor.server.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import eu.stratosphere.meteor.common.JobState;
+import eu.stratosphere.meteor.server.DOPAScheduler;
+import eu.stratosphere.meteor.server.executor.JobTimeline;
+import eu.stratosphere.meteor.server.executor.JobTimeline.Phase;
+
+/**
+ * Collects the metrics of one scheduler and exports them over JMX as
+ * eu.stratosphere.meteor:type=DOPAScheduler,shard=<shard>.
+ *
+ * Counters written by several threads per event (requests, published messages, transferred bytes)
+ * are striped, the queue is only changed by the main loop of the scheduler. Reading the metrics
+ * never blocks the scheduler.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class SchedulerMetrics implements SchedulerMetricsMXBean {
+
+	/**
+	 * JMX domain of the metrics
+	 */
+	public static final String DOMAIN = "eu.stratosphere.meteor";
+
+	/**
+	 * Waiting jobs over all and per client
+	 */
+	private final AtomicInteger waitingJobs = new AtomicInteger();
+	private final ConcurrentHashMap<String, AtomicInteger> queueDepths = new ConcurrentHashMap<String, AtomicInteger>();
+
+	/**
+	 * Jobs per state and the times of their phases, the map isn't changed after construction
+	 */
+	private final AtomicInteger runningJobs = new AtomicInteger();
+	private final AtomicLongArray jobsPerState = new AtomicLongArray( JobState.values().length );
+	private final EnumMap<Phase, LatencyHistogram> phaseTimes = new EnumMap<Phase, LatencyHistogram>( Phase.class );
+
+	/**
+	 * Received requests per type and published messages
+	 */
+	private final ConcurrentHashMap<String, Meter> requests = new ConcurrentHashMap<String, Meter>();
+	private final Meter publishedMessages = new Meter();
+
+	/**
+	 * Result transfers
+	 */
+	private final Meter transferredBytes = new Meter();
+	private final Meter transfers = new Meter();
+	private final AtomicInteger activeSenders = new AtomicInteger();
+
+	/**
+	 * Name this object is registered by, null if it isn't
+	 */
+	private ObjectName objectName;
+
+	/**
+	 * Creates empty metrics.
+	 */
+	public SchedulerMetrics(){
+		for ( Phase phase : Phase.values() ) phaseTimes.put( phase, new LatencyHistogram() );
+	}
+
+	/**
+	 * Counts a job added to the queue.
+	 * @param clientID of the job
+	 */
+	public void jobQueued( String clientID ){
+		AtomicInteger depth = queueDepths.get( clientID );
+		if ( depth == null ){
+			AtomicInteger added = queueDepths.putIfAbsent( clientID, depth = new AtomicInteger() );
+			if ( added != null ) depth = added;
+		}
+		depth.incrementAndGet();
+		waitingJobs.incrementAndGet();
+	}
+
+	/**
+	 * Counts a job taken or removed from the queue.
+	 * @param clientID of the job
+	 */
+	public void jobDequeued( String clientID ){
+		AtomicInteger depth = queueDepths.get( clientID );
+		if ( depth == null ) return;
+		if ( depth.decrementAndGet() <= 0 ) queueDepths.remove( clientID, depth );
+		waitingJobs.decrementAndGet();
+	}
+
+	/**
+	 * Removes all waiting jobs of a client.
+	 * @param clientID of the client
+	 */
+	public void clientDequeued( String clientID ){
+		AtomicInteger depth = queueDepths.remove( clientID );
+		if ( depth != null ) waitingJobs.addAndGet( -depth.get() );
+	}
+
+	/**
+	 * Removes all waiting jobs.
+	 */
+	public void queueCleared(){
+		queueDepths.clear();
+		waitingJobs.set( 0 );
+	}
+
+	/**
+	 * Counts a job which reached given state.
+	 * @param state new state of the job
+	 */
+	public void jobStateChanged( JobState state ){
+		jobsPerState.incrementAndGet( state.ordinal() );
+	}
+
+	/**
+	 * Records the start of a job and the phases until it was dispatched.
+	 * @param timeline of the job
+	 */
+	public void jobStarted( JobTimeline timeline ){
+		runningJobs.incrementAndGet();
+		recordPhase( timeline, Phase.RECEIVE );
+		recordPhase( timeline, Phase.WAIT );
+	}
+
+	/**
+	 * Records the end of a job and the phases until it finished.
+	 * @param timeline of the job
+	 */
+	public void jobFinished( JobTimeline timeline ){
+		runningJobs.decrementAndGet();
+		recordPhase( timeline, Phase.DISPATCH );
+		recordPhase( timeline, Phase.EXECUTION );
+	}
+
+	/**
+	 * Records the time from the end of a job until the first byte of a result was sent.
+	 * @param timeline of the job
+	 */
+	public void resultSent( JobTimeline timeline ){
+		recordPhase( timeline, Phase.RESULT );
+	}
+
+	/**
+	 * Records the duration of a phase if the job passed it.
+	 * @param timeline of the job
+	 * @param phase to record
+	 */
+	private void recordPhase( JobTimeline timeline, Phase phase ){
+		long duration = timeline.getDuration( phase );
+		if ( duration >= 0 ) phaseTimes.get( phase ).record( duration / 1000 );
+	}
+
+	/**
+	 * Counts a received request.
+	 * @param type of the request
+	 */
+	public void requestReceived( String type ){
+		Meter meter = requests.get( type );
+		if ( meter == null ){
+			Meter added = requests.putIfAbsent( type, meter = new Meter() );
+			if ( added != null ) meter = added;
+		}
+		meter.mark();
+	}
+
+	/**
+	 * Counts a message published to a client.
+	 */
+	public void messagePublished(){
+		publishedMessages.mark();
+	}
+
+	/**
+	 * Counts a started result transfer.
+	 */
+	public void transferStarted(){
+		transfers.mark();
+		activeSenders.incrementAndGet();
+	}
+
+	/**
+	 * Counts a finished or failed result transfer.
+	 */
+	public void transferFinished(){
+		activeSenders.decrementAndGet();
+	}
+
+	/**
+	 * Counts sent result bytes.
+	 * @param bytes sent
+	 */
+	public void bytesTransferred( long bytes ){
+		transferredBytes.mark( bytes );
+	}
+
+	/**
+	 * Exports these metrics over JMX for given shard. A scheduler of the same shard started
+	 * before in this JVM is replaced.
+	 * @param shard served by the scheduler
+	 */
+	public synchronized void register( int shard ){
+		try {
+			ObjectName name = new ObjectName( DOMAIN + ":type=DOPAScheduler,shard=" + shard );
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if ( server.isRegistered( name ) ) server.unregisterMBean( name );
+			server.registerMBean( this, name );
+			this.objectName = name;
+		} catch ( JMException jme ){
+			DOPAScheduler.LOG.warn("Cannot export the metrics of the scheduler over JMX.", jme);
+		}
+	}
+
+	/**
+	 * Removes these metrics from JMX if they're exported.
+	 */
+	public synchronized void unregister(){
+		if ( objectName == null ) return;
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if ( server.isRegistered( objectName ) ) server.unregisterMBean( objectName );
+		} catch ( JMException jme ){
+			DOPAScheduler.LOG.warn("Cannot remove the metrics of the scheduler from JMX.", jme);
+		}
+		objectName = null;
+	}
+
+	/**
+	 * Returns the name these metrics are exported by.
+	 * @return name or null if they aren't exported
+	 */
+	public synchronized ObjectName getObjectName(){
+		return objectName;
+	}
+
+	@Override
+	public int getWaitingJobs(){
+		return waitingJobs.get();
+	}
+
+	@Override
+	public int getRunningJobs(){
+		return runningJobs.get();
+	}
+
+	@Override
+	public Map<String, Integer> getQueueDepths(){
+		Map<String, Integer> depths = new TreeMap<String, Integer>();
+		for ( Map.Entry<String, AtomicInteger> depth : queueDepths.entrySet() )
+			if ( depth.getValue().get() > 0 ) depths.put( depth.getKey(), depth.getValue().get() );
+		return depths;
+	}
+
+	@Override
+	public Map<String, Long> getJobsPerState(){
+		Map<String, Long> states = new LinkedHashMap<String, Long>();
+		for ( JobState state : JobState.values() ) states.put( state.name(), jobsPerState.get( state.ordinal() ) );
+		return states;
+	}
+
+	@Override
+	public Map<String, Double> getWaitTimes(){
+		return phaseTimes.get( Phase.WAIT ).getSummary();
+	}
+
+	@Override
+	public Map<String, Double> getRunTimes(){
+		return phaseTimes.get( Phase.EXECUTION ).getSummary();
+	}
+
+	@Override
+	public Map<String, Map<String, Double>> getPhaseTimes(){
+		Map<String, Map<String, Double>> phases = new LinkedHashMap<String, Map<String, Double>>();
+		for ( Map.Entry<Phase, LatencyHistogram> phase : phaseTimes.entrySet() )
+			phases.put( phase.getKey().getName(), phase.getValue().getSummary() );
+		return phases;
+	}
+
+	@Override
+	public Map<String, Long> getRequests(){
+		Map<String, Long> counts = new TreeMap<String, Long>();
+		for ( Map.Entry<String, Meter> request : requests.entrySet() ) counts.put( request.getKey(), request.getValue().getCount() );
+		return counts;
+	}
+
+	@Override
+	public Map<String, Double> getRequestRates(){
+		Map<String, Double> rates = new TreeMap<String, Double>();
+		for ( Map.Entry<String, Meter> request : requests.entrySet() ) rates.put( request.getKey(), request.getValue().getRate() );
+		return rates;
+	}
+
+	@Override
+	public long getPublishedMessages(){
+		return publishedMessages.getCount();
+	}
+
+	@Override
+	public double getPublishRate(){
+		return publishedMessages.getRate();
+	}
+
+	@Override
+	public long getTransferredBytes(){
+		return transferredBytes.getCount();
+	}
+
+	@Override
+	public double getTransferRate(){
+		return transferredBytes.getRate();
+	}
+
+	@Override
+	public long getTransfers(){
+		return transfers.getCount();
+	}
+
+	@Override
+	public int getActiveSenders(){
+		return activeSenders.get();
+	}
+}
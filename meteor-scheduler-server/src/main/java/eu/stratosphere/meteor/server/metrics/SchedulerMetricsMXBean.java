@@ -0,0 +1,88 @@
+package eu.stratosphere.meteor.server.metrics;
+
+import java.util.Map;
+
+/**
+ * The metrics of a scheduler as exported over JMX. Times are in milliseconds, rates per second
+ * averaged over about one minute.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public interface SchedulerMetricsMXBean {
+	/**
+	 * @return number of jobs waiting in the queue
+	 */
+	public int getWaitingJobs();
+
+	/**
+	 * @return number of running jobs
+	 */
+	public int getRunningJobs();
+
+	/**
+	 * @return number of waiting jobs per client with waiting jobs
+	 */
+	public Map<String, Integer> getQueueDepths();
+
+	/**
+	 * @return number of jobs which reached each state since the scheduler started
+	 */
+	public Map<String, Long> getJobsPerState();
+
+	/**
+	 * @return count, mean, percentiles and max of the times jobs waited in the queue
+	 */
+	public Map<String, Double> getWaitTimes();
+
+	/**
+	 * @return count, mean, percentiles and max of the times jobs ran in the executor
+	 */
+	public Map<String, Double> getRunTimes();
+
+	/**
+	 * @return count, mean, percentiles and max of the times of each phase of the jobs
+	 * 		(receive, wait, dispatch, execution, result)
+	 */
+	public Map<String, Map<String, Double>> getPhaseTimes();
+
+	/**
+	 * @return number of received requests per type
+	 */
+	public Map<String, Long> getRequests();
+
+	/**
+	 * @return received requests per type and second
+	 */
+	public Map<String, Double> getRequestRates();
+
+	/**
+	 * @return number of messages published to clients
+	 */
+	public long getPublishedMessages();
+
+	/**
+	 * @return messages published to clients per second
+	 */
+	public double getPublishRate();
+
+	/**
+	 * @return number of result bytes sent to clients
+	 */
+	public long getTransferredBytes();
+
+	/**
+	 * @return result bytes sent to clients per second
+	 */
+	public double getTransferRate();
+
+	/**
+	 * @return number of started result transfers
+	 */
+	public long getTransfers();
+
+	/**
+	 * @return number of result transfers in process
+	 */
+	public int getActiveSenders();
+}
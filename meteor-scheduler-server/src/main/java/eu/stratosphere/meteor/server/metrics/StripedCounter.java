@@ -0,0 +1,51 @@
+package eu.stratosphere.meteor.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter for many writing threads and rare readers. Each thread adds to one of several cells,
+ * picked by its thread ID, and each cell has a cache line of its own. So threads seldom contend
+ * on the same cell and never share a cache line, reading sums all cells.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class StripedCounter {
+
+	/**
+	 * Number of cells, a power of two with about two cells per processor
+	 */
+	static final int STRIPES = Math.min( 64, Integer.highestOneBit( Runtime.getRuntime().availableProcessors() * 2 - 1 ) << 1 );
+
+	/**
+	 * Distance of two cells in longs, a cache line of 64 bytes
+	 */
+	private static final int PADDING = 8;
+
+	private final AtomicLongArray cells = new AtomicLongArray( STRIPES * PADDING );
+
+	/**
+	 * Adds one.
+	 */
+	public void increment(){
+		add( 1 );
+	}
+
+	/**
+	 * Adds given value.
+	 * @param value to add
+	 */
+	public void add( long value ){
+		cells.addAndGet( (int) (Thread.currentThread().getId() & (STRIPES - 1)) * PADDING, value );
+	}
+
+	/**
+	 * Returns the sum of all added values. Values added meanwhile may be missing.
+	 * @return sum
+	 */
+	public long sum(){
+		long sum = 0;
+		for ( int i = 0; i < cells.length(); i += PADDING ) sum += cells.get(i);
+		return sum;
+	}
+}
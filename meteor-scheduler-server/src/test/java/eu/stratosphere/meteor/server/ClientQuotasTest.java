@@ -0,0 +1,69 @@
+package eu.stratosphere.meteor.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import eu.stratosphere.meteor.common.JobState;
+import eu.stratosphere.meteor.server.index.ResultEntry;
+
+/**
+ * Tests the limits and the incremental usage of client quotas.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class ClientQuotasTest {
+
+	@Test
+	public void testQueuedJobs(){
+		ClientQuotas quotas = new ClientQuotas( 2, 0, 0 );
+		assertNull( quotas.checkSubmission( "client", 1 ) );
+		assertNotNull( quotas.checkSubmission( "client", 2 ) );
+
+		assertNull( new ClientQuotas( 0, 0, 0 ).checkSubmission( "client", 100000 ) );
+	}
+
+	@Test
+	public void testTransfers(){
+		ClientQuotas quotas = new ClientQuotas( 0, 2, 0 );
+		assertTrue( quotas.startTransfer( "client" ) );
+		assertTrue( quotas.startTransfer( "client" ) );
+		assertFalse( quotas.startTransfer( "client" ) );
+		assertTrue( quotas.startTransfer( "other" ) );
+		assertEquals( 2, quotas.getTransfers( "client" ) );
+
+		quotas.finishTransfer( "client" );
+		assertTrue( quotas.startTransfer( "client" ) );
+	}
+
+	@Test
+	public void testStoredBytes(){
+		ClientQuotas quotas = new ClientQuotas( 0, 0, 100 );
+		ResultEntry first = entry( "job1", 60, -1 );
+		ResultEntry second = entry( "job2", 50, 0 );
+
+		quotas.addResults( first );
+		assertNull( quotas.checkSubmission( "client", 0 ) );
+		quotas.addResults( second );
+		assertEquals( 110, quotas.getStoredBytes( "client" ) );
+		assertNotNull( quotas.checkSubmission( "client", 0 ) );
+		assertNull( quotas.checkSubmission( "other", 0 ) );
+
+		quotas.removeResults( first );
+		assertEquals( 50, quotas.getStoredBytes( "client" ) );
+		assertNull( quotas.checkSubmission( "client", 0 ) );
+		quotas.removeResults( second );
+		assertTrue( quotas.getStoredBytes().isEmpty() );
+	}
+
+	private static ResultEntry entry( String jobID, long size, long otherSize ){
+		return new ResultEntry( "client", jobID, JobState.FINISHED, null, 0,
+				new String[] { "a.json", "b.json" }, new String[] { "file:///a.json", "file:///b.json" },
+				new long[] { size, otherSize }, new long[] { -1, -1 } );
+	}
+}
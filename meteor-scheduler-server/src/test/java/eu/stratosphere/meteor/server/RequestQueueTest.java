@@ -0,0 +1,226 @@
+package eu.stratosphere.meteor.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+import eu.stratosphere.meteor.common.SchedulerConfigConstants;
+import eu.stratosphere.meteor.common.transport.InMemoryBroker;
+import eu.stratosphere.meteor.common.transport.QueueingTransportConsumer;
+import eu.stratosphere.meteor.common.transport.Transport;
+import eu.stratosphere.meteor.common.transport.TransportChannel;
+import eu.stratosphere.meteor.server.executor.RRJob;
+import eu.stratosphere.meteor.server.executor.ScriptExecutor;
+
+/**
+ * Tests that requests survive the scheduler in the request queue, that a request is acknowledged
+ * only after its journal records are on the disk and that only submissions delivered again are
+ * ignored as duplicates. Runs the scheduler on an in-memory broker with a stub executor which
+ * only counts the executions.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class RequestQueueTest {
+
+	private static final String CLIENT = "queue-client";
+	private static final String QUEUE = "scheduler.requests.queue";
+	private static final long TIMEOUT = 10_000;
+	private static final long COMMIT_DELAY = 1_000;
+
+	private static final AtomicInteger executions = new AtomicInteger();
+	private static ScriptExecutor executor;
+	private static String journalDirectory;
+	private static long commitDelay;
+
+	private File journal;
+	private InMemoryBroker broker;
+	private Transport transport;
+	private TransportChannel channel;
+	private QueueingTransportConsumer statusConsumer;
+
+	@BeforeClass
+	public static void setupClass(){
+		executor = DOPAScheduler.SCRIPT_EXECUTOR;
+		journalDirectory = SchedulerConfigConstants.JOURNAL_DIRECTORY;
+		commitDelay = SchedulerConfigConstants.JOURNAL_COMMIT_DELAY;
+		DOPAScheduler.SCRIPT_EXECUTOR = new ScriptExecutor() {
+			@Override
+			public void execute( RRJob job, String meteorScript ){
+				executions.incrementAndGet();
+			}
+		};
+	}
+
+	@AfterClass
+	public static void tearDownClass(){
+		DOPAScheduler.SCRIPT_EXECUTOR = executor;
+		SchedulerConfigConstants.JOURNAL_DIRECTORY = journalDirectory;
+		SchedulerConfigConstants.JOURNAL_COMMIT_DELAY = commitDelay;
+	}
+
+	@Before
+	public void setup() throws IOException {
+		executions.set( 0 );
+		journal = Files.createTempDirectory( "requests" ).toFile();
+		SchedulerConfigConstants.JOURNAL_DIRECTORY = journal.getAbsolutePath();
+		SchedulerConfigConstants.JOURNAL_COMMIT_DELAY = COMMIT_DELAY;
+		broker = new InMemoryBroker();
+		transport = broker.newTransport();
+		channel = transport.createChannel();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		transport.close();
+		broker.shutdown();
+		for ( File file : journal.listFiles() ) file.delete();
+		journal.delete();
+	}
+
+	/**
+	 * Submissions sent while no scheduler runs wait in the queue for the next one.
+	 */
+	@Test ( timeout = TIMEOUT )
+	public void testRequestsOutliveScheduler() throws Exception {
+		DOPAScheduler first = start();
+		stop( first );
+
+		submit( "waiting" );
+		assertEquals( 1, broker.getMessageCount( QUEUE ) );
+
+		DOPAScheduler second = start();
+		assertNotNull( statusConsumer.nextDelivery() );
+		assertEquals( 0, broker.getMessageCount( QUEUE ) );
+		stop( second );
+	}
+
+	/**
+	 * A handled submission is acknowledged after its journal records are forced to the disk.
+	 * If the scheduler stops before, the broker delivers the submission again.
+	 */
+	@Test ( timeout = TIMEOUT )
+	public void testAcknowledgeAfterJournal() throws Exception {
+		DOPAScheduler first = start();
+		submit( "unsynced" );
+		assertNotNull( statusConsumer.nextDelivery() );
+
+		// the journal holds the records back for the commit delay, so the submission isn't acknowledged yet
+		stop( first );
+		assertEquals( 1, broker.getMessageCount( QUEUE ) );
+
+		DOPAScheduler second = start();
+		assertNotNull( statusConsumer.nextDelivery() );
+		Thread.sleep( 2 * COMMIT_DELAY );
+
+		// records on the disk, the redelivered submission is acknowledged but the job doesn't run again
+		stop( second );
+		assertEquals( 0, broker.getMessageCount( QUEUE ) );
+		assertEquals( 1, executions.get() );
+	}
+
+	/**
+	 * After a lost connection the broker delivers unacknowledged submissions again. The scheduler
+	 * acknowledges them but doesn't run their jobs again.
+	 */
+	@Test ( timeout = TIMEOUT )
+	public void testRecoveredConnection() throws Exception {
+		DOPAScheduler scheduler = start();
+		submit( "recovered" );
+		awaitExecutions( 1 );
+
+		broker.interruptConnections();
+		Thread.sleep( 2 * COMMIT_DELAY );
+
+		stop( scheduler );
+		assertEquals( 0, broker.getMessageCount( QUEUE ) );
+		assertEquals( 1, executions.get() );
+	}
+
+	/**
+	 * A submitted job runs again if the client submits it again, but not if the client
+	 * only published the submission again after a lost connection.
+	 */
+	@Test ( timeout = TIMEOUT )
+	public void testResubmitReplacesJob() throws Exception {
+		DOPAScheduler scheduler = start();
+		submit( "again", false );
+		awaitExecutions( 1 );
+		
+		submit( "again", false );
+		awaitExecutions( 2 );
+		
+		submit( "again", true );
+		assertNotNull( statusConsumer.nextDelivery() );
+		Thread.sleep( 200 );
+		assertEquals( 2, executions.get() );
+		stop( scheduler );
+	}
+
+	/**
+	 * Starts a scheduler on its own thread and listens to the status updates of the client.
+	 */
+	private DOPAScheduler start() throws IOException {
+		final DOPAScheduler scheduler = DOPAScheduler.createNewSchedulerSystem( broker );
+		Thread thread = new Thread( new Runnable() {
+			@Override
+			public void run(){ scheduler.start(); }
+		}, "scheduler" );
+		thread.setDaemon( true );
+		thread.start();
+
+		if ( statusConsumer == null ){
+			String queue = channel.queueDeclare();
+			channel.queueBind( queue, ServerConnectionFactory.STATUS_EXCHANGE, SchedulerConfigConstants.getRoutingKey( CLIENT ) );
+			statusConsumer = new QueueingTransportConsumer( channel );
+			channel.basicConsume( queue, true, statusConsumer );
+		}
+		return scheduler;
+	}
+
+	private static void stop( DOPAScheduler scheduler ) throws IOException {
+		scheduler.pause();
+		scheduler.shutdown();
+	}
+
+	private static void awaitExecutions( int expected ) throws InterruptedException {
+		while ( executions.get() < expected ) Thread.sleep( 10 );
+	}
+
+	private void submit( String jobID ) throws IOException {
+		submit( jobID, false );
+	}
+
+	/**
+	 * Publishes a submission like the client does.
+	 * @param replayed true to mark it like a submission published again after a lost connection
+	 */
+	private void submit( String jobID, boolean replayed ) throws IOException {
+		BasicProperties props = new BasicProperties.Builder()
+				.contentEncoding( "UTF-8" )
+				.contentType( SchedulerConfigConstants.JSON )
+				.timestamp( new Date() )
+				.deliveryMode( SchedulerConfigConstants.PERSISTENT )
+				.headers( Collections.<String, Object>singletonMap( SchedulerConfigConstants.REPLAY_HEADER, replayed ) )
+				.build();
+		channel.basicPublish(
+				SchedulerConfigConstants.getRequestExchange( CLIENT ),
+				"setJob." + CLIENT + "." + jobID,
+				props,
+				"$input = read from 'in.json';".getBytes( "UTF-8" ) );
+	}
+}
@@ -0,0 +1,156 @@
+package eu.stratosphere.meteor.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.stratosphere.meteor.common.JobState;
+import eu.stratosphere.meteor.common.MessageBuilder;
+import eu.stratosphere.meteor.common.MessageBuilder.RequestType;
+import eu.stratosphere.meteor.common.transport.InMemoryBroker;
+
+/**
+ * Tests that the notifier coalesces the status updates of each client in its time window,
+ * keeps the latest state of each job and sends them when the window closes or everything
+ * is flushed.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class StatusNotifierTest {
+
+	private static final long WINDOW = 200;
+
+	private InMemoryBroker schedulerBroker;
+	private InMemoryBroker notifierBroker;
+	private DOPAScheduler scheduler;
+	private RecordingFactory factory;
+
+	@Before
+	public void setup() throws IOException {
+		schedulerBroker = new InMemoryBroker();
+		notifierBroker = new InMemoryBroker();
+		scheduler = DOPAScheduler.createNewSchedulerSystem( schedulerBroker );
+		factory = new RecordingFactory( scheduler, notifierBroker );
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		factory.shutdownConnections();
+		scheduler.shutdown();
+		notifierBroker.shutdown();
+		schedulerBroker.shutdown();
+	}
+
+	@Test
+	public void testWithoutWindow(){
+		StatusNotifier notifier = new StatusNotifier( factory, 0 );
+		notifier.publish( "a", "1", status( "a", "1", JobState.WAITING ) );
+		notifier.publish( "a", "1", status( "a", "1", JobState.RUNNING ) );
+
+		// each status is sent instantly
+		assertFalse( notifier.hasPending() );
+		assertEquals( 2, factory.messages.size() );
+		assertEquals( JobState.RUNNING, MessageBuilder.getJobStatus( factory.messages.get(1) ) );
+	}
+
+	@Test
+	public void testCoalescing(){
+		StatusNotifier notifier = new StatusNotifier( factory, 60_000 );
+		notifier.publish( "a", "1", status( "a", "1", JobState.WAITING ) );
+		notifier.publish( "a", "2", status( "a", "2", JobState.WAITING ) );
+		notifier.publish( "a", "1", status( "a", "1", JobState.RUNNING ) );
+		notifier.publish( "b", "1", status( "b", "1", JobState.WAITING ) );
+
+		// nothing is sent before the windows close
+		notifier.flushDue();
+		assertTrue( notifier.hasPending() );
+		assertTrue( factory.messages.isEmpty() );
+
+		notifier.flushAll();
+		assertFalse( notifier.hasPending() );
+		assertEquals( 2, factory.messages.size() );
+
+		// the batch of a keeps the latest state of each job in the order of the latest changes
+		JSONObject batch = factory.messageOf( "a" );
+		assertEquals( RequestType.JOB_STATUS_BATCH, RequestType.getRequestType( batch ) );
+		List<JSONObject> statuses = MessageBuilder.getStatusBatch( batch );
+		assertEquals( 2, statuses.size() );
+		assertEquals( "2", MessageBuilder.getJobID( statuses.get(0) ) );
+		assertEquals( "1", MessageBuilder.getJobID( statuses.get(1) ) );
+		assertEquals( JobState.RUNNING, MessageBuilder.getJobStatus( statuses.get(1) ) );
+
+		// a single status is sent as it is
+		JSONObject single = factory.messageOf( "b" );
+		assertEquals( JobState.WAITING, MessageBuilder.getJobStatus( single ) );
+	}
+
+	@Test
+	public void testDeadlines() throws Exception {
+		StatusNotifier notifier = new StatusNotifier( factory, WINDOW );
+		assertEquals( 1_000, notifier.getWaitingTime( 1_000 ) );
+
+		notifier.publish( "a", "1", status( "a", "1", JobState.WAITING ) );
+		assertTrue( notifier.getWaitingTime( 1_000 ) <= WINDOW );
+		assertEquals( 10, notifier.getWaitingTime( 10 ) );
+
+		// the window of b closes later than the window of a
+		Thread.sleep( WINDOW / 2 );
+		notifier.publish( "b", "1", status( "b", "1", JobState.WAITING ) );
+		Thread.sleep( WINDOW / 2 + 20 );
+		assertEquals( 0, notifier.getWaitingTime( 1_000 ) );
+
+		notifier.flushDue();
+		assertEquals( 1, factory.messages.size() );
+		assertEquals( "a", factory.clients.get(0) );
+		assertTrue( notifier.hasPending() );
+
+		// a new status of a opens a new window
+		notifier.publish( "a", "2", status( "a", "2", JobState.WAITING ) );
+		Thread.sleep( WINDOW / 2 );
+		notifier.flushDue();
+		assertEquals( 2, factory.messages.size() );
+		assertEquals( "b", factory.clients.get(1) );
+		assertTrue( notifier.hasPending() );
+
+		notifier.flushAll();
+		assertEquals( 3, factory.messages.size() );
+		assertFalse( notifier.hasPending() );
+		assertEquals( 1_000, notifier.getWaitingTime( 1_000 ) );
+	}
+
+	private static JSONObject status( String clientID, String jobID, JobState state ){
+		return MessageBuilder.buildJobStatus( clientID, jobID, state );
+	}
+
+	/**
+	 * Records the sent status messages instead of publishing them.
+	 */
+	private static class RecordingFactory extends ServerConnectionFactory {
+		private final List<String> clients = new ArrayList<String>();
+		private final List<JSONObject> messages = new ArrayList<JSONObject>();
+
+		private RecordingFactory( DOPAScheduler scheduler, InMemoryBroker broker ) throws IOException {
+			super( scheduler, broker );
+		}
+
+		@Override
+		protected void sendJobStatus( String clientName, JSONObject status ){
+			clients.add( clientName );
+			messages.add( status );
+		}
+
+		private JSONObject messageOf( String clientID ){
+			return messages.get( clients.indexOf( clientID ) );
+		}
+	}
+}
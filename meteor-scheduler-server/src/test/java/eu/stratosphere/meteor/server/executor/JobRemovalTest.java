@@ -0,0 +1,190 @@
+package eu.stratosphere.meteor.server.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import eu.stratosphere.meteor.client.DOPAClient;
+import eu.stratosphere.meteor.common.DSCLJob;
+import eu.stratosphere.meteor.common.JobState;
+import eu.stratosphere.meteor.common.SchedulerConfigConstants;
+import eu.stratosphere.meteor.common.transport.InMemoryBroker;
+import eu.stratosphere.meteor.server.DOPAScheduler;
+
+/**
+ * Tests that aborted and expired jobs are gone from the scheduler: their status is DELETED and
+ * their results are deleted. Only removed jobs are counted as deleted. Runs the scheduler and a
+ * client in this jvm, the jobs write their results without Nephele.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class JobRemovalTest {
+
+	private static final String CLIENT = "removal-client";
+	private static final long TIMEOUT = 10;
+
+	private static File root;
+	private static String rootPath;
+	private static long reclaimInterval;
+	private static ScriptExecutor executor;
+	private static InMemoryBroker broker;
+	private static DOPAScheduler scheduler;
+	private static DOPAClient client;
+
+	@BeforeClass
+	public static void start() throws Exception {
+		root = Files.createTempDirectory( "removal" ).toFile();
+		rootPath = SchedulerConfigConstants.SCHEDULER_FILESYSTEM_ROOT_PATH;
+		reclaimInterval = SchedulerConfigConstants.RECLAIM_INTERVAL;
+		SchedulerConfigConstants.SCHEDULER_FILESYSTEM_ROOT_PATH = "file://" + root.getAbsolutePath() + File.separator;
+		SchedulerConfigConstants.RECLAIM_INTERVAL = 10;
+		executor = DOPAScheduler.SCRIPT_EXECUTOR;
+		DOPAScheduler.SCRIPT_EXECUTOR = new ResultWriter();
+
+		broker = new InMemoryBroker();
+		scheduler = DOPAScheduler.createNewSchedulerSystem( broker );
+		Thread thread = new Thread( new Runnable() {
+			@Override
+			public void run(){ scheduler.start(); }
+		}, "scheduler" );
+		thread.setDaemon( true );
+		thread.start();
+
+		client = DOPAClient.createNewClient( CLIENT );
+		client.setTransportFactory( broker );
+		assertTrue( client.connect() );
+	}
+
+	@AfterClass
+	public static void stop() throws Exception {
+		SchedulerConfigConstants.RESULT_EXPIRATION = 0;
+		client.disconnect();
+		scheduler.pause();
+		scheduler.shutdown();
+		broker.shutdown();
+		SchedulerConfigConstants.SCHEDULER_FILESYSTEM_ROOT_PATH = rootPath;
+		SchedulerConfigConstants.RECLAIM_INTERVAL = reclaimInterval;
+		DOPAScheduler.SCRIPT_EXECUTOR = executor;
+		delete( root.toPath() );
+	}
+
+	@Test
+	public void testAbortedJob() throws Exception {
+		DSCLJob job = finishedJob( "aborted" );
+		File result = new File( root, CLIENT + "/aborted/result.json" );
+		assertTrue( result.exists() );
+
+		job.abortJob();
+		assertEquals( JobState.DELETED, awaitDeleted( job.getID() ) );
+		assertTrue( awaitDeleted( result ) );
+	}
+
+	@Test
+	public void testAbortUnknownJob() throws Exception {
+		DSCLJob job = client.reconnectJob( "unknown" );
+		assertEquals( JobState.DELETED, awaitDeleted( job.getID() ) );
+		long deleted = scheduler.getMetrics().getJobsPerState().get( JobState.DELETED.name() );
+
+		// the status request after the abort is answered after the abort was handled
+		job.abortJob();
+		assertEquals( JobState.DELETED, awaitDeleted( job.getID() ) );
+		assertEquals( deleted, (long) scheduler.getMetrics().getJobsPerState().get( JobState.DELETED.name() ) );
+
+		DSCLJob aborted = finishedJob( "counted" );
+		aborted.abortJob();
+		assertEquals( JobState.DELETED, awaitDeleted( aborted.getID() ) );
+		assertEquals( deleted + 1, (long) scheduler.getMetrics().getJobsPerState().get( JobState.DELETED.name() ) );
+	}
+
+	@Test
+	public void testExpiredJob() throws Exception {
+		SchedulerConfigConstants.RESULT_EXPIRATION = 100;
+		try {
+			DSCLJob job = finishedJob( "expired" );
+			File result = new File( root, CLIENT + "/expired/result.json" );
+
+			assertEquals( JobState.DELETED, awaitDeleted( job.getID() ) );
+			assertTrue( awaitDeleted( result ) );
+		} finally {
+			SchedulerConfigConstants.RESULT_EXPIRATION = 0;
+		}
+	}
+
+	/**
+	 * Submits a job writing one result and waits until it finished.
+	 */
+	private static DSCLJob finishedJob( String directory ) throws Exception {
+		DSCLJob job = client.createNewJob(
+				"$input = read from 'in.json';\nwrite $input to '" + directory + "/result.json';\n" );
+		assertEquals( JobState.FINISHED, job.getCompletion().get( TIMEOUT, TimeUnit.SECONDS ) );
+		return job;
+	}
+
+	/**
+	 * Asks the scheduler for the status of a job until it's deleted or the time is over.
+	 * @return the last status
+	 */
+	private static JobState awaitDeleted( String jobID ) throws Exception {
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( TIMEOUT );
+		JobState state;
+		do {
+			DSCLJob reconnected = client.reconnectJob( jobID );
+			reconnected.getSubmission().get( TIMEOUT, TimeUnit.SECONDS );
+			state = reconnected.getStatus();
+			if ( state == JobState.DELETED ) return state;
+			Thread.sleep( 50 );
+		} while ( System.currentTimeMillis() < deadline );
+		return state;
+	}
+
+	private static boolean awaitDeleted( File file ) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( TIMEOUT );
+		while ( file.exists() && System.currentTimeMillis() < deadline ) Thread.sleep( 10 );
+		return !file.exists();
+	}
+
+	/**
+	 * Writes an empty json array to each result of a job.
+	 */
+	private static final class ResultWriter implements ScriptExecutor {
+		@Override
+		public void execute( RRJob job, String meteorScript ) throws Exception {
+			for ( int i = 0; i < job.getNumberOfResults(); i++ ){
+				Path result = new File( job.getMappedResult(i).substring( "file://".length() ) ).toPath();
+				Files.createDirectories( result.getParent() );
+				Files.write( result, "[]".getBytes( Charset.forName( "UTF-8" ) ) );
+			}
+		}
+	}
+
+	private static void delete( Path path ) throws IOException {
+		if ( !Files.exists( path ) ) return;
+		Files.walkFileTree( path, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile( Path file, BasicFileAttributes attributes ) throws IOException {
+				Files.delete( file );
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory( Path directory, IOException exception ) throws IOException {
+				Files.delete( directory );
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
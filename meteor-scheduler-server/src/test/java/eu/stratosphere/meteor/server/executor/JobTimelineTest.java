@@ -0,0 +1,63 @@
+package eu.stratosphere.meteor.server.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import eu.stratosphere.meteor.common.JobState;
+import eu.stratosphere.meteor.common.MessageBuilder;
+import eu.stratosphere.meteor.server.executor.JobTimeline.Phase;
+import eu.stratosphere.meteor.server.executor.JobTimeline.Stage;
+
+/**
+ * Tests the stages and phases of a job timeline and their way into status replies.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class JobTimelineTest {
+
+	@Test
+	public void testStages(){
+		JobTimeline timeline = new JobTimeline();
+		assertFalse( timeline.reached( Stage.QUEUED ) );
+		assertEquals( -1, timeline.getDuration( Phase.WAIT ) );
+
+		assertTrue( timeline.mark( Stage.QUEUED, 1000 ) );
+		assertTrue( timeline.mark( Stage.DISPATCHED, 5000 ) );
+
+		// each stage is marked only once
+		assertFalse( timeline.mark( Stage.DISPATCHED, 9000 ) );
+		assertTrue( timeline.reached( Stage.DISPATCHED ) );
+		assertEquals( 4000, timeline.getDuration( Phase.WAIT ) );
+		assertEquals( -1, timeline.getDuration( Phase.DISPATCH ) );
+	}
+
+	@Test
+	public void testBreakdown() throws Exception {
+		JobTimeline timeline = new JobTimeline();
+		timeline.mark( Stage.RECEIVED, 0 );
+		timeline.mark( Stage.QUEUED, 1000000 );
+		timeline.mark( Stage.DISPATCHED, 3000000 );
+		timeline.mark( Stage.STARTED, 4000000 );
+		timeline.mark( Stage.FINISHED, 14000000 );
+
+		Map<String, Double> breakdown = timeline.getBreakdown();
+		assertEquals( 1.0, breakdown.get( "receive" ), 0.001 );
+		assertEquals( 2.0, breakdown.get( "wait" ), 0.001 );
+		assertEquals( 1.0, breakdown.get( "dispatch" ), 0.001 );
+		assertEquals( 10.0, breakdown.get( "execution" ), 0.001 );
+		assertFalse( breakdown.containsKey( "result" ) );
+		assertEquals( 14.0, breakdown.get( "total" ), 0.001 );
+
+		// the breakdown survives a status reply
+		JSONObject status = MessageBuilder.buildJobStatus( "client", "job", JobState.FINISHED );
+		status = new JSONObject( MessageBuilder.addTimings( status, breakdown ).toString() );
+		assertEquals( breakdown, MessageBuilder.getTimings( status ) );
+	}
+}
@@ -0,0 +1,125 @@
+package eu.stratosphere.meteor.server.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.stratosphere.meteor.common.SchedulerConfigConstants;
+
+/**
+ * Tests deleting results in the background and counting the records of results.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class ResultReclaimerTest {
+
+	private String rootPath;
+	private File root;
+
+	@Before
+	public void setUp() throws Exception {
+		rootPath = SchedulerConfigConstants.SCHEDULER_FILESYSTEM_ROOT_PATH;
+		root = Files.createTempDirectory("root").toFile();
+		SchedulerConfigConstants.SCHEDULER_FILESYSTEM_ROOT_PATH = "file://" + root.getPath() + File.separator;
+	}
+
+	@After
+	public void tearDown(){
+		SchedulerConfigConstants.SCHEDULER_FILESYSTEM_ROOT_PATH = rootPath;
+	}
+
+	@Test
+	public void testReclaim() throws Exception {
+		File result = new File( root, "client/result.json" );
+		File parts = new File( root, "client/parts.json" );
+		File kept = new File( root, "client/kept.json" );
+		write( result, 100 );
+		write( new File( parts, "1" ), 10 );
+		write( new File( parts, "2" ), 20 );
+		write( kept, 5 );
+
+		ResultReclaimer reclaimer = new ResultReclaimer( 1, 10 );
+		reclaimer.reclaim( "client", "file://" + result.getPath() );
+		reclaimer.reclaim( "client", "file://" + parts.getPath() );
+		reclaimer.reclaim( "client", "file://" + kept.getPath() );
+		assertTrue( reclaimer.cancel( "file://" + kept.getPath() ) );
+		reclaimer.start();
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while ( reclaimer.getReclaimedResults() < 2 && System.currentTimeMillis() < deadline ) Thread.sleep( 10 );
+		reclaimer.shutdown();
+
+		assertEquals( 2, reclaimer.getReclaimedResults() );
+		assertEquals( 130, reclaimer.getReclaimedBytes() );
+		assertFalse( result.exists() );
+		assertFalse( parts.exists() );
+		assertTrue( kept.exists() );
+	}
+
+	@Test
+	public void testOutsideRoot() throws Exception {
+		File other = Files.createTempFile( "other", ".json" ).toFile();
+		try {
+			ResultReclaimer.delete( "client", "file://" + other.getPath() );
+			fail( "Deleted a file outside of the root path." );
+		} catch ( IOException ioe ){}
+		assertTrue( other.exists() );
+	}
+
+	@Test
+	public void testParentSegments() throws Exception {
+		File other = new File( root, "other/result.json" );
+		File result = new File( root, "client/result.json" );
+		write( other, 10 );
+		write( result, 20 );
+		String clientRoot = SchedulerConfigConstants.SCHEDULER_FILESYSTEM_ROOT_PATH + "client/";
+
+		// '..' segments mustn't leave the directory of the client
+		String[] refused = { clientRoot + "../other/result.json", clientRoot + "..", clientRoot + "a/../../other", clientRoot };
+		for ( String path : refused ){
+			try {
+				ResultReclaimer.delete( "client", path );
+				fail( "Deleted " + path + " outside of the directory of the client." );
+			} catch ( IOException ioe ){}
+		}
+		try {
+			ResultReclaimer.delete( "..", clientRoot + "result.json" );
+			fail( "Accepted a client ID leaving the root path." );
+		} catch ( IOException ioe ){}
+		assertTrue( other.exists() );
+		assertTrue( result.exists() );
+
+		// but they're fine within it
+		assertEquals( 20, ResultReclaimer.delete( "client", clientRoot + "a/../result.json" ) );
+		assertFalse( result.exists() );
+		assertTrue( other.exists() );
+	}
+
+	@Test
+	public void testCountRecords() throws Exception {
+		assertEquals( 3, count( "[{\"a\": [1, 2]}, \"x,]\", 3]" ) );
+		assertEquals( 0, count( " [ ] " ) );
+		assertEquals( 1, count( "{\"a\": 1, \"b\": 2}" ) );
+		assertEquals( 2, count( "[\"\\\"\", {}]" ) );
+	}
+
+	private static long count( String json ) throws IOException {
+		return ResultInspector.countRecords( new ByteArrayInputStream( json.getBytes( "UTF-8" ) ) );
+	}
+
+	private static void write( File file, int bytes ) throws IOException {
+		file.getParentFile().mkdirs();
+		Files.write( file.toPath(), new byte[bytes] );
+	}
+}
@@ -0,0 +1,58 @@
+package eu.stratosphere.meteor.server.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+/**
+ * Tests the order of the round robin and that only waiting jobs can be found in it.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class RoundRobinTest {
+
+	@Test
+	public void testNext(){
+		RoundRobin queue = new RoundRobin();
+		RRJob a1 = new RRJob( "a", "1", "", new Date() );
+		RRJob a2 = new RRJob( "a", "2", "", new Date() );
+		RRJob b1 = new RRJob( "b", "1", "", new Date() );
+		queue.add( "a", a1 );
+		queue.add( "a", a2 );
+		queue.add( "b", b1 );
+
+		// clients take turns
+		assertSame( a1, queue.next() );
+		assertSame( b1, queue.next() );
+
+		// a job taken for execution isn't waiting anymore
+		assertFalse( queue.contains( "a", "1" ) );
+		assertNull( queue.get( "b", "1" ) );
+		assertFalse( queue.remove( "a", "1" ) );
+		assertSame( a2, queue.get( "a", "2" ) );
+		assertEquals( 1, queue.size( "a" ) );
+	}
+
+	@Test
+	public void testRemove(){
+		RoundRobin queue = new RoundRobin();
+		RRJob job = new RRJob( "a", "1", "", new Date() );
+		queue.add( "a", job );
+
+		assertTrue( queue.remove( "a", job ) );
+		assertFalse( queue.contains( "a", "1" ) );
+		assertFalse( queue.remove( "a", "1" ) );
+		assertEquals( 0, queue.size( "a" ) );
+
+		// unknown clients have no jobs
+		assertNull( queue.get( "unknown", "1" ) );
+		assertFalse( queue.remove( "unknown", "1" ) );
+	}
+}
@@ -0,0 +1,120 @@
+package eu.stratosphere.meteor.server.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import eu.stratosphere.meteor.common.JobState;
+
+/**
+ * Tests the memory-mapped result index.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class ResultIndexTest {
+
+	@Test
+	public void testPutAndGet() throws Exception {
+		File directory = Files.createTempDirectory("index").toFile();
+		ResultIndex index = new ResultIndex( directory, 16 );
+
+		index.put( entry( "client", "job1", JobState.FINISHED, null ) );
+		index.put( entry( "client", "job2", JobState.ERROR, "failed" ) );
+		assertEquals( 2, index.size() );
+
+		ResultEntry job = index.get( "client", "job1" );
+		assertEquals( JobState.FINISHED, job.getStatus() );
+		assertEquals( 42, job.getFinishTime() );
+		assertEquals( "ö.json", job.getOriginalResult(0) );
+		assertEquals( "file:///tmp/client/ö.json", job.getMappedResult(0) );
+		assertEquals( 1024, job.getResultSize(0) );
+		assertEquals( 10, job.getRecordCount(0) );
+		assertNull( job.getMappedResult(1) );
+		assertEquals( "failed", index.get( "client", "job2" ).getErrorMessage() );
+
+		assertNull( index.get( "client", "job3" ) );
+		assertNull( index.get( "other", "job1" ) );
+
+		// replacing keeps the size
+		index.put( entry( "client", "job1", JobState.ERROR, "again" ) );
+		assertEquals( 2, index.size() );
+		assertEquals( "again", index.get( "client", "job1" ).getErrorMessage() );
+
+		assertTrue( index.remove( "client", "job1" ) );
+		assertFalse( index.remove( "client", "job1" ) );
+		assertFalse( index.contains( "client", "job1" ) );
+		assertTrue( index.contains( "client", "job2" ) );
+		index.close();
+	}
+
+	@Test
+	public void testReopen() throws Exception {
+		File directory = Files.createTempDirectory("index").toFile();
+		ResultIndex index = new ResultIndex( directory, 16 );
+		index.put( entry( "client", "job1", JobState.FINISHED, null ) );
+		index.put( entry( "client", "job2", JobState.FINISHED, null ) );
+		index.remove( "client", "job2" );
+		index.close();
+
+		index = new ResultIndex( directory, 16 );
+		assertEquals( 1, index.size() );
+		assertEquals( 1024, index.get( "client", "job1" ).getResultSize(0) );
+		assertNull( index.get( "client", "job2" ) );
+		index.close();
+	}
+
+	@Test
+	public void testGrow() throws Exception {
+		File directory = Files.createTempDirectory("index").toFile();
+		ResultIndex index = new ResultIndex( directory, 16 );
+
+		// more entries than slots and more bytes than the initial file
+		for ( int i = 0; i < 5000; i++ ){
+			index.put( entry( "client" + (i % 7), "job" + i, JobState.FINISHED, null ) );
+			if ( i % 3 == 0 ) index.remove( "client" + (i % 7), "job" + i );
+		}
+		index.close();
+
+		index = new ResultIndex( directory, 16 );
+		assertEquals( 3333, index.size() );
+		for ( int i = 0; i < 5000; i++ )
+			assertEquals( i % 3 != 0, index.contains( "client" + (i % 7), "job" + i ) );
+
+		assertEquals( 3333 - 476, index.retainClients( Arrays.asList( "client0" ) ) );
+		assertEquals( 476, index.size() );
+		index.close();
+	}
+
+	@Test
+	public void testFinishedBefore() throws Exception {
+		File directory = Files.createTempDirectory("index").toFile();
+		ResultIndex index = new ResultIndex( directory, 16 );
+		index.put( entry( "client", "job1", JobState.FINISHED, null ) );
+		index.put( new ResultEntry( "client", "job2", JobState.FINISHED, null, 100,
+				new String[0], new String[0], new long[0], new long[0] ) );
+
+		assertEquals( 0, index.finishedBefore( 42, 10 ).size() );
+		assertEquals( "job1", index.finishedBefore( 43, 10 ).get(0).getJobID() );
+		assertEquals( 2, index.finishedBefore( 101, 10 ).size() );
+		assertEquals( 1, index.finishedBefore( 101, 1 ).size() );
+
+		assertTrue( index.findResults( Arrays.asList( "file:///tmp/client/ö.json", "other" ) )
+				.contains( "file:///tmp/client/ö.json" ) );
+		assertEquals( 1, index.findResults( Arrays.asList( "file:///tmp/client/ö.json", "other" ) ).size() );
+		index.close();
+	}
+
+	private static ResultEntry entry( String clientID, String jobID, JobState status, String error ){
+		return new ResultEntry( clientID, jobID, status, error, 42,
+				new String[] { "ö.json" }, new String[] { "file:///tmp/" + clientID + "/ö.json" },
+				new long[] { 1024 }, new long[] { 10 } );
+	}
+}
@@ -0,0 +1,147 @@
+package eu.stratosphere.meteor.server.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import eu.stratosphere.meteor.common.JobState;
+
+/**
+ * Tests appending and replaying the job journal.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class JobJournalTest {
+
+	@Test
+	public void testReplay() throws Exception {
+		File directory = Files.createTempDirectory("journal").toFile();
+
+		JobJournal journal = new JobJournal( directory, 5, 1024 * 1024 );
+		journal.logRegister( "client" );
+		journal.logSubmit( "client", "job1", "write $a to 'ö.json';", new Date( 42 ) );
+		journal.logSubmit( "client", "job2", "script", null );
+		journal.logState( "client", "job1", JobState.ERROR, "failed" );
+		long last = journal.logAbort( "client", "job2" );
+		assertTrue( journal.awaitDurable( last, 5000 ) );
+		journal.logUnregister( "client" );
+		journal.close();
+
+		List<String> records = new ArrayList<String>();
+		assertEquals( 6, JobJournal.replay( directory, 0, new RecordingHandler( records ) ) );
+		assertEquals( Arrays.asList(
+				"register client",
+				"submit client job1 write $a to 'ö.json'; 42",
+				"submit client job2 script null",
+				"state client job1 ERROR failed",
+				"abort client job2",
+				"unregister client" ), records );
+	}
+
+	@Test
+	public void testTornRecord() throws Exception {
+		File directory = Files.createTempDirectory("journal").toFile();
+		File file = JobJournal.getSegmentFile( directory, 1 );
+
+		JobJournal journal = new JobJournal( directory, 0, 1024 * 1024 );
+		journal.logRegister( "client" );
+		journal.close();
+		long valid = file.length();
+
+		// a crash while writing the second record
+		try ( RandomAccessFile raf = new RandomAccessFile( file, "rw" ) ){
+			raf.seek( valid );
+			raf.writeInt( 100 );
+			raf.writeInt( 0 );
+			raf.write( new byte[10] );
+		}
+
+		List<String> records = new ArrayList<String>();
+		assertEquals( 1, JobJournal.replay( directory, 0, new RecordingHandler( records ) ) );
+		assertEquals( valid, file.length() );
+
+		// new records follow the last valid one
+		journal = new JobJournal( directory, 0, 1024 * 1024 );
+		journal.logRegister( "other" );
+		journal.close();
+
+		records.clear();
+		assertEquals( 2, JobJournal.replay( directory, 0, new RecordingHandler( records ) ) );
+		assertEquals( Arrays.asList( "register client", "register other" ), records );
+	}
+
+	@Test
+	public void testRoll() throws Exception {
+		File directory = Files.createTempDirectory("journal").toFile();
+
+		JobJournal journal = new JobJournal( directory, 5, 1024 * 1024 );
+		journal.logRegister( "old" );
+		assertEquals( 2, journal.roll() );
+		journal.logRegister( "new" );
+		journal.close();
+		assertEquals( Arrays.asList( 1L, 2L ), JobJournal.listSegments( directory ) );
+
+		// a snapshot covers the first segment
+		List<String> records = new ArrayList<String>();
+		assertEquals( 1, JobJournal.replay( directory, 2, new RecordingHandler( records ) ) );
+		assertEquals( Arrays.asList( "register new" ), records );
+
+		// appending goes on in the newest segment
+		journal = new JobJournal( directory, 5, 1024 * 1024 );
+		assertEquals( 1, journal.deleteSegmentsBefore( 2 ) );
+		journal.logRegister( "newer" );
+		journal.close();
+
+		records.clear();
+		assertEquals( 2, JobJournal.replay( directory, 0, new RecordingHandler( records ) ) );
+		assertEquals( Arrays.asList( "register new", "register newer" ), records );
+	}
+
+	/**
+	 * Records all replayed records as strings.
+	 */
+	static class RecordingHandler implements JournalHandler {
+		private final List<String> records;
+
+		RecordingHandler( List<String> records ){
+			this.records = records;
+		}
+
+		@Override
+		public void clientRegistered( String clientID ){
+			records.add( "register " + clientID );
+		}
+
+		@Override
+		public void clientUnregistered( String clientID ){
+			records.add( "unregister " + clientID );
+		}
+
+		@Override
+		public void jobSubmitted( String clientID, String jobID, String meteorScript, Date submitTime ){
+			records.add( "submit " + clientID + " " + jobID + " " + meteorScript + " " +
+					( submitTime == null ? null : submitTime.getTime() ) );
+		}
+
+		@Override
+		public void jobStateChanged( String clientID, String jobID, JobState state, String errorMessage ){
+			records.add( "state " + clientID + " " + jobID + " " + state + " " + errorMessage );
+		}
+
+		@Override
+		public void jobAborted( String clientID, String jobID ){
+			records.add( "abort " + clientID + " " + jobID );
+		}
+	}
+}
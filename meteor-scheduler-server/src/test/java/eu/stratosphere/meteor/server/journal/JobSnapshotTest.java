@@ -0,0 +1,70 @@
+package eu.stratosphere.meteor.server.journal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import eu.stratosphere.meteor.common.JobState;
+import eu.stratosphere.meteor.server.journal.JobJournalTest.RecordingHandler;
+
+/**
+ * Tests writing and restoring snapshots.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class JobSnapshotTest {
+
+	@Test
+	public void testRestore() throws Exception {
+		File directory = Files.createTempDirectory("snapshot").toFile();
+
+		JobSnapshot snapshot = new JobSnapshot( 7 );
+		snapshot.addClient( "b", true );
+		snapshot.addQueuedJob( "b", "job2", "script2", new Date( 2 ) );
+		snapshot.addQueuedJob( "b", "job1", "script1", null );
+		snapshot.addClient( "a", false );
+		snapshot.addFinishedJob( "a", "job3", "script3", null, JobState.ERROR, "failed" );
+		snapshot.write( directory );
+
+		List<String> records = new ArrayList<String>();
+		assertEquals( 7, JobSnapshot.restore( directory, new RecordingHandler( records ) ) );
+		assertEquals( Arrays.asList(
+				"register b",
+				"submit b job2 script2 2",
+				"submit b job1 script1 null",
+				"register a",
+				"submit a job3 script3 null",
+				"state a job3 ERROR failed",
+				"unregister a" ), records );
+
+		// a new snapshot replaces the old one
+		new JobSnapshot( 8 ).write( directory );
+		assertEquals( 8, JobSnapshot.restore( directory, new RecordingHandler( records ) ) );
+	}
+
+	@Test( expected = IOException.class )
+	public void testCorrupted() throws Exception {
+		File directory = Files.createTempDirectory("snapshot").toFile();
+
+		JobSnapshot snapshot = new JobSnapshot( 1 );
+		snapshot.addClient( "client", true );
+		snapshot.write( directory );
+
+		try ( RandomAccessFile raf = new RandomAccessFile( new File( directory, JobSnapshot.FILE_NAME ), "rw" ) ){
+			raf.seek( 20 );
+			raf.write( 'x' );
+		}
+
+		JobSnapshot.restore( directory, new RecordingHandler( new ArrayList<String>() ) );
+	}
+}
@@ -0,0 +1,54 @@
+package eu.stratosphere.meteor.server.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the buckets and percentiles of the latency histogram.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBuckets(){
+		for ( long value : new long[]{ 0, 1, 31, 32, 33, 64, 65, 1000, 123456789, Long.MAX_VALUE } ){
+			int index = LatencyHistogram.index( value );
+			assertTrue( value + " above its bucket", value <= LatencyHistogram.highestValue( index ) );
+			assertTrue( value + " below its bucket", index == 0 || value > LatencyHistogram.highestValue( index - 1 ) );
+			// at most 1/32 off
+			assertTrue( LatencyHistogram.highestValue( index ) - value <= value / 32 );
+		}
+	}
+
+	@Test
+	public void testPercentiles(){
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals( 0, histogram.getValueAtPercentile( 99 ) );
+
+		for ( int i = 1; i <= 1000; i++ ) histogram.record( i );
+		assertEquals( 1000, histogram.getCount() );
+		assertEquals( 500.5, histogram.getMean(), 0.001 );
+		assertEquals( 1000, histogram.getMax() );
+		assertEquals( 1000, histogram.getValueAtPercentile( 100 ) );
+
+		long p50 = histogram.getValueAtPercentile( 50 );
+		long p99 = histogram.getValueAtPercentile( 99 );
+		assertTrue( "p50 " + p50, p50 >= 500 && p50 <= 500 + 500 / 32 );
+		assertTrue( "p99 " + p99, p99 >= 990 && p99 <= 1000 );
+	}
+
+	@Test
+	public void testSummary(){
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record( 2000 );
+		histogram.record( 4000 );
+
+		assertEquals( 2.0, histogram.getSummary().get( "count" ), 0 );
+		assertEquals( 3.0, histogram.getSummary().get( "mean" ), 0.001 );
+		assertEquals( 4.0, histogram.getSummary().get( "max" ), 0.001 );
+	}
+}
@@ -0,0 +1,133 @@
+package eu.stratosphere.meteor.server.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+
+import javax.management.MBeanServer;
+
+import org.junit.Test;
+
+import eu.stratosphere.meteor.common.JobState;
+import eu.stratosphere.meteor.server.executor.JobTimeline;
+import eu.stratosphere.meteor.server.executor.JobTimeline.Stage;
+import eu.stratosphere.meteor.server.executor.RRJob;
+import eu.stratosphere.meteor.server.executor.RoundRobin;
+
+/**
+ * Tests the counters of the scheduler metrics and their export over JMX.
+ *
+ * @author André Greiner-Petter
+ *
+ */
+public class SchedulerMetricsTest {
+
+	@Test
+	public void testStripedCounter() throws InterruptedException {
+		final StripedCounter counter = new StripedCounter();
+		Thread[] threads = new Thread[8];
+		for ( int i = 0; i < threads.length; i++ ){
+			threads[i] = new Thread(){
+				@Override
+				public void run(){
+					for ( int j = 0; j < 10000; j++ ) counter.increment();
+				}
+			};
+			threads[i].start();
+		}
+		for ( Thread thread : threads ) thread.join();
+
+		assertEquals( 80000, counter.sum() );
+	}
+
+	@Test
+	public void testMeter(){
+		Meter meter = new Meter();
+		meter.mark();
+		meter.mark( 41 );
+
+		assertEquals( 42, meter.getCount() );
+		assertTrue( meter.getRate() > 0 );
+	}
+
+	@Test
+	public void testQueueDepths(){
+		SchedulerMetrics metrics = new SchedulerMetrics();
+		RoundRobin queue = new RoundRobin( metrics );
+		queue.add( "a", new RRJob( "a", "1", "", new Date() ) );
+		queue.add( "a", new RRJob( "a", "2", "", new Date() ) );
+		queue.add( "b", new RRJob( "b", "1", "", new Date() ) );
+
+		assertEquals( 3, metrics.getWaitingJobs() );
+		assertEquals( Integer.valueOf( 2 ), metrics.getQueueDepths().get( "a" ) );
+
+		queue.next();
+		queue.remove( "b", "1" );
+		assertEquals( 1, metrics.getWaitingJobs() );
+		assertEquals( Integer.valueOf( 1 ), metrics.getQueueDepths().get( "a" ) );
+		assertFalse( metrics.getQueueDepths().containsKey( "b" ) );
+
+		queue.remove( "a" );
+		assertEquals( 0, metrics.getWaitingJobs() );
+		assertTrue( metrics.getQueueDepths().isEmpty() );
+	}
+
+	@Test
+	public void testJobs(){
+		SchedulerMetrics metrics = new SchedulerMetrics();
+		JobTimeline timeline = new JobTimeline();
+		timeline.mark( Stage.QUEUED, 0 );
+		timeline.mark( Stage.DISPATCHED, 2000000 );
+		timeline.mark( Stage.STARTED, 3000000 );
+		metrics.jobStateChanged( JobState.WAITING );
+		metrics.jobStateChanged( JobState.RUNNING );
+		metrics.jobStarted( timeline );
+		assertEquals( 1, metrics.getRunningJobs() );
+
+		timeline.mark( Stage.FINISHED, 7000000 );
+		metrics.jobFinished( timeline );
+		metrics.jobStateChanged( JobState.FINISHED );
+		assertEquals( 0, metrics.getRunningJobs() );
+		assertEquals( Long.valueOf( 1 ), metrics.getJobsPerState().get( "FINISHED" ) );
+		assertEquals( Long.valueOf( 0 ), metrics.getJobsPerState().get( "ERROR" ) );
+		assertEquals( 2.0, metrics.getWaitTimes().get( "mean" ), 0.001 );
+		assertEquals( 4.0, metrics.getRunTimes().get( "mean" ), 0.001 );
+
+		// the job wasn't received over the broker and no result was sent
+		assertEquals( 0.0, metrics.getPhaseTimes().get( "receive" ).get( "count" ), 0 );
+		assertEquals( 1.0, metrics.getPhaseTimes().get( "dispatch" ).get( "mean" ), 0.001 );
+		assertEquals( 0.0, metrics.getPhaseTimes().get( "result" ).get( "count" ), 0 );
+	}
+
+	@Test
+	public void testJMX() throws Exception {
+		SchedulerMetrics metrics = new SchedulerMetrics();
+		metrics.register( 42 );
+		try {
+			assertNotNull( metrics.getObjectName() );
+			metrics.requestReceived( "JOB_STATUS" );
+			metrics.requestReceived( "JOB_STATUS" );
+			metrics.bytesTransferred( 1024 );
+
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertEquals( 1024L, server.getAttribute( metrics.getObjectName(), "TransferredBytes" ) );
+			assertNotNull( server.getAttribute( metrics.getObjectName(), "Requests" ) );
+			assertNotNull( server.getAttribute( metrics.getObjectName(), "PhaseTimes" ) );
+			assertEquals( Long.valueOf( 2 ), metrics.getRequests().get( "JOB_STATUS" ) );
+
+			// a new scheduler of the same shard replaces the old metrics
+			SchedulerMetrics replaced = new SchedulerMetrics();
+			replaced.register( 42 );
+			assertEquals( 0L, server.getAttribute( metrics.getObjectName(), "TransferredBytes" ) );
+			replaced.unregister();
+		} finally {
+			metrics.unregister();
+		}
+		assertNull( metrics.getObjectName() );
+	}
+}